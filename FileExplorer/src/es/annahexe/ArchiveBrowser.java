@@ -0,0 +1,504 @@
+package es.annahexe;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Lets the explorer browse ZIP/JAR and TAR/TAR.GZ archives as read-only virtual folders.
+ * <p>
+ * ZIP-based archives are opened through the JDK zipfs {@code FileSystemProvider}, which reads the central
+ * directory once. TAR archives are scanned once to build an index of entries and data offsets. Opened archives
+ * are cached (keyed by path, size and last modified time), and single entries are streamed to the caller
+ * without unpacking the archive.
+ * </p>
+ * @author annahexe
+ */
+public class ArchiveBrowser {
+	private static final int MAX_OPEN_ARCHIVES = 8;
+	private static final String[] ZIP_EXTENSIONS = { ".zip", ".jar", ".war", ".ear" };
+	private static final String[] TAR_EXTENSIONS = { ".tar", ".tar.gz", ".tgz" };
+
+	private Map<String, Archive> archives;
+
+    /**
+     * An entry of an archive folder.
+     */
+	public static class Entry {
+		private String name;
+		private boolean directory;
+		private long size;
+
+		private Entry(String name, boolean directory, long size) {
+			this.name = name;
+			this.directory = directory;
+			this.size = size;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public boolean isDirectory() {
+			return directory;
+		}
+
+		public long getSize() {
+			return size;
+		}
+	}
+
+    /**
+     * An opened archive. Folder and entry paths are relative to the archive root, use <code>/</code> as separator
+     * and folders end with <code>/</code> (the root is <code>""</code>).
+     */
+	public abstract static class Archive {
+		private File file;
+		private long lastModified;
+		private long length;
+
+		private Archive(File file) {
+			this.file = file;
+			this.lastModified = file.lastModified();
+			this.length = file.length();
+		}
+
+		public File getFile() {
+			return file;
+		}
+
+	    /**
+	     * Lists a folder of the archive, folders first.
+	     * @param folder the folder path
+	     * @return the entries of the folder; empty if it doesn't exist
+	     * @throws IOException if the archive can't be read
+	     */
+		public abstract List<Entry> list(String folder) throws IOException;
+
+	    /**
+	     * Opens a stream over a single entry.
+	     * @param entryPath the entry path
+	     * @return the uncompressed content of the entry
+	     * @throws IOException if the entry doesn't exist or can't be read
+	     */
+		public abstract InputStream open(String entryPath) throws IOException;
+
+		abstract void close();
+
+		private boolean isStale() {
+			return file.lastModified() != lastModified || file.length() != length;
+		}
+	}
+
+    /**
+     * Builds the browser with an empty archive cache.
+     */
+	public ArchiveBrowser() {
+		this.archives = new LinkedHashMap<String, Archive>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<String, Archive> eldest) {
+				if (size() > MAX_OPEN_ARCHIVES) {
+					eldest.getValue().close();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+    /**
+     * Checks by extension whether a file can be browsed as an archive.
+     * @param file the file to check
+     * @return {@code true} for ZIP/JAR/WAR/EAR and TAR/TAR.GZ/TGZ files
+     */
+	public static boolean isArchive(File file) {
+		return file != null && file.isFile() && (isZip(file.getName()) || isTar(file.getName()));
+	}
+
+    /**
+     * Opens an archive, reusing the cached index if the file didn't change.
+     * @param file the archive file
+     * @return the opened archive
+     * @throws IOException if the archive can't be read
+     */
+	public synchronized Archive open(File file) throws IOException {
+		String key = file.getAbsolutePath();
+		Archive archive = archives.get(key);
+		if (archive != null && !archive.isStale())
+			return archive;
+		if (archive != null) {
+			archives.remove(key);
+			archive.close();
+		}
+		archive = isZip(file.getName()) ? new ZipArchive(file) : TarArchive.index(file);
+		archives.put(key, archive);
+		return archive;
+	}
+
+    /**
+     * Returns the parent folder of an archive folder.
+     * @param folder the folder path
+     * @return the parent path, <code>""</code> for first-level folders
+     */
+	public static String parentOf(String folder) {
+		String trimmed = folder.endsWith("/") ? folder.substring(0, folder.length() - 1) : folder;
+		int slash = trimmed.lastIndexOf('/');
+		return (slash >= 0) ? trimmed.substring(0, slash + 1) : "";
+	}
+
+	private static boolean isZip(String name) {
+		return endsWithAny(name.toLowerCase(), ZIP_EXTENSIONS);
+	}
+
+	private static boolean isTar(String name) {
+		return endsWithAny(name.toLowerCase(), TAR_EXTENSIONS);
+	}
+
+	private static boolean endsWithAny(String name, String[] extensions) {
+		for (String extension : extensions) {
+			if (name.endsWith(extension))
+				return true;
+		}
+		return false;
+	}
+
+	private static void sortFoldersFirst(List<Entry> entries) {
+		Collections.sort(entries, new Comparator<Entry>() {
+			public int compare(Entry a, Entry b) {
+				if (a.directory != b.directory)
+					return a.directory ? -1 : 1;
+				return a.name.compareToIgnoreCase(b.name);
+			}
+		});
+	}
+
+	// =========================
+	// ZIP / JAR
+	// =========================
+
+    /**
+     * ZIP-based archive backed by a zipfs {@link FileSystem}.
+     */
+	private static class ZipArchive extends Archive {
+		private FileSystem fileSystem;
+
+		private ZipArchive(File file) throws IOException {
+			super(file);
+			this.fileSystem = FileSystems.newFileSystem(file.toPath(), (ClassLoader) null);
+		}
+
+		public List<Entry> list(String folder) throws IOException {
+			List<Entry> entries = new ArrayList<>();
+			Path path = fileSystem.getPath("/" + folder);
+			if (!Files.isDirectory(path))
+				return entries;
+			try (DirectoryStream<Path> children = Files.newDirectoryStream(path)) {
+				for (Path child : children) {
+					BasicFileAttributes attributes = Files.readAttributes(child, BasicFileAttributes.class);
+					String name = child.getFileName().toString();
+					if (name.endsWith("/"))
+						name = name.substring(0, name.length() - 1);
+					entries.add(new Entry(name, attributes.isDirectory(), attributes.size()));
+				}
+			}
+			sortFoldersFirst(entries);
+			return entries;
+		}
+
+		public InputStream open(String entryPath) throws IOException {
+			return Files.newInputStream(fileSystem.getPath("/" + entryPath));
+		}
+
+		void close() {
+			try {
+				fileSystem.close();
+			} catch (IOException e) {
+				// Nothing left to release
+			}
+		}
+	}
+
+	// =========================
+	// TAR / TAR.GZ
+	// =========================
+
+    /**
+     * TAR archive indexed once: entry path -> data offset and size, folder path -> children.
+     */
+	private static class TarArchive extends Archive {
+		private static final int BLOCK = 512;
+
+		private boolean gzipped;
+		private Map<String, long[]> dataByPath = new HashMap<>(); // {offset, size}
+		private Map<String, Map<String, Entry>> childrenByFolder = new HashMap<>();
+
+		private TarArchive(File file) {
+			super(file);
+			String name = file.getName().toLowerCase();
+			this.gzipped = name.endsWith(".gz") || name.endsWith(".tgz");
+			childrenByFolder.put("", new LinkedHashMap<String, Entry>());
+		}
+
+		static TarArchive index(File file) throws IOException {
+			TarArchive archive = new TarArchive(file);
+			try (InputStream in = archive.openRaw()) {
+				archive.readHeaders(in);
+			}
+			return archive;
+		}
+
+		public List<Entry> list(String folder) {
+			Map<String, Entry> children = childrenByFolder.get(folder);
+			List<Entry> entries = (children != null) ? new ArrayList<>(children.values()) : new ArrayList<Entry>();
+			sortFoldersFirst(entries);
+			return entries;
+		}
+
+		public InputStream open(String entryPath) throws IOException {
+			long[] data = dataByPath.get(entryPath);
+			if (data == null)
+				throw new IOException("No such entry: " + entryPath);
+			InputStream in;
+			if (gzipped) {
+				// A gzip stream can't seek: decompress and discard everything before the entry
+				in = openRaw();
+				skipFully(in, data[0]);
+			} else {
+				RandomAccessFile raf = new RandomAccessFile(getFile(), "r");
+				raf.seek(data[0]);
+				in = new BufferedInputStream(Channels.newInputStream(raf.getChannel()));
+			}
+			return new BoundedInputStream(in, data[1]);
+		}
+
+		void close() {
+			dataByPath.clear();
+			childrenByFolder.clear();
+		}
+
+		private InputStream openRaw() throws IOException {
+			InputStream in = new FileInputStream(getFile());
+			return gzipped ? new GZIPInputStream(in, 1 << 16) : new BufferedInputStream(in, 1 << 16);
+		}
+
+		private void readHeaders(InputStream in) throws IOException {
+			byte[] header = new byte[BLOCK];
+			long offset = 0;
+			String longName = null;
+			while (true) {
+				if (!readBlock(in, header))
+					return;
+				offset += BLOCK;
+				if (isZeroBlock(header))
+					return;
+				String name = (longName != null) ? longName : headerName(header);
+				longName = null;
+				long size = parseNumber(header, 124, 12);
+				char type = (char) header[156];
+				long padded = (size + BLOCK - 1) / BLOCK * BLOCK;
+
+				if (type == 'L' || type == 'x') {
+					// GNU long name or PAX extended header: the real path is in the data
+					byte[] data = new byte[(int) size];
+					readFully(in, data);
+					skipFully(in, padded - size);
+					offset += padded;
+					longName = (type == 'L') ? cString(data, 0, data.length) : paxPath(data);
+					continue;
+				}
+				if (type == 'g') {
+					skipFully(in, padded);
+					offset += padded;
+					continue;
+				}
+				boolean directory = type == '5' || name.endsWith("/");
+				addEntry(name, directory, directory ? 0 : size, offset);
+				skipFully(in, padded);
+				offset += padded;
+			}
+		}
+
+		private void addEntry(String path, boolean directory, long size, long offset) {
+			while (path.startsWith("./") || path.startsWith("/"))
+				path = path.substring(path.indexOf('/') + 1);
+			if (path.isEmpty())
+				return;
+			if (directory && !path.endsWith("/"))
+				path += "/";
+			String parent = parentOf(path);
+			ensureFolder(parent);
+			String name = path.substring(parent.length());
+			if (directory) {
+				name = name.substring(0, name.length() - 1);
+				ensureFolder(path);
+			} else {
+				dataByPath.put(path, new long[] { offset, size });
+			}
+			childrenByFolder.get(parent).put(name, new Entry(name, directory, size));
+		}
+
+		private void ensureFolder(String folder) {
+			if (childrenByFolder.containsKey(folder))
+				return;
+			childrenByFolder.put(folder, new LinkedHashMap<String, Entry>());
+			String parent = parentOf(folder);
+			ensureFolder(parent);
+			String name = folder.substring(parent.length(), folder.length() - 1);
+			childrenByFolder.get(parent).put(name, new Entry(name, true, 0));
+		}
+
+		private static String headerName(byte[] header) {
+			String name = cString(header, 0, 100);
+			if (header[257] == 'u' && header[258] == 's' && header[259] == 't' && header[260] == 'a'
+					&& header[261] == 'r') {
+				String prefix = cString(header, 345, 155);
+				if (!prefix.isEmpty())
+					name = prefix + "/" + name;
+			}
+			return name;
+		}
+
+		private static String paxPath(byte[] data) {
+			// Records are "<length> <key>=<value>\n"
+			int position = 0;
+			while (position < data.length) {
+				int space = position;
+				while (space < data.length && data[space] != ' ')
+					space++;
+				if (space >= data.length)
+					break;
+				int length = Integer.parseInt(new String(data, position, space - position, StandardCharsets.US_ASCII));
+				String record = new String(data, space + 1, length - (space - position) - 2, StandardCharsets.UTF_8);
+				if (record.startsWith("path="))
+					return record.substring(5);
+				position += length;
+			}
+			return null;
+		}
+
+		private static long parseNumber(byte[] header, int offset, int length) {
+			if ((header[offset] & 0x80) != 0) {
+				// GNU base-256 encoding, used for entries of 8 GB or more
+				long value = header[offset] & 0x7f;
+				for (int i = 1; i < length; i++)
+					value = (value << 8) | (header[offset + i] & 0xff);
+				return value;
+			}
+			long value = 0;
+			for (int i = offset; i < offset + length; i++) {
+				byte b = header[i];
+				if (b >= '0' && b <= '7')
+					value = value * 8 + (b - '0');
+				else if (b == 0 || (b == ' ' && value > 0))
+					break;
+			}
+			return value;
+		}
+
+		private static String cString(byte[] bytes, int offset, int length) {
+			int end = offset;
+			while (end < offset + length && bytes[end] != 0)
+				end++;
+			return new String(bytes, offset, end - offset, StandardCharsets.UTF_8);
+		}
+
+		private static boolean isZeroBlock(byte[] block) {
+			for (byte b : block) {
+				if (b != 0)
+					return false;
+			}
+			return true;
+		}
+
+		private static boolean readBlock(InputStream in, byte[] block) throws IOException {
+			int read = 0;
+			while (read < block.length) {
+				int count = in.read(block, read, block.length - read);
+				if (count < 0)
+					return false;
+				read += count;
+			}
+			return true;
+		}
+
+		private static void readFully(InputStream in, byte[] data) throws IOException {
+			if (!readBlock(in, data))
+				throw new EOFException("Truncated tar archive");
+		}
+	}
+
+	private static void skipFully(InputStream in, long bytes) throws IOException {
+		while (bytes > 0) {
+			long skipped = in.skip(bytes);
+			if (skipped <= 0) {
+				if (in.read() < 0)
+					throw new EOFException("Truncated archive");
+				skipped = 1;
+			}
+			bytes -= skipped;
+		}
+	}
+
+    /**
+     * Stream limited to the bytes of a single entry.
+     */
+	private static class BoundedInputStream extends FilterInputStream {
+		private long remaining;
+
+		private BoundedInputStream(InputStream in, long size) {
+			super(in);
+			this.remaining = size;
+		}
+
+		public int read() throws IOException {
+			if (remaining <= 0)
+				return -1;
+			int b = super.read();
+			if (b >= 0)
+				remaining--;
+			return b;
+		}
+
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			if (remaining <= 0)
+				return -1;
+			int count = super.read(buffer, offset, (int) Math.min(length, remaining));
+			if (count > 0)
+				remaining -= count;
+			return count;
+		}
+
+		public long skip(long bytes) throws IOException {
+			long skipped = super.skip(Math.min(bytes, remaining));
+			remaining -= skipped;
+			return skipped;
+		}
+
+		public int available() throws IOException {
+			return (int) Math.min(super.available(), remaining);
+		}
+	}
+
+}
@@ -0,0 +1,268 @@
+package es.annahexe;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Plans batch copy, move and delete of many entries as a single {@link JobManager} job.
+ * <p>
+ * Each tree is walked once (the walk already returns the attributes, so nothing is stat'ed twice) and turned
+ * into operations grouped by what they depend on: folders are created first, shallowest level first, then every
+ * file is copied in parallel, and folders are deleted deepest level first, with a {@link JobManager#BARRIER}
+ * between groups.
+ * Moves on the same device are a single rename per selected entry.
+ * </p>
+ * <p>
+ * Nothing is overwritten: an operation whose target exists fails and can be retried once it's sorted out.
+ * </p>
+ * @author annahexe
+ */
+public class BatchOperations {
+	/** Operations run at once by a batch job. */
+	public static final int PARALLELISM = 4;
+
+	private static final String COPY_SUFFIX = "_copia";
+
+	private BatchOperations() {
+	}
+
+    /**
+     * Plans copying entries into a folder. Copies into their own folder are named like {@link Utilities#copyFile}
+     * does (<code>name_copia.ext</code>).
+     * @param sources      files and folders to copy
+     * @param targetFolder the destination folder
+     * @return the planner of the job
+     */
+	public static JobManager.Planner copy(final List<File> sources, final File targetFolder) {
+		return new JobManager.Planner() {
+			public List<JobManager.Operation> plan(JobManager.Job job) throws IOException {
+				Tree tree = new Tree();
+				for (File source : sources) {
+					if (job.isCanceled())
+						break;
+					tree.add(source.toPath(), targetFor(source, targetFolder).toPath(), false);
+				}
+				return tree.copyOperations();
+			}
+		};
+	}
+
+    /**
+     * Plans moving entries into a folder. Entries on the same device as the target are renamed; the others are
+     * copied file by file, each source file deleted right after its copy, and their emptied folders removed last.
+     * @param sources      files and folders to move
+     * @param targetFolder the destination folder
+     * @return the planner of the job
+     */
+	public static JobManager.Planner move(final List<File> sources, final File targetFolder) {
+		return new JobManager.Planner() {
+			public List<JobManager.Operation> plan(JobManager.Job job) throws IOException {
+				List<JobManager.Operation> renames = new ArrayList<>();
+				Tree tree = new Tree();
+				Path target = targetFolder.toPath();
+				for (File source : sources) {
+					if (job.isCanceled())
+						break;
+					Path destination = target.resolve(source.getName());
+					if (source.getParentFile() != null && source.getParentFile().equals(targetFolder))
+						continue; // already there
+					if (Files.getFileStore(source.toPath()).equals(Files.getFileStore(target)))
+						renames.add(move(source.toPath(), destination));
+					else
+						tree.add(source.toPath(), destination, true);
+				}
+				List<JobManager.Operation> operations = tree.copyOperations();
+				operations.addAll(renames);
+				return operations;
+			}
+		};
+	}
+
+    /**
+     * Plans deleting entries, folders with all their content. Symbolic links are deleted, never followed.
+     * @param sources files and folders to delete
+     * @return the planner of the job
+     */
+	public static JobManager.Planner delete(final List<File> sources) {
+		return new JobManager.Planner() {
+			public List<JobManager.Operation> plan(JobManager.Job job) throws IOException {
+				Tree tree = new Tree();
+				for (File source : sources) {
+					if (job.isCanceled())
+						break;
+					tree.add(source.toPath(), null, true);
+				}
+				return tree.deleteOperations();
+			}
+		};
+	}
+
+	// =========================
+	// Operations
+	// =========================
+
+	private static File targetFor(File source, File targetFolder) {
+		if (source.getParentFile() == null || !source.getParentFile().equals(targetFolder))
+			return new File(targetFolder, source.getName());
+		String name = source.getName();
+		int dotIndex = source.isDirectory() ? -1 : name.lastIndexOf('.');
+		String nameWithoutExt = (dotIndex > 0) ? name.substring(0, dotIndex) : name;
+		String extension = (dotIndex > 0) ? name.substring(dotIndex) : "";
+		return new File(targetFolder, nameWithoutExt + COPY_SUFFIX + extension);
+	}
+
+	private static JobManager.Operation move(final Path source, final Path destination) {
+		return new JobManager.Operation() {
+			public String getName() {
+				return source + " -> " + destination.getFileName();
+			}
+
+			public void run(JobManager.Job job) throws IOException {
+				if (Files.exists(destination, LinkOption.NOFOLLOW_LINKS))
+					throw new FileAlreadyExistsException(destination.toString());
+				Files.move(source, destination);
+			}
+		};
+	}
+
+	private static JobManager.Operation copyFile(final Path source, final Path destination, final long size,
+			final boolean deleteSource) {
+		return new JobManager.Operation() {
+			public String getName() {
+				return source.toString();
+			}
+
+			public void run(JobManager.Job job) throws IOException {
+				Files.copy(source, destination, StandardCopyOption.COPY_ATTRIBUTES, LinkOption.NOFOLLOW_LINKS);
+				job.addBytes(size);
+				if (deleteSource)
+					Files.delete(source);
+			}
+		};
+	}
+
+	private static JobManager.Operation createFolder(final Path folder) {
+		return new JobManager.Operation() {
+			public String getName() {
+				return folder.toString();
+			}
+
+			public void run(JobManager.Job job) throws IOException {
+				Files.createDirectory(folder);
+			}
+		};
+	}
+
+	private static JobManager.Operation delete(final Path path) {
+		return new JobManager.Operation() {
+			public String getName() {
+				return path.toString();
+			}
+
+			public void run(JobManager.Job job) throws IOException {
+				Files.deleteIfExists(path);
+			}
+		};
+	}
+
+    /**
+     * The walked entries of a batch: files with their destinations and folders by depth.
+     */
+	private static class Tree {
+		private TreeMap<Integer, List<Path>> foldersToCreate = new TreeMap<>(); // destinations by depth
+		private List<JobManager.Operation> files = new ArrayList<>();
+		private TreeMap<Integer, List<Path>> foldersToDelete = new TreeMap<>(); // by depth
+		private List<Path> filesToDelete = new ArrayList<>();
+
+		// Walks one selected entry; destination is null for a plain delete
+		void add(final Path root, final Path destination, final boolean deleteSource) throws IOException {
+			Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+				public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+					if (destination != null)
+						depthList(foldersToCreate, destinationOf(dir)).add(destinationOf(dir));
+					if (deleteSource)
+						depthList(foldersToDelete, dir).add(dir);
+					return FileVisitResult.CONTINUE;
+				}
+
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+					if (destination != null)
+						files.add(copyFile(file, destinationOf(file), attributes.size(), deleteSource));
+					else
+						filesToDelete.add(file);
+					return FileVisitResult.CONTINUE;
+				}
+
+				public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+					if (destination != null)
+						throw e; // a copy must not silently miss entries
+					filesToDelete.add(file);
+					return FileVisitResult.CONTINUE;
+				}
+
+				private Path destinationOf(Path path) {
+					return destination.resolve(root.relativize(path).toString());
+				}
+
+				private List<Path> depthList(TreeMap<Integer, List<Path>> levels, Path dir) {
+					int depth = dir.getNameCount();
+					List<Path> list = levels.get(depth);
+					if (list == null) {
+						list = new ArrayList<>();
+						levels.put(depth, list);
+					}
+					return list;
+				}
+			});
+		}
+
+		List<JobManager.Operation> copyOperations() {
+			List<JobManager.Operation> operations = new ArrayList<>();
+			addFolderCreates(operations);
+			operations.addAll(files);
+			operations.add(JobManager.BARRIER);
+			addFolderDeletes(operations);
+			return operations;
+		}
+
+		List<JobManager.Operation> deleteOperations() {
+			List<JobManager.Operation> operations = new ArrayList<>();
+			for (Path file : filesToDelete)
+				operations.add(delete(file));
+			operations.add(JobManager.BARRIER);
+			addFolderDeletes(operations);
+			return operations;
+		}
+
+		// Shallowest folders first, one level at a time: a folder is only created once its parent exists
+		private void addFolderCreates(List<JobManager.Operation> operations) {
+			for (List<Path> level : foldersToCreate.values()) {
+				for (Path folder : level)
+					operations.add(createFolder(folder));
+				operations.add(JobManager.BARRIER);
+			}
+		}
+
+		// Deepest folders first, one level at a time
+		private void addFolderDeletes(List<JobManager.Operation> operations) {
+			for (Map.Entry<Integer, List<Path>> level : foldersToDelete.descendingMap().entrySet()) {
+				for (Path folder : level.getValue())
+					operations.add(delete(folder));
+				operations.add(JobManager.BARRIER);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,471 @@
+package es.annahexe;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Bulk rename: computes new names from a find/replace and a template, checks them for collisions and plans
+ * the renames as a {@link JobManager} job.
+ * <p>
+ * Template tokens: <code>{name}</code> (name without extension), <code>{ext}</code> (extension with its dot),
+ * <code>{n}</code> or <code>{n:3}</code> (counter, zero-padded), <code>{date}</code> or
+ * <code>{date:yyyyMMdd}</code> (last modified) and <code>{parent}</code> (folder name).
+ * </p>
+ * <p>
+ * Renames run in two phases: every file first gets a unique temporary name, then its final name. Swaps and
+ * cycles (<code>a&rarr;b</code>, <code>b&rarr;a</code>) work because no final name is taken by a file still
+ * waiting to be renamed. Each run is written to a journal under <code>~/.fileexplorer/rename-journal</code>
+ * before anything is touched, so the last run can be undone.
+ * </p>
+ * @author annahexe
+ */
+public class BulkRename {
+	private static final Pattern TOKEN = Pattern.compile("\\{(name|ext|n|date|parent)(?::([^}]*))?\\}");
+	private static final String TEMP_PREFIX = ".~rename-";
+	private static final String JOURNAL_SUFFIX = ".journal";
+	private static final String UNDONE_SUFFIX = ".undone";
+
+	private File journalFolder;
+
+    /**
+     * Case change applied to the whole new name.
+     */
+	public enum CaseChange {
+		KEEP("Keep case"), LOWER("lower case"), UPPER("UPPER CASE"), TITLE("Title Case");
+
+		private String displayName;
+
+		CaseChange(String displayName) {
+			this.displayName = displayName;
+		}
+
+		public String toString() {
+			return displayName;
+		}
+	}
+
+    /**
+     * What to rename and how.
+     */
+	public static class Options {
+		private String find;
+		private String replace;
+		private boolean regex;
+		private String template;
+		private int start;
+		private CaseChange caseChange;
+
+	    /**
+	     * @param find       text (or regex) to replace in the names, empty for none
+	     * @param replace    replacement, may use <code>$1</code> groups in regex mode
+	     * @param regex      whether <code>find</code> is a regular expression
+	     * @param template   new name template, e.g. <code>{name}{ext}</code>
+	     * @param start      first counter value
+	     * @param caseChange case applied to the result
+	     */
+		public Options(String find, String replace, boolean regex, String template, int start,
+				CaseChange caseChange) {
+			this.find = find;
+			this.replace = replace;
+			this.regex = regex;
+			this.template = template;
+			this.start = start;
+			this.caseChange = caseChange;
+		}
+	}
+
+    /**
+     * One planned rename and, if it can't be done, why.
+     */
+	public static class Rename {
+		private File source;
+		private String newName;
+		private String problem;
+
+		private Rename(File source, String newName) {
+			this.source = source;
+			this.newName = newName;
+		}
+
+		public File getSource() {
+			return source;
+		}
+
+		public String getNewName() {
+			return newName;
+		}
+
+		public File getTarget() {
+			return new File(source.getParentFile(), newName);
+		}
+
+		public boolean isChanged() {
+			return !source.getName().equals(newName);
+		}
+
+	    /**
+	     * @return the collision or invalid name found, null if the rename is fine
+	     */
+		public String getProblem() {
+			return problem;
+		}
+	}
+
+    /**
+     * The renames of a preview with their counts.
+     */
+	public static class Preview {
+		private List<Rename> renames;
+		private int changed;
+		private int problems;
+
+		private Preview(List<Rename> renames) {
+			this.renames = renames;
+			for (Rename rename : renames) {
+				if (rename.problem != null)
+					problems++;
+				else if (rename.isChanged())
+					changed++;
+			}
+		}
+
+		public List<Rename> getRenames() {
+			return renames;
+		}
+
+		public int getChanged() {
+			return changed;
+		}
+
+		public int getProblems() {
+			return problems;
+		}
+	}
+
+    /**
+     * Creates the service with its journal under {@code ~/.fileexplorer/rename-journal}.
+     */
+	public BulkRename() {
+		this(new File(System.getProperty("user.home"), ".fileexplorer" + File.separator + "rename-journal"));
+	}
+
+    /**
+     * Creates the service with the journal in the given folder.
+     * @param journalFolder where the journals of the runs are kept
+     */
+	public BulkRename(File journalFolder) {
+		this.journalFolder = journalFolder;
+	}
+
+	// =========================
+	// Preview
+	// =========================
+
+    /**
+     * Computes the new names and checks them. Reads the dates and looks up existing targets, so call it off the
+     * EDT for big selections.
+     * @param files   the files to rename, numbered in this order
+     * @param options how to rename
+     * @return the renames, with problems flagged
+     * @throws IllegalArgumentException if the regex or the template is invalid
+     */
+	public static Preview preview(List<File> files, Options options) {
+		Pattern find = null;
+		if (options.find != null && !options.find.isEmpty())
+			find = Pattern.compile(options.regex ? options.find : Pattern.quote(options.find));
+		String replacement = options.regex ? options.replace : Matcher.quoteReplacement(options.replace);
+		checkTemplate(options.template);
+
+		List<Rename> renames = new ArrayList<>(files.size());
+		int counter = options.start;
+		for (File file : files) {
+			String name = file.getName();
+			if (find != null) {
+				try {
+					name = find.matcher(name).replaceAll(replacement);
+				} catch (IndexOutOfBoundsException e) {
+					throw new IllegalArgumentException("Invalid group in `" + options.replace + "`.");
+				}
+			}
+			name = applyTemplate(options.template, name, file, counter++);
+			renames.add(new Rename(file, changeCase(name, options.caseChange)));
+			if (Thread.currentThread().isInterrupted())
+				break;
+		}
+		checkCollisions(renames);
+		return new Preview(renames);
+	}
+
+	private static void checkTemplate(String template) {
+		String rest = TOKEN.matcher(template).replaceAll("");
+		if (rest.contains("{") || rest.contains("}"))
+			throw new IllegalArgumentException("Unknown token in template `" + template + "`.");
+	}
+
+	private static String applyTemplate(String template, String name, File file, int counter) {
+		int dotIndex = name.lastIndexOf('.');
+		String base = (dotIndex > 0) ? name.substring(0, dotIndex) : name;
+		String extension = (dotIndex > 0) ? name.substring(dotIndex) : "";
+		Matcher matcher = TOKEN.matcher(template);
+		StringBuilder result = new StringBuilder();
+		while (matcher.find()) {
+			String argument = matcher.group(2);
+			String value;
+			switch (matcher.group(1)) {
+			case "name":
+				value = base;
+				break;
+			case "ext":
+				value = extension;
+				break;
+			case "n":
+				int width = argument != null && !argument.isEmpty() ? Integer.parseInt(argument.trim()) : 1;
+				value = String.format("%0" + Math.max(1, width) + "d", counter);
+				break;
+			case "date":
+				String pattern = argument != null && !argument.isEmpty() ? argument : "yyyy-MM-dd";
+				value = new SimpleDateFormat(pattern).format(new Date(file.lastModified()));
+				break;
+			default:
+				File parent = file.getParentFile();
+				value = parent != null ? parent.getName() : "";
+			}
+			matcher.appendReplacement(result, Matcher.quoteReplacement(value));
+		}
+		matcher.appendTail(result);
+		return result.toString();
+	}
+
+	private static String changeCase(String name, CaseChange caseChange) {
+		switch (caseChange) {
+		case LOWER:
+			return name.toLowerCase(Locale.ROOT);
+		case UPPER:
+			return name.toUpperCase(Locale.ROOT);
+		case TITLE:
+			StringBuilder title = new StringBuilder(name.length());
+			boolean wordStart = true;
+			for (char c : name.toCharArray()) {
+				title.append(wordStart ? Character.toUpperCase(c) : Character.toLowerCase(c));
+				wordStart = !Character.isLetterOrDigit(c);
+			}
+			return title.toString();
+		default:
+			return name;
+		}
+	}
+
+	// Flags invalid names, two files getting the same name and names taken by files not being renamed away
+	private static void checkCollisions(List<Rename> renames) {
+		Set<String> sources = new HashSet<>();
+		for (Rename rename : renames)
+			sources.add(rename.source.getAbsolutePath());
+		Map<String, Rename> targets = new HashMap<>();
+		for (Rename rename : renames) {
+			String name = rename.newName;
+			if (name.isEmpty() || name.equals(".") || name.equals("..") || name.contains("/")
+					|| name.contains(File.separator) || name.indexOf('\n') >= 0 || name.indexOf('\0') >= 0) {
+				rename.problem = "invalid name";
+				continue;
+			}
+			String target = rename.getTarget().getAbsolutePath();
+			Rename other = targets.put(target, rename);
+			if (other != null) {
+				rename.problem = "same name as " + other.source.getName();
+				if (other.problem == null)
+					other.problem = "same name as " + rename.source.getName();
+				continue;
+			}
+			if (rename.isChanged() && !sources.contains(target) && rename.getTarget().exists()
+					&& !isSameFile(rename.source, rename.getTarget())) {
+				rename.problem = "`" + name + "` already exists";
+			}
+		}
+	}
+
+	// True for a case-only rename on a case-insensitive file system
+	private static boolean isSameFile(File a, File b) {
+		try {
+			return Files.isSameFile(a.toPath(), b.toPath());
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	// =========================
+	// Execution & undo
+	// =========================
+
+    /**
+     * Plans a two-phase rename of the changed entries. The planner writes the journal before returning the
+     * operations, and fails if it can't.
+     * @param renames renames without problems
+     * @return the planner of the job
+     */
+	public JobManager.Planner execute(final List<Rename> renames) {
+		return new JobManager.Planner() {
+			public List<JobManager.Operation> plan(JobManager.Job job) throws IOException {
+				List<Path[]> steps = new ArrayList<>(); // { original, temporary, final }
+				String runId = UUID.randomUUID().toString().substring(0, 8);
+				int index = 0;
+				for (Rename rename : renames) {
+					if (!rename.isChanged() || rename.problem != null)
+						continue;
+					Path source = rename.source.toPath();
+					steps.add(new Path[] { source, source.resolveSibling(TEMP_PREFIX + runId + "-" + index++),
+							rename.getTarget().toPath() });
+				}
+				if (steps.isEmpty())
+					return new ArrayList<>();
+				writeJournal(steps);
+				return twoPhase(steps);
+			}
+		};
+	}
+
+    /**
+     * @return the journal of the last run not undone yet, or null
+     */
+	public File getLastJournal() {
+		File[] journals = journalFolder.listFiles();
+		File last = null;
+		if (journals != null) {
+			for (File journal : journals) {
+				if (journal.getName().endsWith(JOURNAL_SUFFIX)
+						&& (last == null || journal.getName().compareTo(last.getName()) > 0))
+					last = journal;
+			}
+		}
+		return last;
+	}
+
+    /**
+     * Plans undoing a run: every renamed entry goes back to its original name, again in two phases. The journal
+     * is marked as undone when the job is planned.
+     * @param journal a journal from {@link #getLastJournal()}
+     * @return the planner of the job
+     */
+	public JobManager.Planner undo(final File journal) {
+		return new JobManager.Planner() {
+			public List<JobManager.Operation> plan(JobManager.Job job) throws IOException {
+				List<Path[]> steps = new ArrayList<>();
+				String runId = UUID.randomUUID().toString().substring(0, 8);
+				int index = 0;
+				for (Path[] step : readJournal(journal)) {
+					if (!Files.exists(step[2], LinkOption.NOFOLLOW_LINKS)
+							&& !Files.exists(step[1], LinkOption.NOFOLLOW_LINKS))
+						continue; // never renamed, or already back
+					Path current = Files.exists(step[2], LinkOption.NOFOLLOW_LINKS) ? step[2] : step[1];
+					steps.add(new Path[] { current, current.resolveSibling(TEMP_PREFIX + runId + "-" + index++),
+							step[0] });
+				}
+				File undone = new File(journal.getPath() + UNDONE_SUFFIX);
+				if (!journal.renameTo(undone))
+					throw new IOException("Could not update the journal `" + journal + "`.");
+				return twoPhase(steps);
+			}
+		};
+	}
+
+	// Original -> temporary for all, then temporary -> final. A failed final rename goes back to the original name
+	private static List<JobManager.Operation> twoPhase(List<Path[]> steps) {
+		List<JobManager.Operation> operations = new ArrayList<>();
+		for (Path[] step : steps)
+			operations.add(rename(step[0], step[1], null));
+		operations.add(JobManager.BARRIER);
+		for (Path[] step : steps)
+			operations.add(rename(step[1], step[2], step[0]));
+		return operations;
+	}
+
+	private static JobManager.Operation rename(final Path from, final Path to, final Path fallback) {
+		return new JobManager.Operation() {
+			public String getName() {
+				return (fallback != null ? fallback : from) + " -> " + to.getFileName();
+			}
+
+			public void run(JobManager.Job job) throws IOException {
+				try {
+					if (Files.exists(to, LinkOption.NOFOLLOW_LINKS) && !Files.isSameFile(from, to))
+						throw new FileAlreadyExistsException(to.toString());
+					Files.move(from, to);
+				} catch (IOException e) {
+					if (fallback != null && Files.exists(from, LinkOption.NOFOLLOW_LINKS))
+						Files.move(from, fallback);
+					throw e;
+				}
+			}
+		};
+	}
+
+	private void writeJournal(List<Path[]> steps) throws IOException {
+		Files.createDirectories(journalFolder.toPath());
+		String name = new SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new Date()) + JOURNAL_SUFFIX;
+		BufferedWriter writer = Files.newBufferedWriter(new File(journalFolder, name).toPath(),
+				StandardCharsets.UTF_8);
+		try {
+			writer.write("# original\ttemporary\tfinal (URL-encoded)\n");
+			for (Path[] step : steps)
+				writer.write(encode(step[0]) + "\t" + encode(step[1]) + "\t" + encode(step[2]) + "\n");
+		} finally {
+			writer.close();
+		}
+	}
+
+	private static List<Path[]> readJournal(File journal) throws IOException {
+		List<Path[]> steps = new ArrayList<>();
+		BufferedReader reader = Files.newBufferedReader(journal.toPath(), StandardCharsets.UTF_8);
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith("#") || line.isEmpty())
+					continue;
+				String[] fields = line.split("\t");
+				if (fields.length != 3)
+					throw new IOException("Corrupted journal line: " + line);
+				steps.add(new Path[] { decode(fields[0]), decode(fields[1]), decode(fields[2]) });
+			}
+		} finally {
+			reader.close();
+		}
+		return steps;
+	}
+
+	private static String encode(Path path) {
+		return URLEncoder.encode(path.toString(), StandardCharsets.UTF_8);
+	}
+
+	private static Path decode(String field) {
+		return new File(URLDecoder.decode(field, StandardCharsets.UTF_8)).toPath();
+	}
+
+    /**
+     * @return the names of the template tokens, for the dialog help
+     */
+	public static List<String> getTokens() {
+		return Arrays.asList("{name}", "{ext}", "{n}", "{n:3}", "{date}", "{date:yyyyMMdd}", "{parent}");
+	}
+
+}
@@ -0,0 +1,273 @@
+package es.annahexe;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.FlowLayout;
+import java.awt.GridLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
+import javax.swing.JDialog;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JSpinner;
+import javax.swing.JTable;
+import javax.swing.JTextField;
+import javax.swing.SpinnerNumberModel;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableCellRenderer;
+
+/**
+ * Bulk rename dialog: find/replace (text or regex), name template, counter start and case change, with a live
+ * preview of every new name.
+ * <p>
+ * The preview is recomputed off the EDT a moment after the user stops typing; a newer edit cancels the
+ * running one. Renaming is only possible when no collision or invalid name is left.
+ * </p>
+ * @author annahexe
+ */
+public class BulkRenameDialog {
+	private static final int PREVIEW_DELAY_MILLIS = 250;
+
+	private JDialog dialog;
+	private JTextField textFieldFind;
+	private JTextField textFieldReplace;
+	private JCheckBox chckbxRegex;
+	private JTextField textFieldTemplate;
+	private JSpinner spinnerStart;
+	private JComboBox<BulkRename.CaseChange> comboBoxCase;
+	private JLabel lblStatus;
+	private JButton btnRename;
+	private PreviewTableModel model = new PreviewTableModel();
+
+	private List<File> files;
+	private RenameListener listener;
+	private Timer previewTimer;
+	private SwingWorker<BulkRename.Preview, Void> previewWorker;
+	private BulkRename.Preview preview;
+
+    /**
+     * Receives the confirmed renames.
+     */
+	public interface RenameListener {
+	    /**
+	     * Called on the EDT when the user presses Rename.
+	     * @param renames the previewed renames, all without problems
+	     */
+		void renameConfirmed(List<BulkRename.Rename> renames);
+	}
+
+    /**
+     * Builds and shows the dialog.
+     * @param parent   the frame to center on
+     * @param files    the entries to rename, numbered in this order
+     * @param listener receives the renames when confirmed
+     */
+	public BulkRenameDialog(JFrame parent, List<File> files, RenameListener listener) {
+		this.files = new ArrayList<>(files);
+		this.listener = listener;
+		initialize(parent);
+		schedulePreview();
+		dialog.setVisible(true);
+	}
+
+	private void initialize(JFrame parent) {
+		dialog = new JDialog(parent, "BULK RENAME (" + files.size() + " items)", false);
+		dialog.setSize(760, 560);
+		dialog.setLocationRelativeTo(parent);
+		dialog.setDefaultCloseOperation(JDialog.DISPOSE_ON_CLOSE);
+		dialog.getContentPane().setLayout(new BorderLayout());
+
+		JPanel panelOptions = new JPanel(new GridLayout(0, 2, 6, 4));
+		textFieldFind = new JTextField();
+		textFieldReplace = new JTextField();
+		chckbxRegex = new JCheckBox("Regular expression");
+		textFieldTemplate = new JTextField("{name}{ext}");
+		spinnerStart = new JSpinner(new SpinnerNumberModel(1, 0, Integer.MAX_VALUE, 1));
+		comboBoxCase = new JComboBox<>(BulkRename.CaseChange.values());
+		panelOptions.add(new JLabel("Find:"));
+		panelOptions.add(textFieldFind);
+		panelOptions.add(new JLabel("Replace with:"));
+		panelOptions.add(textFieldReplace);
+		panelOptions.add(new JLabel(""));
+		panelOptions.add(chckbxRegex);
+		panelOptions.add(new JLabel("Template: " + String.join(" ", BulkRename.getTokens())));
+		panelOptions.add(textFieldTemplate);
+		panelOptions.add(new JLabel("Counter starts at:"));
+		panelOptions.add(spinnerStart);
+		panelOptions.add(new JLabel("Case:"));
+		panelOptions.add(comboBoxCase);
+		dialog.getContentPane().add(panelOptions, BorderLayout.NORTH);
+
+		JTable table = new JTable(model);
+		table.setDefaultRenderer(Object.class, new ProblemRenderer());
+		dialog.getContentPane().add(new JScrollPane(table), BorderLayout.CENTER);
+
+		JPanel panelBottom = new JPanel(new BorderLayout());
+		lblStatus = new JLabel(" ");
+		panelBottom.add(lblStatus, BorderLayout.CENTER);
+		JPanel panelButtons = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+		btnRename = new JButton("Rename");
+		btnRename.setEnabled(false);
+		JButton btnCancel = new JButton("Cancel");
+		panelButtons.add(btnRename);
+		panelButtons.add(btnCancel);
+		panelBottom.add(panelButtons, BorderLayout.EAST);
+		dialog.getContentPane().add(panelBottom, BorderLayout.SOUTH);
+
+		previewTimer = new Timer(PREVIEW_DELAY_MILLIS, new ActionListener() {
+			public void actionPerformed(ActionEvent actionEvent) {
+				computePreview();
+			}
+		});
+		previewTimer.setRepeats(false);
+
+		DocumentListener documentListener = new DocumentListener() {
+			public void insertUpdate(DocumentEvent documentEvent) {
+				schedulePreview();
+			}
+
+			public void removeUpdate(DocumentEvent documentEvent) {
+				schedulePreview();
+			}
+
+			public void changedUpdate(DocumentEvent documentEvent) {
+				schedulePreview();
+			}
+		};
+		textFieldFind.getDocument().addDocumentListener(documentListener);
+		textFieldReplace.getDocument().addDocumentListener(documentListener);
+		textFieldTemplate.getDocument().addDocumentListener(documentListener);
+		ActionListener optionListener = new ActionListener() {
+			public void actionPerformed(ActionEvent actionEvent) {
+				schedulePreview();
+			}
+		};
+		chckbxRegex.addActionListener(optionListener);
+		comboBoxCase.addActionListener(optionListener);
+		spinnerStart.addChangeListener(new ChangeListener() {
+			public void stateChanged(ChangeEvent changeEvent) {
+				schedulePreview();
+			}
+		});
+
+		btnRename.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent actionEvent) {
+				if (preview == null || preview.getProblems() > 0 || preview.getChanged() == 0)
+					return;
+				dialog.dispose();
+				listener.renameConfirmed(preview.getRenames());
+			}
+		});
+		btnCancel.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent actionEvent) {
+				dialog.dispose();
+			}
+		});
+	}
+
+	// Restarts the delay; the preview runs once the user stops typing
+	private void schedulePreview() {
+		btnRename.setEnabled(false);
+		previewTimer.restart();
+	}
+
+	private void computePreview() {
+		if (previewWorker != null)
+			previewWorker.cancel(true);
+		final BulkRename.Options options = new BulkRename.Options(textFieldFind.getText(),
+				textFieldReplace.getText(), chckbxRegex.isSelected(), textFieldTemplate.getText(),
+				(Integer) spinnerStart.getValue(), (BulkRename.CaseChange) comboBoxCase.getSelectedItem());
+		lblStatus.setText("Computing preview...");
+		previewWorker = new SwingWorker<BulkRename.Preview, Void>() {
+			protected BulkRename.Preview doInBackground() {
+				return BulkRename.preview(files, options);
+			}
+
+			protected void done() {
+				if (isCancelled())
+					return;
+				try {
+					preview = get();
+					model.renames = preview.getRenames();
+					model.fireTableDataChanged();
+					lblStatus.setText(preview.getChanged() + " to rename, " + preview.getProblems() + " problems");
+					btnRename.setEnabled(preview.getProblems() == 0 && preview.getChanged() > 0);
+				} catch (Exception e) {
+					preview = null;
+					lblStatus.setText("ERROR! " + e.getCause().getMessage());
+				}
+			}
+		};
+		previewWorker.execute();
+	}
+
+    /**
+     * Original name, new name and problem of every entry.
+     */
+	private static class PreviewTableModel extends AbstractTableModel {
+		private static final long serialVersionUID = 1L;
+		private static final String[] COLUMNS = { "Name", "New name", "Problem" };
+		private List<BulkRename.Rename> renames = new ArrayList<>();
+
+		public int getRowCount() {
+			return renames.size();
+		}
+
+		public int getColumnCount() {
+			return COLUMNS.length;
+		}
+
+		public String getColumnName(int column) {
+			return COLUMNS[column];
+		}
+
+		public Object getValueAt(int row, int column) {
+			BulkRename.Rename rename = renames.get(row);
+			switch (column) {
+			case 0:
+				return rename.getSource().getName();
+			case 1:
+				return rename.getNewName();
+			default:
+				return rename.getProblem() != null ? rename.getProblem() : "";
+			}
+		}
+	}
+
+    /**
+     * Paints rows with a problem in red and unchanged rows in gray.
+     */
+	private class ProblemRenderer extends DefaultTableCellRenderer {
+		private static final long serialVersionUID = 1L;
+
+		public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected,
+				boolean hasFocus, int row, int column) {
+			super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
+			BulkRename.Rename rename = model.renames.get(row);
+			if (rename.getProblem() != null)
+				setForeground(Color.RED);
+			else if (!rename.isChanged())
+				setForeground(Color.GRAY);
+			else
+				setForeground(table.getForeground());
+			return this;
+		}
+	}
+
+}
@@ -0,0 +1,677 @@
+package es.annahexe;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Command-line mode, for scripts and servers without a display.
+ * <p>
+ * Runs the same engines as the window ({@link Utilities}, {@link BatchOperations} through the
+ * {@link JobManager}, {@link HashService}, {@link Trash}) without any dialog. Output is one line per entry as it
+ * is found, tab separated, or one JSON object per line with <code>--json</code>, followed by a summary line, so
+ * millions of entries are streamed instead of collected. Errors go to stderr and the run goes on.
+ * Unknown options are usage errors; operands after <code>--</code> are never read as options.
+ * </p>
+ * <pre>
+ * list &lt;folder&gt;
+ * find &lt;folder&gt; [--glob=*.log]
+ * du &lt;path&gt;
+ * hash &lt;file|folder&gt; [--algorithm=SHA-256|SHA-1|MD5|CRC32C|all]
+ * copy &lt;source&gt;... &lt;target folder&gt;
+ * delete &lt;path&gt;... [--trash]
+ * replace &lt;file|folder&gt; &lt;search&gt; &lt;replacement&gt; [--glob=*.txt]
+ * chmod &lt;mode&gt; &lt;path&gt;... [--recursive]
+ * chown &lt;owner&gt;[:&lt;group&gt;] &lt;path&gt;... [--recursive]
+ * </pre>
+ * <p>
+ * The folders of <code>list</code>, <code>find</code> and <code>du</code> can be on any installed file system,
+ * given as a URI: <code>jar:file:/tmp/a.zip!/docs</code>, or <code>sftp://host/path</code> with an SFTP provider
+ * on the class path. See {@link Utilities#resolve(String)}.
+ * </p>
+ * @author annahexe
+ */
+public class Cli {
+	/** Everything went fine. */
+	public static final int EXIT_OK = 0;
+	/** Done, but some entries failed (reported on stderr). */
+	public static final int EXIT_FAILURES = 1;
+	/** Unknown command or wrong arguments. */
+	public static final int EXIT_USAGE = 2;
+	/** Nothing could be done, e.g. the path doesn't exist. */
+	public static final int EXIT_ERROR = 3;
+
+	private static final String USAGE = "Usage: fileexplorer <command> [--json] ...\n"
+			+ "  list <folder>\n"
+			+ "  find <folder> [--glob=PATTERN]\n"
+			+ "  du <path>\n"
+			+ "  hash <file|folder> [--algorithm=SHA-256|SHA-1|MD5|CRC32C|all]\n"
+			+ "  copy <source>... <target folder>\n"
+			+ "  delete <path>... [--trash]\n"
+			+ "  replace <file|folder> <search> <replacement> [--glob=PATTERN]\n"
+			+ "  chmod <mode> <path>... [--recursive]      mode: 755, rwxr-x---, u+rwX,go-w\n"
+			+ "  chown <owner>[:<group>] <path>... [--recursive]\n"
+			+ "Operands after -- are not options, e.g. delete -- --old.txt\n"
+			+ "list, find and du also take URIs of installed file systems, e.g. jar:file:/tmp/a.zip!/\n"
+			+ "Exit codes: 0 ok, 1 some entries failed, 2 usage, 3 error";
+
+	// The options of every command, besides --json and --help
+	private static final Map<String, List<String>> COMMAND_OPTIONS = new HashMap<>();
+	static {
+		COMMAND_OPTIONS.put("list", Arrays.<String>asList());
+		COMMAND_OPTIONS.put("find", Arrays.asList("glob"));
+		COMMAND_OPTIONS.put("du", Arrays.<String>asList());
+		COMMAND_OPTIONS.put("hash", Arrays.asList("algorithm"));
+		COMMAND_OPTIONS.put("copy", Arrays.<String>asList());
+		COMMAND_OPTIONS.put("delete", Arrays.asList("trash"));
+		COMMAND_OPTIONS.put("replace", Arrays.asList("glob"));
+		COMMAND_OPTIONS.put("chmod", Arrays.asList("recursive"));
+		COMMAND_OPTIONS.put("chown", Arrays.asList("recursive"));
+	}
+
+	private PrintStream out;
+	private PrintStream err;
+	private Utilities utilities;
+	private boolean json;
+	private Map<String, String> options = new HashMap<>();
+	private List<String> operands = new ArrayList<>();
+	private int failures;
+
+    /**
+     * @param out receives the results
+     * @param err receives the errors
+     */
+	public Cli(PrintStream out, PrintStream err) {
+		this.out = out;
+		this.err = err;
+		this.utilities = new Utilities(new Utilities.ErrorReporter() {
+			public void report(Exception e) {
+				error(null, e.getMessage());
+			}
+		});
+	}
+
+    /**
+     * Runs a command on stdout/stderr, buffered.
+     * @param args the command and its arguments
+     * @return the exit code
+     */
+	public static int run(String[] args) {
+		return run(args, new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16),
+				false), System.err);
+	}
+
+    /**
+     * Runs a command on the given streams.
+     * @param args the command and its arguments
+     * @param out  receives the results, flushed at the end
+     * @param err  receives the errors
+     * @return the exit code
+     */
+	public static int run(String[] args, PrintStream out, PrintStream err) {
+		try {
+			return new Cli(out, err).execute(args);
+		} finally {
+			out.flush();
+		}
+	}
+
+    /**
+     * Runs a command.
+     * @param args the command, its operands and <code>--options</code>, then <code>--</code> and more operands
+     * @return the exit code
+     */
+	public int execute(String[] args) {
+		boolean optionsEnd = false;
+		for (String arg : args) {
+			if (optionsEnd) {
+				operands.add(arg);
+			} else if (arg.equals("--")) {
+				optionsEnd = true;
+			} else if (arg.startsWith("--")) {
+				int equals = arg.indexOf('=');
+				options.put(equals > 0 ? arg.substring(2, equals) : arg.substring(2),
+						equals > 0 ? arg.substring(equals + 1) : "");
+			} else {
+				operands.add(arg);
+			}
+		}
+		json = options.containsKey("json");
+		if (operands.isEmpty() || options.containsKey("help"))
+			return usage();
+		String command = operands.remove(0);
+		List<String> commandOptions = COMMAND_OPTIONS.get(command);
+		if (commandOptions == null)
+			return usage();
+		for (String option : options.keySet()) {
+			if (!option.equals("json") && !commandOptions.contains(option)) {
+				err.println("ERROR! Unknown option `--" + option + "` for " + command + ".");
+				return usage();
+			}
+		}
+		try {
+			switch (command) {
+			case "list":
+				return operands.size() == 1 ? list(utilities.resolve(operands.get(0))) : usage();
+			case "find":
+				return operands.size() == 1 ? find(utilities.resolve(operands.get(0))) : usage();
+			case "du":
+				return operands.size() == 1 ? du(utilities.resolve(operands.get(0))) : usage();
+			case "hash":
+				return operands.size() == 1 ? hash(new File(operands.get(0))) : usage();
+			case "copy":
+				return operands.size() >= 2 ? copy() : usage();
+			case "delete":
+				return !operands.isEmpty() ? delete() : usage();
+			case "replace":
+				return operands.size() == 3 ? replace(new File(operands.get(0))) : usage();
+			case "chmod":
+			case "chown":
+				return operands.size() >= 2 ? permissions(command.equals("chown")) : usage();
+			default:
+				return usage();
+			}
+		} catch (IllegalArgumentException e) {
+			err.println("ERROR! " + e.getMessage());
+			return EXIT_USAGE;
+		} catch (IOException e) {
+			error(null, e.getMessage());
+			return EXIT_ERROR;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			error(null, "Interrupted");
+			return EXIT_ERROR;
+		}
+	}
+
+	private int usage() {
+		err.println(USAGE);
+		return EXIT_USAGE;
+	}
+
+	// =========================
+	// Commands
+	// =========================
+
+	private int list(Path folder) throws IOException {
+		if (!utilities.isValidFolder(folder))
+			throw new IOException("`" + folder + "` is not a folder.");
+		int listed = utilities.listFolder(folder, new Utilities.EntryListener() {
+			public void entry(ListingCache.Entry entry) {
+				record("name", entry.getName(), "type", entry.isDirectory() ? "folder" : "file", "size",
+						entry.getSize(), "modified", entry.getModified());
+			}
+		});
+		summary("entries", listed);
+		return exitCode();
+	}
+
+	private int find(Path folder) throws IOException {
+		if (!utilities.isValidFolder(folder))
+			throw new IOException("`" + folder + "` is not a folder.");
+		final PathMatcher matcher = folder.getFileSystem().getPathMatcher("glob:" + option("glob", "*"));
+		final long[] found = new long[1];
+		Files.walkFileTree(folder, new SimpleFileVisitor<Path>() {
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+				visit(dir, attributes);
+				return FileVisitResult.CONTINUE;
+			}
+
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+				visit(file, attributes);
+				return FileVisitResult.CONTINUE;
+			}
+
+			public FileVisitResult visitFileFailed(Path file, IOException e) {
+				error(file, e.getMessage());
+				return FileVisitResult.CONTINUE;
+			}
+
+			private void visit(Path path, BasicFileAttributes attributes) {
+				if (path.getFileName() == null || !matcher.matches(path.getFileName()))
+					return;
+				found[0]++;
+				record("path", path.toString(), "type", attributes.isDirectory() ? "folder" : "file", "size",
+						attributes.size());
+			}
+		});
+		summary("found", found[0]);
+		return exitCode();
+	}
+
+	// One line per child of the root as soon as its tree is walked, in the order of the walk
+	private int du(final Path rootPath) throws IOException {
+		if (!Files.exists(rootPath))
+			throw new IOException("`" + rootPath + "` doesn't exist.");
+		final long[] total = new long[3]; // bytes, files, folders
+		final long[] child = new long[2]; // bytes, files of the child folder being walked
+		Files.walkFileTree(rootPath, new SimpleFileVisitor<Path>() {
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+				total[2]++;
+				if (isChild(dir)) {
+					child[0] = 0;
+					child[1] = 0;
+				}
+				return FileVisitResult.CONTINUE;
+			}
+
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+				total[0] += attributes.size();
+				total[1]++;
+				if (isChild(file)) {
+					record("name", name(file), "bytes", attributes.size(), "files", 1);
+				} else {
+					child[0] += attributes.size();
+					child[1]++;
+				}
+				return FileVisitResult.CONTINUE;
+			}
+
+			public FileVisitResult visitFileFailed(Path file, IOException e) {
+				error(file, e.getMessage());
+				return FileVisitResult.CONTINUE;
+			}
+
+			public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+				if (e != null)
+					error(dir, e.getMessage());
+				if (isChild(dir))
+					record("name", name(dir), "bytes", child[0], "files", child[1]);
+				return FileVisitResult.CONTINUE;
+			}
+
+			private boolean isChild(Path path) {
+				return !path.equals(rootPath) && rootPath.relativize(path).getNameCount() == 1;
+			}
+
+			private String name(Path path) {
+				return rootPath.relativize(path).getName(0).toString();
+			}
+		});
+		summary("bytes", total[0], "files", total[1], "folders", total[2]);
+		return exitCode();
+	}
+
+	private int hash(File root) throws IOException, InterruptedException {
+		if (!root.exists())
+			throw new IOException("`" + root + "` doesn't exist.");
+		final EnumSet<HashService.Algorithm> algorithms = algorithms(option("algorithm", "SHA-256"));
+		int threads = Runtime.getRuntime().availableProcessors();
+		final ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "cli-hash");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		final ArrayDeque<Object[]> inFlight = new ArrayDeque<>(); // { path, future }, printed in walk order
+		final int window = threads * 4;
+		final long[] hashed = new long[2]; // files, bytes
+		try {
+			Files.walkFileTree(root.toPath(), new SimpleFileVisitor<Path>() {
+				public FileVisitResult visitFile(final Path file, BasicFileAttributes attributes) {
+					if (!attributes.isRegularFile())
+						return FileVisitResult.CONTINUE;
+					Future<Map<HashService.Algorithm, String>> future = executor
+							.submit(new Callable<Map<HashService.Algorithm, String>>() {
+								public Map<HashService.Algorithm, String> call() throws IOException {
+									return HashService.digest(file, algorithms);
+								}
+							});
+					inFlight.add(new Object[] { file, future, attributes.size() });
+					if (inFlight.size() >= window)
+						printHash(inFlight.poll(), hashed);
+					return FileVisitResult.CONTINUE;
+				}
+
+				public FileVisitResult visitFileFailed(Path file, IOException e) {
+					error(file, e.getMessage());
+					return FileVisitResult.CONTINUE;
+				}
+			});
+			while (!inFlight.isEmpty())
+				printHash(inFlight.poll(), hashed);
+		} finally {
+			executor.shutdownNow();
+		}
+		summary("files", hashed[0], "bytes", hashed[1]);
+		return exitCode();
+	}
+
+	@SuppressWarnings("unchecked")
+	private void printHash(Object[] entry, long[] hashed) {
+		Path file = (Path) entry[0];
+		try {
+			Map<HashService.Algorithm, String> digests = ((Future<Map<HashService.Algorithm, String>>) entry[1])
+					.get();
+			List<Object> fields = new ArrayList<>();
+			fields.add("path");
+			fields.add(file.toString());
+			for (Map.Entry<HashService.Algorithm, String> digest : digests.entrySet()) {
+				fields.add(digest.getKey().getDisplayName());
+				fields.add(digest.getValue());
+			}
+			record(fields.toArray());
+			hashed[0]++;
+			hashed[1] += (Long) entry[2];
+		} catch (ExecutionException e) {
+			error(file, e.getCause().getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			error(file, "Interrupted");
+		}
+	}
+
+	private EnumSet<HashService.Algorithm> algorithms(String names) {
+		if (names.equalsIgnoreCase("all"))
+			return EnumSet.allOf(HashService.Algorithm.class);
+		EnumSet<HashService.Algorithm> algorithms = EnumSet.noneOf(HashService.Algorithm.class);
+		for (String name : names.split(",")) {
+			HashService.Algorithm found = null;
+			for (HashService.Algorithm algorithm : HashService.Algorithm.values()) {
+				if (algorithm.getDisplayName().equalsIgnoreCase(name.trim()))
+					found = algorithm;
+			}
+			if (found == null)
+				throw new IllegalArgumentException("Unknown algorithm `" + name + "`.");
+			algorithms.add(found);
+		}
+		return algorithms;
+	}
+
+	private int copy() throws IOException, InterruptedException {
+		File target = new File(operands.get(operands.size() - 1));
+		if (!utilities.isValidFolder(target))
+			throw new IOException("`" + target + "` is not a folder.");
+		List<File> sources = new ArrayList<>();
+		for (String operand : operands.subList(0, operands.size() - 1))
+			sources.add(existing(operand));
+		return runJob("Copy", target, BatchOperations.copy(sources, target));
+	}
+
+	private int delete() throws IOException, InterruptedException {
+		final List<File> paths = new ArrayList<>();
+		for (String operand : operands)
+			paths.add(existing(operand));
+		File location = paths.get(0).getAbsoluteFile().getParentFile();
+		if (!options.containsKey("trash"))
+			return runJob("Delete", location, BatchOperations.delete(paths));
+		final Trash trash = new Trash(Trash.DEFAULT_MAX_AGE_DAYS, Trash.DEFAULT_QUOTA_BYTES);
+		List<JobManager.Operation> operations = new ArrayList<>();
+		for (final File path : paths) {
+			operations.add(new JobManager.Operation() {
+				public String getName() {
+					return path.getPath();
+				}
+
+				public void run(JobManager.Job job) throws IOException {
+					trash.moveToTrash(path);
+				}
+			});
+		}
+		return runJob("Trash", location, JobManager.planOf(operations));
+	}
+
+	private int permissions(boolean chown) throws IOException, InterruptedException {
+		Permissions.Mode mode = null;
+		String owner = null;
+		String group = null;
+		if (chown) {
+			String[] names = operands.get(0).split(":", 2);
+			owner = names[0].isEmpty() ? null : names[0];
+			group = names.length < 2 || names[1].isEmpty() ? null : names[1];
+			if (owner == null && group == null)
+				throw new IllegalArgumentException("Give an owner, :group or both.");
+		} else {
+			mode = Permissions.Mode.parse(operands.get(0));
+		}
+		List<File> paths = new ArrayList<>();
+		for (String operand : operands.subList(1, operands.size()))
+			paths.add(existing(operand));
+		Permissions.Change change = new Permissions.Change(paths, mode, owner, group, options.containsKey("recursive"));
+		JobManager.Job job = awaitJob(chown ? "Chown" : "Chmod", paths.get(0), change, Permissions.PARALLELISM);
+		summary("state", job.getState().toString(), "changed", change.getChanged(), "unchanged",
+				change.getUnchanged(), "failed", job.getFailures().size(), "millis", job.getElapsedNanos() / 1000000);
+		return exitCode(job);
+	}
+
+	// Runs a batch job like the window does and waits for it
+	private int runJob(String name, File location, JobManager.Planner planner) throws InterruptedException {
+		JobManager.Job job = awaitJob(name, location, planner, BatchOperations.PARALLELISM);
+		summary("state", job.getState().toString(), "operations", job.getDone(), "failed", job.getFailures().size(),
+				"bytes", job.getBytes(), "millis", job.getElapsedNanos() / 1000000);
+		return exitCode(job);
+	}
+
+	// Nothing was done when the job couldn't be planned, e.g. a source folder can't be read
+	private int exitCode(JobManager.Job job) {
+		for (JobManager.Failure failure : job.getFailures()) {
+			if (failure.isPlanning())
+				return EXIT_ERROR;
+		}
+		return exitCode();
+	}
+
+	// Runs a job and reports its failures
+	private JobManager.Job awaitJob(String name, File location, JobManager.Planner planner, int parallelism)
+			throws InterruptedException {
+		JobManager jobManager = new JobManager(1, 1);
+		JobManager.Job job = jobManager.submit(name, location, planner, parallelism, null);
+		job.await();
+		for (JobManager.Failure failure : job.getFailures())
+			error(failure.getOperation().getName(), failure.getMessage());
+		return job;
+	}
+
+	private int replace(File root) throws IOException {
+		if (!root.exists())
+			throw new IOException("`" + root + "` doesn't exist.");
+		final String search = operands.get(1);
+		final String replacement = operands.get(2);
+		if (search.isEmpty())
+			throw new IllegalArgumentException("The text to search can't be empty.");
+		final PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + option("glob", "*"));
+		final long[] counts = new long[3]; // files seen, files changed, replacements
+		Files.walkFileTree(root.toPath(), new SimpleFileVisitor<Path>() {
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+				if (!attributes.isRegularFile() || !matcher.matches(file.getFileName()))
+					return FileVisitResult.CONTINUE;
+				counts[0]++;
+				try {
+					int replaced = replaceInFile(file, search, replacement);
+					if (replaced > 0) {
+						counts[1]++;
+						counts[2] += replaced;
+						record("path", file.toString(), "replacements", replaced);
+					}
+				} catch (CharacterCodingException e) {
+					// Not UTF-8 text, left alone
+				} catch (IOException e) {
+					error(file, e.getMessage());
+				}
+				return FileVisitResult.CONTINUE;
+			}
+
+			public FileVisitResult visitFileFailed(Path file, IOException e) {
+				error(file, e.getMessage());
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		summary("files", counts[0], "changed", counts[1], "replacements", counts[2]);
+		return exitCode();
+	}
+
+	// Replaces in the file's exact text (line breaks kept) and writes it only if something changed, to a temporary
+	// file renamed over it, so the file is never left half written
+	private static int replaceInFile(Path file, String search, String replacement) throws IOException {
+		String content = StandardCharsets.UTF_8.newDecoder().onMalformedInput(CodingErrorAction.REPORT)
+				.onUnmappableCharacter(CodingErrorAction.REPORT).decode(ByteBuffer.wrap(Files.readAllBytes(file)))
+				.toString();
+		int count = 0;
+		StringBuilder result = null;
+		int position = 0;
+		for (int index = content.indexOf(search); index >= 0; index = content.indexOf(search, position)) {
+			if (result == null)
+				result = new StringBuilder(content.length());
+			result.append(content, position, index).append(replacement);
+			position = index + search.length();
+			count++;
+		}
+		if (count == 0)
+			return 0;
+		result.append(content, position, content.length());
+		ByteBuffer bytes = StandardCharsets.UTF_8.newEncoder().encode(CharBuffer.wrap(result));
+		byte[] array = new byte[bytes.remaining()];
+		bytes.get(array);
+		Path temporary = Files.createTempFile(file.toAbsolutePath().getParent(), "." + file.getFileName(), ".tmp");
+		try {
+			Files.write(temporary, array);
+			PosixFileAttributeView posix = Files.getFileAttributeView(file, PosixFileAttributeView.class);
+			if (posix != null)
+				Files.setPosixFilePermissions(temporary, posix.readAttributes().permissions());
+			Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+		return count;
+	}
+
+	// =========================
+	// Output
+	// =========================
+
+	private File existing(String path) throws IOException {
+		File file = new File(path);
+		if (!Files.exists(file.toPath(), LinkOption.NOFOLLOW_LINKS))
+			throw new IOException("`" + path + "` doesn't exist.");
+		return file;
+	}
+
+	private String option(String name, String defaultValue) {
+		String value = options.get(name);
+		return value == null || value.isEmpty() ? defaultValue : value;
+	}
+
+	private int exitCode() {
+		return failures > 0 ? EXIT_FAILURES : EXIT_OK;
+	}
+
+	// One entry: a JSON object, or its values separated by tabs
+	private void record(Object... fields) {
+		if (json) {
+			out.println(toJson(fields));
+			return;
+		}
+		StringBuilder line = new StringBuilder();
+		for (int i = 1; i < fields.length; i += 2) {
+			if (line.length() > 0)
+				line.append('\t');
+			line.append(fields[i]);
+		}
+		out.println(line);
+	}
+
+	private void summary(Object... fields) {
+		Object[] all = new Object[fields.length + 2];
+		all[0] = "failures";
+		all[1] = failures;
+		System.arraycopy(fields, 0, all, 2, fields.length);
+		if (json) {
+			out.println("{\"summary\":" + toJson(all) + "}");
+			return;
+		}
+		StringBuilder line = new StringBuilder("#");
+		for (int i = 0; i < all.length; i += 2)
+			line.append(' ').append(all[i]).append('=').append(all[i + 1]);
+		out.println(line);
+	}
+
+	// Counts and reports a failed entry; may be called from worker threads
+	private synchronized void error(Object path, String message) {
+		failures++;
+		if (json)
+			err.println(toJson(new Object[] { "error", String.valueOf(message), "path", path }));
+		else
+			err.println("ERROR! " + (path != null ? path + ": " : "") + message);
+	}
+
+	private static String toJson(Object[] fields) {
+		StringBuilder json = new StringBuilder("{");
+		for (int i = 0; i < fields.length; i += 2) {
+			if (i > 0)
+				json.append(',');
+			quote(json, fields[i].toString());
+			json.append(':');
+			Object value = fields[i + 1];
+			if (value == null)
+				json.append("null");
+			else if (value instanceof Number || value instanceof Boolean)
+				json.append(value);
+			else
+				quote(json, value.toString());
+		}
+		return json.append('}').toString();
+	}
+
+	private static void quote(StringBuilder json, String text) {
+		json.append('"');
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			switch (c) {
+			case '"':
+				json.append("\\\"");
+				break;
+			case '\\':
+				json.append("\\\\");
+				break;
+			case '\n':
+				json.append("\\n");
+				break;
+			case '\r':
+				json.append("\\r");
+				break;
+			case '\t':
+				json.append("\\t");
+				break;
+			default:
+				if (c < 0x20)
+					json.append(String.format("\\u%04x", (int) c));
+				else
+					json.append(c);
+			}
+		}
+		json.append('"');
+	}
+
+}
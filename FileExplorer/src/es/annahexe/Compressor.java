@@ -0,0 +1,675 @@
+package es.annahexe;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Packs a folder into a ZIP or a gzip'd TAR using several deflaters in parallel.
+ * <p>
+ * The input is cut into blocks of {@value #BLOCK_SIZE} bytes that are deflated independently on a worker pool
+ * (each block primed with the last 32 KB of the previous one as dictionary, like pigz does), while an ordered
+ * writer emits the results in sequence. Headers travel through the same ordered queue, so small files are
+ * compressed in parallel too, and at most a few blocks per worker are held in memory.
+ * </p>
+ * @author annahexe
+ */
+public class Compressor {
+	/** Uncompressed bytes per deflate task. */
+	public static final int BLOCK_SIZE = 128 * 1024;
+
+	private static final int DICTIONARY_SIZE = 32 * 1024;
+	private static final long ZIP64_LIMIT = 0xFFFFFFFFL;
+
+	private int level;
+	private int threads;
+
+    /**
+     * Output formats.
+     */
+	public enum Format {
+		ZIP(".zip"), TAR_GZ(".tar.gz");
+
+		private String extension;
+
+		Format(String extension) {
+			this.extension = extension;
+		}
+
+		public String getExtension() {
+			return extension;
+		}
+	}
+
+    /**
+     * Receives progress updates on the compressing thread.
+     */
+	public interface ProgressListener {
+	    /**
+	     * Called each time a block is written.
+	     * @param bytesDone  uncompressed bytes written so far
+	     * @param bytesTotal uncompressed bytes to write
+	     * @param entry      path of the entry being written
+	     */
+		void progress(long bytesDone, long bytesTotal, String entry);
+	}
+
+    /**
+     * Builds a compressor.
+     * @param level   deflate level, 0 (store) to 9 (best)
+     * @param threads number of parallel deflaters
+     */
+	public Compressor(int level, int threads) {
+		if (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION)
+			throw new IllegalArgumentException("Invalid compression level: " + level);
+		this.level = level;
+		this.threads = Math.max(1, threads);
+	}
+
+    /**
+     * Compresses a folder (the folder itself is the top entry of the archive).
+     * <p>The calling thread reads and writes; interrupting it cancels the operation and removes the partial file.</p>
+     * <p>Symbolic links inside the folder are skipped: followed, they could pack files from outside it, or loop.</p>
+     * @param folder   the folder to pack
+     * @param target   the archive to create
+     * @param format   ZIP or TAR.GZ
+     * @param listener progress callback, may be {@code null}
+     * @return the size in bytes of the archive
+     * @throws IOException if a file can't be read or the archive can't be written
+     */
+	public long compress(File folder, File target, Format format, ProgressListener listener) throws IOException {
+		List<SourceEntry> entries = new ArrayList<>();
+		collectEntries(folder, folder.getName() + "/", entries);
+		long totalBytes = 0;
+		for (SourceEntry entry : entries)
+			totalBytes += entry.size;
+
+		final List<Deflater> deflaters = Collections.synchronizedList(new ArrayList<Deflater>());
+		final ThreadLocal<Deflater> threadDeflater = new ThreadLocal<Deflater>() {
+			protected Deflater initialValue() {
+				Deflater deflater = new Deflater(level, true);
+				deflaters.add(deflater);
+				return deflater;
+			}
+		};
+		ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "compressor");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		boolean completed = false;
+		CountingOutputStream out = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(target), 1 << 16));
+		try {
+			Pipeline pipeline = new Pipeline(executor, threadDeflater, 4 * threads, out, totalBytes, listener);
+			if (format == Format.ZIP) {
+				writeZip(entries, pipeline, out);
+			} else {
+				writeTarGz(entries, pipeline, out);
+			}
+			completed = true;
+		} finally {
+			executor.shutdownNow();
+			out.close();
+			synchronized (deflaters) {
+				for (Deflater deflater : deflaters)
+					deflater.end();
+			}
+			if (!completed)
+				target.delete();
+		}
+		return target.length();
+	}
+
+	private static void collectEntries(File file, String name, List<SourceEntry> entries) throws IOException {
+		if (Thread.currentThread().isInterrupted())
+			throw new InterruptedIOException("Compression cancelled");
+		if (file.isDirectory()) {
+			entries.add(new SourceEntry(file, name, true, 0));
+			File[] children = file.listFiles();
+			if (children == null)
+				throw new IOException("Can't list " + file.getAbsolutePath());
+			Arrays.sort(children);
+			for (File child : children) {
+				if (!Files.isSymbolicLink(child.toPath()))
+					collectEntries(child, name + child.getName() + (child.isDirectory() ? "/" : ""), entries);
+			}
+		} else if (file.isFile()) {
+			entries.add(new SourceEntry(file, name, false, file.length()));
+		}
+	}
+
+	// =========================
+	// ZIP
+	// =========================
+
+	private void writeZip(List<SourceEntry> entries, Pipeline pipeline, CountingOutputStream out) throws IOException {
+		List<ZipRecord> records = new ArrayList<>();
+		for (SourceEntry entry : entries) {
+			final ZipRecord record = new ZipRecord(entry);
+			records.add(record);
+			pipeline.submitChunk(new Chunk() {
+				public void writeTo(CountingOutputStream out) throws IOException {
+					record.offset = out.getCount();
+					out.write(record.localHeader());
+				}
+			});
+			if (entry.directory)
+				continue;
+			CRC32 crc = new CRC32();
+			record.size = pipeline.submitFile(entry, crc, record);
+			record.crc = crc.getValue();
+			pipeline.submitChunk(new Chunk() {
+				public void writeTo(CountingOutputStream out) throws IOException {
+					out.write(record.dataDescriptor());
+				}
+			});
+		}
+		pipeline.drain();
+
+		long directoryOffset = out.getCount();
+		for (ZipRecord record : records)
+			out.write(record.centralHeader());
+		long directorySize = out.getCount() - directoryOffset;
+		long count = records.size();
+
+		ByteWriter end = new ByteWriter();
+		if (count >= 0xFFFF || directoryOffset >= ZIP64_LIMIT || directorySize >= ZIP64_LIMIT) {
+			long zip64EndOffset = out.getCount();
+			end.int32(0x06064b50).int64(44).int16(45).int16(45).int32(0).int32(0);
+			end.int64(count).int64(count).int64(directorySize).int64(directoryOffset);
+			end.int32(0x07064b50).int32(0).int64(zip64EndOffset).int32(1);
+		}
+		end.int32(0x06054b50).int16(0).int16(0);
+		end.int16((int) Math.min(count, 0xFFFF)).int16((int) Math.min(count, 0xFFFF));
+		end.int32(Math.min(directorySize, ZIP64_LIMIT)).int32(Math.min(directoryOffset, ZIP64_LIMIT)).int16(0);
+		out.write(end.toByteArray());
+	}
+
+    /**
+     * Central directory data of a ZIP entry. Files use a data descriptor (flag bit 3) since their CRC and
+     * compressed size are only known once all their blocks went through the pipeline.
+     */
+	private static class ZipRecord implements SizeCounter {
+		private byte[] name;
+		private boolean directory;
+		private boolean zip64;
+		private int dosTime;
+		private long crc;
+		private long size;
+		private long compressedSize;
+		private long offset;
+
+		private ZipRecord(SourceEntry entry) {
+			this.name = entry.name.getBytes(StandardCharsets.UTF_8);
+			this.directory = entry.directory;
+			// Deflate can grow incompressible data slightly, so switch to ZIP64 well before 4 GB
+			this.zip64 = entry.size >= ZIP64_LIMIT - (entry.size >> 8) - 65536;
+			this.dosTime = dosTime(entry.file.lastModified());
+		}
+
+		public void addCompressed(long bytes) {
+			compressedSize += bytes;
+		}
+
+		private int flags() {
+			return directory ? 0x800 : 0x808; // UTF-8 names (+ data descriptor)
+		}
+
+		private int method() {
+			return directory ? 0 : 8;
+		}
+
+		private byte[] localHeader() {
+			ByteWriter header = new ByteWriter();
+			header.int32(0x04034b50).int16(zip64 ? 45 : 20).int16(flags()).int16(method()).int32(dosTime);
+			header.int32(0);
+			header.int32(zip64 ? ZIP64_LIMIT : 0).int32(zip64 ? ZIP64_LIMIT : 0);
+			header.int16(name.length).int16(zip64 ? 20 : 0).bytes(name);
+			if (zip64)
+				header.int16(0x0001).int16(16).int64(0).int64(0);
+			return header.toByteArray();
+		}
+
+		private byte[] dataDescriptor() {
+			ByteWriter descriptor = new ByteWriter();
+			descriptor.int32(0x08074b50).int32(crc);
+			if (zip64)
+				descriptor.int64(compressedSize).int64(size);
+			else
+				descriptor.int32(compressedSize).int32(size);
+			return descriptor.toByteArray();
+		}
+
+		private byte[] centralHeader() {
+			boolean bigSize = zip64 || size >= ZIP64_LIMIT || compressedSize >= ZIP64_LIMIT;
+			boolean bigOffset = offset >= ZIP64_LIMIT;
+			ByteWriter extra = new ByteWriter();
+			if (bigSize || bigOffset) {
+				extra.int16(0x0001).int16((bigSize ? 16 : 0) + (bigOffset ? 8 : 0));
+				if (bigSize)
+					extra.int64(size).int64(compressedSize);
+				if (bigOffset)
+					extra.int64(offset);
+			}
+			byte[] extraBytes = extra.toByteArray();
+			ByteWriter header = new ByteWriter();
+			header.int32(0x02014b50).int16(45).int16(bigSize || bigOffset ? 45 : 20).int16(flags()).int16(method());
+			header.int32(dosTime).int32(crc);
+			header.int32(bigSize ? ZIP64_LIMIT : compressedSize).int32(bigSize ? ZIP64_LIMIT : size);
+			header.int16(name.length).int16(extraBytes.length).int16(0).int16(0).int16(0);
+			header.int32(directory ? 0x10 : 0).int32(bigOffset ? ZIP64_LIMIT : offset);
+			header.bytes(name).bytes(extraBytes);
+			return header.toByteArray();
+		}
+
+		private static int dosTime(long millis) {
+			Calendar calendar = Calendar.getInstance();
+			calendar.setTimeInMillis(millis);
+			int year = Math.max(1980, calendar.get(Calendar.YEAR));
+			return ((year - 1980) << 25) | ((calendar.get(Calendar.MONTH) + 1) << 21)
+					| (calendar.get(Calendar.DAY_OF_MONTH) << 16) | (calendar.get(Calendar.HOUR_OF_DAY) << 11)
+					| (calendar.get(Calendar.MINUTE) << 5) | (calendar.get(Calendar.SECOND) >> 1);
+		}
+	}
+
+	// =========================
+	// TAR.GZ
+	// =========================
+
+	private void writeTarGz(List<SourceEntry> entries, Pipeline pipeline, CountingOutputStream out) throws IOException {
+		// gzip member header: deflate, no flags, no mtime, unknown OS
+		out.write(new byte[] { 0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff });
+		CRC32 crc = new CRC32();
+		SizeCounter ignored = new SizeCounter() {
+			public void addCompressed(long bytes) {
+			}
+		};
+		// The whole TAR stream is a single deflate stream, cut into blocks as it is produced
+		TarStream tar = new TarStream(pipeline, crc, ignored);
+		for (SourceEntry entry : entries) {
+			tar.writeEntry(entry);
+		}
+		tar.finish();
+		pipeline.drain();
+		out.write(new ByteWriter().int32(crc.getValue()).int32(tar.length & ZIP64_LIMIT).toByteArray());
+	}
+
+    /**
+     * Serializes TAR entries into pipeline blocks. Names longer than 100 bytes use a GNU long name entry,
+     * sizes of 8 GB or more use the GNU base-256 encoding.
+     */
+	private static class TarStream {
+		private Pipeline pipeline;
+		private CRC32 crc;
+		private SizeCounter counter;
+		private byte[] block = new byte[BLOCK_SIZE];
+		private int used;
+		private byte[] dictionary;
+		private long length;
+
+		private TarStream(Pipeline pipeline, CRC32 crc, SizeCounter counter) {
+			this.pipeline = pipeline;
+			this.crc = crc;
+			this.counter = counter;
+		}
+
+		private void writeEntry(SourceEntry entry) throws IOException {
+			byte[] name = entry.name.getBytes(StandardCharsets.UTF_8);
+			if (name.length > 100) {
+				byte[] longName = Arrays.copyOf(name, name.length + 1);
+				write(header("././@LongLink".getBytes(StandardCharsets.US_ASCII), 'L', longName.length, 0, 0644));
+				write(longName, 0, longName.length);
+				pad(longName.length);
+			}
+			long modified = entry.file.lastModified() / 1000;
+			if (entry.directory) {
+				write(header(name, '5', 0, modified, 0755));
+				return;
+			}
+			write(header(name, '0', entry.size, modified, entry.file.canExecute() ? 0755 : 0644));
+			long written = 0;
+			byte[] buffer = new byte[BLOCK_SIZE];
+			try (InputStream in = new FileInputStream(entry.file)) {
+				int count;
+				while (written < entry.size && (count = in.read(buffer, 0, (int) Math.min(buffer.length, entry.size - written))) > 0) {
+					write(buffer, 0, count);
+					written += count;
+					pipeline.reportEntry(entry.name, count);
+				}
+			}
+			if (written != entry.size)
+				throw new IOException("File changed while compressing: " + entry.file.getAbsolutePath());
+			pad(entry.size);
+		}
+
+		private void finish() throws IOException {
+			// Two zero blocks, padded to the usual 10 KB record
+			long end = length + 1024;
+			long record = (end + 10239) / 10240 * 10240;
+			write(new byte[(int) (record - length)]);
+			flushBlock(true);
+		}
+
+		private static byte[] header(byte[] name, char type, long size, long modified, int mode) {
+			byte[] header = new byte[512];
+			System.arraycopy(name, 0, header, 0, Math.min(100, name.length));
+			octal(header, 100, 8, mode);
+			octal(header, 108, 8, 0);
+			octal(header, 116, 8, 0);
+			if (size >= 077777777777L) {
+				header[124] = (byte) 0x80;
+				for (int i = 0; i < 8; i++)
+					header[135 - i] = (byte) (size >>> (8 * i));
+			} else {
+				octal(header, 124, 12, size);
+			}
+			octal(header, 136, 12, modified);
+			Arrays.fill(header, 148, 156, (byte) ' ');
+			header[156] = (byte) type;
+			System.arraycopy("ustar  \0".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 8);
+			long checksum = 0;
+			for (byte b : header)
+				checksum += b & 0xff;
+			octal(header, 148, 7, checksum);
+			return header;
+		}
+
+		private static void octal(byte[] header, int offset, int length, long value) {
+			String digits = Long.toOctalString(value);
+			int start = offset + length - 1 - digits.length();
+			Arrays.fill(header, offset, start, (byte) '0');
+			System.arraycopy(digits.getBytes(StandardCharsets.US_ASCII), 0, header, start, digits.length());
+			header[offset + length - 1] = 0;
+		}
+
+		private void pad(long size) throws IOException {
+			int remainder = (int) (size % 512);
+			if (remainder != 0)
+				write(new byte[512 - remainder]);
+		}
+
+		private void write(byte[] bytes) throws IOException {
+			write(bytes, 0, bytes.length);
+		}
+
+		private void write(byte[] bytes, int offset, int count) throws IOException {
+			crc.update(bytes, offset, count);
+			length += count;
+			while (count > 0) {
+				int copied = Math.min(count, block.length - used);
+				System.arraycopy(bytes, offset, block, used, copied);
+				used += copied;
+				offset += copied;
+				count -= copied;
+				if (used == block.length)
+					flushBlock(false);
+			}
+		}
+
+		private void flushBlock(boolean last) throws IOException {
+			byte[] data = block;
+			block = new byte[BLOCK_SIZE];
+			pipeline.submitBlock(data, used, dictionary, last, counter);
+			dictionary = tail(data, used);
+			used = 0;
+		}
+	}
+
+	// =========================
+	// Ordered parallel deflate pipeline
+	// =========================
+
+    /**
+     * Ordered queue of chunks to write; deflate blocks are computed by the workers meanwhile.
+     * Everything is written by the thread that submits, so no locking is needed on the output side.
+     */
+	private static class Pipeline {
+		private ExecutorService executor;
+		private ThreadLocal<Deflater> deflater;
+		private CountingOutputStream out;
+		private ArrayDeque<Chunk> queue = new ArrayDeque<>();
+		private int maxInFlight;
+		private long totalBytes;
+		private long doneBytes;
+		private ProgressListener listener;
+
+		private Pipeline(ExecutorService executor, ThreadLocal<Deflater> deflater, int maxInFlight,
+				CountingOutputStream out, long totalBytes, ProgressListener listener) {
+			this.executor = executor;
+			this.deflater = deflater;
+			this.maxInFlight = maxInFlight;
+			this.out = out;
+			this.totalBytes = totalBytes;
+			this.listener = listener;
+		}
+
+		private void submitChunk(Chunk chunk) throws IOException {
+			if (Thread.currentThread().isInterrupted())
+				throw new InterruptedIOException("Compression cancelled");
+			queue.addLast(chunk);
+			while (queue.size() > maxInFlight)
+				queue.removeFirst().writeTo(out);
+		}
+
+		private void submitBlock(final byte[] data, final int length, final byte[] dictionary, final boolean last,
+				final SizeCounter counter) throws IOException {
+			final Future<byte[]> compressed = executor.submit(new Callable<byte[]>() {
+				public byte[] call() {
+					return deflate(deflater.get(), data, length, dictionary, last);
+				}
+			});
+			submitChunk(new Chunk() {
+				public void writeTo(CountingOutputStream out) throws IOException {
+					byte[] bytes = await(compressed);
+					counter.addCompressed(bytes.length);
+					out.write(bytes);
+				}
+			});
+		}
+
+	    /**
+	     * Submits the content of a file as its own deflate stream.
+	     * @return the number of bytes read
+	     */
+		private long submitFile(SourceEntry entry, CRC32 crc, SizeCounter counter) throws IOException {
+			long read = 0;
+			byte[] dictionary = null;
+			try (InputStream in = new FileInputStream(entry.file)) {
+				byte[] current = new byte[BLOCK_SIZE];
+				int currentLength = readBlock(in, current);
+				while (true) {
+					byte[] next = new byte[BLOCK_SIZE];
+					int nextLength = (currentLength == BLOCK_SIZE) ? readBlock(in, next) : 0;
+					boolean last = nextLength == 0;
+					crc.update(current, 0, currentLength);
+					read += currentLength;
+					submitBlock(current, currentLength, dictionary, last, counter);
+					reportEntry(entry.name, currentLength);
+					if (last)
+						break;
+					dictionary = tail(current, currentLength);
+					current = next;
+					currentLength = nextLength;
+				}
+			}
+			return read;
+		}
+
+		private void reportEntry(String entry, long bytes) {
+			doneBytes += bytes;
+			if (listener != null)
+				listener.progress(doneBytes, totalBytes, entry);
+		}
+
+		private void drain() throws IOException {
+			while (!queue.isEmpty())
+				queue.removeFirst().writeTo(out);
+		}
+
+		private static int readBlock(InputStream in, byte[] block) throws IOException {
+			int read = 0;
+			int count;
+			while (read < block.length && (count = in.read(block, read, block.length - read)) > 0)
+				read += count;
+			return read;
+		}
+
+		private static byte[] await(Future<byte[]> future) throws IOException {
+			try {
+				return future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Compression cancelled");
+			} catch (ExecutionException e) {
+				throw new IOException(e.getCause());
+			}
+		}
+	}
+
+    /**
+     * Deflates one block. Non-final blocks end with a sync flush so the next block can be appended to the
+     * same stream; the dictionary keeps the compression ratio close to a single-threaded deflate.
+     */
+	private static byte[] deflate(Deflater deflater, byte[] data, int length, byte[] dictionary, boolean last) {
+		deflater.reset();
+		if (dictionary != null)
+			deflater.setDictionary(dictionary);
+		deflater.setInput(data, 0, length);
+		ByteWriter out = new ByteWriter(length / 2 + 64);
+		byte[] buffer = new byte[Math.max(1024, length / 2 + 64)];
+		if (last) {
+			deflater.finish();
+			while (!deflater.finished())
+				out.bytes(buffer, deflater.deflate(buffer));
+		} else {
+			int count;
+			do {
+				count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+				out.bytes(buffer, count);
+			} while (count == buffer.length);
+		}
+		return out.toByteArray();
+	}
+
+	private static byte[] tail(byte[] data, int length) {
+		int size = Math.min(DICTIONARY_SIZE, length);
+		return Arrays.copyOfRange(data, length - size, length);
+	}
+
+	// =========================
+	// Small helpers
+	// =========================
+
+	private static class SourceEntry {
+		private File file;
+		private String name;
+		private boolean directory;
+		private long size;
+
+		private SourceEntry(File file, String name, boolean directory, long size) {
+			this.file = file;
+			this.name = name;
+			this.directory = directory;
+			this.size = size;
+		}
+	}
+
+	private interface Chunk {
+		void writeTo(CountingOutputStream out) throws IOException;
+	}
+
+	private interface SizeCounter {
+		void addCompressed(long bytes);
+	}
+
+    /**
+     * Growable little-endian byte buffer.
+     */
+	private static class ByteWriter {
+		private byte[] bytes;
+		private int size;
+
+		private ByteWriter() {
+			this(64);
+		}
+
+		private ByteWriter(int capacity) {
+			bytes = new byte[Math.max(16, capacity)];
+		}
+
+		private ByteWriter bytes(byte[] data) {
+			return bytes(data, data.length);
+		}
+
+		private ByteWriter bytes(byte[] data, int length) {
+			if (size + length > bytes.length)
+				bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + length));
+			System.arraycopy(data, 0, bytes, size, length);
+			size += length;
+			return this;
+		}
+
+		private ByteWriter int16(int value) {
+			return bytes(new byte[] { (byte) value, (byte) (value >>> 8) });
+		}
+
+		private ByteWriter int32(long value) {
+			return bytes(new byte[] { (byte) value, (byte) (value >>> 8), (byte) (value >>> 16), (byte) (value >>> 24) });
+		}
+
+		private ByteWriter int64(long value) {
+			return int32(value & ZIP64_LIMIT).int32(value >>> 32);
+		}
+
+		private byte[] toByteArray() {
+			return Arrays.copyOf(bytes, size);
+		}
+	}
+
+	private static class CountingOutputStream extends FilterOutputStream {
+		private long count;
+
+		private CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		public void write(byte[] b, int offset, int length) throws IOException {
+			out.write(b, offset, length);
+			count += length;
+		}
+
+		private long getCount() {
+			return count;
+		}
+	}
+
+}
@@ -1,17 +1,58 @@
 package es.annahexe;
 
 import java.awt.Color;
+import java.awt.GridLayout;
+import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.awt.geom.Rectangle2D;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.regex.PatternSyntaxException;
 import javax.swing.DefaultListModel;
+import javax.swing.JCheckBox;
+import javax.swing.ImageIcon;
+import javax.swing.JFileChooser;
+import javax.swing.JLabel;
+import javax.swing.JList;
 import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JTextField;
 import javax.swing.JTextPane;
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
+import javax.swing.text.BadLocationException;
 import javax.swing.text.DefaultHighlighter;
 import javax.swing.text.Highlighter;
-import javax.swing.text.Style;
+import javax.swing.text.SimpleAttributeSet;
 import javax.swing.text.StyleConstants;
 import javax.swing.text.StyledDocument;
 
@@ -24,16 +65,64 @@ import java.io.File;
  * 	<li>Registers UI listeners</li>
  * 	<li>Loads/updates file and folder lists</li>
  * 	<li>Loads JOptionPane.showMessageDialog</li>
+ * 	<li>Shows the info of the selected entry in the info panel, computed asynchronously</li>
+ * 	<li>Runs copy, delete, rename and save as background jobs, see {@link JobManager}</li>
+ * 	<li>Runs copy, move, rename and delete of a multiple selection as one batch job, see {@link BatchOperations}</li>
+ * 	<li>Moves deleted entries to the {@link Trash} and keeps the undo/redo {@link FileHistory}</li>
  * 	<li>Performs text actions on the JTextPane (search/replace/highlight)</li>
  * </ul>
  * @author annahexe
  */
 
 public class Controller {
+	private static final int MAX_ARCHIVE_PREVIEW_CHARS = 8 * 1024 * 1024;
+	private static final int MAX_RUNNING_JOBS = 4;
+	private static final int MAX_JOBS_PER_DEVICE = 2;
+	private static final int PREFETCHED_FOLDERS = 10;
+	private static final int MAX_SYNC_LISTING_ENTRIES = 5_000; // bigger cached listings are sorted off the EDT too
+	private static final int SPECULATED_SUBFOLDERS = 3;
+	private static final int HOVER_DELAY_MILLIS = 150;
+	private static final String FILTER_TIP = "Filter the list (Esc clears, Enter goes to the list)";
+
 	private Utilities utilities;
 	private View view;
+	private InfoLoader infoLoader; // computes the info panel content off the EDT
+	private ThumbnailCache thumbnails; // image thumbnails and previews
+	private ExplorerCellRenderer cellRenderer;
+	private HashService hashService; // checksums of files and folders, cached by path + size + mtime; lazy
+	private FolderSync folderSync; // two-folder compare and one-way sync; lazy
+	private JobManager jobManager; // background file operations
+	private JobsWindow jobsWindow; // lazy
+	private DiagnosticsWindow diagnosticsWindow; // lazy
+	private BulkRename bulkRename; // template renames with an undo journal
+	private Trash trash; // deleted entries and overwritten versions, purged in the background
+	private FileHistory history = new FileHistory(); // undo/redo of delete, rename, move and save
+	private EditorUndo editorUndo; // undo/redo of the text being edited
+	private SyntaxHighlighter syntaxHighlighter; // colors the visible lines of the text shown
+	private File loadingFile; // file being read into the editor, null when none
+	private FilePager pager; // pages of the file shown when it's too big to show at once, null otherwise
+	private int page; // page of the pager shown
+	private ArchiveBrowser archiveBrowser; // ZIP/JAR/TAR archives as virtual folders
+	private ArchiveBrowser.Archive currentArchive; // archive shown in the explorer, null on the real file system
+	private String archiveFolder; // folder shown inside currentArchive
+	private String selectedEntry; // entry selected inside currentArchive
+	private Map<String, ArchiveBrowser.Entry> archiveEntries = new HashMap<>(); // entries of archiveFolder
+	private Session session; // recent folders, last file and sort settings, kept between launches
+	private ListingCache listingCache; // listings reused while their folder doesn't change
+	private File shownFile; // file shown in the editor, null when none
+	private QuickFilter quickFilter; // narrows the explorer list as the filter field is typed
+	private DefaultListModel<String> listModel; // every entry of the listing shown, unfiltered
+	private String listingTitle; // the path label of the listing shown
+	private boolean clearingFilter; // the filter field is cleared for a new listing, not typed
+	private boolean keepingSelection; // the selection is restored in a filtered list, nothing to update
+	private Timer hoverTimer; // lists the folder under the mouse once it rests on it
+	private File hoveredFolder;
+	private File restoreFile; // file whose caret is restored once loaded, see restoreCaret
+	private int restoreCaret;
 	private File currentFolder; // folder shown in the explorer
+	private SwingWorker<DefaultListModel<String>, Void> pendingListing; // lists a folder, null once shown
 	private File selectedFile; // currently selected file/folder from the list
+	private List<File> selectedFiles = new ArrayList<>(); // every selected entry, for batch operations
 
 	/**
 	 * Builds the controller and initializes the UI.
@@ -43,17 +132,165 @@ public class Controller {
 	public Controller(Utilities utilities, View view) {
 		this.utilities = utilities;
 		this.view = view;
+		this.infoLoader = new InfoLoader(utilities);
+		this.thumbnails = new ThumbnailCache();
+		this.cellRenderer = new ExplorerCellRenderer(thumbnails);
+		this.archiveBrowser = new ArchiveBrowser();
+		this.jobManager = new JobManager(MAX_RUNNING_JOBS, MAX_JOBS_PER_DEVICE);
+		this.session = Session.load();
+		this.listingCache = new ListingCache(utilities);
+		this.quickFilter = new QuickFilter(new QuickFilter.Listener() {
+			public void filtered(DefaultListModel<String> model, int matches, int total, boolean complete) {
+				showFiltered(model, matches, total, complete);
+			}
+		});
+		this.bulkRename = new BulkRename();
+		this.trash = new Trash(Trash.DEFAULT_MAX_AGE_DAYS, Trash.DEFAULT_QUOTA_BYTES);
+		this.editorUndo = new EditorUndo(view.getTextPaneAreaContent());
+		this.editorUndo.bindKeys();
+		this.syntaxHighlighter = new SyntaxHighlighter(view.getTextPaneAreaContent());
 		initialize();
 	}
 
 	/**
-	 * Initializes the starting folder, registers listeners, and disables UI controls.
+	 * Registers listeners, disables UI controls and starts listing the starting folder in the background, so the
+	 * window is usable before a big (or remote) folder is listed. The session of the last launch is restored.
 	 */
 	public void initialize() {
-		File initialFolder = utilities.selectedFolder();
-		changeDirectory(initialFolder);
+		view.getListExplorer().setCellRenderer(cellRenderer);
 		setListeners();
 		disableAllButtons();
+		updateHistoryMenu();
+		updateSortMenu();
+		listInitialFolder(session.getLastFolder(), utilities.selectedFolder());
+	}
+
+    /**
+     * Lists the starting folder off the EDT and shows it, unless the user opened another folder meanwhile. Then
+     * reopens the last file if it's there, and prefetches the folders visited most.
+     * @param folder   the folder of the last session, or null
+     * @param fallback the folder if that one is gone
+     */
+	private void listInitialFolder(final File folder, final File fallback) {
+		view.getBtnNewFolder().setEnabled(false);
+		view.getBtnNewFile().setEnabled(false);
+		view.getlLblFilePath().setText("Loading " + (folder != null ? folder : fallback).getAbsolutePath() + "...");
+		pendingListing = new SwingWorker<DefaultListModel<String>, Void>() {
+			private File listed;
+
+			protected DefaultListModel<String> doInBackground() throws Exception {
+				listed = utilities.isValidFolder(folder) ? folder : fallback;
+				if (!utilities.isValidFolder(listed))
+					return null;
+				return listEntries(listingCache.list(listed));
+			}
+
+			protected void done() {
+				if (pendingListing != this)
+					return; // another folder was opened meanwhile
+				pendingListing = null;
+				DefaultListModel<String> list = null;
+				try {
+					list = get();
+				} catch (Exception e) {
+					// Shown as no folder
+				}
+				if (list != null) {
+					showDirectory(listed, list);
+					reopenLastFile(listed);
+				} else {
+					changeDirectory(null);
+				}
+				listingCache.prefetch(session.getFrequentFolders(PREFETCHED_FOLDERS));
+				startupFinished();
+			}
+		};
+		pendingListing.execute();
+	}
+
+    /**
+     * Selects and shows the file shown when the app was closed, with its caret, if it's in the folder.
+     * @param folder the folder shown
+     */
+	private void reopenLastFile(File folder) {
+		File lastFile = session.getLastFile();
+		if (lastFile == null || !lastFile.isFile()
+				|| !folder.getAbsoluteFile().equals(lastFile.getAbsoluteFile().getParentFile()))
+			return;
+		view.getListExplorer().setSelectedValue(lastFile.getName(), true);
+		if (selectedFile == null || !lastFile.getAbsoluteFile().equals(selectedFile.getAbsoluteFile()))
+			return;
+		restoreFile = selectedFile;
+		restoreCaret = session.getCaret();
+		displayFileContent(selectedFile);
+	}
+
+    /**
+     * Remembers where the explorer and the editor are and writes the session before the app exits.
+     */
+	private void saveSession() {
+		if (shownFile != null)
+			session.setLastFile(shownFile, pager == null ? view.getTextPaneAreaContent().getCaretPosition() : 0);
+		if (currentFolder != null && currentArchive == null && !isFiltered())
+			session.setScroll(currentFolder, view.getListExplorer().getFirstVisibleIndex());
+		session.saveNow();
+	}
+
+    /**
+     * Records the startup time, from the start of the JVM to the first folder on screen, in {@link Metrics}. With
+     * <code>-Dfileexplorer.exitAfterStartup=true</code> also prints it and exits, to measure the startup or to
+     * train a CDS archive.
+     */
+	private void startupFinished() {
+		Instant start = ProcessHandle.current().info().startInstant().orElse(null);
+		final long millis = start == null ? -1 : System.currentTimeMillis() - start.toEpochMilli();
+		if (millis >= 0)
+			Metrics.operation("startup").record(millis * 1_000_000, 0, 0, false);
+		if (Boolean.getBoolean("fileexplorer.exitAfterStartup")) {
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					// After the repaint of the list queued before
+					System.out.println("startup " + millis + " ms");
+					System.exit(0);
+				}
+			});
+		}
+	}
+
+    /**
+     * @return the hash service, created the first time it's needed to keep the startup short
+     */
+	private synchronized HashService getHashService() {
+		if (hashService == null)
+			hashService = new HashService(Runtime.getRuntime().availableProcessors());
+		return hashService;
+	}
+
+    /**
+     * @return the folder compare and sync service, created the first time it's needed
+     */
+	private synchronized FolderSync getFolderSync() {
+		if (folderSync == null)
+			folderSync = new FolderSync(getHashService(), Runtime.getRuntime().availableProcessors());
+		return folderSync;
+	}
+
+    /**
+     * @return the jobs window, built the first time it's opened
+     */
+	private JobsWindow getJobsWindow() {
+		if (jobsWindow == null)
+			jobsWindow = new JobsWindow(jobManager);
+		return jobsWindow;
+	}
+
+    /**
+     * @return the diagnostics window, built the first time it's opened
+     */
+	private DiagnosticsWindow getDiagnosticsWindow() {
+		if (diagnosticsWindow == null)
+			diagnosticsWindow = new DiagnosticsWindow();
+		return diagnosticsWindow;
 	}
 
 	/**
@@ -62,6 +299,8 @@ public class Controller {
 	public void setListeners() {
 		registerOpenPathListener();
 		registerListSelectionListener();
+		registerHoverListener();
+		registerFilterListeners();
 		registerNewFolderListener();
 		registerNewFileListener();
 
@@ -79,6 +318,20 @@ public class Controller {
         registerSearchTextListener();
         registerReplaceTextListener();
         registerSaveFileListener();
+
+        registerCompressListener();
+        registerHashListener();
+        registerVerifyManifestListener();
+        registerCompareFoldersListener();
+        registerCompareFilesListener();
+        registerJobsListener();
+        registerDiagnosticsListener();
+
+        registerSelectionListeners();
+        registerHistoryListeners();
+        registerEditorListeners();
+        registerSortListeners();
+        registerSessionListener();
 	}
 
     // =========================
@@ -108,14 +361,26 @@ public class Controller {
      *   <li>Selecting <code>"./name"</code> selects a directory, enables folder actions and shows info.</li>
      *   <li>Selecting <code>"name"</code> selects a file and enables file actions and shows info.</li>
      *   </ul>
-     *      @see Utilities#infoDirectory(File)
-     *   	@see Utilities#infoFile(File)
+     * The info is shown in the info panel without blocking the list.
+     * Selecting several entries enables Copy and Delete for all of them, see {@link #selectMultiple(List)}.
+     * Archive files also enable "Explore"; inside an archive the selection is handled by {@link #selectArchiveEntry(String)}.
+     *      @see #showSelectionInfo(File)
      */
 	private void registerListSelectionListener() {
 		ListSelectionListener actionListSelection = new ListSelectionListener() {
 			public void valueChanged(ListSelectionEvent listEvent) {
-				if (!listEvent.getValueIsAdjusting()) {
+				if (!listEvent.getValueIsAdjusting() && !keepingSelection) {
+					List<String> names = view.getListExplorer().getSelectedValuesList();
+					if (names.size() > 1 && currentArchive == null && currentFolder != null) {
+						selectMultiple(names);
+						return;
+					}
+					selectedFiles = new ArrayList<>();
 					String name = view.getListExplorer().getSelectedValue();
+					if (name != null && currentArchive != null) {
+						selectArchiveEntry(name);
+						return;
+					}
 					if (name != null && currentFolder != null) {
 						if (name.equals("../")) {
 							changeDirectory(currentFolder.getParentFile());
@@ -123,16 +388,20 @@ public class Controller {
 						}
 						name = name.replace("./", "");
 						selectedFile = new File(currentFolder, name);
+						selectedFiles.add(selectedFile);
 						if (selectedFile.isDirectory()) {
-							JOptionPane.showMessageDialog(view.getFrame(), utilities.infoDirectory(selectedFile),
-									"INFO DIRECTORY", JOptionPane.INFORMATION_MESSAGE);
 							disableAllButtons();
 							setButtonsFolderEnable(true);
+							showSelectionInfo(selectedFile);
+							speculateListing(selectedFile);
 						} else if (selectedFile.isFile()) {
-							JOptionPane.showMessageDialog(view.getFrame(), utilities.infoFile(selectedFile),
-									"INFO FILE", JOptionPane.INFORMATION_MESSAGE);
 							disableAllButtons();
 							setButtonsFileEnable(true);
+							if (ArchiveBrowser.isArchive(selectedFile)) {
+								view.getBtnExploreFolder().setEnabled(true);
+								view.getBtnExploreFwd().setEnabled(true);
+							}
+							showSelectionInfo(selectedFile);
 						} else {
 							disableAllButtons();
 						}
@@ -154,7 +423,7 @@ public class Controller {
 				String input = JOptionPane.showInputDialog(view.getFrame(), "Write the new folder name:",
 						"CONFIRM OPERATION", JOptionPane.QUESTION_MESSAGE);
 				if (utilities.createNewFolder(input, currentFolder)) {
-					changeDirectory(currentFolder);
+					refreshDirectory();
 					JOptionPane.showMessageDialog(view.getFrame(), "Folder `" + input + "` created succesfully.",
 							"INFO", JOptionPane.INFORMATION_MESSAGE);
 				} else {
@@ -177,7 +446,7 @@ public class Controller {
 				String input = JOptionPane.showInputDialog(view.getFrame(), "Write new file name:", "CONFIRM OPERATION",
 						JOptionPane.QUESTION_MESSAGE);
 				if (utilities.createNewFile(input, currentFolder)) {
-					changeDirectory(currentFolder);
+					refreshDirectory();
 					JOptionPane.showMessageDialog(view.getFrame(), "File `" + input + "` created succesfully.", "INFO",
 							JOptionPane.INFORMATION_MESSAGE);
 				} else {
@@ -195,14 +464,21 @@ public class Controller {
 
     /**
      * Registers the "Explore" and ">" button listeners.
-     * <p>If a directory is selected, enters it.</p>
+     * <p>If a directory is selected, enters it. If an archive is selected, opens it as a virtual folder.</p>
      * @see #changeDirectory(File)
+     * @see #openArchive(File)
      */
 	private void registerExploreFolderListeners() {
 		ActionListener actionExploreFolder = new ActionListener() {
 			public void actionPerformed(ActionEvent actionEvent) {
-				if (selectedFile != null && selectedFile.isDirectory()) {
+				if (currentArchive != null) {
+					if (selectedEntry != null && selectedEntry.endsWith("/")) {
+						changeArchiveDirectory(selectedEntry);
+					}
+				} else if (selectedFile != null && selectedFile.isDirectory()) {
 					changeDirectory(selectedFile);
+				} else if (ArchiveBrowser.isArchive(selectedFile)) {
+					openArchive(selectedFile);
 				}
 			}
 		};
@@ -212,13 +488,17 @@ public class Controller {
 
     /**
      * Registers the "&lt;" button listener.
-     * <p>Navigates to the parent folder if available.</p>
+     * <p>Navigates to the parent folder if available. Inside an archive, goes up one archive folder
+     * and leaves the archive from its root.</p>
      * @see #changeDirectory(File)
+     * @see #exitArchiveFolder()
      */
 	private void registerExploreBackListener() {
 		ActionListener actionExploreBack = new ActionListener() {
 			public void actionPerformed(ActionEvent actionEvent) {
-				if (currentFolder != null && currentFolder.getParentFile() != null) {
+				if (currentArchive != null) {
+					exitArchiveFolder();
+				} else if (currentFolder != null && currentFolder.getParentFile() != null) {
 					changeDirectory(currentFolder.getParentFile());
 				}
 			}
@@ -228,7 +508,8 @@ public class Controller {
 
     /**
      * Registers the "Rename" listeners for both file and folder.
-     * <p>Prompts for a new name, requires sudo, performs rename, refreshes list.</p>
+     * <p>Prompts for a new name, requires sudo, renames in the background, refreshes list. The rename can be
+     * undone from the History menu.</p>
      * @see Utilities#renameFile(String, File, File)
      * @see #isSudoConfirmation()
      */
@@ -239,14 +520,22 @@ public class Controller {
 						JOptionPane.QUESTION_MESSAGE);
 				if (input != null && !input.trim().isEmpty()) {
 					if (isSudoConfirmation()) {
-						if (utilities.renameFile(input, selectedFile, currentFolder)) {
-							changeDirectory(currentFolder);
-							JOptionPane.showMessageDialog(view.getFrame(), "File `" + input + "` renamed succesfully.",
-									"INFO", JOptionPane.INFORMATION_MESSAGE);
-						} else {
-							JOptionPane.showMessageDialog(view.getFrame(), "ERROR! Enter a correct file name.",
-									"WARNING", JOptionPane.ERROR_MESSAGE);
-						}
+						final String newName = input;
+						final File file = selectedFile;
+						final File folder = currentFolder;
+						final File target = utilities.renameTarget(newName, file, folder);
+						submitJob("Rename `" + file.getName() + "` to `" + newName + "`", folder,
+								new JobManager.Operation() {
+									public String getName() {
+										return file.getPath();
+									}
+
+									public void run(JobManager.Job job) throws IOException {
+										if (!utilities.renameFile(newName, file, folder))
+											throw new IOException("Enter a correct file name.");
+									}
+								}, "File `" + input + "` renamed succesfully.", "INFO",
+								recordOnSuccess(FileHistory.renamed(file, target)));
 					}
 				}
 			}
@@ -257,26 +546,34 @@ public class Controller {
 
     /**
      * Registers the "Delete" listener for folders.
-     * <p>Confirms, asks for sudo, deletes recursively, then refreshes.</p>
-     * @see Utilities#deleteFolder(File)
+     * <p>Counts the folder's entries in the background for the confirmation (trash or permanent), asks for sudo,
+     * deletes in the background, then refreshes.</p>
+     * @see #deleteEntries(List, String, String)
      * @see #isSudoConfirmation()
      */
     private void registerDeleteFolderListener(){
 		ActionListener actionDeleteFolder = new ActionListener() {
 			public void actionPerformed(ActionEvent actionEvent) {
-				int result = JOptionPane.showConfirmDialog(view.getFrame(),
-						"Are you sure you want to delete this folder and all its content? \n"
-								+ utilities.infoDirectory(selectedFile),
-						"CONFIRM DELETE", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE);
-				if (result == JOptionPane.YES_OPTION) {
-					if (isSudoConfirmation()) {
-						if (utilities.deleteFolder(selectedFile)) {
-							changeDirectory(currentFolder);
-							JOptionPane.showMessageDialog(view.getFrame(), "Folder deleted succesfully.", "FILE DELETE",
-									JOptionPane.INFORMATION_MESSAGE);
+				final File folder = selectedFile;
+				view.getBtnDeleteFolder().setEnabled(false); // until the confirmation shows
+				new SwingWorker<String, Void>() {
+					protected String doInBackground() {
+						return utilities.infoDirectory(folder);
+					}
+
+					protected void done() {
+						String info;
+						try {
+							info = get();
+						} catch (Exception e) {
+							info = "";
 						}
+						if (folder.equals(selectedFile))
+							view.getBtnDeleteFolder().setEnabled(true);
+						deleteEntries(Collections.singletonList(folder), "folder `" + folder.getName() + "`",
+								"Are you sure you want to delete this folder and all its content? \n" + info);
 					}
-				}
+				}.execute();
 			}
 		};
 		view.getBtnDeleteFolder().addActionListener(actionDeleteFolder);
@@ -290,10 +587,15 @@ public class Controller {
      * Registers the "Show" button listener.
      * <p>Loads the selected file's content into the text pane.</p>
      * @see #displayFileContent(File)
+     * @see #displayArchiveEntry(String)
      */
     private void registerShowFileListener(){
 		ActionListener actionShowFile = new ActionListener() {
 			public void actionPerformed(ActionEvent actionEvent) {
+				if (currentArchive != null) {
+					displayArchiveEntry(selectedEntry);
+					return;
+				}
 				displayFileContent(selectedFile);
 			}
 		};
@@ -302,17 +604,32 @@ public class Controller {
 
     /**
      * Registers the "Copy" button listener for files.
-     * <p>Creates a copy named <code>name+"_copia"</code>, keeps extension, and refreshes the list.</p>
+     * <p>Creates a copy named <code>name+"_copia"</code> in the background, keeps extension, and refreshes the list.
+     * With several entries selected, copies all of them as one batch job.</p>
      * @see Utilities#copyFile(File, File)
      */
     private void registerCopyFileListener(){
 		ActionListener actionCopyFile = new ActionListener() {
 			public void actionPerformed(ActionEvent actionEvent) {
-				if (utilities.copyFile(selectedFile, currentFolder)) {
-					changeDirectory(currentFolder);
-					JOptionPane.showMessageDialog(view.getFrame(), "File copied successfully.", "COPY",
-							JOptionPane.INFORMATION_MESSAGE);
+				if (selectedFiles.size() > 1) {
+					submitJob("Copy " + selectedFiles.size() + " items", currentFolder,
+							BatchOperations.copy(selectedFiles, currentFolder), BatchOperations.PARALLELISM,
+							selectedFiles.size() + " items copied successfully.", "COPY", null);
+					return;
 				}
+				final File file = selectedFile;
+				final File folder = currentFolder;
+				submitJob("Copy `" + file.getName() + "`", folder, new JobManager.Operation() {
+					public String getName() {
+						return file.getPath();
+					}
+
+					public void run(JobManager.Job job) throws IOException {
+						if (!utilities.copyFile(file, folder))
+							throw new IOException("Could not copy `" + file.getName() + "`.");
+						job.addBytes(file.length());
+					}
+				}, "File copied successfully.", "COPY", null);
 			}
 		};
 		view.getBtnCopyFile().addActionListener(actionCopyFile);
@@ -320,28 +637,20 @@ public class Controller {
 
     /**
      * Registers the "Delete" button listener for files.
-     * <p>Confirms, asks for sudo, deletes the file, then refreshes.</p>
-     * @see Utilities#deleteFile(File)
+     * <p>Confirms (trash or permanent), asks for sudo, deletes the file in the background, then refreshes.
+     * With several entries selected, deletes all of them as one batch job.</p>
+     * @see #deleteEntries(List, String, String)
      * @see #isSudoConfirmation()
      */
     private void registerDeleteFileListener(){
 		ActionListener actionDeleteFile = new ActionListener() {
 			public void actionPerformed(ActionEvent actionEvent) {
-				int result = JOptionPane.showConfirmDialog(view.getFrame(),
-						"Are you sure you want to delete this file? \n" + utilities.infoFile(selectedFile),
-						"CONFIRM DELETE", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE);
-
-				if (result == JOptionPane.YES_OPTION) {
-					if (isSudoConfirmation()) {
-						if(utilities.deleteFile(selectedFile)) {
-						changeDirectory(currentFolder);
-						JOptionPane.showMessageDialog(view.getFrame(), "File deleted succesfully.", "FILE DELETE",
-								JOptionPane.INFORMATION_MESSAGE);} else {
-							JOptionPane.showMessageDialog(view.getFrame(), "ERROR!",
-									"WARNING", JOptionPane.ERROR_MESSAGE);
-						}
-					}
+				if (selectedFiles.size() > 1) {
+					deleteSelection();
+					return;
 				}
+				deleteEntries(Collections.singletonList(selectedFile), "`" + selectedFile.getName() + "`",
+						"Are you sure you want to delete this file? \n" + utilities.infoFile(selectedFile));
 			}
 		};
 		view.getBtnDeleteFile().addActionListener(actionDeleteFile);
@@ -403,9 +712,9 @@ public class Controller {
 
     /**
      * Registers the "Save" button listener.
-     * <p>Offers Overwrite OR Save-as. Overwrite requires sudo; refresh on success.</p>
-     * @see Utilities#saveTextOverwrite(String, File)
-     * @see Utilities#saveTextNewFile(String, String, File)
+     * <p>Offers Overwrite OR Save-as. Overwrite requires sudo and keeps the previous version in the trash, so
+     * it can be undone; the text is written in the background and the list refreshed on success.</p>
+     * @see Utilities#writeText(String, File)
      * @see #isSudoConfirmation()
      */
     private void registerSaveFileListener(){
@@ -418,11 +727,25 @@ public class Controller {
 				if (result == 0) {
 					// OVERWRITE
 					if (isSudoConfirmation()) {
-						if (utilities.saveTextOverwrite(view.getTextPaneAreaContent().getText(), selectedFile)) {
-							changeDirectory(currentFolder);
-							JOptionPane.showMessageDialog(view.getFrame(), "File overwritten successfully!", "INFO",
-									JOptionPane.INFORMATION_MESSAGE);
-						}
+						final String content = view.getTextPaneAreaContent().getText();
+						final File file = selectedFile;
+						final Trash.Item[] backup = new Trash.Item[1];
+						submitJob("Save `" + file.getName() + "`", file, new JobManager.Operation() {
+							public String getName() {
+								return file.getPath();
+							}
+
+							public void run(JobManager.Job job) throws IOException {
+								backup[0] = trash.copyToTrash(file); // previous version, for undo
+								utilities.writeText(content, file);
+								job.addBytes(file.length());
+							}
+						}, "File overwritten successfully!", "INFO", new JobManager.JobListener() {
+							public void jobFinished(JobManager.Job job) {
+								if (job.getState() == JobManager.State.DONE)
+									recordEdit(FileHistory.saved(trash, file, backup[0]));
+							}
+						});
 					}
 				} else if (result == 1) {
 					// SAVE NEW FILE
@@ -430,11 +753,21 @@ public class Controller {
 							"CONFIRM OPERATION", JOptionPane.QUESTION_MESSAGE);
 					if (input == null || input.trim().isEmpty())
 						return;
-					if (utilities.saveTextNewFile(view.getTextPaneAreaContent().getText(), input, currentFolder)) {
-						changeDirectory(currentFolder);
-						JOptionPane.showMessageDialog(view.getFrame(), "File `" + input + "` created succesfully.",
-								"INFO", JOptionPane.INFORMATION_MESSAGE);
-					}
+					final String content = view.getTextPaneAreaContent().getText();
+					final File newFile = new File(currentFolder, input);
+					submitJob("Save as `" + input + "`", currentFolder, new JobManager.Operation() {
+						public String getName() {
+							return newFile.getPath();
+						}
+
+						public void run(JobManager.Job job) throws IOException {
+							if (!newFile.createNewFile())
+								throw new IOException("`" + newFile.getName() + "` already exists.");
+							utilities.writeText(content, newFile);
+							job.addBytes(newFile.length());
+						}
+					}, "File `" + input + "` created succesfully.", "INFO",
+							recordOnSuccess(FileHistory.created(trash, newFile)));
 				}
 			}
 		};
@@ -442,185 +775,1876 @@ public class Controller {
     }
 
 
-    // =========================
-    // UI enablers & helpers
-    // =========================
+	// =========
+	// TOOLS LISTENERS
+	// =========
 
     /**
-     * Enables/disables folder-related buttons as a group.
-     * @param isEnabled whether the buttons should be enabled
-     * */
-	public void setButtonsFolderEnable(boolean isEnabled) {
-		view.getBtnExploreFolder().setEnabled(isEnabled);
-		view.getBtnExploreFwd().setEnabled(isEnabled);
-		view.getBtnRenameFolder().setEnabled(isEnabled);
-		view.getBtnDeleteFolder().setEnabled(isEnabled);
+     * Registers the "Tools &gt; Compress folder..." listener.
+     * <p>Packs the selected folder (or the current one) next to it as ZIP or TAR.GZ, showing progress
+     * and allowing cancellation, then refreshes the list.</p>
+     * @see Compressor#compress(File, File, Compressor.Format, Compressor.ProgressListener)
+     */
+	private void registerCompressListener() {
+		ActionListener actionCompress = new ActionListener() {
+			public void actionPerformed(ActionEvent actionEvent) {
+				if (currentArchive != null) {
+					JOptionPane.showMessageDialog(view.getFrame(), "Archives are read-only.", "WARNING",
+							JOptionPane.ERROR_MESSAGE);
+					return;
+				}
+				File folder = (selectedFile != null && selectedFile.isDirectory()) ? selectedFile : currentFolder;
+				if (folder == null || folder.getAbsoluteFile().getParentFile() == null) {
+					JOptionPane.showMessageDialog(view.getFrame(), "ERROR! Select a folder to compress.", "WARNING",
+							JOptionPane.ERROR_MESSAGE);
+					return;
+				}
+				Object[] formats = { "ZIP", "TAR.GZ" };
+				int format = JOptionPane.showOptionDialog(view.getFrame(),
+						"Compress `" + folder.getName() + "` as:", "COMPRESS FOLDER", JOptionPane.DEFAULT_OPTION,
+						JOptionPane.QUESTION_MESSAGE, null, formats, formats[0]);
+				if (format < 0)
+					return;
+				Object[] levels = { "1 (fastest)", "2", "3", "4", "5", "6 (default)", "7", "8", "9 (smallest)" };
+				Object level = JOptionPane.showInputDialog(view.getFrame(), "Compression level:", "COMPRESS FOLDER",
+						JOptionPane.QUESTION_MESSAGE, null, levels, levels[5]);
+				if (level == null)
+					return;
+				Compressor.Format compressFormat = (format == 0) ? Compressor.Format.ZIP : Compressor.Format.TAR_GZ;
+				File target = new File(folder.getAbsoluteFile().getParentFile(),
+						folder.getName() + compressFormat.getExtension());
+				if (target.exists()) {
+					JOptionPane.showMessageDialog(view.getFrame(), "ERROR! `" + target.getName() + "` already exists.",
+							"WARNING", JOptionPane.ERROR_MESSAGE);
+					return;
+				}
+				compressFolder(folder, target, compressFormat, Integer.parseInt(level.toString().substring(0, 1)));
+			}
+		};
+		view.getMntmCompress().addActionListener(actionCompress);
 	}
 
     /**
-     * Enables/disables file-related buttons as a group.
-     * @param isEnabled whether the buttons should be enabled
-     * */
-	public void setButtonsFileEnable(boolean isEnabled) {
-		view.getBtnShowFile().setEnabled(isEnabled);
-		view.getBtnRenameFile().setEnabled(isEnabled);
-		view.getBtnCopyFile().setEnabled(isEnabled);
-		view.getBtnDeleteFile().setEnabled(isEnabled);
-		view.getTglBtnEditFile().setEnabled(isEnabled);
+     * Registers the "Tools &gt; Compute checksums..." listener.
+     * <p>For a selected file, shows its SHA-256, SHA-1, MD5 and CRC32C in the info panel. For a folder (the
+     * selected one or the current one), hashes every file with SHA-256 and offers to save a
+     * {@value HashService#MANIFEST_NAME} manifest in it.</p>
+     * @see HashService#hashFile(File, EnumSet)
+     * @see HashService#hashFolder(File, EnumSet, HashService.ProgressListener)
+     */
+	private void registerHashListener() {
+		ActionListener actionHash = new ActionListener() {
+			public void actionPerformed(ActionEvent actionEvent) {
+				if (currentArchive != null) {
+					JOptionPane.showMessageDialog(view.getFrame(), "Checksums are not available inside archives.",
+							"WARNING", JOptionPane.ERROR_MESSAGE);
+					return;
+				}
+				if (selectedFile != null && selectedFile.isFile()) {
+					hashSelectedFile(selectedFile);
+				} else {
+					File folder = (selectedFile != null && selectedFile.isDirectory()) ? selectedFile : currentFolder;
+					if (folder != null)
+						hashFolder(folder);
+				}
+			}
+		};
+		view.getMntmHash().addActionListener(actionHash);
 	}
 
-	 /**
-	  * Enables/disables edit controls and the text area’s editability.
-	  * @param isEnabled whether the edit controls should be enabled
-	  * */
-	public void setButtonsEditEnable(boolean isEnabled) {
-		view.getTextPaneAreaContent().setEditable(isEnabled);
-		view.getBtnSearchText().setEnabled(isEnabled);
-		view.getBtnReplaceText().setEnabled(isEnabled);
-		view.getBtnSave().setEnabled(isEnabled);
-		view.getTextFieldSearch().setEnabled(isEnabled);
-		view.getTextFieldReplace().setEnabled(isEnabled);
+    /**
+     * Registers the "Tools &gt; Verify checksum manifest..." listener.
+     * <p>Checks every entry of the selected <code>sha256sum</code>/<code>sha1sum</code>/<code>md5sum</code> file
+     * and reports matched, mismatched and missing files.</p>
+     * @see HashService#verifyManifest(File, HashService.ProgressListener)
+     */
+	private void registerVerifyManifestListener() {
+		ActionListener actionVerify = new ActionListener() {
+			public void actionPerformed(ActionEvent actionEvent) {
+				if (currentArchive != null || selectedFile == null || !selectedFile.isFile()) {
+					JOptionPane.showMessageDialog(view.getFrame(), "ERROR! Select a checksum manifest file.", "WARNING",
+							JOptionPane.ERROR_MESSAGE);
+					return;
+				}
+				verifyManifest(selectedFile);
+			}
+		};
+		view.getMntmVerifyManifest().addActionListener(actionVerify);
 	}
 
-	 /**
-	  * Disables all action buttons and clears the text area.
-	  * */
-	public void disableAllButtons() {
-		// Folders
-		view.getBtnExploreFolder().setEnabled(false);
-		view.getBtnExploreFwd().setEnabled(false);
-		view.getBtnRenameFolder().setEnabled(false);
-		view.getBtnDeleteFolder().setEnabled(false);
-		// Files
-		view.getBtnShowFile().setEnabled(false);
-		view.getBtnRenameFile().setEnabled(false);
-		view.getBtnCopyFile().setEnabled(false);
-		view.getBtnDeleteFile().setEnabled(false);
-		view.getTextPaneAreaContent().setText("");
-		// File Edit
-		view.getTglBtnEditFile().setEnabled(false);
-		view.getTextPaneAreaContent().setEditable(false);
-		view.getBtnSearchText().setEnabled(false);
-		view.getBtnReplaceText().setEnabled(false);
-		view.getBtnSave().setEnabled(false);
-		view.getTextFieldSearch().setEnabled(false);
-		view.getTextFieldReplace().setEnabled(false);
+    /**
+     * Registers the "Tools &gt; Compare with folder..." listener.
+     * <p>Compares the selected folder (or the current one) with a chosen folder, shows the dry-run report in
+     * the info panel and, on confirmation, copies the added/changed files to the chosen folder.</p>
+     * @see FolderSync#compare(File, File, boolean)
+     * @see FolderSync#sync(FolderSync.Comparison, FolderSync.ProgressListener)
+     */
+	private void registerCompareFoldersListener() {
+		ActionListener actionCompare = new ActionListener() {
+			public void actionPerformed(ActionEvent actionEvent) {
+				if (currentArchive != null)
+					return;
+				File source = (selectedFile != null && selectedFile.isDirectory()) ? selectedFile : currentFolder;
+				if (!utilities.isValidFolder(source))
+					return;
+				JFileChooser chooser = new JFileChooser(source.getAbsoluteFile().getParentFile());
+				chooser.setDialogTitle("Compare `" + source.getName() + "` with...");
+				chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+				chooser.setAcceptAllFileFilterUsed(false);
+				if (chooser.showOpenDialog(view.getFrame()) != JFileChooser.APPROVE_OPTION)
+					return;
+				File target = chooser.getSelectedFile();
+				if (target.getAbsoluteFile().equals(source.getAbsoluteFile())) {
+					JOptionPane.showMessageDialog(view.getFrame(), "ERROR! Choose a different folder.", "WARNING",
+							JOptionPane.ERROR_MESSAGE);
+					return;
+				}
+				int content = JOptionPane.showConfirmDialog(view.getFrame(),
+						"Compare file contents (slower) instead of size and modification date?", "COMPARE FOLDERS",
+						JOptionPane.YES_NO_CANCEL_OPTION, JOptionPane.QUESTION_MESSAGE);
+				if (content == JOptionPane.CANCEL_OPTION || content == JOptionPane.CLOSED_OPTION)
+					return;
+				compareFolders(source, target, content == JOptionPane.YES_OPTION);
+			}
+		};
+		view.getMntmCompareFolders().addActionListener(actionCompare);
 	}
 
     /**
-     * Asks the user to type "sudo" to confirm an action.
-     * @return {@code true} if user typed exactly "sudo"; {@code false} otherwise.
+     * Registers the "Tools &gt; Compare with file..." listener.
+     * <p>Opens a side-by-side diff of the selected file and a chosen file.</p>
+     * @see DiffWindow
      */
-	public boolean isSudoConfirmation() {
-		String input = JOptionPane.showInputDialog(view.getFrame(), "To confirm write \"sudo\":", "CONFIRM OPERATION",
-				JOptionPane.WARNING_MESSAGE);
-		if ("sudo".equals(input)) {
-			return true;
-		} else {
-			JOptionPane.showMessageDialog(view.getFrame(), "Operation cancelled.", "INFO",
-					JOptionPane.INFORMATION_MESSAGE);
-			return false;
-		}
+	private void registerCompareFilesListener() {
+		ActionListener actionCompareFiles = new ActionListener() {
+			public void actionPerformed(ActionEvent actionEvent) {
+				if (currentArchive != null || selectedFile == null || !selectedFile.isFile()) {
+					JOptionPane.showMessageDialog(view.getFrame(), "ERROR! Select a file to compare.", "WARNING",
+							JOptionPane.ERROR_MESSAGE);
+					return;
+				}
+				JFileChooser chooser = new JFileChooser(currentFolder);
+				chooser.setDialogTitle("Compare `" + selectedFile.getName() + "` with...");
+				chooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
+				if (chooser.showOpenDialog(view.getFrame()) == JFileChooser.APPROVE_OPTION) {
+					new DiffWindow(view.getFrame(), selectedFile, chooser.getSelectedFile());
+				}
+			}
+		};
+		view.getMntmCompareFiles().addActionListener(actionCompareFiles);
 	}
 
     /**
-     * Changes the current folder shown in the explorer and rebuilds the list.
-     * If the folder is invalid, clears the list and shows "No folder selected".
-     * @param folder File folder to display
+     * Registers the "Tools &gt; Jobs..." listener.
+     * <p>Shows the jobs window with the queued, running and finished background operations.</p>
+     * @see JobsWindow
      */
-	private void changeDirectory(File folder) {
-		// UPDATES ROUTE PATH ON TOP
-		disableAllButtons();
-		if (!utilities.isValidFolder(folder)) {
-			view.getlLblFilePath().setText("No folder selected");
-			view.getListExplorer().setModel(new DefaultListModel<>());
-			return;
-		}
-		view.getlLblFilePath().setText(folder.getAbsolutePath());
-
-		// UPDATES FILES LIST ON THE LEFT
-		currentFolder = folder;
-		File[] files = utilities.listFilesInFolder(folder);
-		DefaultListModel<String> list = new DefaultListModel<>();
-
-		if (folder.getParentFile() != null) {
-			list.addElement("../");
-		}
-		for (File file : files) {
-			list.addElement(file.isDirectory() ? "./" + file.getName() : file.getName());
-		}
-
-		view.getListExplorer().setModel(list);
+	private void registerJobsListener() {
+		ActionListener actionJobs = new ActionListener() {
+			public void actionPerformed(ActionEvent actionEvent) {
+				getJobsWindow().show(view.getFrame());
+			}
+		};
+		view.getMntmJobs().addActionListener(actionJobs);
 	}
 
     /**
-     * Loads a file into the JTextPane.
-     * @param filePath a readable file
+     * Registers the "Tools &gt; Diagnostics..." listener.
+     * <p>Shows the latency, work and EDT time of every operation timed so far.</p>
+     * @see Metrics
+     * @see DiagnosticsWindow
      */
-	private void displayFileContent(File filePath) {
-		ArrayList<String> lines = utilities.fileContent(filePath);
-		String fullContent = "";
-		for (String line : lines) {
-			fullContent = fullContent + line + "\n";
-		}
-		view.getTextPaneAreaContent().setText(fullContent);
+	private void registerDiagnosticsListener() {
+		ActionListener actionDiagnostics = new ActionListener() {
+			public void actionPerformed(ActionEvent actionEvent) {
+				getDiagnosticsWindow().show(view.getFrame());
+			}
+		};
+		view.getMntmDiagnostics().addActionListener(actionDiagnostics);
 	}
 
     /**
-     * Highlights and bolds all occurrences of {@code searchText} in {@code textPane}.
-     * If {@code searchText} is null/empty, clears previous highlights.
-     * @param textPane the text component to operate on
-     * @param searchText the text to search and highlight
+     * Registers the "Sort" menu listeners: the settings are kept in the session and the current folder is sorted
+     * again from its cached listing.
+     * @see ListingCache#sort(ListingCache.Entry[], ListingCache.SortKey, boolean, boolean)
      */
-	private void highlightSearchText(JTextPane textPane, String searchText) {
-		Highlighter highlighter = textPane.getHighlighter();
-		StyledDocument doc = textPane.getStyledDocument();
-		String content = textPane.getText();
-
-		resetHighlight(textPane, doc, highlighter);
-		if (searchText == null || searchText.isEmpty())
-			return;
-
-		if (!content.contains(searchText)) {
-			JOptionPane.showMessageDialog(view.getFrame(), "No matches found.", "INFO",
-					JOptionPane.INFORMATION_MESSAGE);
-			return;
-		}
+	private void registerSortListeners() {
+		ActionListener actionSort = new ActionListener() {
+			public void actionPerformed(ActionEvent actionEvent) {
+				ListingCache.SortKey key = ListingCache.SortKey.NAME;
+				if (view.getRdbtnmntmSortSize().isSelected())
+					key = ListingCache.SortKey.SIZE;
+				else if (view.getRdbtnmntmSortModified().isSelected())
+					key = ListingCache.SortKey.MODIFIED;
+				session.setSort(key, view.getChckbxmntmDescending().isSelected(),
+						view.getChckbxmntmFoldersFirst().isSelected());
+				session.save();
+				if (currentFolder != null && currentArchive == null)
+					changeDirectory(currentFolder);
+			}
+		};
+		view.getRdbtnmntmSortName().addActionListener(actionSort);
+		view.getRdbtnmntmSortSize().addActionListener(actionSort);
+		view.getRdbtnmntmSortModified().addActionListener(actionSort);
+		view.getChckbxmntmDescending().addActionListener(actionSort);
+		view.getChckbxmntmFoldersFirst().addActionListener(actionSort);
+	}
 
-		int index = content.indexOf(searchText);
+    /**
+     * Shows the sort settings of the session in the "Sort" menu.
+     */
+	private void updateSortMenu() {
+		ListingCache.SortKey key = session.getSortKey();
+		view.getRdbtnmntmSortName().setSelected(key == ListingCache.SortKey.NAME);
+		view.getRdbtnmntmSortSize().setSelected(key == ListingCache.SortKey.SIZE);
+		view.getRdbtnmntmSortModified().setSelected(key == ListingCache.SortKey.MODIFIED);
+		view.getChckbxmntmDescending().setSelected(session.isDescending());
+		view.getChckbxmntmFoldersFirst().setSelected(session.isFoldersFirst());
+	}
 
-		Highlighter.HighlightPainter painter = new DefaultHighlighter.DefaultHighlightPainter(Color.YELLOW);
-		Style styleBold = textPane.addStyle("BoldStyle", null);
-		StyleConstants.setBold(styleBold, true);
+    /**
+     * Registers the window listener that writes the session when the app is closed.
+     * @see #saveSession()
+     */
+	private void registerSessionListener() {
+		view.getFrame().addWindowListener(new WindowAdapter() {
+			public void windowClosing(WindowEvent windowEvent) {
+				saveSession();
+			}
+		});
+	}
 
-		while (index >= 0) {
-			try {
-				doc.setCharacterAttributes(index, searchText.length(), styleBold, false);
-				highlighter.addHighlight(index, index + searchText.length(), painter);
-				index = content.indexOf(searchText, index + searchText.length());
-			} catch (Exception e) {
-				JOptionPane.showMessageDialog(view.getFrame(), e.getMessage(), "ERROR", JOptionPane.ERROR_MESSAGE);
+    /**
+     * Registers the listener that lists the folder (or parent) under the mouse when it rests on it, so pressing
+     * Explore, <code>&gt;</code> or Back after selecting it shows it from memory.
+     * @see #speculateListing(File)
+     */
+	private void registerHoverListener() {
+		hoverTimer = new Timer(HOVER_DELAY_MILLIS, new ActionListener() {
+			public void actionPerformed(ActionEvent actionEvent) {
+				if (hoveredFolder != null)
+					speculateListing(hoveredFolder);
+			}
+		});
+		hoverTimer.setRepeats(false);
+		MouseAdapter mouseHover = new MouseAdapter() {
+			public void mouseMoved(MouseEvent mouseEvent) {
+				File folder = folderAt(mouseEvent.getPoint());
+				if (folder == null) {
+					hoveredFolder = null;
+					hoverTimer.stop();
+				} else if (!folder.equals(hoveredFolder)) {
+					hoveredFolder = folder;
+					hoverTimer.restart();
+				}
 			}
-		}
 
+			public void mouseExited(MouseEvent mouseEvent) {
+				hoveredFolder = null;
+				hoverTimer.stop();
+			}
+		};
+		view.getListExplorer().addMouseMotionListener(mouseHover);
+		view.getListExplorer().addMouseListener(mouseHover);
 	}
 
     /**
-     * Clears all highlights and sets non-bold.
+     * @param point a point of the explorer list
+     * @return the folder listed there, its parent for "../", or null for a file, an archive entry or no row
+     */
+	private File folderAt(Point point) {
+		JList<String> list = view.getListExplorer();
+		int row = list.locationToIndex(point);
+		if (row < 0 || currentFolder == null || currentArchive != null)
+			return null;
+		Rectangle cell = list.getCellBounds(row, row);
+		if (cell == null || !cell.contains(point))
+			return null;
+		String name = list.getModel().getElementAt(row);
+		if (name.equals("../"))
+			return currentFolder.getParentFile();
+		return name.startsWith("./") ? new File(currentFolder, name.substring(2)) : null;
+	}
+
+    /**
+     * Lists a folder that's probably opened next, and its subfolders visited most, in the background.
+     * @param folder the folder
+     * @see ListingCache#speculate(File, java.util.Collection)
+     */
+	private void speculateListing(File folder) {
+		listingCache.speculate(folder, session.getFrequentSubfolders(folder, SPECULATED_SUBFOLDERS));
+	}
+
+    /**
+     * Registers the filter field and mode listeners: the list is filtered as the query is typed, Esc clears it and
+     * Enter selects the first match.
+     * @see #runFilter()
+     */
+	private void registerFilterListeners() {
+		view.getTextFieldFilter().getDocument().addDocumentListener(new DocumentListener() {
+			public void insertUpdate(DocumentEvent documentEvent) {
+				if (!clearingFilter)
+					runFilter();
+			}
+
+			public void removeUpdate(DocumentEvent documentEvent) {
+				if (!clearingFilter)
+					runFilter();
+			}
+
+			public void changedUpdate(DocumentEvent documentEvent) {
+				// Attributes only
+			}
+		});
+		view.getComboFilterMode().addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent actionEvent) {
+				runFilter();
+			}
+		});
+		view.getTextFieldFilter().addKeyListener(new KeyAdapter() {
+			public void keyPressed(KeyEvent keyEvent) {
+				if (keyEvent.getKeyCode() == KeyEvent.VK_ESCAPE) {
+					view.getTextFieldFilter().setText("");
+				} else if (keyEvent.getKeyCode() == KeyEvent.VK_ENTER) {
+					JList<String> list = view.getListExplorer();
+					int first = list.getModel().getSize() > 0 && "../".equals(list.getModel().getElementAt(0)) ? 1 : 0;
+					if (first < list.getModel().getSize()) {
+						list.setSelectedIndex(first);
+						list.ensureIndexIsVisible(first);
+					}
+					list.requestFocusInWindow();
+				}
+			}
+		});
+	}
+
+	// =========
+	// SELECTION LISTENERS
+	// =========
+
+    /**
+     * Registers the "Selection" menu listeners: copy/move to another folder, bulk rename and delete every
+     * selected entry as one batch job, and undo of the last bulk rename.
+     * @see BatchOperations
+     * @see BulkRenameDialog
+     */
+	private void registerSelectionListeners() {
+		view.getMntmCopySelection().addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent actionEvent) {
+				if (!hasSelection())
+					return;
+				File target = chooseFolder("Copy " + selectedFiles.size() + " items to...");
+				if (target != null) {
+					submitJob("Copy " + selectedFiles.size() + " items to `" + target.getName() + "`", target,
+							BatchOperations.copy(selectedFiles, target), BatchOperations.PARALLELISM,
+							selectedFiles.size() + " items copied successfully.", "COPY", null);
+				}
+			}
+		});
+		view.getMntmMoveSelection().addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent actionEvent) {
+				if (!hasSelection())
+					return;
+				File target = chooseFolder("Move " + selectedFiles.size() + " items to...");
+				if (target != null && isSudoConfirmation()) {
+					submitJob("Move " + selectedFiles.size() + " items to `" + target.getName() + "`", target,
+							BatchOperations.move(selectedFiles, target), BatchOperations.PARALLELISM,
+							selectedFiles.size() + " items moved successfully.", "MOVE",
+							recordOnSuccess(FileHistory.moved(selectedFiles, target)));
+				}
+			}
+		});
+		view.getMntmRenameSelection().addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent actionEvent) {
+				if (!hasSelection())
+					return;
+				final File folder = currentFolder;
+				new BulkRenameDialog(view.getFrame(), selectedFiles, new BulkRenameDialog.RenameListener() {
+					public void renameConfirmed(List<BulkRename.Rename> renames) {
+						if (isSudoConfirmation()) {
+							submitJob("Rename " + renames.size() + " items", folder, bulkRename.execute(renames),
+									BatchOperations.PARALLELISM, "Items renamed successfully.", "INFO", null);
+						}
+					}
+				});
+			}
+		});
+		view.getMntmUndoRename().addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent actionEvent) {
+				File journal = bulkRename.getLastJournal();
+				if (journal == null) {
+					JOptionPane.showMessageDialog(view.getFrame(), "There is no bulk rename to undo.", "INFO",
+							JOptionPane.INFORMATION_MESSAGE);
+					return;
+				}
+				if (isSudoConfirmation()) {
+					submitJob("Undo bulk rename " + journal.getName(), currentFolder, bulkRename.undo(journal),
+							BatchOperations.PARALLELISM, "Bulk rename undone successfully.", "INFO", null);
+				}
+			}
+		});
+		view.getMntmDeleteSelection().addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent actionEvent) {
+				if (hasSelection())
+					deleteSelection();
+			}
+		});
+		view.getMntmPermissionsSelection().addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent actionEvent) {
+				if (hasSelection())
+					changePermissions(selectedFiles);
+			}
+		});
+	}
+
+    /**
+     * Asks for new permissions, owner and/or group, filled in with those of the first entry, and changes them as a
+     * job, recursively if asked. Reports how many entries changed, were already as wanted, or failed.
+     * @param files the selected entries
+     * @see Permissions.Change
+     */
+	private void changePermissions(final List<File> files) {
+		final String description = files.size() == 1 ? "`" + files.get(0).getName() + "`" : files.size() + " items";
+		PosixFileAttributes current;
+		try {
+			current = Files.readAttributes(files.get(0).toPath(), PosixFileAttributes.class);
+		} catch (IOException | UnsupportedOperationException e) {
+			JOptionPane.showMessageDialog(view.getFrame(), "ERROR! Can't read the permissions of "
+					+ files.get(0).getName() + ": " + e.getMessage(), "WARNING", JOptionPane.ERROR_MESSAGE);
+			return;
+		}
+		String permissions = PosixFilePermissions.toString(current.permissions());
+		JTextField fieldMode = new JTextField(permissions);
+		JTextField fieldOwner = new JTextField(current.owner().getName());
+		JTextField fieldGroup = new JTextField(current.group().getName());
+		JCheckBox checkRecursive = new JCheckBox("Also everything inside folders");
+		JPanel panel = new JPanel(new GridLayout(0, 2, 6, 4));
+		panel.add(new JLabel("Mode (755, rwxr-x---, u+x,go-w, a+rX):"));
+		panel.add(fieldMode);
+		panel.add(new JLabel("Owner:"));
+		panel.add(fieldOwner);
+		panel.add(new JLabel("Group:"));
+		panel.add(fieldGroup);
+		panel.add(checkRecursive);
+		if (JOptionPane.showConfirmDialog(view.getFrame(), panel, "PERMISSIONS OF " + description.toUpperCase(),
+				JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE) != JOptionPane.OK_OPTION)
+			return;
+
+		// Only what was edited changes, so a recursive change of the mode leaves the owners alone
+		Permissions.Mode mode;
+		try {
+			mode = fieldMode.getText().trim().equals(permissions) ? null : Permissions.Mode.parse(fieldMode.getText());
+		} catch (IllegalArgumentException e) {
+			JOptionPane.showMessageDialog(view.getFrame(), "ERROR! " + e.getMessage(), "WARNING",
+					JOptionPane.ERROR_MESSAGE);
+			return;
+		}
+		String owner = edited(fieldOwner, current.owner().getName());
+		String group = edited(fieldGroup, current.group().getName());
+		boolean recursive = checkRecursive.isSelected();
+		if (mode == null && owner == null && group == null)
+			return; // nothing edited
+		if (!isSudoConfirmation())
+			return;
+		final Permissions.Change change = new Permissions.Change(files, mode, owner, group, recursive);
+		submitJob("Permissions of " + description, currentFolder, change, Permissions.PARALLELISM, null, null,
+				new JobManager.JobListener() {
+					public void jobFinished(JobManager.Job job) {
+						if (job.getState() == JobManager.State.CANCELED)
+							return;
+						List<JobManager.Failure> failures = job.getFailures();
+						String message = change.getChanged() + " entries changed, " + change.getUnchanged()
+								+ " already as wanted, " + failures.size() + " failed.";
+						if (failures.isEmpty()) {
+							JOptionPane.showMessageDialog(view.getFrame(), message, "PERMISSIONS",
+									JOptionPane.INFORMATION_MESSAGE);
+						} else {
+							JOptionPane.showMessageDialog(view.getFrame(), "ERROR! " + failures.get(0).getMessage()
+									+ "\n" + message + "\n(see Tools > Jobs... to retry)", "WARNING",
+									JOptionPane.ERROR_MESSAGE);
+						}
+					}
+				});
+	}
+
+	private static String edited(JTextField field, String original) {
+		String text = field.getText().trim();
+		return text.isEmpty() || text.equals(original) ? null : text;
+	}
+
+	// =========
+	// EDITOR LISTENERS
+	// =========
+
+    /**
+     * Registers the "Editor" menu listeners: "Go to line..." (Ctrl+G) and, for a file shown a page at a time, the
+     * previous and next page (Alt+PageUp, Alt+PageDown).
+     * <p>Go to line asks for a line number and moves the caret to it, centering it in the editor; a line of another
+     * page shows that page first.</p>
+     * @see LineIndex#startOf(int)
+     * @see FilePager#pageOfLine(int)
+     */
+	private void registerEditorListeners() {
+		view.getMntmGoToLine().addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent actionEvent) {
+				LineIndex index = view.getLineNumberGutter().getIndex();
+				if (index == null || loadingFile != null) {
+					JOptionPane.showMessageDialog(view.getFrame(), "Show a text file first.", "INFO",
+							JOptionPane.INFORMATION_MESSAGE);
+					return;
+				}
+				int lineCount = pager != null ? pager.getLineCount() : index.getLineCount();
+				String input = JOptionPane.showInputDialog(view.getFrame(),
+						"Line number (1 - " + lineCount + "):", "GO TO LINE", JOptionPane.QUESTION_MESSAGE);
+				if (input == null)
+					return;
+				int line;
+				try {
+					line = Integer.parseInt(input.trim());
+				} catch (NumberFormatException e) {
+					line = 0;
+				}
+				if (line < 1 || line > lineCount) {
+					JOptionPane.showMessageDialog(view.getFrame(),
+							"ERROR! Enter a line number between 1 and " + lineCount + ".", "WARNING",
+							JOptionPane.ERROR_MESSAGE);
+					return;
+				}
+				if (pager == null) {
+					goToLine(index.startOf(line - 1));
+					return;
+				}
+				int linePage = pager.pageOfLine(line - 1);
+				if (linePage == page)
+					goToLine(index.startOf(line - 1 - pager.getFirstLine(page)));
+				else
+					displayPage(linePage, line - 1);
+			}
+		});
+		view.getMntmPreviousPage().addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent actionEvent) {
+				if (pager != null && loadingFile == null && page > 0)
+					displayPage(page - 1, -1);
+			}
+		});
+		view.getMntmNextPage().addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent actionEvent) {
+				if (pager != null && loadingFile == null && page < pager.getPageCount() - 1)
+					displayPage(page + 1, -1);
+			}
+		});
+	}
+
+    /**
+     * Moves the caret to an offset and scrolls so its line is in the middle of the editor.
+     * @param offset the start of the line
+     */
+	private void goToLine(int offset) {
+		JTextPane textPane = view.getTextPaneAreaContent();
+		offset = Math.min(offset, textPane.getDocument().getLength());
+		textPane.setCaretPosition(offset);
+		try {
+			Rectangle2D bounds = textPane.modelToView2D(offset);
+			Rectangle visible = textPane.getVisibleRect();
+			if (bounds != null) {
+				textPane.scrollRectToVisible(new Rectangle(visible.x,
+						Math.max(0, (int) bounds.getY() - visible.height / 2), visible.width, visible.height));
+			}
+		} catch (BadLocationException e) {
+			// Caret already moved
+		}
+		textPane.requestFocusInWindow();
+	}
+
+	// =========
+	// HISTORY LISTENERS
+	// =========
+
+    /**
+     * Registers the "History" menu listeners: undo and redo of the last file operation, and emptying the trash.
+     * <p>Undo and redo run as jobs; the edit moves to the other stack only when its job succeeds.</p>
+     * @see FileHistory
+     */
+	private void registerHistoryListeners() {
+		view.getMntmUndo().addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent actionEvent) {
+				final FileHistory.Edit edit = history.popUndo();
+				if (edit == null)
+					return;
+				updateHistoryMenu();
+				submitJob("Undo " + edit.getName(), currentFolder, edit.undo(), BatchOperations.PARALLELISM,
+						"Undone: " + edit.getName(), "UNDO", new JobManager.JobListener() {
+							public void jobFinished(JobManager.Job job) {
+								history.undone(edit, job.getState() == JobManager.State.DONE);
+								updateHistoryMenu();
+							}
+						});
+			}
+		});
+		view.getMntmRedo().addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent actionEvent) {
+				final FileHistory.Edit edit = history.popRedo();
+				if (edit == null)
+					return;
+				updateHistoryMenu();
+				submitJob("Redo " + edit.getName(), currentFolder, edit.redo(), BatchOperations.PARALLELISM,
+						"Redone: " + edit.getName(), "REDO", new JobManager.JobListener() {
+							public void jobFinished(JobManager.Job job) {
+								history.redone(edit, job.getState() == JobManager.State.DONE);
+								updateHistoryMenu();
+							}
+						});
+			}
+		});
+		view.getMntmEmptyTrash().addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent actionEvent) {
+				int result = JOptionPane.showConfirmDialog(view.getFrame(),
+						"Delete everything in the trash for good? Deletions can't be undone afterwards.",
+						"EMPTY TRASH", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE);
+				if (result == JOptionPane.YES_OPTION && isSudoConfirmation()) {
+					submitJob("Empty trash", new File(System.getProperty("user.home")), new JobManager.Operation() {
+						public String getName() {
+							return "Empty trash";
+						}
+
+						public void run(JobManager.Job job) throws IOException {
+							trash.empty();
+						}
+					}, "Trash emptied.", "EMPTY TRASH", null);
+				}
+			}
+		});
+	}
+
+    // =========================
+    // UI enablers & helpers
+    // =========================
+
+    /**
+     * Enables/disables folder-related buttons as a group.
+     * @param isEnabled whether the buttons should be enabled
+     * */
+	public void setButtonsFolderEnable(boolean isEnabled) {
+		view.getBtnExploreFolder().setEnabled(isEnabled);
+		view.getBtnExploreFwd().setEnabled(isEnabled);
+		view.getBtnRenameFolder().setEnabled(isEnabled);
+		view.getBtnDeleteFolder().setEnabled(isEnabled);
+	}
+
+    /**
+     * Enables/disables file-related buttons as a group.
+     * @param isEnabled whether the buttons should be enabled
+     * */
+	public void setButtonsFileEnable(boolean isEnabled) {
+		view.getBtnShowFile().setEnabled(isEnabled);
+		view.getBtnRenameFile().setEnabled(isEnabled);
+		view.getBtnCopyFile().setEnabled(isEnabled);
+		view.getBtnDeleteFile().setEnabled(isEnabled);
+		view.getTglBtnEditFile().setEnabled(isEnabled);
+	}
+
+	 /**
+	  * Enables/disables edit controls and the text area’s editability.
+	  * @param isEnabled whether the edit controls should be enabled
+	  * */
+	public void setButtonsEditEnable(boolean isEnabled) {
+		isEnabled = isEnabled && loadingFile == null; // never edit or save the loading message
+		boolean isWritable = isEnabled && pager == null; // a page of a bigger file is only searched
+		view.getTextPaneAreaContent().setEditable(isWritable);
+		view.getBtnSearchText().setEnabled(isEnabled);
+		view.getBtnReplaceText().setEnabled(isWritable);
+		view.getBtnSave().setEnabled(isWritable);
+		view.getTextFieldSearch().setEnabled(isEnabled);
+		view.getTextFieldReplace().setEnabled(isWritable);
+	}
+
+	 /**
+	  * Disables all action buttons and clears the text area.
+	  * */
+	public void disableAllButtons() {
+		// Folders
+		view.getBtnExploreFolder().setEnabled(false);
+		view.getBtnExploreFwd().setEnabled(false);
+		view.getBtnRenameFolder().setEnabled(false);
+		view.getBtnDeleteFolder().setEnabled(false);
+		// Files
+		view.getBtnShowFile().setEnabled(false);
+		view.getBtnRenameFile().setEnabled(false);
+		view.getBtnCopyFile().setEnabled(false);
+		view.getBtnDeleteFile().setEnabled(false);
+		loadingFile = null;
+		shownFile = null;
+		setPager(null, 0);
+		showText("", null, SyntaxLexer.Language.PLAIN);
+		// File Edit
+		view.getTglBtnEditFile().setEnabled(false);
+		view.getTextPaneAreaContent().setEditable(false);
+		view.getBtnSearchText().setEnabled(false);
+		view.getBtnReplaceText().setEnabled(false);
+		view.getBtnSave().setEnabled(false);
+		view.getTextFieldSearch().setEnabled(false);
+		view.getTextFieldReplace().setEnabled(false);
+	}
+
+    /**
+     * Asks the user to type "sudo" to confirm an action.
+     * @return {@code true} if user typed exactly "sudo"; {@code false} otherwise.
+     */
+	public boolean isSudoConfirmation() {
+		String input = JOptionPane.showInputDialog(view.getFrame(), "To confirm write \"sudo\":", "CONFIRM OPERATION",
+				JOptionPane.WARNING_MESSAGE);
+		if ("sudo".equals(input)) {
+			return true;
+		} else {
+			JOptionPane.showMessageDialog(view.getFrame(), "Operation cancelled.", "INFO",
+					JOptionPane.INFORMATION_MESSAGE);
+			return false;
+		}
+	}
+
+    /**
+     * Changes the current folder shown in the explorer and rebuilds the list.
+     * If the folder is invalid, clears the list and shows "No folder selected".
+     * <p>A small folder listed already is shown right away; any other is listed and sorted off the EDT, and shown
+     * unless another folder or archive is opened meanwhile.</p>
+     * @param folder File folder to display
+     */
+	private void changeDirectory(final File folder) {
+		pendingListing = null; // if still listing, that folder won't be shown
+		if (!utilities.isValidFolder(folder)) {
+			resetExplorer();
+			view.getlLblFilePath().setText("No folder selected");
+			showEntries(new DefaultListModel<String>(), false);
+			return;
+		}
+		ListingCache.Listing cached = listingCache.getIfFresh(folder);
+		if (cached != null && cached.getEntries().length <= MAX_SYNC_LISTING_ENTRIES) {
+			showDirectory(folder, listEntries(cached));
+			return;
+		}
+		view.getlLblFilePath().setText("Loading " + folder.getAbsolutePath() + "...");
+		pendingListing = new SwingWorker<DefaultListModel<String>, Void>() {
+			protected DefaultListModel<String> doInBackground() throws Exception {
+				return listEntries(listingCache.list(folder));
+			}
+
+			protected void done() {
+				if (pendingListing != this)
+					return; // another folder was opened meanwhile
+				pendingListing = null;
+				try {
+					showDirectory(folder, get());
+				} catch (Exception e) {
+					changeDirectory(null);
+				}
+			}
+		};
+		pendingListing.execute();
+	}
+
+    /**
+     * Lists the current folder again, even if its date didn't change, e.g. after an operation in it.
+     */
+	private void refreshDirectory() {
+		listingCache.invalidate(currentFolder);
+		changeDirectory(currentFolder);
+	}
+
+    /**
+     * Builds the explorer entries of a listing in the order of the sort settings. Can run off the EDT.
+     * @param listing the folder's listing
+     * @return "../" unless it's a root, then "./name" for folders and "name" for files
+     */
+	private DefaultListModel<String> listEntries(ListingCache.Listing listing) {
+		Metrics.Span span = Metrics.start("ui.listEntries");
+		ListingCache.Entry[] entries = listing.getEntries().clone();
+		ListingCache.sort(entries, session.getSortKey(), session.isDescending(), session.isFoldersFirst());
+		DefaultListModel<String> list = new DefaultListModel<>();
+
+		if (listing.getFolder().getParent() != null) {
+			list.addElement("../");
+		}
+		for (ListingCache.Entry entry : entries) {
+			list.addElement(entry.isDirectory() ? "./" + entry.getName() : entry.getName());
+		}
+		span.end(entries.length, 0);
+		return list;
+	}
+
+    /**
+     * Shows a listed folder in the explorer.
+     * @param folder the folder
+     * @param list   its entries, see {@link #listEntries(ListingCache.Listing)}
+     */
+	private void showDirectory(File folder, DefaultListModel<String> list) {
+		boolean sameFolder = folder.equals(currentFolder) && currentArchive == null;
+		if (currentFolder != null && currentArchive == null && !isFiltered())
+			session.setScroll(currentFolder, view.getListExplorer().getFirstVisibleIndex());
+		// UPDATES ROUTE PATH ON TOP
+		resetExplorer();
+		view.getlLblFilePath().setText(folder.getAbsolutePath());
+
+		// UPDATES FILES LIST ON THE LEFT
+		currentFolder = folder;
+		thumbnails.clearPending();
+		cellRenderer.setFolder(folder);
+		showEntries(list, sameFolder);
+
+		if (!sameFolder)
+			session.visited(folder);
+		scrollListTo(session.getScroll(folder));
+		session.save();
+	}
+
+    /**
+     * Shows the entries of a listing in the explorer, filtered if the filter field has a query. A new listing
+     * (another folder or archive folder) clears the filter; the same one listed again, e.g. sorted, keeps it.
+     * @param list        the entries
+     * @param sameListing whether it's the listing shown, listed again
+     */
+	private void showEntries(DefaultListModel<String> list, boolean sameListing) {
+		if (!sameListing && isFiltered()) {
+			clearingFilter = true;
+			view.getTextFieldFilter().setText("");
+			clearingFilter = false;
+		}
+		listingTitle = view.getlLblFilePath().getText();
+		listModel = list;
+		String[] shown = new String[list.size()];
+		list.copyInto(shown);
+		quickFilter.setEntries(shown);
+		if (isFiltered()) {
+			runFilter();
+			return;
+		}
+		Metrics.Span span = Metrics.start("ui.setListModel");
+		view.getListExplorer().setModel(list);
+		span.end(list.size(), 0);
+	}
+
+    /**
+     * @return whether the explorer list is narrowed by a query
+     */
+	private boolean isFiltered() {
+		return !view.getTextFieldFilter().getText().isEmpty();
+	}
+
+    /**
+     * Filters the listing shown with the query of the filter field, or shows all of it when the field is empty.
+     * An invalid glob or expression turns the field red, with the error as its tooltip.
+     */
+	private void runFilter() {
+		JTextField field = view.getTextFieldFilter();
+		field.setForeground(Color.BLACK);
+		field.setToolTipText(FILTER_TIP);
+		if (listModel == null)
+			return;
+		if (!isFiltered()) {
+			quickFilter.cancel();
+			showFiltered(listModel, -1, -1, true);
+			return;
+		}
+		try {
+			quickFilter.filter((QuickFilter.Mode) view.getComboFilterMode().getSelectedItem(), field.getText());
+		} catch (PatternSyntaxException e) {
+			field.setForeground(Color.RED);
+			field.setToolTipText(e.getDescription());
+		}
+	}
+
+    /**
+     * Swaps the explorer model for a filtered one, keeping the selected entries that still match.
+     * @param model    the entries to show
+     * @param matches  how many match, or -1 when not filtered
+     * @param total    how many there are
+     * @param complete false when more matches follow
+     * @see QuickFilter.Listener
+     */
+	private void showFiltered(DefaultListModel<String> model, int matches, int total, boolean complete) {
+		JList<String> list = view.getListExplorer();
+		Set<String> selected = new HashSet<>(list.getSelectedValuesList());
+		Metrics.Span span = Metrics.start("ui.setListModel");
+		list.setModel(model);
+		span.end(model.size(), 0);
+		view.getlLblFilePath().setText(matches < 0 ? listingTitle : listingTitle + "   [" + matches + " of " + total
+				+ (complete ? "" : ", filtering...") + "]");
+		if (selected.isEmpty())
+			return;
+		List<Integer> rows = new ArrayList<>();
+		for (int row = 0; row < model.size() && rows.size() < selected.size(); row++) {
+			if (selected.contains(model.get(row)))
+				rows.add(row);
+		}
+		if (rows.size() == selected.size()) {
+			int[] indices = new int[rows.size()];
+			for (int i = 0; i < indices.length; i++)
+				indices[i] = rows.get(i);
+			keepingSelection = true; // same entries: the buttons, info and editor stay as they are
+			list.setSelectedIndices(indices);
+			keepingSelection = false;
+		} else if (!complete) {
+			// The selection may still be among the matches that follow
+		} else {
+			disableAllButtons();
+			selectedFiles = new ArrayList<>();
+			selectedEntry = null;
+			view.getBtnNewFolder().setEnabled(currentArchive == null && currentFolder != null);
+			view.getBtnNewFile().setEnabled(currentArchive == null && currentFolder != null);
+		}
+	}
+
+    /**
+     * Scrolls the explorer list so that a row is the first visible one, once the new model is laid out.
+     * @param row the row
+     */
+	private void scrollListTo(final int row) {
+		if (row <= 0)
+			return;
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				JList<String> list = view.getListExplorer();
+				if (row >= list.getModel().getSize())
+					return;
+				Rectangle cell = list.getCellBounds(row, row);
+				if (cell != null)
+					list.scrollRectToVisible(new Rectangle(0, cell.y, 1, list.getVisibleRect().height));
+			}
+		});
+	}
+
+	// Leaves the archive and clears the buttons, the selection and the info panel
+	private void resetExplorer() {
+		disableAllButtons();
+		currentArchive = null;
+		selectedEntry = null;
+		selectedFiles = new ArrayList<>();
+		view.getBtnNewFolder().setEnabled(true);
+		view.getBtnNewFile().setEnabled(true);
+		infoLoader.cancel();
+		view.getTextAreaInfo().setText("");
+	}
+
+    /**
+     * Submits a single-operation job and reports its outcome when it finishes.
+     * @see #submitJob(String, File, JobManager.Planner, int, String, String, JobManager.JobListener)
+     */
+	private void submitJob(String name, File location, final JobManager.Operation operation,
+			String successMessage, String successTitle, JobManager.JobListener after) {
+		submitJob(name, location, new JobManager.Planner() {
+			public List<JobManager.Operation> plan(JobManager.Job job) {
+				return Collections.singletonList(operation);
+			}
+		}, 1, successMessage, successTitle, after);
+	}
+
+    /**
+     * Submits a job to the {@link JobManager}. When it finishes the list is refreshed if it still shows the folder
+     * the job worked in, and the user gets the success message or the first failure.
+     * @param name           shown in the jobs window
+     * @param location       the folder or file the job works on, used to pick its device
+     * @param planner        produces the operations, off the EDT
+     * @param parallelism    operations run at once, 1 for one after the other
+     * @param successMessage shown when every operation succeeded; null when <code>after</code> reports the outcome
+     * @param successTitle   title of the success dialog
+     * @param after          also notified when the job finishes, e.g. to record it in the history; may be null
+     */
+	private void submitJob(String name, File location, JobManager.Planner planner, int parallelism,
+			final String successMessage, final String successTitle, final JobManager.JobListener after) {
+		final File folder = currentFolder;
+		jobManager.submit(name, location, planner, parallelism, new JobManager.JobListener() {
+			public void jobFinished(JobManager.Job job) {
+				if (stillShows(folder))
+					refreshDirectory();
+				if (after != null)
+					after.jobFinished(job);
+				if (successMessage == null)
+					return;
+				if (job.getState() == JobManager.State.DONE) {
+					JOptionPane.showMessageDialog(view.getFrame(), successMessage, successTitle,
+							JOptionPane.INFORMATION_MESSAGE);
+				} else if (job.getState() == JobManager.State.FAILED) {
+					List<JobManager.Failure> failures = job.getFailures();
+					String message = "ERROR! " + failures.get(0).getMessage();
+					if (failures.size() > 1)
+						message += "\n(" + failures.size() + " items failed, see Tools > Jobs... to retry)";
+					JOptionPane.showMessageDialog(view.getFrame(), message, "WARNING", JOptionPane.ERROR_MESSAGE);
+				}
+			}
+		});
+	}
+
+    /**
+     * @param folder the folder shown when a background task was started; null if there was none
+     * @return whether the list still shows it, so the task's results can be refreshed into it
+     */
+	private boolean stillShows(File folder) {
+		return folder != null && currentArchive == null && Objects.equals(folder, currentFolder);
+	}
+
+    /**
+     * Handles a selection of several entries: keeps them for the batch operations, enables Copy and Delete
+     * and shows a summary in the info panel. Nothing is read from disk.
+     * @param names the selected list entries
+     */
+	private void selectMultiple(List<String> names) {
+		selectedFiles = new ArrayList<>();
+		selectedFile = null;
+		int folderCount = 0;
+		for (String name : names) {
+			if (name.equals("../"))
+				continue;
+			if (name.startsWith("./"))
+				folderCount++;
+			selectedFiles.add(new File(currentFolder, name.replace("./", "")));
+		}
+		disableAllButtons();
+		view.getBtnCopyFile().setEnabled(true);
+		view.getBtnDeleteFile().setEnabled(true);
+		infoLoader.cancel();
+		view.getTextAreaInfo().setText("SELECTED: " + selectedFiles.size() + "\n"
+				+ "N. FILES: " + (selectedFiles.size() - folderCount) + "\n"
+				+ "N. FOLDERS: " + folderCount + "\n");
+	}
+
+	private boolean hasSelection() {
+		if (currentArchive != null || selectedFiles.isEmpty()) {
+			JOptionPane.showMessageDialog(view.getFrame(), "ERROR! Select one or more entries first.", "WARNING",
+					JOptionPane.ERROR_MESSAGE);
+			return false;
+		}
+		return true;
+	}
+
+	private File chooseFolder(String title) {
+		JFileChooser chooser = new JFileChooser(currentFolder);
+		chooser.setDialogTitle(title);
+		chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+		chooser.setAcceptAllFileFilterUsed(false);
+		if (chooser.showOpenDialog(view.getFrame()) != JFileChooser.APPROVE_OPTION)
+			return null;
+		return chooser.getSelectedFile();
+	}
+
+    /**
+     * Deletes every selected entry (folders with their content) as one batch job.
+     * @see #deleteEntries(List, String, String)
+     */
+	private void deleteSelection() {
+		deleteEntries(new ArrayList<>(selectedFiles), selectedFiles.size() + " items",
+				"Are you sure you want to delete these " + selectedFiles.size() + " items and all their content?");
+	}
+
+    /**
+     * Confirms and asks for sudo, then moves the entries to the trash (one rename each, undoable from the History
+     * menu) or deletes them permanently.
+     * @param files       the entries to delete
+     * @param description e.g. <code>`notes.txt`</code> or <code>3 items</code>
+     * @param question    the confirmation question
+     * @see Trash#moveToTrash(File)
+     * @see BatchOperations#delete(List)
+     */
+	private void deleteEntries(final List<File> files, final String description, String question) {
+		Object[] options = { "Move to trash", "Delete permanently", "Cancel" };
+		int result = JOptionPane.showOptionDialog(view.getFrame(), question, "CONFIRM DELETE",
+				JOptionPane.YES_NO_CANCEL_OPTION, JOptionPane.WARNING_MESSAGE, null, options, options[0]);
+		if (result == 0 && isSudoConfirmation()) {
+			final List<Trash.Item> items = Collections.synchronizedList(new ArrayList<Trash.Item>());
+			List<JobManager.Operation> operations = new ArrayList<>();
+			for (final File file : files) {
+				operations.add(new JobManager.Operation() {
+					public String getName() {
+						return file.getPath();
+					}
+
+					public void run(JobManager.Job job) throws IOException {
+						items.add(trash.moveToTrash(file));
+					}
+				});
+			}
+			submitJob("Trash " + description, currentFolder, JobManager.planOf(operations),
+					BatchOperations.PARALLELISM, "Moved " + description + " to the trash.", "FILE DELETE",
+					new JobManager.JobListener() {
+						public void jobFinished(JobManager.Job job) {
+							// A retry adds its own items, so each job records only what it trashed
+							List<Trash.Item> trashed;
+							synchronized (items) {
+								trashed = new ArrayList<>(items);
+								items.clear();
+							}
+							if (!trashed.isEmpty())
+								recordEdit(FileHistory.trashed(trash, trashed, "Delete " + description));
+						}
+					});
+		} else if (result == 1 && isSudoConfirmation()) {
+			submitJob("Delete " + description, currentFolder, BatchOperations.delete(files),
+					BatchOperations.PARALLELISM, description + " deleted succesfully.", "FILE DELETE", null);
+		}
+	}
+
+    /**
+     * @return a listener recording the edit in the history when the job succeeds
+     */
+	private JobManager.JobListener recordOnSuccess(final FileHistory.Edit edit) {
+		return new JobManager.JobListener() {
+			public void jobFinished(JobManager.Job job) {
+				if (job.getState() == JobManager.State.DONE)
+					recordEdit(edit);
+			}
+		};
+	}
+
+	private void recordEdit(FileHistory.Edit edit) {
+		history.add(edit);
+		updateHistoryMenu();
+	}
+
+    /**
+     * Shows the next undo/redo in the History menu, disabling the items when there is nothing to do.
+     */
+	private void updateHistoryMenu() {
+		FileHistory.Edit undo = history.peekUndo();
+		FileHistory.Edit redo = history.peekRedo();
+		view.getMntmUndo().setText(undo != null ? "Undo " + undo.getName() : "Undo");
+		view.getMntmUndo().setEnabled(undo != null);
+		view.getMntmRedo().setText(redo != null ? "Redo " + redo.getName() : "Redo");
+		view.getMntmRedo().setEnabled(redo != null);
+	}
+
+    /**
+     * Compresses a folder in the background with a cancellable progress monitor.
+     * @param folder the folder to pack
+     * @param target the archive to create
+     * @param format ZIP or TAR.GZ
+     * @param level  deflate level (1-9)
+     */
+	private void compressFolder(final File folder, final File target, final Compressor.Format format, int level) {
+		final Compressor compressor = new Compressor(level, Runtime.getRuntime().availableProcessors());
+		final ProgressMonitor monitor = new ProgressMonitor(view.getFrame(), "Compressing `" + folder.getName() + "`",
+				"", 0, 1000);
+		monitor.setMillisToDecideToPopup(200);
+		final File shown = currentFolder;
+		final long start = System.nanoTime();
+		new SwingWorker<Long, String>() {
+			protected Long doInBackground() throws Exception {
+				return compressor.compress(folder, target, format, new Compressor.ProgressListener() {
+					public void progress(long bytesDone, long bytesTotal, String entry) {
+						setProgress(bytesTotal == 0 ? 100 : (int) (bytesDone * 100 / bytesTotal));
+						publish(entry);
+					}
+				});
+			}
+
+			protected void process(List<String> entries) {
+				if (monitor.isCanceled()) {
+					cancel(true);
+					return;
+				}
+				monitor.setProgress(getProgress() * 10);
+				monitor.setNote(entries.get(entries.size() - 1));
+			}
+
+			protected void done() {
+				monitor.close();
+				if (isCancelled()) {
+					if (stillShows(shown))
+						refreshDirectory();
+					return;
+				}
+				try {
+					long size = get();
+					double seconds = Math.max(0.001, (System.nanoTime() - start) / 1e9);
+					if (stillShows(shown))
+						refreshDirectory();
+					JOptionPane.showMessageDialog(view.getFrame(),
+							String.format("`%s` created (%.2f MB) in %.1f s.", target.getName(),
+									size / (1024.0 * 1024), seconds),
+							"COMPRESS", JOptionPane.INFORMATION_MESSAGE);
+				} catch (Exception e) {
+					Throwable cause = (e.getCause() != null) ? e.getCause() : e;
+					if (stillShows(shown))
+						refreshDirectory();
+					JOptionPane.showMessageDialog(view.getFrame(), cause.getMessage(), "ERROR",
+							JOptionPane.ERROR_MESSAGE);
+				}
+			}
+		}.execute();
+	}
+
+    /**
+     * Computes every supported digest of a file in the background and shows them in the info panel.
+     * @param file the file to hash
+     */
+	private void hashSelectedFile(final File file) {
+		view.getTextAreaInfo().setText("Computing checksums of `" + file.getName() + "`...");
+		new SwingWorker<HashService.Result, Void>() {
+			protected HashService.Result doInBackground() throws Exception {
+				return getHashService().hashFile(file, EnumSet.allOf(HashService.Algorithm.class));
+			}
+
+			protected void done() {
+				if (!file.equals(selectedFile))
+					return;
+				try {
+					HashService.Result result = get();
+					String infoContent = utilities.infoFile(file);
+					for (HashService.Algorithm algorithm : HashService.Algorithm.values())
+						infoContent += algorithm.getDisplayName() + ": " + result.getDigest(algorithm) + "\n";
+					view.getTextAreaInfo().setText(infoContent);
+					view.getTextAreaInfo().setCaretPosition(0);
+				} catch (Exception e) {
+					Throwable cause = (e.getCause() != null) ? e.getCause() : e;
+					view.getTextAreaInfo().setText("");
+					JOptionPane.showMessageDialog(view.getFrame(), cause.getMessage(), "ERROR",
+							JOptionPane.ERROR_MESSAGE);
+				}
+			}
+		}.execute();
+	}
+
+    /**
+     * Hashes a folder in the background with a cancellable progress monitor, then offers to save the manifest.
+     * @param folder the folder to hash
+     */
+	private void hashFolder(final File folder) {
+		final ProgressMonitor monitor = new ProgressMonitor(view.getFrame(), "Hashing `" + folder.getName() + "`", "",
+				0, 1000);
+		monitor.setMillisToDecideToPopup(200);
+		final long start = System.nanoTime();
+		new SwingWorker<List<HashService.Result>, String>() {
+			protected List<HashService.Result> doInBackground() throws Exception {
+				return getHashService().hashFolder(folder, EnumSet.of(HashService.Algorithm.SHA256),
+						new HashService.ProgressListener() {
+							public void progress(int filesDone, int filesTotal, long bytesDone) {
+								setProgress(filesDone * 100 / Math.max(1, filesTotal));
+								publish(filesDone + " / " + filesTotal + " files");
+							}
+						});
+			}
+
+			protected void process(List<String> notes) {
+				if (monitor.isCanceled()) {
+					cancel(true);
+					return;
+				}
+				monitor.setProgress(getProgress() * 10);
+				monitor.setNote(notes.get(notes.size() - 1));
+			}
+
+			protected void done() {
+				monitor.close();
+				if (isCancelled())
+					return;
+				try {
+					List<HashService.Result> results = get();
+					long bytes = 0;
+					for (HashService.Result result : results)
+						bytes += result.getSize();
+					double seconds = Math.max(0.001, (System.nanoTime() - start) / 1e9);
+					int answer = JOptionPane.showConfirmDialog(view.getFrame(),
+							String.format("%d files hashed (%.2f MB/s).%nSave them as `%s` in `%s`?", results.size(),
+									bytes / (1024.0 * 1024) / seconds, HashService.MANIFEST_NAME, folder.getName()),
+							"CHECKSUMS", JOptionPane.YES_NO_OPTION, JOptionPane.QUESTION_MESSAGE);
+					if (answer == JOptionPane.YES_OPTION) {
+						getHashService().writeManifest(results, new File(folder, HashService.MANIFEST_NAME));
+						refreshDirectory();
+					}
+				} catch (Exception e) {
+					Throwable cause = (e.getCause() != null) ? e.getCause() : e;
+					JOptionPane.showMessageDialog(view.getFrame(), cause.getMessage(), "ERROR", JOptionPane.ERROR_MESSAGE);
+				}
+			}
+		}.execute();
+	}
+
+    /**
+     * Verifies a checksum manifest in the background with a cancellable progress monitor.
+     * @param manifest the manifest file
+     */
+	private void verifyManifest(final File manifest) {
+		final ProgressMonitor monitor = new ProgressMonitor(view.getFrame(), "Verifying `" + manifest.getName() + "`",
+				"", 0, 1000);
+		monitor.setMillisToDecideToPopup(200);
+		new SwingWorker<HashService.Verification, String>() {
+			protected HashService.Verification doInBackground() throws Exception {
+				return getHashService().verifyManifest(manifest, new HashService.ProgressListener() {
+					public void progress(int filesDone, int filesTotal, long bytesDone) {
+						setProgress(filesDone * 100 / Math.max(1, filesTotal));
+						publish(filesDone + " / " + filesTotal + " files");
+					}
+				});
+			}
+
+			protected void process(List<String> notes) {
+				if (monitor.isCanceled()) {
+					cancel(true);
+					return;
+				}
+				monitor.setProgress(getProgress() * 10);
+				monitor.setNote(notes.get(notes.size() - 1));
+			}
+
+			protected void done() {
+				monitor.close();
+				if (isCancelled())
+					return;
+				try {
+					HashService.Verification verification = get();
+					String report = "MATCHED: " + verification.getMatched() + "\n";
+					report += "MISMATCHED: " + verification.getMismatched().size() + "\n";
+					for (String path : verification.getMismatched())
+						report += "  " + path + "\n";
+					report += "MISSING: " + verification.getMissing().size() + "\n";
+					for (String path : verification.getMissing())
+						report += "  " + path + "\n";
+					view.getTextAreaInfo().setText(report);
+					view.getTextAreaInfo().setCaretPosition(0);
+					JOptionPane.showMessageDialog(view.getFrame(),
+							verification.isOk() ? "All files match." : "Verification FAILED, see the info panel.",
+							"VERIFY", verification.isOk() ? JOptionPane.INFORMATION_MESSAGE : JOptionPane.ERROR_MESSAGE);
+				} catch (Exception e) {
+					Throwable cause = (e.getCause() != null) ? e.getCause() : e;
+					JOptionPane.showMessageDialog(view.getFrame(), cause.getMessage(), "ERROR",
+							JOptionPane.ERROR_MESSAGE);
+				}
+			}
+		}.execute();
+	}
+
+    /**
+     * Compares two folders in the background, shows the dry-run report and offers to sync.
+     * @param source         the reference folder
+     * @param target         the folder to update
+     * @param compareContent whether same-size files are compared by hash
+     */
+	private void compareFolders(final File source, final File target, final boolean compareContent) {
+		view.getTextAreaInfo().setText("Comparing `" + source.getName() + "` with `" + target.getName() + "`...");
+		new SwingWorker<FolderSync.Comparison, Void>() {
+			protected FolderSync.Comparison doInBackground() throws Exception {
+				return getFolderSync().compare(source, target, compareContent);
+			}
+
+			protected void done() {
+				try {
+					FolderSync.Comparison comparison = get();
+					view.getTextAreaInfo().setText(comparison.report());
+					view.getTextAreaInfo().setCaretPosition(0);
+					if (comparison.filesToCopy() == 0 && comparison.count(FolderSync.Change.ADDED) == 0) {
+						JOptionPane.showMessageDialog(view.getFrame(), "Nothing to copy.", "COMPARE FOLDERS",
+								JOptionPane.INFORMATION_MESSAGE);
+						return;
+					}
+					int result = JOptionPane.showConfirmDialog(view.getFrame(),
+							"Copy " + comparison.filesToCopy() + " added/changed files to `" + target.getName()
+									+ "`?\nNothing will be deleted. The full report is in the info panel.",
+							"SYNC FOLDERS", JOptionPane.YES_NO_OPTION, JOptionPane.QUESTION_MESSAGE);
+					if (result == JOptionPane.YES_OPTION && isSudoConfirmation())
+						syncFolders(comparison);
+				} catch (Exception e) {
+					Throwable cause = (e.getCause() != null) ? e.getCause() : e;
+					view.getTextAreaInfo().setText("");
+					JOptionPane.showMessageDialog(view.getFrame(), cause.getMessage(), "ERROR",
+							JOptionPane.ERROR_MESSAGE);
+				}
+			}
+		}.execute();
+	}
+
+    /**
+     * Executes a one-way sync in the background with a cancellable progress monitor.
+     * @param comparison the comparison to apply
+     */
+	private void syncFolders(final FolderSync.Comparison comparison) {
+		final ProgressMonitor monitor = new ProgressMonitor(view.getFrame(),
+				"Syncing `" + comparison.getTarget().getName() + "`", "", 0, 1000);
+		monitor.setMillisToDecideToPopup(200);
+		final File folder = currentFolder;
+		new SwingWorker<FolderSync.SyncResult, String>() {
+			protected FolderSync.SyncResult doInBackground() throws Exception {
+				return getFolderSync().sync(comparison, new FolderSync.ProgressListener() {
+					public void progress(int filesDone, int filesTotal, String path) {
+						setProgress(filesDone * 100 / Math.max(1, filesTotal));
+						publish(path);
+					}
+				});
+			}
+
+			protected void process(List<String> paths) {
+				if (monitor.isCanceled()) {
+					cancel(true);
+					return;
+				}
+				monitor.setProgress(getProgress() * 10);
+				monitor.setNote(paths.get(paths.size() - 1));
+			}
+
+			protected void done() {
+				monitor.close();
+				if (stillShows(folder))
+					refreshDirectory();
+				if (isCancelled())
+					return;
+				try {
+					FolderSync.SyncResult result = get();
+					view.getTextAreaInfo().setText(result.report());
+					view.getTextAreaInfo().setCaretPosition(0);
+					JOptionPane.showMessageDialog(view.getFrame(), result.report(), "SYNC FOLDERS",
+							result.getErrors().isEmpty() ? JOptionPane.INFORMATION_MESSAGE : JOptionPane.ERROR_MESSAGE);
+				} catch (Exception e) {
+					Throwable cause = (e.getCause() != null) ? e.getCause() : e;
+					JOptionPane.showMessageDialog(view.getFrame(), cause.getMessage(), "ERROR",
+							JOptionPane.ERROR_MESSAGE);
+				}
+			}
+		}.execute();
+	}
+
+    // =========================
+    // Archives
+    // =========================
+
+    /**
+     * Opens an archive in the background (indexing a large TAR may take a while) and shows its root.
+     * @param archiveFile the ZIP/JAR/TAR file
+     * @see ArchiveBrowser#open(File)
+     */
+	private void openArchive(final File archiveFile) {
+		pendingListing = null; // if still listing, that folder won't be shown
+		view.getlLblFilePath().setText("Opening `" + archiveFile.getName() + "`...");
+		new SwingWorker<ArchiveBrowser.Archive, Void>() {
+			protected ArchiveBrowser.Archive doInBackground() throws Exception {
+				return archiveBrowser.open(archiveFile);
+			}
+
+			protected void done() {
+				try {
+					currentArchive = get();
+					changeArchiveDirectory("");
+				} catch (Exception e) {
+					Throwable cause = (e.getCause() != null) ? e.getCause() : e;
+					refreshDirectory();
+					JOptionPane.showMessageDialog(view.getFrame(), "Can't open the archive: " + cause.getMessage(),
+							"ERROR", JOptionPane.ERROR_MESSAGE);
+				}
+			}
+		}.execute();
+	}
+
+    /**
+     * Shows a folder of {@link #currentArchive} in the explorer. The listing comes from the archive index.
+     * @param folder the archive folder (<code>""</code> for the root, otherwise ending with <code>/</code>)
+     */
+	private void changeArchiveDirectory(String folder) {
+		disableAllButtons();
+		infoLoader.cancel();
+		thumbnails.clearPending();
+		view.getTextAreaInfo().setText("");
+		List<ArchiveBrowser.Entry> entries;
+		Metrics.Span span = Metrics.start("archive.list");
+		try {
+			entries = currentArchive.list(folder);
+			span.end(entries.size(), 0);
+		} catch (IOException e) {
+			span.end();
+			JOptionPane.showMessageDialog(view.getFrame(), e.getMessage(), "ERROR", JOptionPane.ERROR_MESSAGE);
+			return;
+		}
+		archiveFolder = folder;
+		selectedEntry = null;
+		view.getlLblFilePath().setText(currentArchive.getFile().getAbsolutePath() + "!/" + folder);
+
+		archiveEntries.clear();
+		DefaultListModel<String> list = new DefaultListModel<>();
+		list.addElement("../");
+		for (ArchiveBrowser.Entry entry : entries) {
+			archiveEntries.put(entry.getName(), entry);
+			list.addElement(entry.isDirectory() ? "./" + entry.getName() : entry.getName());
+		}
+		cellRenderer.setFolder(null);
+		view.getBtnNewFolder().setEnabled(false);
+		view.getBtnNewFile().setEnabled(false);
+		showEntries(list, false);
+	}
+
+    /**
+     * Goes up one folder inside the archive, or back to the folder containing the archive from its root.
+     */
+	private void exitArchiveFolder() {
+		if (archiveFolder.isEmpty()) {
+			changeDirectory(currentArchive.getFile().getAbsoluteFile().getParentFile());
+		} else {
+			changeArchiveDirectory(ArchiveBrowser.parentOf(archiveFolder));
+		}
+	}
+
+    /**
+     * Handles the selection of an explorer entry while browsing an archive.
+     * <p>Archives are read-only: folders enable Explore and files only enable Show.</p>
+     * @param name the selected list value
+     */
+	private void selectArchiveEntry(String name) {
+		if (name.equals("../")) {
+			exitArchiveFolder();
+			return;
+		}
+		boolean isFolder = name.startsWith("./");
+		if (isFolder)
+			name = name.substring(2);
+		selectedEntry = archiveFolder + name + (isFolder ? "/" : "");
+		disableAllButtons();
+		if (isFolder) {
+			view.getBtnExploreFolder().setEnabled(true);
+			view.getBtnExploreFwd().setEnabled(true);
+		} else {
+			view.getBtnShowFile().setEnabled(true);
+		}
+		ArchiveBrowser.Entry entry = archiveEntries.get(name);
+		String infoContent = "NAME: " + name + "\n";
+		infoContent += "ARCHIVE: " + currentArchive.getFile().getAbsolutePath() + "\n";
+		infoContent += "PATH: " + selectedEntry + "\n";
+		if (entry != null && !entry.isDirectory())
+			infoContent += "SIZE (bytes): " + entry.getSize() + "\n";
+		view.getTextAreaInfo().setText(infoContent);
+		view.getTextAreaInfo().setCaretPosition(0);
+	}
+
+    /**
+     * Streams a single archive entry into the JTextPane, decompressing only that entry.
+     * Content beyond {@link #MAX_ARCHIVE_PREVIEW_CHARS} is not shown.
+     * @param entryPath the entry to show
+     * @see ArchiveBrowser.Archive#open(String)
+     */
+	private void displayArchiveEntry(final String entryPath) {
+		final ArchiveBrowser.Archive archive = currentArchive;
+		loadingFile = null;
+		setPager(null, 0);
+		showText("Extracting `" + entryPath + "`...", null, SyntaxLexer.Language.PLAIN);
+		new SwingWorker<String, Void>() {
+			private LineIndex index;
+
+			protected String doInBackground() throws Exception {
+				StringBuilder content = new StringBuilder();
+				try (Reader reader = new InputStreamReader(archive.open(entryPath), StandardCharsets.UTF_8)) {
+					char[] buffer = new char[8192];
+					int count;
+					while ((count = reader.read(buffer)) > 0) {
+						content.append(buffer, 0, count);
+						if (content.length() >= MAX_ARCHIVE_PREVIEW_CHARS) {
+							content.setLength(MAX_ARCHIVE_PREVIEW_CHARS);
+							content.append("\n[...]");
+							break;
+						}
+					}
+				}
+				String text = content.toString().replace("\r\n", "\n").replace('\r', '\n'); // as the document stores it
+				index = LineIndex.of(text);
+				return text;
+			}
+
+			protected void done() {
+				if (archive != currentArchive || !entryPath.equals(selectedEntry))
+					return;
+				try {
+					showText(get(), index, SyntaxLexer.Language.forFile(entryPath));
+				} catch (Exception e) {
+					Throwable cause = (e.getCause() != null) ? e.getCause() : e;
+					showText("", null, SyntaxLexer.Language.PLAIN);
+					JOptionPane.showMessageDialog(view.getFrame(), cause.getMessage(), "ERROR",
+							JOptionPane.ERROR_MESSAGE);
+				}
+			}
+		}.execute();
+	}
+
+    /**
+     * Shows the info of {@code file} in the info panel.
+     * <p>The info is computed by {@link InfoLoader} on a worker thread; a cached block is shown right away,
+     * otherwise a placeholder is shown until the result arrives. Moving the selection cancels the request.</p>
+     * @param file the selected file or folder
+     * @see Utilities#infoDirectory(File)
+     * @see Utilities#infoFile(File)
+     */
+	private void showSelectionInfo(File file) {
+		String cached = infoLoader.request(file, new InfoLoader.InfoListener() {
+			public void infoLoaded(File loadedFile, String info) {
+				view.getTextAreaInfo().setText(info);
+				view.getTextAreaInfo().setCaretPosition(0);
+			}
+		});
+		view.getTextAreaInfo().setText(cached != null ? cached : "Loading info of `" + file.getName() + "`...");
+		view.getTextAreaInfo().setCaretPosition(0);
+	}
+
+    /**
+     * Loads a file into the JTextPane in the background, indexing its lines there too, then shows it with a new
+     * undo history, line numbers and the highlighting of its extension. Edit controls stay off while it loads.
+     * <p>A file over {@link FilePager#PAGE_BYTES} is shown a page at a time and can be searched but not edited.
+     * Images are shown as a preview decoded in the background.</p>
+     * @param filePath a readable file
+     * @see ThumbnailCache#requestPreview(File, int, ThumbnailCache.ThumbnailListener)
+     */
+	private void displayFileContent(final File filePath) {
+		if (ThumbnailCache.isImage(filePath.getName())) {
+			displayImagePreview(filePath);
+			return;
+		}
+		loadingFile = filePath;
+		setPager(null, 0);
+		setButtonsEditEnable(false);
+		showText("Loading `" + filePath.getName() + "`...", null, SyntaxLexer.Language.PLAIN);
+		new SwingWorker<String, Void>() {
+			private FilePager filePager;
+			private LineIndex index;
+
+			protected String doInBackground() throws Exception {
+				String content;
+				if (FilePager.needsPaging(Files.size(filePath.toPath()))) {
+					filePager = FilePager.of(filePath.toPath());
+					content = filePager.read(0);
+				} else {
+					content = utilities.readText(filePath);
+				}
+				index = LineIndex.of(content);
+				return content;
+			}
+
+			protected void done() {
+				if (loadingFile != filePath)
+					return;
+				String content;
+				try {
+					content = get();
+				} catch (Exception e) {
+					Throwable cause = (e.getCause() != null) ? e.getCause() : e;
+					loadingFile = null;
+					showText("", null, SyntaxLexer.Language.PLAIN);
+					JOptionPane.showMessageDialog(view.getFrame(),
+							"ERROR! Could not read `" + filePath.getName() + "`: " + cause.getMessage(),
+							"WARNING", JOptionPane.ERROR_MESSAGE);
+					setButtonsEditEnable(view.getTglBtnEditFile().isSelected() && view.getTglBtnEditFile().isEnabled());
+					return;
+				}
+				setPager(filePager, 0);
+				showText(content, index, 0, SyntaxLexer.Language.forFile(filePath.getName()), new Runnable() {
+					public void run() {
+						loadingFile = null;
+						shownFile = filePath;
+						int caret = 0;
+						if (filePath.equals(restoreFile) && filePager == null) {
+							caret = Math.min(restoreCaret, view.getTextPaneAreaContent().getDocument().getLength());
+							view.getTextPaneAreaContent().setCaretPosition(caret);
+						}
+						restoreFile = null;
+						session.setLastFile(filePath, caret);
+						session.save();
+						setButtonsEditEnable(view.getTglBtnEditFile().isSelected()
+								&& view.getTglBtnEditFile().isEnabled());
+					}
+				});
+			}
+		}.execute();
+	}
+
+    /**
+     * Shows another page of the file shown a page at a time, read in the background; the page shown stays until
+     * then.
+     * @param number the page, from 0
+     * @param line   a line of the file on that page to move the caret to, or -1 for the top of the page
+     * @see FilePager#read(int)
+     */
+	private void displayPage(final int number, final int line) {
+		final FilePager shownPager = pager;
+		final File file = shownFile;
+		loadingFile = file;
+		setButtonsEditEnable(false);
+		new SwingWorker<String, Void>() {
+			private LineIndex index;
+
+			protected String doInBackground() throws Exception {
+				String content = shownPager.read(number);
+				index = LineIndex.of(content);
+				return content;
+			}
+
+			protected void done() {
+				if (pager != shownPager || loadingFile != file)
+					return;
+				String content;
+				try {
+					content = get();
+				} catch (Exception e) {
+					Throwable cause = (e.getCause() != null) ? e.getCause() : e;
+					loadingFile = null;
+					setButtonsEditEnable(view.getTglBtnEditFile().isSelected() && view.getTglBtnEditFile().isEnabled());
+					JOptionPane.showMessageDialog(view.getFrame(),
+							"ERROR! Could not read `" + file.getName() + "`: " + cause.getMessage(),
+							"WARNING", JOptionPane.ERROR_MESSAGE);
+					return;
+				}
+				setPager(shownPager, number);
+				final int firstLine = shownPager.getFirstLine(number);
+				showText(content, index, firstLine, SyntaxLexer.Language.forFile(file.getName()), new Runnable() {
+					public void run() {
+						loadingFile = null;
+						if (line >= 0)
+							goToLine(index.startOf(Math.min(line - firstLine, index.getLineCount() - 1)));
+						setButtonsEditEnable(view.getTglBtnEditFile().isSelected()
+								&& view.getTglBtnEditFile().isEnabled());
+					}
+				});
+			}
+		}.execute();
+	}
+
+    /**
+     * Sets the pages of the file shown and which one is shown, with its header and the page menu items.
+     * @param filePager the pages, or null when the whole text is shown
+     * @param number    the page shown, from 0
+     */
+	private void setPager(FilePager filePager, int number) {
+		pager = filePager;
+		page = number;
+		view.getMntmPreviousPage().setEnabled(pager != null && page > 0);
+		view.getMntmNextPage().setEnabled(pager != null && page < pager.getPageCount() - 1);
+		JLabel header = view.getLblPage();
+		if (pager == null) {
+			header.setVisible(false);
+			return;
+		}
+		int lastLine = page + 1 < pager.getPageCount() ? pager.getFirstLine(page + 1) : pager.getLineCount();
+		header.setText(" Page " + (page + 1) + " of " + pager.getPageCount() + ", lines "
+				+ (pager.getFirstLine(page) + 1) + " - " + lastLine + " of " + pager.getLineCount()
+				+ " (read-only, Alt+PageUp/PageDown)");
+		header.setVisible(true);
+	}
+
+    /**
+     * Replaces the text of the JTextPane, starting a new undo history, with its line numbers and highlighting.
+     * @param text     the text, with <code>\n</code> line breaks
+     * @param index    its line index, or null for no line numbers
+     * @param language its language for the highlighting
+     */
+	private void showText(String text, LineIndex index, SyntaxLexer.Language language) {
+		showText(text, index, 0, language, null);
+	}
+
+    /**
+     * Replaces the text of the JTextPane as {@link #showText(String, LineIndex, SyntaxLexer.Language)} does, loading a
+     * long text a chunk at a time so the window keeps responding; the line numbers show up once it is all in.
+     * @param text      the text, with <code>\n</code> line breaks
+     * @param index     its line index, or null for no line numbers
+     * @param firstLine the number of its first line, from 0, for a page of a bigger file
+     * @param language  its language for the highlighting
+     * @param shown     run on the EDT once the whole text is in, unless another text is shown first; may be null
+     * @see EditorUndo#load(String, Runnable)
+     */
+	private void showText(String text, final LineIndex index, final int firstLine, SyntaxLexer.Language language,
+			final Runnable shown) {
+		final Metrics.Span span = Metrics.start("ui.showText");
+		final int length = text.length();
+		// Not updated for the whole text, but as wide as it will be
+		view.getLineNumberGutter().loading(index == null ? 0 : firstLine + index.getLineCount());
+		editorUndo.load(text, new Runnable() {
+			public void run() {
+				view.getLineNumberGutter().setIndex(index, firstLine);
+				view.getTextPaneAreaContent().setCaretPosition(0);
+				span.end(1, length);
+				if (shown != null)
+					shown.run();
+			}
+		});
+		syntaxHighlighter.setLanguage(language);
+	}
+
+    /**
+     * Shows a preview of an image in the JTextPane once it is decoded.
+     * @param imageFile the image file
+     */
+	private void displayImagePreview(final File imageFile) {
+		final JTextPane textPane = view.getTextPaneAreaContent();
+		loadingFile = null;
+		setPager(null, 0);
+		showText("Loading preview...", null, SyntaxLexer.Language.PLAIN);
+		int maxSize = Math.max(64, view.getTextPaneAreaContent().getParent().getWidth() - 10);
+		thumbnails.requestPreview(imageFile, maxSize, new ThumbnailCache.ThumbnailListener() {
+			public void thumbnailLoaded(File file, ImageIcon icon) {
+				if (!file.equals(selectedFile))
+					return;
+				if (icon == null) {
+					editorUndo.load("Preview not available.");
+					return;
+				}
+				editorUndo.load("");
+				textPane.insertIcon(icon);
+				editorUndo.discardAllEdits();
+			}
+		});
+	}
+
+    /**
+     * Highlights and bolds all occurrences of {@code searchText} in {@code textPane}.
+     * If {@code searchText} is null/empty, clears previous highlights.
+     * @param textPane the text component to operate on
+     * @param searchText the text to search and highlight
+     */
+	private void highlightSearchText(JTextPane textPane, String searchText) {
+		Metrics.Span span = Metrics.start("ui.search");
+		Highlighter highlighter = textPane.getHighlighter();
+		StyledDocument doc = textPane.getStyledDocument();
+		String content = textPane.getText();
+
+		resetHighlight(textPane, doc, highlighter);
+		if (searchText == null || searchText.isEmpty()) {
+			span.end();
+			return;
+		}
+
+		if (!content.contains(searchText)) {
+			span.end(0, content.length());
+			JOptionPane.showMessageDialog(view.getFrame(), "No matches found.", "INFO",
+					JOptionPane.INFORMATION_MESSAGE);
+			return;
+		}
+
+		int index = content.indexOf(searchText);
+
+		Highlighter.HighlightPainter painter = new DefaultHighlighter.DefaultHighlightPainter(Color.YELLOW);
+		// Not a style of the pane: changing a named style restyles the whole document
+		SimpleAttributeSet styleBold = new SimpleAttributeSet();
+		StyleConstants.setBold(styleBold, true);
+
+		while (index >= 0) {
+			try {
+				doc.setCharacterAttributes(index, searchText.length(), styleBold, false);
+				highlighter.addHighlight(index, index + searchText.length(), painter);
+				index = content.indexOf(searchText, index + searchText.length());
+			} catch (Exception e) {
+				JOptionPane.showMessageDialog(view.getFrame(), e.getMessage(), "ERROR", JOptionPane.ERROR_MESSAGE);
+			}
+		}
+		span.end(0, content.length());
+	}
+
+    /**
+     * Clears all highlights and sets the previous matches non-bold. Only the matches are touched, so the syntax
+     * colors stay and a big document isn't restyled as a whole.
      * @param textPane the text component
      * @param doc the styled bold document
      * @param highlighter the pane's highlighter
      */
 	private void resetHighlight(JTextPane textPane, StyledDocument doc, Highlighter highlighter) {
-		highlighter.removeAllHighlights();
-		Style defaultStyle = textPane.addStyle("DefaultStyle", null);
+		SimpleAttributeSet defaultStyle = new SimpleAttributeSet();
 		StyleConstants.setBold(defaultStyle, false);
-		doc.setCharacterAttributes(0, doc.getLength(), defaultStyle, true);
+		for (Highlighter.Highlight highlight : highlighter.getHighlights()) {
+			doc.setCharacterAttributes(highlight.getStartOffset(),
+					highlight.getEndOffset() - highlight.getStartOffset(), defaultStyle, false);
+		}
+		highlighter.removeAllHighlights();
 	}
 
 
     /**
      * Replaces all occurrences of {@code searchText} with {@code replaceText} in the JTextPane, then highlights the replacement.
+     * <p>The matches are replaced in place as one undoable edit, instead of resetting the whole text.</p>
      * @param textPane the text component
      * @param searchText text to be replaced
      * @param replaceText replacement text
@@ -638,8 +2662,9 @@ public class Controller {
 			return;
 		}
 
-		String newContent = content.replace(searchText, replaceText);
-		textPane.setText(newContent);
+		Metrics.Span span = Metrics.start("ui.replace");
+		editorUndo.replaceAll(searchText, replaceText);
+		span.end(0, content.length());
 		highlightSearchText(textPane, replaceText);
 	}
 
@@ -0,0 +1,224 @@
+package es.annahexe;
+
+import java.awt.BorderLayout;
+import java.awt.FlowLayout;
+import java.awt.Font;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.JButton;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JSplitPane;
+import javax.swing.JTabbedPane;
+import javax.swing.JTable;
+import javax.swing.JTextArea;
+import javax.swing.ListSelectionModel;
+import javax.swing.Timer;
+import javax.swing.event.ListSelectionEvent;
+import javax.swing.event.ListSelectionListener;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * Window showing the {@link Metrics} of every operation: how often it ran, its latency percentiles, the files and
+ * bytes it processed and how long it held the event dispatch thread. A second tab lists the EDT stalls found by the
+ * {@link EdtWatchdog} per handler, with the stack of the selected one.
+ * <p>
+ * Refreshed from a Swing timer while visible, like the {@link JobsWindow}.
+ * </p>
+ * @author annahexe
+ */
+public class DiagnosticsWindow {
+	private static final String[] COLUMNS = { "Operation", "Count", "Mean ms", "p50 ms", "p90 ms", "p99 ms",
+			"Max ms", "Files", "Bytes", "EDT ms" };
+	private static final String[] STALL_COLUMNS = { "Handler", "Stalls", "Total ms", "Max ms", "Last event" };
+	private static final int REFRESH_MILLIS = 1000;
+
+	private JFrame frame;
+	private JTable table;
+	private JLabel lblMemory;
+	private JTable tableStalls;
+	private JTextArea textAreaStack;
+	private DiagnosticsTableModel model = new DiagnosticsTableModel(COLUMNS);
+	private DiagnosticsTableModel stallsModel = new DiagnosticsTableModel(STALL_COLUMNS);
+	private List<EdtWatchdog.Stall> stalls = new ArrayList<>();
+	private Timer timer;
+
+    /**
+     * Builds the (hidden) window.
+     */
+	public DiagnosticsWindow() {
+		initialize();
+	}
+
+	private void initialize() {
+		frame = new JFrame("DIAGNOSTICS");
+		frame.setSize(900, 420);
+		frame.setDefaultCloseOperation(JFrame.HIDE_ON_CLOSE);
+		frame.getContentPane().setLayout(new BorderLayout());
+
+		table = new JTable(model);
+		table.setAutoCreateRowSorter(true);
+		table.getColumnModel().getColumn(0).setPreferredWidth(240);
+
+		tableStalls = new JTable(stallsModel);
+		tableStalls.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		tableStalls.getColumnModel().getColumn(0).setPreferredWidth(320);
+		tableStalls.getColumnModel().getColumn(4).setPreferredWidth(200);
+		textAreaStack = new JTextArea();
+		textAreaStack.setEditable(false);
+		textAreaStack.setFont(new Font("Monospaced", Font.PLAIN, 12));
+		JSplitPane splitPaneStalls = new JSplitPane(JSplitPane.VERTICAL_SPLIT, new JScrollPane(tableStalls),
+				new JScrollPane(textAreaStack));
+		splitPaneStalls.setResizeWeight(0.5);
+
+		JTabbedPane tabbedPane = new JTabbedPane();
+		tabbedPane.addTab("Operations", new JScrollPane(table));
+		tabbedPane.addTab("EDT stalls", splitPaneStalls);
+		frame.getContentPane().add(tabbedPane, BorderLayout.CENTER);
+
+		JPanel panelBottom = new JPanel(new BorderLayout());
+		lblMemory = new JLabel();
+		panelBottom.add(lblMemory, BorderLayout.WEST);
+		JPanel panelButtons = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+		JButton btnReset = new JButton("Reset");
+		panelButtons.add(btnReset);
+		panelBottom.add(panelButtons, BorderLayout.EAST);
+		frame.getContentPane().add(panelBottom, BorderLayout.SOUTH);
+
+		btnReset.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent actionEvent) {
+				Metrics.reset();
+				EdtWatchdog.reset();
+				refresh();
+			}
+		});
+
+		tableStalls.getSelectionModel().addListSelectionListener(new ListSelectionListener() {
+			public void valueChanged(ListSelectionEvent listEvent) {
+				if (!listEvent.getValueIsAdjusting())
+					updateStack();
+			}
+		});
+
+		timer = new Timer(REFRESH_MILLIS, new ActionListener() {
+			public void actionPerformed(ActionEvent actionEvent) {
+				if (frame.isVisible())
+					refresh();
+				else
+					timer.stop();
+			}
+		});
+	}
+
+    /**
+     * Shows the window and starts refreshing it.
+     * @param parent the frame to center on the first time
+     */
+	public void show(JFrame parent) {
+		if (!frame.isVisible())
+			frame.setLocationRelativeTo(parent);
+		refresh();
+		frame.setVisible(true);
+		frame.toFront();
+		timer.start();
+	}
+
+	private void refresh() {
+		List<Object[]> rows = new ArrayList<>();
+		for (Metrics.Operation operation : Metrics.getOperations()) {
+			LatencyHistogram histogram = operation.getHistogram();
+			rows.add(new Object[] { operation.getName(), histogram.getCount(), millis(histogram.getMean()),
+					millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(90)),
+					millis(histogram.getValueAtPercentile(99)), millis(histogram.getMax()), operation.getFiles(),
+					operation.getBytes(), millis(operation.getEdtMillis() * 1e6) });
+		}
+		model.setRows(rows);
+
+		int selected = tableStalls.getSelectedRow();
+		String selectedHandler = selected >= 0 && selected < stalls.size() ? stalls.get(selected).getHandler() : null;
+		stalls = EdtWatchdog.getStalls();
+		List<Object[]> stallRows = new ArrayList<>();
+		for (EdtWatchdog.Stall stall : stalls) {
+			stallRows.add(new Object[] { stall.getHandler(), (long) stall.getCount(), millis(stall.getTotalNanos()),
+					millis(stall.getMaxNanos()), stall.getLastEvent() });
+		}
+		stallsModel.rows = stallRows;
+		stallsModel.fireTableDataChanged(); // sorted by total, rows move
+		for (int row = 0; row < stalls.size(); row++) {
+			if (stalls.get(row).getHandler().equals(selectedHandler))
+				tableStalls.setRowSelectionInterval(row, row);
+		}
+		updateStack();
+		Runtime runtime = Runtime.getRuntime();
+		long usedMb = (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024);
+		lblMemory.setText(" Heap: " + usedMb + " / " + runtime.maxMemory() / (1024 * 1024) + " MB");
+	}
+
+	private void updateStack() {
+		int row = tableStalls.getSelectedRow();
+		StringBuilder text = new StringBuilder();
+		if (row >= 0 && row < stalls.size()) {
+			EdtWatchdog.Stall stall = stalls.get(row);
+			if (stall.getLastStack() == null)
+				text.append("Ended before its stack could be taken.\n");
+			else
+				EdtWatchdog.appendStack(text, stall.getLastStack());
+		}
+		if (!textAreaStack.getText().contentEquals(text)) {
+			textAreaStack.setText(text.toString());
+			textAreaStack.setCaretPosition(0);
+		}
+	}
+
+	private static Double millis(double nanos) {
+		return Math.round(nanos / 1e4) / 100.0;
+	}
+
+    /**
+     * Read-only model over a snapshot of the metrics.
+     */
+	private static class DiagnosticsTableModel extends AbstractTableModel {
+		private static final long serialVersionUID = 1L;
+		private String[] columns;
+		private List<Object[]> rows = new ArrayList<>();
+
+		DiagnosticsTableModel(String[] columns) {
+			this.columns = columns;
+		}
+
+		void setRows(List<Object[]> newRows) {
+			boolean sameRows = newRows.size() == rows.size();
+			rows = newRows;
+			if (sameRows && !rows.isEmpty())
+				fireTableRowsUpdated(0, rows.size() - 1); // keeps the selection and the sort
+			else
+				fireTableDataChanged();
+		}
+
+		public int getRowCount() {
+			return rows.size();
+		}
+
+		public int getColumnCount() {
+			return columns.length;
+		}
+
+		public String getColumnName(int column) {
+			return columns[column];
+		}
+
+		public Class<?> getColumnClass(int column) {
+			return rows.isEmpty() ? Object.class : rows.get(0)[column].getClass();
+		}
+
+		public Object getValueAt(int row, int column) {
+			return rows.get(row)[column];
+		}
+	}
+
+}
@@ -0,0 +1,203 @@
+package es.annahexe;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.GridLayout;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTextPane;
+import javax.swing.SwingWorker;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultStyledDocument;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.text.StyleConstants;
+import javax.swing.text.StyledDocument;
+
+/**
+ * Side-by-side diff window for two text files.
+ * <p>
+ * The diff is computed by {@link TextDiff} in the background and only the changed regions (with a few lines of
+ * context) are read back and rendered, so the window stays light even for million-line files. Both sides live in
+ * the same scroll pane, which keeps them aligned while scrolling.
+ * </p>
+ * @author annahexe
+ */
+public class DiffWindow {
+	private static final int CONTEXT = 3;
+	private static final int MAX_HUNKS_SHOWN = 2000;
+
+	private JFrame frame;
+	private JLabel lblSummary;
+	private JTextPane textPaneLeft;
+	private JTextPane textPaneRight;
+
+    /**
+     * Builds and shows the window, then starts the comparison.
+     * @param parent    the frame to center on
+     * @param leftFile  the original file
+     * @param rightFile the modified file
+     */
+	public DiffWindow(JFrame parent, File leftFile, File rightFile) {
+		frame = new JFrame("Diff: " + leftFile.getName() + " ↔ " + rightFile.getName());
+		frame.setSize(1100, 700);
+		frame.setLocationRelativeTo(parent);
+		frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+		frame.getContentPane().setLayout(new BorderLayout());
+
+		lblSummary = new JLabel("Comparing...");
+		lblSummary.setFont(new Font("Dialog", Font.BOLD, 13));
+		frame.getContentPane().add(lblSummary, BorderLayout.NORTH);
+
+		JPanel panelSides = new JPanel(new GridLayout(1, 2, 4, 0));
+		textPaneLeft = new JTextPane();
+		textPaneRight = new JTextPane();
+		for (JTextPane textPane : new JTextPane[] { textPaneLeft, textPaneRight }) {
+			textPane.setEditable(false);
+			textPane.setFont(new Font("Monospaced", Font.PLAIN, 12));
+			panelSides.add(textPane);
+		}
+		JScrollPane scrollPane = new JScrollPane(panelSides);
+		scrollPane.getVerticalScrollBar().setUnitIncrement(16);
+		frame.getContentPane().add(scrollPane, BorderLayout.CENTER);
+
+		frame.setVisible(true);
+		compare(leftFile, rightFile);
+	}
+
+	private void compare(final File leftFile, final File rightFile) {
+		new SwingWorker<StyledDocument[], Void>() {
+			private String summary;
+
+			protected StyledDocument[] doInBackground() throws Exception {
+				TextDiff diff = TextDiff.compare(leftFile, rightFile);
+				int added = 0;
+				int removed = 0;
+				for (TextDiff.Hunk hunk : diff.getHunks()) {
+					removed += hunk.getLeftEnd() - hunk.getLeftStart();
+					added += hunk.getRightEnd() - hunk.getRightStart();
+				}
+				summary = String.format("%s (%d lines) ↔ %s (%d lines): %d hunks, -%d +%d, %.0f ms",
+						leftFile.getName(), diff.getLeftLineCount(), rightFile.getName(), diff.getRightLineCount(),
+						diff.getHunks().size(), removed, added, diff.getNanos() / 1e6);
+				if (diff.getHunks().size() > MAX_HUNKS_SHOWN)
+					summary += " (showing the first " + MAX_HUNKS_SHOWN + ")";
+				return render(diff);
+			}
+
+			protected void done() {
+				try {
+					StyledDocument[] documents = get();
+					lblSummary.setText(summary);
+					textPaneLeft.setStyledDocument(documents[0]);
+					textPaneRight.setStyledDocument(documents[1]);
+					textPaneLeft.setCaretPosition(0);
+					textPaneRight.setCaretPosition(0);
+				} catch (Exception e) {
+					lblSummary.setText("Comparison failed.");
+					JOptionPane.showMessageDialog(frame, e.getCause().getMessage(), "ERROR", JOptionPane.ERROR_MESSAGE);
+				}
+			}
+		}.execute();
+	}
+
+    /**
+     * Renders the hunks with their context into two aligned documents. Hunks closer than twice the context are
+     * rendered as a single block.
+     */
+	private static StyledDocument[] render(TextDiff diff) throws IOException, BadLocationException {
+		DefaultStyledDocument left = new DefaultStyledDocument();
+		DefaultStyledDocument right = new DefaultStyledDocument();
+		SimpleAttributeSet plain = new SimpleAttributeSet();
+		SimpleAttributeSet removed = background(new Color(255, 215, 215));
+		SimpleAttributeSet added = background(new Color(210, 255, 210));
+		SimpleAttributeSet filler = background(new Color(235, 235, 235));
+		SimpleAttributeSet header = new SimpleAttributeSet();
+		StyleConstants.setForeground(header, new Color(90, 90, 200));
+		StyleConstants.setBold(header, true);
+
+		List<TextDiff.Hunk> hunks = diff.getHunks();
+		int shown = Math.min(hunks.size(), MAX_HUNKS_SHOWN);
+		int first = 0;
+		while (first < shown) {
+			int last = first;
+			while (last + 1 < shown && hunks.get(last + 1).getLeftStart() - hunks.get(last).getLeftEnd() <= 2 * CONTEXT)
+				last++;
+			TextDiff.Hunk firstHunk = hunks.get(first);
+			TextDiff.Hunk lastHunk = hunks.get(last);
+			int leftFrom = Math.max(0, firstHunk.getLeftStart() - CONTEXT);
+			int rightFrom = firstHunk.getRightStart() - (firstHunk.getLeftStart() - leftFrom);
+			int leftTo = Math.min(diff.getLeftLineCount(), lastHunk.getLeftEnd() + CONTEXT);
+			int rightTo = lastHunk.getRightEnd() + (leftTo - lastHunk.getLeftEnd());
+			List<String> leftLines = diff.leftLines(leftFrom, leftTo);
+			List<String> rightLines = diff.rightLines(rightFrom, rightTo);
+
+			String blockHeader = String.format("@@ -%d,%d +%d,%d @@\n", leftFrom + 1, leftTo - leftFrom, rightFrom + 1,
+					rightTo - rightFrom);
+			append(left, blockHeader, header);
+			append(right, blockHeader, header);
+
+			int leftLine = leftFrom;
+			int rightLine = rightFrom;
+			for (int h = first; h <= last; h++) {
+				TextDiff.Hunk hunk = hunks.get(h);
+				// Unchanged lines before the hunk are the same on both sides
+				while (leftLine < hunk.getLeftStart()) {
+					append(left, line(leftLine, leftLines.get(leftLine - leftFrom)), plain);
+					append(right, line(rightLine, rightLines.get(rightLine - rightFrom)), plain);
+					leftLine++;
+					rightLine++;
+				}
+				int leftCount = hunk.getLeftEnd() - hunk.getLeftStart();
+				int rightCount = hunk.getRightEnd() - hunk.getRightStart();
+				for (int i = 0; i < Math.max(leftCount, rightCount); i++) {
+					if (i < leftCount)
+						append(left, line(leftLine, leftLines.get(leftLine++ - leftFrom)), removed);
+					else
+						append(left, "\n", filler);
+					if (i < rightCount)
+						append(right, line(rightLine, rightLines.get(rightLine++ - rightFrom)), added);
+					else
+						append(right, "\n", filler);
+				}
+			}
+			while (leftLine < leftTo) {
+				append(left, line(leftLine, leftLines.get(leftLine - leftFrom)), plain);
+				append(right, line(rightLine, rightLines.get(rightLine - rightFrom)), plain);
+				leftLine++;
+				rightLine++;
+			}
+			append(left, "\n", plain);
+			append(right, "\n", plain);
+			first = last + 1;
+		}
+		if (hunks.isEmpty()) {
+			append(left, "The files are identical.\n", plain);
+			append(right, "The files are identical.\n", plain);
+		}
+		return new StyledDocument[] { left, right };
+	}
+
+	private static String line(int index, String text) {
+		return String.format("%7d  %s\n", index + 1, text);
+	}
+
+	private static SimpleAttributeSet background(Color color) {
+		SimpleAttributeSet attributes = new SimpleAttributeSet();
+		StyleConstants.setBackground(attributes, color);
+		return attributes;
+	}
+
+	private static void append(StyledDocument document, String text, SimpleAttributeSet attributes)
+			throws BadLocationException {
+		document.insertString(document.getLength(), text, attributes);
+	}
+
+}
@@ -0,0 +1,328 @@
+package es.annahexe;
+
+import java.awt.Toolkit;
+import java.awt.event.ActionEvent;
+import java.awt.event.KeyEvent;
+import java.util.Arrays;
+
+import javax.swing.AbstractAction;
+import javax.swing.JTextPane;
+import javax.swing.KeyStroke;
+import javax.swing.SwingUtilities;
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DocumentFilter;
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.UndoManager;
+import javax.swing.undo.UndoableEdit;
+
+/**
+ * Undo/redo for the editor pane, bound to Ctrl+Z and Ctrl+Y (or Ctrl+Shift+Z).
+ * <p>
+ * Edits are recorded as small deltas (offset, removed text, inserted text) by a {@link DocumentFilter}, so
+ * search highlighting (attribute changes) never reaches the history. Consecutive keystrokes, backspaces and
+ * deletes are coalesced into one edit until a new line, a pause or a jump of the caret. Replace-all is a single
+ * edit that stores only the match offsets, whatever the size of the file.
+ * </p>
+ * @author annahexe
+ */
+public class EditorUndo extends UndoManager {
+	private static final long serialVersionUID = 1L;
+	private static final int EDIT_LIMIT = 500;
+	private static final long COALESCE_MILLIS = 1000;
+	/** Characters added to the pane per event when loading a long text. */
+	public static final int LOAD_CHUNK_CHARS = 8 * 1024;
+
+	private JTextPane textPane;
+	private AbstractDocument document;
+	private boolean recording = true;
+	private int loads; // a newer load stops the chunks left of an older one
+
+    /**
+     * Installs the undo manager on the pane's document. Its keys are bound by {@link #bindKeys()}.
+     * @param textPane the editor pane, with an {@link AbstractDocument}
+     */
+	public EditorUndo(JTextPane textPane) {
+		this.textPane = textPane;
+		this.document = (AbstractDocument) textPane.getDocument();
+		setLimit(EDIT_LIMIT);
+		document.setDocumentFilter(new RecordingFilter());
+	}
+
+    /**
+     * Replaces the whole text without recording it, e.g. when another file is shown, and forgets the history.
+     * @param text the new content
+     */
+	public void load(String text) {
+		loads++;
+		recording = false;
+		try {
+			textPane.setText(text);
+		} finally {
+			recording = true;
+		}
+		discardAllEdits();
+	}
+
+    /**
+     * Replaces the whole text as {@link #load(String)} does, adding it {@link #LOAD_CHUNK_CHARS} at a time, one
+     * chunk per event on the EDT: the pane lays out only the lines added, so the window keeps responding while a
+     * long text loads. A text that fits in one chunk is loaded right away. Any other load stops this one.
+     * @param text   the new content
+     * @param loaded run on the EDT once the whole text is in, unless another load came first
+     */
+	public void load(final String text, final Runnable loaded) {
+		int end = chunkEnd(text, 0);
+		load(text.substring(0, end));
+		append(loads, text, end, loaded);
+	}
+
+	private void append(final int load, final String text, final int start, final Runnable loaded) {
+		if (start == text.length()) {
+			discardAllEdits();
+			loaded.run();
+			return;
+		}
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				if (load != loads)
+					return;
+				int end = chunkEnd(text, start);
+				recording = false;
+				try {
+					document.insertString(document.getLength(), text.substring(start, end), null);
+				} catch (BadLocationException e) {
+					return; // never at the end of the document
+				} finally {
+					recording = true;
+				}
+				append(load, text, end, loaded);
+			}
+		});
+	}
+
+	// After the last line break of the next chunk, so a line is laid out once
+	private static int chunkEnd(String text, int start) {
+		int end = start + LOAD_CHUNK_CHARS;
+		if (end >= text.length())
+			return text.length();
+		int lineBreak = text.lastIndexOf('\n', end - 1);
+		return lineBreak >= start ? lineBreak + 1 : end;
+	}
+
+    /**
+     * Replaces every occurrence of a text, recorded as one edit.
+     * @param search      the text to replace, not empty
+     * @param replacement its replacement
+     * @return the number of replacements
+     */
+	public int replaceAll(String search, String replacement) {
+		String content;
+		try {
+			content = document.getText(0, document.getLength());
+		} catch (BadLocationException e) {
+			return 0;
+		}
+		int count = 0;
+		int[] offsets = new int[16];
+		int index = content.indexOf(search);
+		while (index >= 0) {
+			if (count == offsets.length)
+				offsets = Arrays.copyOf(offsets, count * 2);
+			offsets[count++] = index;
+			index = content.indexOf(search, index + search.length());
+		}
+		if (count == 0)
+			return 0;
+		ReplaceAll edit = new ReplaceAll(search, replacement, Arrays.copyOf(offsets, count));
+		edit.apply(search, replacement, 0);
+		addEdit(edit);
+		return count;
+	}
+
+    /**
+     * Binds undo and redo to the menu shortcut keys of the pane. Needs a toolkit with a keyboard, so it is left
+     * out where there is no display, e.g. in the tests.
+     */
+	public void bindKeys() {
+		int menuMask = Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx();
+		textPane.getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_Z, menuMask), "editor-undo");
+		textPane.getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_Y, menuMask), "editor-redo");
+		textPane.getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_Z, menuMask | KeyEvent.SHIFT_DOWN_MASK),
+				"editor-redo");
+		textPane.getActionMap().put("editor-undo", new AbstractAction() {
+			private static final long serialVersionUID = 1L;
+
+			public void actionPerformed(ActionEvent actionEvent) {
+				if (textPane.isEditable() && canUndo())
+					undo();
+			}
+		});
+		textPane.getActionMap().put("editor-redo", new AbstractAction() {
+			private static final long serialVersionUID = 1L;
+
+			public void actionPerformed(ActionEvent actionEvent) {
+				if (textPane.isEditable() && canRedo())
+					redo();
+			}
+		});
+	}
+
+	// Applies a change without recording it
+	private void replace(int offset, int length, String text) {
+		recording = false;
+		try {
+			document.replace(offset, length, text, null);
+		} catch (BadLocationException e) {
+			throw new CannotUndoException();
+		} finally {
+			recording = true;
+		}
+	}
+
+    /**
+     * Records every text change made while the pane is editable.
+     */
+	private class RecordingFilter extends DocumentFilter {
+		public void insertString(FilterBypass bypass, int offset, String text, AttributeSet attributes)
+				throws BadLocationException {
+			bypass.insertString(offset, text, attributes);
+			record(offset, "", text);
+		}
+
+		public void remove(FilterBypass bypass, int offset, int length) throws BadLocationException {
+			String removed = bypass.getDocument().getText(offset, length);
+			bypass.remove(offset, length);
+			record(offset, removed, "");
+		}
+
+		public void replace(FilterBypass bypass, int offset, int length, String text, AttributeSet attributes)
+				throws BadLocationException {
+			String removed = bypass.getDocument().getText(offset, length);
+			bypass.replace(offset, length, text, attributes);
+			record(offset, removed, text != null ? text : "");
+		}
+
+		private void record(int offset, String removed, String inserted) {
+			if (recording && textPane.isEditable() && (!removed.isEmpty() || !inserted.isEmpty()))
+				addEdit(new Delta(offset, removed, inserted));
+		}
+	}
+
+    /**
+     * One change: text removed and text inserted at an offset. Merges the keystrokes that follow it.
+     */
+	private class Delta extends AbstractUndoableEdit {
+		private static final long serialVersionUID = 1L;
+		private int offset;
+		private StringBuilder removed;
+		private StringBuilder inserted;
+		private long lastChange = System.currentTimeMillis();
+
+		Delta(int offset, String removed, String inserted) {
+			this.offset = offset;
+			this.removed = new StringBuilder(removed);
+			this.inserted = new StringBuilder(inserted);
+		}
+
+		// Called by the undo manager with the next edit; true when it was merged into this one
+		public boolean addEdit(UndoableEdit anEdit) {
+			if (!(anEdit instanceof Delta) || !canUndo())
+				return false;
+			Delta next = (Delta) anEdit;
+			if (next.lastChange - lastChange > COALESCE_MILLIS || endsLine() || next.removed.length() > 1
+					|| next.inserted.length() > 1)
+				return false; // pastes and selection replacements stay separate
+			if (next.removed.length() == 0 && next.offset == offset + inserted.length()) {
+				inserted.append(next.inserted); // typing
+			} else if (next.inserted.length() == 0 && inserted.length() == 0
+					&& next.offset + next.removed.length() == offset) {
+				removed.insert(0, next.removed); // backspace
+				offset = next.offset;
+			} else if (next.inserted.length() == 0 && inserted.length() == 0 && next.offset == offset) {
+				removed.append(next.removed); // delete
+			} else {
+				return false;
+			}
+			lastChange = next.lastChange;
+			return true;
+		}
+
+		private boolean endsLine() {
+			return inserted.length() > 0 && inserted.charAt(inserted.length() - 1) == '\n';
+		}
+
+		public void undo() throws CannotUndoException {
+			super.undo();
+			replace(offset, inserted.length(), removed.toString());
+			textPane.setCaretPosition(offset + removed.length());
+		}
+
+		public void redo() throws CannotRedoException {
+			super.redo();
+			replace(offset, removed.length(), inserted.toString());
+			textPane.setCaretPosition(offset + inserted.length());
+		}
+
+		public String getPresentationName() {
+			return inserted.length() > 0 ? "typing" : "deletion";
+		}
+	}
+
+    /**
+     * Replace-all as one edit: the two texts and the original offset of every match.
+     */
+	private class ReplaceAll extends AbstractUndoableEdit {
+		private static final long serialVersionUID = 1L;
+		private String search;
+		private String replacement;
+		private int[] offsets;
+
+		ReplaceAll(String search, String replacement, int[] offsets) {
+			this.search = search;
+			this.replacement = replacement;
+			this.offsets = offsets;
+		}
+
+		// Rebuilds the span from the first to the last match and replaces it at once: one document event, not one
+		// per match. Match i is at offsets[i] + i * shift in the current text.
+		private void apply(String from, String to, int shift) {
+			int start = offsets[0];
+			int last = offsets.length - 1;
+			int end = offsets[last] + last * shift + from.length();
+			String span;
+			try {
+				span = document.getText(start, end - start);
+			} catch (BadLocationException e) {
+				throw new CannotUndoException();
+			}
+			StringBuilder result = new StringBuilder(span.length() + offsets.length * (to.length() - from.length()));
+			int position = 0;
+			for (int i = 0; i < offsets.length; i++) {
+				int match = offsets[i] + i * shift - start;
+				result.append(span, position, match).append(to);
+				position = match + from.length();
+			}
+			result.append(span, position, span.length());
+			replace(start, end - start, result.toString());
+		}
+
+		public void undo() throws CannotUndoException {
+			super.undo();
+			apply(replacement, search, replacement.length() - search.length());
+		}
+
+		public void redo() throws CannotRedoException {
+			super.redo();
+			apply(search, replacement, 0);
+		}
+
+		public String getPresentationName() {
+			return "replace all";
+		}
+	}
+
+}
@@ -0,0 +1,272 @@
+package es.annahexe;
+
+import java.awt.AWTEvent;
+import java.awt.EventQueue;
+import java.awt.Toolkit;
+import java.awt.event.ActionEvent;
+import java.awt.event.InvocationEvent;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.AbstractButton;
+
+/**
+ * Event queue that times every dispatch on the event dispatch thread and reports the ones longer than a threshold:
+ * the listeners that freeze the window.
+ * <p>
+ * A daemon thread polls the dispatch in progress and, once it goes over the threshold, takes the stack of the EDT,
+ * so a stall is reported with what it was doing. Stalls are logged to stderr and aggregated per handler, the first
+ * frame of the app in the stack (e.g. the <code>actionPerformed</code> of a listener of the {@link Controller}),
+ * and shown in the {@link DiagnosticsWindow}. Every dispatch is also timed in {@link Metrics} as
+ * <code>edt.dispatch</code>.
+ * </p>
+ * <p>
+ * A dispatch that opens a modal dialog runs the following events itself; it is only timed up to the first of them,
+ * so the time the dialog is open isn't a stall.
+ * </p>
+ * @author annahexe
+ */
+public class EdtWatchdog extends EventQueue {
+	private static final String PACKAGE = EdtWatchdog.class.getPackage().getName() + ".";
+	private static final int MAX_LOGGED_FRAMES = 30;
+
+	private static final Map<String, Stall> STALLS = new LinkedHashMap<>();
+	private static EdtWatchdog installed;
+
+	private final long thresholdNanos;
+	private final Metrics.Operation dispatches = Metrics.operation("edt.dispatch");
+	private volatile Thread edt;
+	private volatile Dispatch current; // only changed on the EDT
+
+    /**
+     * A handler that went over the threshold, and how often.
+     */
+	public static class Stall {
+		private final String handler;
+		private int count;
+		private long totalNanos;
+		private long maxNanos;
+		private String lastEvent;
+		private StackTraceElement[] lastStack;
+
+		private Stall(String handler) {
+			this.handler = handler;
+		}
+
+		public String getHandler() {
+			return handler;
+		}
+
+		public int getCount() {
+			return count;
+		}
+
+		public long getTotalNanos() {
+			return totalNanos;
+		}
+
+		public long getMaxNanos() {
+			return maxNanos;
+		}
+
+		public String getLastEvent() {
+			return lastEvent;
+		}
+
+	    /**
+	     * @return the EDT stack taken during the last stall, or null if it ended before it could be taken
+	     */
+		public StackTraceElement[] getLastStack() {
+			return lastStack;
+		}
+	}
+
+	// One dispatch in progress
+	private static class Dispatch {
+		final AWTEvent event;
+		final long start;
+		volatile boolean finished;
+		volatile StackTraceElement[] stack;
+
+		Dispatch(AWTEvent event, long start) {
+			this.event = event;
+			this.start = start;
+		}
+	}
+
+	private EdtWatchdog(long thresholdMillis) {
+		this.thresholdNanos = thresholdMillis * 1_000_000;
+	}
+
+    /**
+     * Pushes the watchdog on the system event queue and starts polling. Does nothing the second time.
+     * @param thresholdMillis dispatches taking longer are stalls
+     */
+	public static synchronized void install(long thresholdMillis) {
+		if (installed != null)
+			return;
+		installed = new EdtWatchdog(thresholdMillis);
+		Toolkit.getDefaultToolkit().getSystemEventQueue().push(installed);
+		final long period = Math.max(10, thresholdMillis / 4);
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					while (true) {
+						Thread.sleep(period);
+						installed.poll();
+					}
+				} catch (InterruptedException e) {
+					// Stop polling
+				}
+			}
+		}, "edt-watchdog");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+    /**
+     * @return the stalls so far, longest total first
+     */
+	public static List<Stall> getStalls() {
+		List<Stall> stalls;
+		synchronized (STALLS) {
+			stalls = new ArrayList<>(STALLS.values());
+		}
+		Collections.sort(stalls, new Comparator<Stall>() {
+			public int compare(Stall a, Stall b) {
+				return Long.compare(b.totalNanos, a.totalNanos);
+			}
+		});
+		return stalls;
+	}
+
+    /**
+     * Forgets the stalls so far.
+     */
+	public static void reset() {
+		synchronized (STALLS) {
+			STALLS.clear();
+		}
+	}
+
+	protected void dispatchEvent(AWTEvent event) {
+		Dispatch parent = current;
+		long start = System.nanoTime();
+		if (parent != null)
+			finish(parent, start); // a modal loop: stop timing the dispatch that opened it
+		else
+			edt = Thread.currentThread();
+		Dispatch dispatch = new Dispatch(event, start);
+		current = dispatch;
+		try {
+			super.dispatchEvent(event);
+		} finally {
+			finish(dispatch, System.nanoTime());
+			current = parent;
+		}
+	}
+
+	// On the watchdog thread: takes the EDT stack once the dispatch goes over the threshold
+	private void poll() {
+		Dispatch dispatch = current;
+		Thread thread = edt;
+		if (dispatch == null || thread == null || dispatch.finished || dispatch.stack != null
+				|| System.nanoTime() - dispatch.start < thresholdNanos)
+			return;
+		StackTraceElement[] stack = thread.getStackTrace();
+		if (current == dispatch && !dispatch.finished)
+			dispatch.stack = stack;
+	}
+
+	private void finish(Dispatch dispatch, long now) {
+		if (dispatch.finished)
+			return;
+		dispatch.finished = true;
+		long nanos = now - dispatch.start;
+		dispatches.record(nanos, 0, 0, true);
+		if (nanos >= thresholdNanos)
+			stalled(dispatch, nanos);
+	}
+
+	private void stalled(Dispatch dispatch, long nanos) {
+		StackTraceElement[] stack = dispatch.stack;
+		String event = describe(dispatch.event);
+		String handler = stack != null ? handlerOf(stack) : null;
+		if (handler == null)
+			handler = event;
+		boolean first;
+		synchronized (STALLS) {
+			Stall stall = STALLS.get(handler);
+			first = stall == null;
+			if (first) {
+				stall = new Stall(handler);
+				STALLS.put(handler, stall);
+			}
+			stall.count++;
+			stall.totalNanos += nanos;
+			stall.maxNanos = Math.max(stall.maxNanos, nanos);
+			stall.lastEvent = event;
+			if (stack != null)
+				stall.lastStack = stack;
+		}
+		StringBuilder log = new StringBuilder();
+		log.append("EDT stall: ").append(nanos / 1_000_000).append(" ms in ").append(handler).append(" (")
+				.append(event).append(")\n");
+		if (first && stack != null) // the stack only the first time, the window keeps the last one
+			appendStack(log, stack);
+		System.err.print(log);
+	}
+
+    /**
+     * Appends a stack as {@link Throwable#printStackTrace()} does, without the frames of the queue itself.
+     * @param text  where to append
+     * @param stack the stack
+     */
+	static void appendStack(StringBuilder text, StackTraceElement[] stack) {
+		int frames = 0;
+		for (StackTraceElement frame : stack) {
+			if (frame.getClassName().equals(EdtWatchdog.class.getName()))
+				break; // the rest is the event loop
+			if (frames++ == MAX_LOGGED_FRAMES) {
+				text.append("\t...\n");
+				break;
+			}
+			text.append("\tat ").append(frame).append('\n');
+		}
+	}
+
+	// The outermost frame of the app, i.e. the listener the event was dispatched to
+	private static String handlerOf(StackTraceElement[] stack) {
+		for (int i = stack.length - 1; i >= 0; i--) {
+			String className = stack[i].getClassName();
+			if (className.startsWith(PACKAGE) && !className.startsWith(EdtWatchdog.class.getName()))
+				return stack[i].getClassName().substring(PACKAGE.length()) + "." + stack[i].getMethodName() + "("
+						+ stack[i].getFileName() + ":" + stack[i].getLineNumber() + ")";
+		}
+		return null;
+	}
+
+	private static String describe(AWTEvent event) {
+		String description = event.getClass().getSimpleName();
+		if (event instanceof ActionEvent && event.getSource() instanceof AbstractButton) {
+			description += " '" + ((AbstractButton) event.getSource()).getText() + "'";
+		} else if (event instanceof InvocationEvent) {
+			// invokeLater, SwingWorker.done...: the runnable tells more than the source
+			String parameters = ((InvocationEvent) event).paramString();
+			int start = parameters.indexOf("runnable=");
+			if (start >= 0) {
+				int end = start + "runnable=".length();
+				while (end < parameters.length() && parameters.charAt(end) != '@' && parameters.charAt(end) != ',')
+					end++;
+				description += " " + parameters.substring(start + "runnable=".length(), end);
+			}
+		} else if (event.getSource() != null)
+			description += " on " + event.getSource().getClass().getSimpleName();
+		return description;
+	}
+
+}
@@ -0,0 +1,64 @@
+package es.annahexe;
+
+import java.awt.Component;
+import java.io.File;
+
+import javax.swing.DefaultListCellRenderer;
+import javax.swing.Icon;
+import javax.swing.ImageIcon;
+import javax.swing.JList;
+import javax.swing.UIManager;
+
+/**
+ * Renders the explorer entries with a folder icon or, for images, a thumbnail.
+ * <p>
+ * The list must use a fixed cell size so that Swing only renders (and thus only requests thumbnails for)
+ * the visible cells. The renderer never touches the file system: folders are recognized by the
+ * <code>"./"</code> prefix and images by their extension.
+ * </p>
+ * @author annahexe
+ */
+public class ExplorerCellRenderer extends DefaultListCellRenderer {
+	private static final long serialVersionUID = 1L;
+
+	private ThumbnailCache thumbnails;
+	private File folder; // folder whose entries are being rendered
+	private Icon folderIcon = UIManager.getIcon("FileView.directoryIcon");
+	private Icon fileIcon = UIManager.getIcon("FileView.fileIcon");
+
+    /**
+     * Builds the renderer.
+     * @param thumbnails the thumbnail pipeline used for image entries
+     */
+	public ExplorerCellRenderer(ThumbnailCache thumbnails) {
+		this.thumbnails = thumbnails;
+	}
+
+    /**
+     * Sets the folder the listed names are relative to.
+     * @param folder the folder shown in the explorer
+     */
+	public void setFolder(File folder) {
+		this.folder = folder;
+	}
+
+	public Component getListCellRendererComponent(final JList<?> list, Object value, int index, boolean isSelected,
+			boolean cellHasFocus) {
+		super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+		String name = String.valueOf(value);
+		if (name.startsWith("./") || name.equals("../")) {
+			setIcon(folderIcon);
+		} else if (folder != null && ThumbnailCache.isImage(name)) {
+			Icon icon = thumbnails.getIcon(new File(folder, name), new ThumbnailCache.ThumbnailListener() {
+				public void thumbnailLoaded(File file, ImageIcon loaded) {
+					list.repaint();
+				}
+			});
+			setIcon(icon != null ? icon : fileIcon);
+		} else {
+			setIcon(fileIcon);
+		}
+		return this;
+	}
+
+}
@@ -0,0 +1,322 @@
+package es.annahexe;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Undo/redo stacks for file operations: delete (to the trash), rename, move and save.
+ * <p>
+ * An {@link Edit} knows how to plan its undo and its redo as {@link JobManager} jobs, since both touch the disk.
+ * The controller pops an edit, runs the job and hands the edit back: on the other stack when the job succeeded,
+ * on the stack it came from when it was canceled or failed, so it can be tried again.
+ * New edits clear the redo stack. Only the last {@link #LIMIT} edits are kept.
+ * </p>
+ * @author annahexe
+ */
+public class FileHistory {
+	/** Edits kept on each stack. */
+	public static final int LIMIT = 100;
+
+	private ArrayDeque<Edit> undoStack = new ArrayDeque<>();
+	private ArrayDeque<Edit> redoStack = new ArrayDeque<>();
+
+    /**
+     * A file operation that can be undone and redone.
+     */
+	public interface Edit {
+	    /**
+	     * @return a short description for the menu, e.g. <code>Delete `notes.txt`</code>
+	     */
+		String getName();
+
+		JobManager.Planner undo();
+
+		JobManager.Planner redo();
+	}
+
+    /**
+     * Records a new edit and clears the redo stack.
+     * @param edit the edit done
+     */
+	public void add(Edit edit) {
+		push(undoStack, edit);
+		redoStack.clear();
+	}
+
+	public Edit peekUndo() {
+		return undoStack.peek();
+	}
+
+	public Edit peekRedo() {
+		return redoStack.peek();
+	}
+
+    /**
+     * Takes the edit to undo. Give it back with {@link #undone(Edit, boolean)} once its undo job ended.
+     * @return the last edit, or null
+     */
+	public Edit popUndo() {
+		return undoStack.poll();
+	}
+
+    /**
+     * Takes the edit to redo. Give it back with {@link #redone(Edit, boolean)} once its redo job ended.
+     * @return the last undone edit, or null
+     */
+	public Edit popRedo() {
+		return redoStack.poll();
+	}
+
+    /**
+     * Gives back an edit taken with {@link #popUndo()}. A retried job may give it back again.
+     * @param edit      the edit
+     * @param succeeded whether its undo job is done: it goes on the redo stack, else back on the undo stack
+     */
+	public void undone(Edit edit, boolean succeeded) {
+		undoStack.remove(edit);
+		redoStack.remove(edit);
+		push(succeeded ? redoStack : undoStack, edit);
+	}
+
+    /**
+     * Gives back an edit taken with {@link #popRedo()}. A retried job may give it back again.
+     * @param edit      the edit
+     * @param succeeded whether its redo job is done: it goes on the undo stack, else back on the redo stack
+     */
+	public void redone(Edit edit, boolean succeeded) {
+		undoStack.remove(edit);
+		redoStack.remove(edit);
+		push(succeeded ? undoStack : redoStack, edit);
+	}
+
+	private static void push(ArrayDeque<Edit> stack, Edit edit) {
+		stack.push(edit);
+		while (stack.size() > LIMIT)
+			stack.removeLast();
+	}
+
+	// =========================
+	// Edits
+	// =========================
+
+    /**
+     * Entries moved to the trash. Undo restores them, redo trashes them again.
+     * <p>
+     * Each entry is moved between the two lists as soon as it is restored or trashed, so after a canceled or
+     * failed job undo and redo only work on the entries still left to do.
+     * </p>
+     * @param trash the trash holding them
+     * @param items the trash entries
+     * @param name  description for the menu
+     * @return the edit
+     */
+	public static Edit trashed(final Trash trash, List<Trash.Item> items, final String name) {
+		final List<Trash.Item> inTrash = Collections.synchronizedList(new ArrayList<>(items));
+		final List<File> restored = Collections.synchronizedList(new ArrayList<File>());
+		return new Edit() {
+			public String getName() {
+				return name;
+			}
+
+			public JobManager.Planner undo() {
+				return new JobManager.Planner() {
+					public List<JobManager.Operation> plan(JobManager.Job job) {
+						List<JobManager.Operation> operations = new ArrayList<>();
+						for (final Trash.Item item : snapshot(inTrash)) {
+							operations.add(new PathOperation(item.getOriginalPath().toString()) {
+								public void run(JobManager.Job job) throws IOException {
+									trash.restore(item);
+									inTrash.remove(item);
+									restored.add(item.getOriginalPath().toFile());
+								}
+							});
+						}
+						return operations;
+					}
+				};
+			}
+
+			public JobManager.Planner redo() {
+				return new JobManager.Planner() {
+					public List<JobManager.Operation> plan(JobManager.Job job) {
+						List<JobManager.Operation> operations = new ArrayList<>();
+						for (final File file : snapshot(restored)) {
+							operations.add(new PathOperation(file.getPath()) {
+								public void run(JobManager.Job job) throws IOException {
+									inTrash.add(trash.moveToTrash(file));
+									restored.remove(file);
+								}
+							});
+						}
+						return operations;
+					}
+				};
+			}
+		};
+	}
+
+    /**
+     * A new file (e.g. saved as). Undo moves it to the trash, redo restores it.
+     * @param trash the trash to use
+     * @param file  the created file
+     * @return the edit
+     */
+	public static Edit created(final Trash trash, final File file) {
+		final Trash.Item[] item = new Trash.Item[1];
+		return new Edit() {
+			public String getName() {
+				return "Create `" + file.getName() + "`";
+			}
+
+			public JobManager.Planner undo() {
+				return single(new PathOperation(file.getPath()) {
+					public void run(JobManager.Job job) throws IOException {
+						item[0] = trash.moveToTrash(file);
+					}
+				});
+			}
+
+			public JobManager.Planner redo() {
+				return single(new PathOperation(file.getPath()) {
+					public void run(JobManager.Job job) throws IOException {
+						trash.restore(item[0]);
+					}
+				});
+			}
+		};
+	}
+
+    /**
+     * A renamed entry: undo renames it back, redo renames it again. Nothing is overwritten.
+     * @param source the original path
+     * @param target the new path, in the same folder
+     * @return the edit
+     */
+	public static Edit renamed(final File source, final File target) {
+		return new Edit() {
+			public String getName() {
+				return "Rename `" + source.getName() + "` to `" + target.getName() + "`";
+			}
+
+			public JobManager.Planner undo() {
+				return single(rename(target, source));
+			}
+
+			public JobManager.Planner redo() {
+				return single(rename(source, target));
+			}
+		};
+	}
+
+    /**
+     * Entries moved to another folder: undo moves them back, redo moves them again.
+     * @param entries      the entries, at their original paths
+     * @param targetFolder the folder they were moved to
+     * @return the edit
+     * @see BatchOperations#move(List, File)
+     */
+	public static Edit moved(List<File> entries, final File targetFolder) {
+		final List<File> sources = new ArrayList<>(entries);
+		final File sourceFolder = sources.get(0).getParentFile();
+		final List<File> targets = new ArrayList<>();
+		for (File source : sources)
+			targets.add(new File(targetFolder, source.getName()));
+		return new Edit() {
+			public String getName() {
+				return "Move " + sources.size() + " items to `" + targetFolder.getName() + "`";
+			}
+
+			public JobManager.Planner undo() {
+				return BatchOperations.move(targets, sourceFolder);
+			}
+
+			public JobManager.Planner redo() {
+				return BatchOperations.move(sources, targetFolder);
+			}
+		};
+	}
+
+    /**
+     * An overwritten file whose previous content was kept in the trash. Undo and redo swap the content on disk
+     * with the kept one.
+     * @param trash  the trash holding the previous content
+     * @param file   the overwritten file
+     * @param backup the previous content
+     * @return the edit
+     */
+	public static Edit saved(final Trash trash, final File file, Trash.Item backup) {
+		final Trash.Item[] kept = { backup };
+		final JobManager.Planner swap = single(new PathOperation(file.getPath()) {
+			public void run(JobManager.Job job) throws IOException {
+				Trash.Item current = trash.copyToTrash(file);
+				try {
+					trash.restoreContent(kept[0]);
+				} catch (IOException e) {
+					trash.delete(current);
+					throw e;
+				}
+				kept[0] = current;
+			}
+		});
+		return new Edit() {
+			public String getName() {
+				return "Save `" + file.getName() + "`";
+			}
+
+			public JobManager.Planner undo() {
+				return swap;
+			}
+
+			public JobManager.Planner redo() {
+				return swap;
+			}
+		};
+	}
+
+	private static JobManager.Operation rename(final File from, final File to) {
+		return new PathOperation(from.getPath()) {
+			public void run(JobManager.Job job) throws IOException {
+				if (Files.exists(to.toPath(), LinkOption.NOFOLLOW_LINKS))
+					throw new FileAlreadyExistsException(to.getPath());
+				Files.move(from.toPath(), to.toPath());
+			}
+		};
+	}
+
+	private static JobManager.Planner single(final JobManager.Operation operation) {
+		return new JobManager.Planner() {
+			public List<JobManager.Operation> plan(JobManager.Job job) {
+				return Collections.singletonList(operation);
+			}
+		};
+	}
+
+	private static <T> List<T> snapshot(List<T> items) {
+		synchronized (items) {
+			return new ArrayList<>(items);
+		}
+	}
+
+    /**
+     * Operation named after the path it works on.
+     */
+	private abstract static class PathOperation implements JobManager.Operation {
+		private String name;
+
+		PathOperation(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+
+}
@@ -0,0 +1,171 @@
+package es.annahexe;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * A text file too big for the editor, split in pages of at most {@link #PAGE_BYTES} bytes that are read one at a
+ * time.
+ * <p>
+ * Pages end after a line break, so no line is split unless it is longer than a page (then it is cut between two
+ * characters). Building the pager reads the whole file once, off the EDT, to find where the pages start and the
+ * number of their first lines; then any page or line is found without reading the file again.
+ * </p>
+ * @author annahexe
+ */
+public class FilePager {
+	/** Files bigger than this are shown a page at a time, read-only. */
+	public static final int PAGE_BYTES = 1024 * 1024;
+
+	private Path file;
+	private long[] pageStarts; // plus the size of the file at the end
+	private int[] firstLines;
+	private int lineCount;
+
+	private FilePager(Path file, long[] pageStarts, int[] firstLines, int lineCount) {
+		this.file = file;
+		this.pageStarts = pageStarts;
+		this.firstLines = firstLines;
+		this.lineCount = lineCount;
+	}
+
+    /**
+     * Reads a file to split it in pages. Errors are left to the caller, so it can be used off the EDT.
+     * @param file the file to page
+     * @return its pager
+     * @throws IOException if the file can't be read
+     */
+	public static FilePager of(Path file) throws IOException {
+		Metrics.Span span = Metrics.start("pager.of");
+		long[] starts = new long[16];
+		int[] lines = new int[16];
+		int pages = 1; // the first one starts at 0, line 0
+		long position = 0;
+		long pageStart = 0;
+		long lastBreak = -1; // position after the last line break
+		long lastCharStart = 0;
+		int lineBreaks = 0;
+		boolean afterCr = false;
+		try (InputStream in = Files.newInputStream(file)) {
+			byte[] buffer = new byte[64 * 1024];
+			int count;
+			while ((count = in.read(buffer)) > 0) {
+				for (int i = 0; i < count; i++, position++) {
+					byte b = buffer[i];
+					if (afterCr && b != '\n') {
+						lineBreaks++; // a lone \r, which the editor shows as a line break too
+						lastBreak = position;
+					}
+					if (position - pageStart == PAGE_BYTES) {
+						if ((b & 0xC0) != 0x80)
+							lastCharStart = position;
+						pageStart = lastBreak > pageStart ? lastBreak
+								: lastCharStart > pageStart ? lastCharStart : position; // a longer line
+						if (pages == starts.length) {
+							starts = Arrays.copyOf(starts, pages * 2);
+							lines = Arrays.copyOf(lines, pages * 2);
+						}
+						starts[pages] = pageStart;
+						lines[pages] = lineBreaks;
+						pages++;
+					}
+					afterCr = b == '\r';
+					if (b == '\n') {
+						lineBreaks++;
+						lastBreak = position + 1;
+					}
+					if ((b & 0xC0) != 0x80)
+						lastCharStart = position;
+				}
+			}
+		}
+		if (afterCr)
+			lineBreaks++;
+		starts = Arrays.copyOf(starts, pages + 1);
+		starts[pages] = position;
+		lines = Arrays.copyOf(lines, pages);
+		boolean lastLineOpen = position > 0 && lastBreak != position && !afterCr;
+		span.end(1, position);
+		return new FilePager(file, starts, lines, lineBreaks + (lastLineOpen ? 1 : 0));
+	}
+
+    /**
+     * Whether a file is too big to be shown at once.
+     * @param size the size of the file in bytes
+     * @return true if it should be paged
+     */
+	public static boolean needsPaging(long size) {
+		return size > PAGE_BYTES;
+	}
+
+    /**
+     * @return the paged file
+     */
+	public Path getFile() {
+		return file;
+	}
+
+    /**
+     * @return the number of pages, at least one
+     */
+	public int getPageCount() {
+		return firstLines.length;
+	}
+
+    /**
+     * @return the number of lines of the whole file
+     */
+	public int getLineCount() {
+		return lineCount;
+	}
+
+    /**
+     * @param page a page, from 0
+     * @return the number of its first line, from 0
+     */
+	public int getFirstLine(int page) {
+		return firstLines[page];
+	}
+
+    /**
+     * @param line a line of the file, from 0
+     * @return the page it starts in
+     */
+	public int pageOfLine(int line) {
+		int page = Arrays.binarySearch(firstLines, line);
+		if (page < 0)
+			return -page - 2;
+		while (page > 0 && firstLines[page - 1] == line)
+			page--; // a line longer than a page starts in the first of them
+		return page;
+	}
+
+    /**
+     * Reads a page with <code>\n</code> line breaks, as the editor shows it. Errors are left to the caller, so it can
+     * be used off the EDT.
+     * @param page the page, from 0
+     * @return its text, in the default charset
+     * @throws IOException if the file can't be read
+     */
+	public String read(int page) throws IOException {
+		Metrics.Span span = Metrics.start("pager.read");
+		ByteBuffer bytes = ByteBuffer.allocate((int) (pageStarts[page + 1] - pageStarts[page]));
+		try (SeekableByteChannel channel = Files.newByteChannel(file)) {
+			channel.position(pageStarts[page]);
+			while (bytes.hasRemaining() && channel.read(bytes) > 0) {
+				// Until the page is full or the file ends
+			}
+		}
+		bytes.flip();
+		String text = Charset.defaultCharset().decode(bytes).toString();
+		span.end(1, bytes.limit());
+		return text.replace("\r\n", "\n").replace('\r', '\n');
+	}
+
+}
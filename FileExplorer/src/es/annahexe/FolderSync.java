@@ -0,0 +1,429 @@
+package es.annahexe;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares two folder trees and makes the target a copy of the source (one way).
+ * <p>
+ * Both trees are walked at the same time on separate threads. Entries are classified as added (only in the
+ * source), removed (only in the target) or changed, by size + last modified time or, optionally, by content
+ * hash. A sync copies only added and changed files, several at a time, and never deletes anything from the
+ * target. The comparison itself is the dry-run report of the sync.
+ * </p>
+ * @author annahexe
+ */
+public class FolderSync {
+	private HashService hashService;
+	private ExecutorService executor;
+
+    /**
+     * Kind of difference, from the point of view of the source.
+     */
+	public enum Change {
+		ADDED, REMOVED, CHANGED
+	}
+
+    /**
+     * A path that differs between the two trees.
+     */
+	public static class Difference {
+		private String path;
+		private Change change;
+		private boolean directory;
+		private long size; // source size, or target size for removed entries
+
+		private Difference(String path, Change change, boolean directory, long size) {
+			this.path = path;
+			this.change = change;
+			this.directory = directory;
+			this.size = size;
+		}
+
+		public String getPath() {
+			return path;
+		}
+
+		public Change getChange() {
+			return change;
+		}
+
+		public boolean isDirectory() {
+			return directory;
+		}
+
+		public long getSize() {
+			return size;
+		}
+	}
+
+    /**
+     * Result of {@link FolderSync#compare}: the differences plus timing statistics.
+     */
+	public static class Comparison {
+		private File source;
+		private File target;
+		private List<Difference> differences = new ArrayList<>();
+		private int unchanged;
+		private int hashedFiles;
+		private long scanNanos;
+		private long hashNanos;
+
+		public File getSource() {
+			return source;
+		}
+
+		public File getTarget() {
+			return target;
+		}
+
+		public List<Difference> getDifferences() {
+			return differences;
+		}
+
+		public int getUnchanged() {
+			return unchanged;
+		}
+
+	    /**
+	     * Counts the differences of a kind.
+	     * @param change the kind of difference
+	     * @return the number of entries of that kind
+	     */
+		public int count(Change change) {
+			int count = 0;
+			for (Difference difference : differences) {
+				if (difference.change == change)
+					count++;
+			}
+			return count;
+		}
+
+	    /**
+	     * Counts the files a sync would copy.
+	     * @return added and changed files (folders excluded)
+	     */
+		public int filesToCopy() {
+			int count = 0;
+			for (Difference difference : differences) {
+				if (difference.change != Change.REMOVED && !difference.directory)
+					count++;
+			}
+			return count;
+		}
+
+	    /**
+	     * Builds the dry-run report: what differs and what a sync would do.
+	     * @return a multi-line report
+	     */
+		public String report() {
+			long bytesToCopy = 0;
+			StringBuilder lines = new StringBuilder();
+			for (Difference difference : differences) {
+				String action = (difference.change == Change.REMOVED) ? "keep  " : "copy  ";
+				if (difference.change != Change.REMOVED && !difference.directory)
+					bytesToCopy += difference.size;
+				lines.append(action).append(difference.change).append(' ').append(difference.path)
+						.append(difference.directory ? "/" : "").append('\n');
+			}
+			String header = "SOURCE: " + source.getAbsolutePath() + "\n";
+			header += "TARGET: " + target.getAbsolutePath() + "\n";
+			header += "ADDED: " + count(Change.ADDED) + "  CHANGED: " + count(Change.CHANGED) + "  REMOVED: "
+					+ count(Change.REMOVED) + "  UNCHANGED: " + unchanged + "\n";
+			header += String.format("TO COPY: %d files (%.2f MB)%n", filesToCopy(), bytesToCopy / (1024.0 * 1024));
+			header += String.format("SCAN: %.1f ms  HASH: %.1f ms (%d files)%n", scanNanos / 1e6, hashNanos / 1e6,
+					hashedFiles);
+			return header + lines;
+		}
+	}
+
+    /**
+     * Outcome of {@link FolderSync#sync}.
+     */
+	public static class SyncResult {
+		private int copied;
+		private long bytes;
+		private long nanos;
+		private List<String> errors = Collections.synchronizedList(new ArrayList<String>());
+
+		public int getCopied() {
+			return copied;
+		}
+
+		public long getBytes() {
+			return bytes;
+		}
+
+		public List<String> getErrors() {
+			return errors;
+		}
+
+	    /**
+	     * Builds a summary with the copy throughput.
+	     * @return a multi-line report
+	     */
+		public String report() {
+			double seconds = Math.max(0.001, nanos / 1e9);
+			String report = String.format("COPIED: %d files (%.2f MB) in %.2f s, %.2f MB/s%n", copied,
+					bytes / (1024.0 * 1024), seconds, bytes / (1024.0 * 1024) / seconds);
+			report += "FAILED: " + errors.size() + "\n";
+			for (String error : errors)
+				report += "  " + error + "\n";
+			return report;
+		}
+	}
+
+    /**
+     * Receives progress updates from the worker threads.
+     */
+	public interface ProgressListener {
+	    /**
+	     * Called after each file is copied.
+	     * @param filesDone  files copied so far
+	     * @param filesTotal files to copy
+	     * @param path       relative path of the last file
+	     */
+		void progress(int filesDone, int filesTotal, String path);
+	}
+
+    /**
+     * Attributes of one side of a path.
+     */
+	private static class Node {
+		private boolean directory;
+		private long size;
+		private long lastModified;
+
+		private Node(BasicFileAttributes attributes) {
+			this.directory = attributes.isDirectory();
+			this.size = attributes.size();
+			this.lastModified = attributes.lastModifiedTime().toMillis();
+		}
+	}
+
+    /**
+     * Builds the engine.
+     * @param hashService used for content comparison
+     * @param threads     number of parallel hashes/copies
+     */
+	public FolderSync(HashService hashService, int threads) {
+		this.hashService = hashService;
+		this.executor = Executors.newFixedThreadPool(Math.max(2, threads), new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "folder-sync");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+    /**
+     * Compares two trees.
+     * @param source         the reference folder
+     * @param target         the folder to compare with
+     * @param compareContent if {@code true}, files of equal size are compared by SHA-256 and the modification
+     *                       time is ignored; otherwise size + last modified time decide
+     * @return the differences sorted by path
+     * @throws IOException if a tree can't be walked or a file can't be hashed
+     */
+	public Comparison compare(File source, File target, boolean compareContent) throws IOException {
+		Comparison comparison = new Comparison();
+		comparison.source = source;
+		comparison.target = target;
+
+		long scanStart = System.nanoTime();
+		Future<Map<String, Node>> sourceScan = executor.submit(scanTask(source.toPath()));
+		Future<Map<String, Node>> targetScan = executor.submit(scanTask(target.toPath()));
+		Map<String, Node> sourceNodes = await(sourceScan);
+		Map<String, Node> targetNodes = await(targetScan);
+		comparison.scanNanos = System.nanoTime() - scanStart;
+
+		final List<String> toHash = new ArrayList<>();
+		for (Map.Entry<String, Node> entry : sourceNodes.entrySet()) {
+			String path = entry.getKey();
+			Node sourceNode = entry.getValue();
+			Node targetNode = targetNodes.get(path);
+			if (targetNode == null) {
+				comparison.differences.add(new Difference(path, Change.ADDED, sourceNode.directory, sourceNode.size));
+			} else if (sourceNode.directory != targetNode.directory
+					|| !sourceNode.directory && sourceNode.size != targetNode.size) { // a folder's size is the disk's
+				comparison.differences.add(new Difference(path, Change.CHANGED, sourceNode.directory, sourceNode.size));
+			} else if (sourceNode.directory) {
+				comparison.unchanged++;
+			} else if (compareContent) {
+				toHash.add(path);
+			} else if (sourceNode.lastModified != targetNode.lastModified) {
+				comparison.differences.add(new Difference(path, Change.CHANGED, false, sourceNode.size));
+			} else {
+				comparison.unchanged++;
+			}
+		}
+		for (Map.Entry<String, Node> entry : targetNodes.entrySet()) {
+			if (!sourceNodes.containsKey(entry.getKey())) {
+				Node node = entry.getValue();
+				comparison.differences.add(new Difference(entry.getKey(), Change.REMOVED, node.directory, node.size));
+			}
+		}
+
+		long hashStart = System.nanoTime();
+		List<Future<Boolean>> equal = new ArrayList<>(toHash.size());
+		for (final String path : toHash) {
+			final File sourceFile = new File(source, path);
+			final File targetFile = new File(target, path);
+			equal.add(executor.submit(new Callable<Boolean>() {
+				public Boolean call() throws IOException {
+					EnumSet<HashService.Algorithm> sha256 = EnumSet.of(HashService.Algorithm.SHA256);
+					String sourceHash = hashService.hashFile(sourceFile, sha256).getDigest(HashService.Algorithm.SHA256);
+					String targetHash = hashService.hashFile(targetFile, sha256).getDigest(HashService.Algorithm.SHA256);
+					return sourceHash.equals(targetHash);
+				}
+			}));
+		}
+		for (int i = 0; i < toHash.size(); i++) {
+			if (await(equal.get(i))) {
+				comparison.unchanged++;
+			} else {
+				String path = toHash.get(i);
+				comparison.differences.add(new Difference(path, Change.CHANGED, false, sourceNodes.get(path).size));
+			}
+		}
+		comparison.hashedFiles = toHash.size();
+		comparison.hashNanos = System.nanoTime() - hashStart;
+
+		Collections.sort(comparison.differences, new Comparator<Difference>() {
+			public int compare(Difference a, Difference b) {
+				return a.path.compareTo(b.path);
+			}
+		});
+		return comparison;
+	}
+
+    /**
+     * Copies the added and changed entries of a comparison from its source to its target, keeping the
+     * modification times so the next comparison sees them as unchanged. Folders are created first, then
+     * files are copied in parallel. Failed files are reported, not fatal.
+     * @param comparison the result of {@link #compare}
+     * @param listener   progress callback, may be {@code null}
+     * @return copied files, bytes, time and errors
+     * @throws IOException if a folder can't be created or the sync is cancelled
+     */
+	public SyncResult sync(Comparison comparison, final ProgressListener listener) throws IOException {
+		final SyncResult result = new SyncResult();
+		final Path source = comparison.source.toPath();
+		final Path target = comparison.target.toPath();
+		long start = System.nanoTime();
+
+		final List<Difference> files = new ArrayList<>();
+		for (Difference difference : comparison.differences) {
+			if (difference.change == Change.REMOVED)
+				continue;
+			if (difference.directory) {
+				Path folder = target.resolve(difference.path);
+				if (Files.exists(folder) && !Files.isDirectory(folder))
+					Files.delete(folder);
+				Files.createDirectories(folder);
+			} else {
+				files.add(difference);
+			}
+		}
+
+		final AtomicInteger done = new AtomicInteger();
+		final AtomicLong bytes = new AtomicLong();
+		List<Future<?>> copies = new ArrayList<>(files.size());
+		for (final Difference difference : files) {
+			copies.add(executor.submit(new Runnable() {
+				public void run() {
+					Path from = source.resolve(difference.path);
+					Path to = target.resolve(difference.path);
+					try {
+						Files.createDirectories(to.getParent());
+						Files.copy(from, to, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+						bytes.addAndGet(difference.size);
+					} catch (IOException e) {
+						result.errors.add(difference.path + ": " + e);
+					}
+					if (listener != null)
+						listener.progress(done.incrementAndGet(), files.size(), difference.path);
+				}
+			}));
+		}
+		try {
+			for (Future<?> copy : copies)
+				copy.get();
+		} catch (InterruptedException e) {
+			for (Future<?> copy : copies)
+				copy.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Sync cancelled");
+		} catch (ExecutionException e) {
+			throw new IOException(e.getCause());
+		}
+		result.copied = files.size() - result.errors.size();
+		result.bytes = bytes.get();
+		result.nanos = System.nanoTime() - start;
+		return result;
+	}
+
+	private static Callable<Map<String, Node>> scanTask(final Path root) {
+		return new Callable<Map<String, Node>>() {
+			public Map<String, Node> call() throws IOException {
+				final Map<String, Node> nodes = new HashMap<>();
+				Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+					public FileVisitResult preVisitDirectory(Path folder, BasicFileAttributes attributes)
+							throws IOException {
+						if (Thread.currentThread().isInterrupted())
+							throw new InterruptedIOException("Comparison cancelled");
+						if (!folder.equals(root))
+							nodes.put(relative(root, folder), new Node(attributes));
+						return FileVisitResult.CONTINUE;
+					}
+
+					public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+						nodes.put(relative(root, file), new Node(attributes));
+						return FileVisitResult.CONTINUE;
+					}
+				});
+				return nodes;
+			}
+		};
+	}
+
+	private static String relative(Path root, Path path) {
+		return root.relativize(path).toString().replace(File.separatorChar, '/');
+	}
+
+	private static <T> T await(Future<T> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			future.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Comparison cancelled");
+		} catch (ExecutionException e) {
+			throw (e.getCause() instanceof IOException) ? (IOException) e.getCause() : new IOException(e.getCause());
+		}
+	}
+
+}
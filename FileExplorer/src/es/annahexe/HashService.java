@@ -0,0 +1,436 @@
+package es.annahexe;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32C;
+import java.util.zip.Checksum;
+
+/**
+ * Checksum service: SHA-256, SHA-1, MD5 and CRC32C of files and folders.
+ * <p>
+ * Files are read once through memory-mapped chunks and every requested digest is updated from the same
+ * slice while it is hot in cache. Folders are hashed file by file on a worker pool. Results are cached
+ * keyed by path + size + last modified time, so hashing a folder again only reads what changed; only the
+ * {@value #MAX_CACHED_FILES} files used last are kept.
+ * Manifests use the <code>sha256sum</code> format (<code>hash&nbsp;&nbsp;relative/path</code>).
+ * </p>
+ * @author annahexe
+ */
+public class HashService {
+	/** Name of the manifest written in a hashed folder. */
+	public static final String MANIFEST_NAME = "SHA256SUMS";
+
+	private static final int MAX_CACHED_FILES = 100_000;
+	private static final long MAP_CHUNK = 64L * 1024 * 1024;
+	private static final int SLICE = 1024 * 1024;
+
+	private ExecutorService executor;
+	private Map<String, CachedDigests> cache; // access ordered, guarded by itself
+
+    /**
+     * Supported algorithms, in display order.
+     */
+	public enum Algorithm {
+		SHA256("SHA-256"), SHA1("SHA-1"), MD5("MD5"), CRC32C("CRC32C");
+
+		private String displayName;
+
+		Algorithm(String displayName) {
+			this.displayName = displayName;
+		}
+
+		public String getDisplayName() {
+			return displayName;
+		}
+	}
+
+    /**
+     * Digests of one file.
+     */
+	public static class Result {
+		private File file;
+		private long size;
+		private Map<Algorithm, String> digests;
+
+		private Result(File file, long size, Map<Algorithm, String> digests) {
+			this.file = file;
+			this.size = size;
+			this.digests = digests;
+		}
+
+		public File getFile() {
+			return file;
+		}
+
+		public long getSize() {
+			return size;
+		}
+
+		public String getDigest(Algorithm algorithm) {
+			return digests.get(algorithm);
+		}
+	}
+
+    /**
+     * Outcome of a manifest verification.
+     */
+	public static class Verification {
+		private int matched;
+		private List<String> mismatched = new ArrayList<>();
+		private List<String> missing = new ArrayList<>();
+
+		public int getMatched() {
+			return matched;
+		}
+
+		public List<String> getMismatched() {
+			return mismatched;
+		}
+
+		public List<String> getMissing() {
+			return missing;
+		}
+
+		public boolean isOk() {
+			return mismatched.isEmpty() && missing.isEmpty();
+		}
+	}
+
+    /**
+     * Receives progress updates from the worker threads.
+     */
+	public interface ProgressListener {
+	    /**
+	     * Called after each file is hashed.
+	     * @param filesDone  files hashed so far
+	     * @param filesTotal files to hash
+	     * @param bytesDone  bytes hashed so far
+	     */
+		void progress(int filesDone, int filesTotal, long bytesDone);
+	}
+
+	private static class CachedDigests {
+		private long size;
+		private long lastModified;
+		private Map<Algorithm, String> digests;
+
+		private CachedDigests(long size, long lastModified, Map<Algorithm, String> digests) {
+			this.size = size;
+			this.lastModified = lastModified;
+			this.digests = digests;
+		}
+	}
+
+    /**
+     * Builds the service.
+     * @param threads number of files hashed in parallel
+     */
+	public HashService(int threads) {
+		this.executor = Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "hash-worker");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.cache = new LinkedHashMap<String, CachedDigests>(256, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<String, CachedDigests> eldest) {
+				return size() > MAX_CACHED_FILES;
+			}
+		};
+	}
+
+    /**
+     * Hashes a single file, reusing cached digests when the file didn't change.
+     * @param file       the file to hash
+     * @param algorithms the digests to compute
+     * @return the digests of the file
+     * @throws IOException if the file can't be read
+     */
+	public Result hashFile(File file, EnumSet<Algorithm> algorithms) throws IOException {
+		String key = file.getAbsolutePath();
+		long size = file.length();
+		long lastModified = file.lastModified();
+		CachedDigests cached;
+		synchronized (cache) {
+			cached = cache.get(key);
+		}
+		if (cached != null && cached.size == size && cached.lastModified == lastModified
+				&& cached.digests.keySet().containsAll(algorithms)) {
+			return new Result(file, size, cached.digests);
+		}
+		Map<Algorithm, String> digests = digest(file.toPath(), algorithms);
+		if (cached != null && cached.size == size && cached.lastModified == lastModified) {
+			Map<Algorithm, String> merged = new EnumMap<>(cached.digests);
+			merged.putAll(digests);
+			digests = merged;
+		}
+		synchronized (cache) {
+			cache.put(key, new CachedDigests(size, lastModified, digests));
+		}
+		return new Result(file, size, digests);
+	}
+
+    /**
+     * Hashes every file below a folder, several files at a time.
+     * Interrupting the calling thread cancels the remaining files.
+     * @param folder     the folder to hash
+     * @param algorithms the digests to compute
+     * @param listener   progress callback, may be {@code null}
+     * @return the results sorted by path
+     * @throws IOException if the folder can't be walked or a file can't be read
+     */
+	public List<Result> hashFolder(File folder, final EnumSet<Algorithm> algorithms, final ProgressListener listener)
+			throws IOException {
+		final List<File> files = new ArrayList<>();
+		Files.walkFileTree(folder.toPath(), new SimpleFileVisitor<Path>() {
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+				if (attributes.isRegularFile())
+					files.add(file.toFile());
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		Collections.sort(files);
+
+		final AtomicLong bytesDone = new AtomicLong();
+		final AtomicLong filesDone = new AtomicLong();
+		List<Future<Result>> futures = new ArrayList<>(files.size());
+		for (final File file : files) {
+			futures.add(executor.submit(new Callable<Result>() {
+				public Result call() throws IOException {
+					Result result = hashFile(file, algorithms);
+					long bytes = bytesDone.addAndGet(result.size);
+					int done = (int) filesDone.incrementAndGet();
+					if (listener != null)
+						listener.progress(done, files.size(), bytes);
+					return result;
+				}
+			}));
+		}
+		List<Result> results = new ArrayList<>(files.size());
+		try {
+			for (Future<Result> future : futures)
+				results.add(future.get());
+		} catch (InterruptedException e) {
+			cancelAll(futures);
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Hashing cancelled");
+		} catch (ExecutionException e) {
+			cancelAll(futures);
+			throw (e.getCause() instanceof IOException) ? (IOException) e.getCause() : new IOException(e.getCause());
+		}
+		return results;
+	}
+
+    /**
+     * Writes a <code>sha256sum</code>-compatible manifest; paths are relative to the manifest's folder.
+     * @param results  SHA-256 results (as returned by {@link #hashFolder})
+     * @param manifest the manifest file to write
+     * @throws IOException if the manifest can't be written
+     */
+	public void writeManifest(List<Result> results, File manifest) throws IOException {
+		Path base = manifest.getAbsoluteFile().getParentFile().toPath();
+		try (BufferedWriter writer = Files.newBufferedWriter(manifest.toPath(), StandardCharsets.UTF_8)) {
+			for (Result result : results) {
+				Path path = result.file.getAbsoluteFile().toPath();
+				if (path.equals(manifest.getAbsoluteFile().toPath()))
+					continue;
+				String relative = base.relativize(path).toString().replace(File.separatorChar, '/');
+				writer.write(result.getDigest(Algorithm.SHA256) + "  " + relative);
+				writer.write('\n');
+			}
+		}
+	}
+
+    /**
+     * Verifies a manifest. The algorithm is recognized from the hash length, so <code>sha1sum</code> and
+     * <code>md5sum</code> files work too.
+     * @param manifest the manifest to check
+     * @param listener progress callback, may be {@code null}
+     * @return matched, mismatched and missing entries
+     * @throws IOException if the manifest can't be read or is malformed
+     */
+	public Verification verifyManifest(File manifest, final ProgressListener listener) throws IOException {
+		File base = manifest.getAbsoluteFile().getParentFile();
+		final List<String[]> lines = new ArrayList<>();
+		try (BufferedReader reader = Files.newBufferedReader(manifest.toPath(), StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.trim().isEmpty() || line.startsWith("#"))
+					continue;
+				int space = line.indexOf(' ');
+				if (space <= 0 || line.length() < space + 3)
+					throw new IOException("Malformed manifest line: " + line);
+				// "hash  path" (text mode) or "hash *path" (binary mode)
+				lines.add(new String[] { line.substring(0, space).toLowerCase(), line.substring(space + 2) });
+			}
+		}
+
+		final Verification verification = new Verification();
+		final AtomicLong bytesDone = new AtomicLong();
+		final AtomicLong filesDone = new AtomicLong();
+		List<Future<String>> futures = new ArrayList<>();
+		for (final String[] entry : lines) {
+			final File file = new File(base, entry[1]);
+			final Algorithm algorithm = algorithmForLength(entry[0].length());
+			if (algorithm == null)
+				throw new IOException("Unknown hash: " + entry[0]);
+			futures.add(executor.submit(new Callable<String>() {
+				public String call() throws IOException {
+					if (!file.isFile())
+						return "missing";
+					Result result = hashFile(file, EnumSet.of(algorithm));
+					int done = (int) filesDone.incrementAndGet();
+					if (listener != null)
+						listener.progress(done, lines.size(), bytesDone.addAndGet(result.size));
+					return entry[0].equals(result.getDigest(algorithm)) ? "ok" : "mismatch";
+				}
+			}));
+		}
+		try {
+			for (int i = 0; i < futures.size(); i++) {
+				String outcome = futures.get(i).get();
+				if (outcome.equals("ok"))
+					verification.matched++;
+				else if (outcome.equals("missing"))
+					verification.missing.add(lines.get(i)[1]);
+				else
+					verification.mismatched.add(lines.get(i)[1]);
+			}
+		} catch (InterruptedException e) {
+			cancelAll(futures);
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Verification cancelled");
+		} catch (ExecutionException e) {
+			cancelAll(futures);
+			throw (e.getCause() instanceof IOException) ? (IOException) e.getCause() : new IOException(e.getCause());
+		}
+		return verification;
+	}
+
+    /**
+     * Computes the digests of a file in one pass over memory-mapped chunks.
+     * @param path       the file to read
+     * @param algorithms the digests to compute
+     * @return hex digests by algorithm
+     * @throws IOException if the file can't be read
+     */
+	static Map<Algorithm, String> digest(Path path, EnumSet<Algorithm> algorithms) throws IOException {
+		List<MessageDigest> messageDigests = new ArrayList<>();
+		List<Algorithm> messageAlgorithms = new ArrayList<>();
+		Checksum crc = algorithms.contains(Algorithm.CRC32C) ? new CRC32C() : null;
+		for (Algorithm algorithm : algorithms) {
+			if (algorithm == Algorithm.CRC32C)
+				continue;
+			try {
+				messageDigests.add(MessageDigest.getInstance(algorithm.getDisplayName()));
+				messageAlgorithms.add(algorithm);
+			} catch (NoSuchAlgorithmException e) {
+				throw new IOException(e);
+			}
+		}
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < SLICE) {
+				// Mapping costs more than it saves for small files
+				ByteBuffer buffer = ByteBuffer.allocate((int) size);
+				while (buffer.hasRemaining()) {
+					if (channel.read(buffer) < 0)
+						break;
+				}
+				buffer.flip();
+				update(buffer, messageDigests, crc);
+			} else {
+				for (long position = 0; position < size; position += MAP_CHUNK) {
+					if (Thread.currentThread().isInterrupted())
+						throw new InterruptedIOException("Hashing cancelled");
+					MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, position,
+							Math.min(MAP_CHUNK, size - position));
+					for (int offset = 0; offset < chunk.limit(); offset += SLICE) {
+						ByteBuffer slice = chunk.duplicate();
+						slice.position(offset).limit(Math.min(chunk.limit(), offset + SLICE));
+						update(slice, messageDigests, crc);
+					}
+				}
+			}
+		}
+
+		Map<Algorithm, String> digests = new EnumMap<>(Algorithm.class);
+		for (int i = 0; i < messageDigests.size(); i++)
+			digests.put(messageAlgorithms.get(i), toHex(messageDigests.get(i).digest()));
+		if (crc != null)
+			digests.put(Algorithm.CRC32C, String.format("%08x", crc.getValue()));
+		return digests;
+	}
+
+	private static void update(ByteBuffer slice, List<MessageDigest> messageDigests, Checksum crc) {
+		// Every digest reads the same slice while it is still in the CPU cache
+		for (MessageDigest messageDigest : messageDigests)
+			messageDigest.update(slice.duplicate());
+		if (crc != null)
+			crc.update(slice.duplicate());
+	}
+
+	private static Algorithm algorithmForLength(int hexLength) {
+		switch (hexLength) {
+		case 64:
+			return Algorithm.SHA256;
+		case 40:
+			return Algorithm.SHA1;
+		case 32:
+			return Algorithm.MD5;
+		case 8:
+			return Algorithm.CRC32C;
+		default:
+			return null;
+		}
+	}
+
+	private static String toHex(byte[] bytes) {
+		char[] digits = "0123456789abcdef".toCharArray();
+		char[] hex = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			hex[2 * i] = digits[(bytes[i] >> 4) & 0xf];
+			hex[2 * i + 1] = digits[bytes[i] & 0xf];
+		}
+		return new String(hex);
+	}
+
+	private static <T> void cancelAll(List<Future<T>> futures) {
+		for (Future<T> future : futures)
+			future.cancel(true);
+	}
+
+}
@@ -0,0 +1,143 @@
+package es.annahexe;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Computes the info block of the selected file/folder off the event dispatch thread.
+ * <p>
+ * Only the latest request is delivered: asking for a new entry cancels the one in flight.
+ * Results are cached per path and reused while the entry's size and last modified time don't change.
+ * </p>
+ * @author annahexe
+ */
+public class InfoLoader {
+	private static final int MAX_CACHED = 512;
+
+	private Utilities utilities;
+	private ExecutorService executor;
+	private Map<String, CachedInfo> cache;
+	private Future<?> pending;
+	private long generation; // only touched on the EDT
+
+    /**
+     * Receives the computed info on the event dispatch thread.
+     */
+	public interface InfoListener {
+	    /**
+	     * Called on the EDT when the info of {@code file} is ready.
+	     * @param file the described file or folder
+	     * @param info the info block
+	     */
+		void infoLoaded(File file, String info);
+	}
+
+    /**
+     * Cached info block together with the stamp it was computed for.
+     */
+	private static class CachedInfo {
+		private long lastModified;
+		private long length;
+		private String info;
+
+		private CachedInfo(long lastModified, long length, String info) {
+			this.lastModified = lastModified;
+			this.length = length;
+			this.info = info;
+		}
+	}
+
+    /**
+     * Builds the loader with two daemon worker threads.
+     * @param utilities file and IO helpers used to build the info
+     */
+	public InfoLoader(Utilities utilities) {
+		this.utilities = utilities;
+		this.executor = Executors.newFixedThreadPool(2, new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "info-loader");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.cache = new LinkedHashMap<String, CachedInfo>(64, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<String, CachedInfo> eldest) {
+				return size() > MAX_CACHED;
+			}
+		};
+	}
+
+    /**
+     * Requests the info of {@code file}. Must be called on the EDT.
+     * <p>A cached (possibly stale) result is returned right away so the panel never waits;
+     * the worker then validates it and calls {@code listener} only if it changed.</p>
+     * @param file     the file or folder to describe
+     * @param listener receives the fresh info on the EDT
+     * @return the cached info, or {@code null} if nothing is cached yet
+     */
+	public String request(final File file, final InfoListener listener) {
+		cancel();
+		final long requestGeneration = generation;
+		final String key = file.getAbsolutePath();
+		final CachedInfo cached = getCached(key);
+
+		pending = executor.submit(new Runnable() {
+			public void run() {
+				long lastModified = file.lastModified();
+				long length = file.isDirectory() ? 0 : file.length();
+				if (cached != null && cached.lastModified == lastModified && cached.length == length) {
+					return;
+				}
+				if (Thread.currentThread().isInterrupted()) {
+					return;
+				}
+				final String info = file.isDirectory() ? utilities.infoDirectory(file) : utilities.infoFile(file);
+				putCached(key, new CachedInfo(lastModified, length, info));
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						if (requestGeneration == generation) {
+							listener.infoLoaded(file, info);
+						}
+					}
+				});
+			}
+		});
+		return (cached != null) ? cached.info : null;
+	}
+
+    /**
+     * Cancels the request in flight, if any; its result will not be delivered. Must be called on the EDT.
+     */
+	public void cancel() {
+		generation++;
+		if (pending != null) {
+			pending.cancel(true);
+			pending = null;
+		}
+	}
+
+    /**
+     * Drops every cached info block.
+     */
+	public synchronized void clearCache() {
+		cache.clear();
+	}
+
+	private synchronized CachedInfo getCached(String key) {
+		return cache.get(key);
+	}
+
+	private synchronized void putCached(String key, CachedInfo info) {
+		cache.put(key, info);
+	}
+
+}
@@ -0,0 +1,683 @@
+package es.annahexe;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Background job queue for file operations (copy, delete, rename, save...).
+ * <p>
+ * A job is a list of {@link Operation}s run one after the other on a worker thread. At most
+ * <code>maxRunning</code> jobs run at once, and at most <code>perDevice</code> of them on the same
+ * device (file store), so a slow network share can't take every worker and stall the local disk.
+ * Jobs that can't start yet stay queued here instead of blocking a worker.
+ * </p>
+ * <p>
+ * Failing operations don't stop the job: they are recorded and can be retried later as a new job.
+ * </p>
+ * <p>
+ * Batch jobs can run up to <code>parallelism</code> operations at once, so the latency of one file system call
+ * overlaps with the next ones. Operations that depend on earlier ones (e.g. deleting a folder after its files)
+ * are separated by {@link #BARRIER}, which waits for everything before it.
+ * </p>
+ * <p>
+ * The device of a new job is found on a small pool of threads, since the file store of a hung mount never
+ * answers. A job whose device isn't known within a couple of seconds is queued on {@link #UNKNOWN_DEVICE}.
+ * </p>
+ * @author annahexe
+ */
+public class JobManager {
+	private static final int HISTORY_LIMIT = 200;
+	private static final int RESOLVER_THREADS = 4;
+	private static final long RESOLVE_TIMEOUT_MILLIS = 2000;
+
+    /**
+     * The device of the jobs whose file store can't be found, or not in time.
+     */
+	public static final String UNKNOWN_DEVICE = "?";
+
+    /**
+     * Marker operation: everything before it finishes before anything after it starts.
+     */
+	public static final Operation BARRIER = new Operation() {
+		public String getName() {
+			return "barrier";
+		}
+
+		public void run(Job job) {
+		}
+	};
+
+	private ExecutorService workers;
+	private ExecutorService operationPool; // runs the operations of parallel jobs
+	private ExecutorService resolver; // finds the device of new jobs, a few at once as a hung mount blocks its thread
+	private ScheduledExecutorService resolveTimeouts; // queues the jobs still resolving on UNKNOWN_DEVICE
+	private int maxRunning;
+	private int perDevice;
+	private AtomicInteger nextId = new AtomicInteger(1);
+
+	// Guarded by this
+	private List<Job> jobs = new ArrayList<>(); // every job still shown, in submission order
+	private LinkedList<Job> queue = new LinkedList<>(); // queued jobs whose device is known
+	private Map<String, Integer> runningPerDevice = new HashMap<>();
+	private int running;
+
+    /**
+     * Job lifecycle.
+     */
+	public enum State {
+		RESOLVING, QUEUED, RUNNING, DONE, FAILED, CANCELED
+	}
+
+    /**
+     * One unit of work of a job, e.g. deleting a single file. Operations can be run again on retry.
+     */
+	public interface Operation {
+	    /**
+	     * @return a short description shown for failures
+	     */
+		String getName();
+
+	    /**
+	     * Runs the operation.
+	     * @param job the running job, to report processed bytes and check for cancellation
+	     * @throws Exception if the operation failed
+	     */
+		void run(Job job) throws Exception;
+	}
+
+    /**
+     * Produces the operations of a job. Runs on the worker, so it may walk folders or touch the disk.
+     */
+	public interface Planner {
+		List<Operation> plan(Job job) throws Exception;
+	}
+
+    /**
+     * Notified on the EDT when a job finishes, whatever its final state.
+     */
+	public interface JobListener {
+		void jobFinished(Job job);
+	}
+
+    /**
+     * A failed operation and the reason.
+     */
+	public static class Failure {
+		private Operation operation;
+		private String message;
+
+		private Failure(Operation operation, String message) {
+			this.operation = operation;
+			this.message = message;
+		}
+
+		public Operation getOperation() {
+			return operation;
+		}
+
+		public String getMessage() {
+			return message;
+		}
+
+	    /**
+	     * @return true if the job couldn't be planned, so none of its operations ran
+	     */
+		public boolean isPlanning() {
+			return operation instanceof Replan;
+		}
+	}
+
+    /**
+     * A submitted job with its progress. Counters are updated by the worker and read by the UI.
+     */
+	public static class Job {
+		private int id;
+		private String name;
+		private File location;
+		private Planner planner;
+		private JobListener listener;
+		private int parallelism;
+		private volatile String device;
+		private volatile State state = State.RESOLVING;
+		private volatile boolean canceled;
+		private volatile Thread worker;
+		private volatile int total = -1;
+		private AtomicInteger done = new AtomicInteger();
+		private AtomicLong bytes = new AtomicLong();
+		private volatile long startNanos;
+		private volatile long endNanos;
+		private volatile String current = "";
+		private List<Failure> failures = Collections.synchronizedList(new ArrayList<Failure>());
+		private volatile List<Operation> operations = Collections.emptyList();
+		private Set<Operation> completed = Collections.newSetFromMap(new ConcurrentHashMap<Operation, Boolean>());
+
+		private Job(int id, String name, File location, Planner planner, int parallelism, JobListener listener) {
+			this.id = id;
+			this.name = name;
+			this.location = location;
+			this.planner = planner;
+			this.parallelism = Math.max(1, parallelism);
+			this.listener = listener;
+		}
+
+		public int getId() {
+			return id;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public File getLocation() {
+			return location;
+		}
+
+		public String getDevice() {
+			return device;
+		}
+
+		public State getState() {
+			return state;
+		}
+
+		public boolean isCanceled() {
+			return canceled;
+		}
+
+	    /**
+	     * @return the number of operations, or -1 while the job is still being planned
+	     */
+		public int getTotal() {
+			return total;
+		}
+
+		public int getDone() {
+			return done.get();
+		}
+
+		public long getBytes() {
+			return bytes.get();
+		}
+
+		public String getCurrent() {
+			return current;
+		}
+
+		public List<Failure> getFailures() {
+			synchronized (failures) {
+				return new ArrayList<>(failures);
+			}
+		}
+
+		public boolean isFinished() {
+			return state == State.DONE || state == State.FAILED || state == State.CANCELED;
+		}
+
+	    /**
+	     * Blocks until the job finishes, for callers without an EDT such as the command line.
+	     * @throws InterruptedException if interrupted while waiting
+	     */
+		public synchronized void await() throws InterruptedException {
+			while (!isFinished())
+				wait();
+		}
+
+	    /**
+	     * Adds processed bytes, used for the throughput.
+	     * @param count bytes processed since the last call
+	     */
+		public void addBytes(long count) {
+			bytes.addAndGet(count);
+		}
+
+	    /**
+	     * @return elapsed time in nanoseconds, 0 if the job didn't start
+	     */
+		public long getElapsedNanos() {
+			if (startNanos == 0)
+				return 0;
+			return (endNanos != 0 ? endNanos : System.nanoTime()) - startNanos;
+		}
+
+	    /**
+	     * Formats the throughput as bytes per second, or as operations per second when no bytes were counted.
+	     * @return e.g. <code>12.5 MB/s</code>, empty if the job didn't start
+	     */
+		public String getThroughput() {
+			double seconds = getElapsedNanos() / 1e9;
+			if (seconds <= 0)
+				return "";
+			double rate = bytes.get() / seconds;
+			if (rate >= 1024 * 1024)
+				return String.format("%.1f MB/s", rate / (1024 * 1024));
+			if (rate > 0)
+				return String.format("%.1f KB/s", rate / 1024);
+			return String.format("%.0f ops/s", done.get() / seconds);
+		}
+
+	    /**
+	     * @return the failed operations plus the ones never run because the job was canceled, in their original
+	     *         order and with their barriers
+	     */
+		public List<Operation> getRetryOperations() {
+			List<Operation> operations = new ArrayList<>();
+			List<Operation> planned = this.operations;
+			if (planned.isEmpty()) {
+				// Planning failed, the failure holds an operation that plans again
+				for (Failure failure : getFailures())
+					operations.add(failure.getOperation());
+				return operations;
+			}
+			for (Operation operation : planned) {
+				if (operation == BARRIER) {
+					if (!operations.isEmpty() && operations.get(operations.size() - 1) != BARRIER)
+						operations.add(BARRIER);
+				} else if (!completed.contains(operation)) {
+					operations.add(operation);
+				}
+			}
+			return operations;
+		}
+	}
+
+    /**
+     * Creates the manager.
+     * @param maxRunning maximum jobs running at once
+     * @param perDevice  maximum jobs running at once on the same device
+     */
+	public JobManager(int maxRunning, int perDevice) {
+		this.maxRunning = Math.max(1, maxRunning);
+		this.perDevice = Math.max(1, perDevice);
+		this.workers = Executors.newFixedThreadPool(this.maxRunning, daemonFactory("job-worker"));
+		this.operationPool = Executors.newCachedThreadPool(daemonFactory("job-io"));
+		this.resolver = Executors.newFixedThreadPool(RESOLVER_THREADS, daemonFactory("job-resolver"));
+		this.resolveTimeouts = Executors.newSingleThreadScheduledExecutor(daemonFactory("job-resolve-timeout"));
+	}
+
+	private static ThreadFactory daemonFactory(final String name) {
+		return new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, name);
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+    /**
+     * Submits a job with a fixed list of operations.
+     * @param name       shown in the jobs window
+     * @param location   a path on the device the job works on
+     * @param operations the operations to run, in order
+     * @param listener   notified on the EDT when the job finishes, may be null
+     * @return the queued job
+     */
+	public Job submit(String name, File location, List<Operation> operations, JobListener listener) {
+		return submit(name, location, operations, 1, listener);
+	}
+
+    /**
+     * Submits a job with a fixed list of operations, running up to <code>parallelism</code> of them at once.
+     * @see #submit(String, File, List, JobListener)
+     */
+	public Job submit(String name, File location, List<Operation> operations, int parallelism,
+			JobListener listener) {
+		return submit(name, location, planOf(operations), parallelism, listener);
+	}
+
+    /**
+     * Wraps a fixed list of operations as a planner.
+     * @param operations the operations, in order
+     * @return a planner returning them
+     */
+	public static Planner planOf(final List<Operation> operations) {
+		return new Planner() {
+			public List<Operation> plan(Job job) {
+				return operations;
+			}
+		};
+	}
+
+    /**
+     * Submits a job whose operations are produced by a planner on the worker thread.
+     * @param name     shown in the jobs window
+     * @param location a path on the device the job works on
+     * @param planner  produces the operations to run
+     * @param listener notified on the EDT when the job finishes, may be null
+     * @return the queued job
+     */
+	public Job submit(String name, File location, Planner planner, JobListener listener) {
+		return submit(name, location, planner, 1, listener);
+	}
+
+    /**
+     * Submits a job whose operations are produced by a planner, running up to <code>parallelism</code> of them
+     * at once between barriers.
+     * @see #submit(String, File, Planner, JobListener)
+     */
+	public Job submit(String name, File location, Planner planner, int parallelism, JobListener listener) {
+		final Job job = new Job(nextId.getAndIncrement(), name, location, planner, parallelism, listener);
+		synchronized (this) {
+			jobs.add(job);
+			trimHistory();
+		}
+		resolver.execute(new Runnable() {
+			public void run() {
+				if (job.state == State.RESOLVING) // else timed out while waiting behind a hung mount
+					enqueue(job, deviceOf(job.location));
+			}
+		});
+		resolveTimeouts.schedule(new Runnable() {
+			public void run() {
+				enqueue(job, UNKNOWN_DEVICE);
+			}
+		}, RESOLVE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+		return job;
+	}
+
+	// Queues a resolving job on its device; the first of the resolver and the timeout wins
+	private synchronized void enqueue(Job job, String device) {
+		if (job.canceled || job.state != State.RESOLVING)
+			return;
+		job.device = device;
+		job.state = State.QUEUED;
+		queue.add(job);
+		schedule();
+	}
+
+    /**
+     * Submits the failed (and never run) operations of a finished job as a new job.
+     * @param job a finished job
+     * @return the new job, or null if there is nothing to retry
+     */
+	public Job retry(Job job) {
+		if (!job.isFinished())
+			return null;
+		List<Operation> operations = job.getRetryOperations();
+		if (operations.isEmpty())
+			return null;
+		String name = job.name.endsWith(" (retry)") ? job.name : job.name + " (retry)";
+		return submit(name, job.location, operations, job.parallelism, job.listener);
+	}
+
+    /**
+     * Cancels a job. Queued jobs are dropped, running jobs are interrupted and stop before their next
+     * operation.
+     * @param job the job to cancel
+     */
+	public void cancel(Job job) {
+		boolean finishedNow = false;
+		synchronized (this) {
+			if (job.isFinished())
+				return;
+			job.canceled = true;
+			if (job.state == State.RESOLVING || job.state == State.QUEUED) {
+				queue.remove(job);
+				job.state = State.CANCELED;
+				finishedNow = true;
+			} else {
+				Thread worker = job.worker;
+				if (worker != null)
+					worker.interrupt();
+			}
+		}
+		if (finishedNow)
+			notifyFinished(job);
+	}
+
+    /**
+     * Removes finished jobs from the list.
+     */
+	public synchronized void clearFinished() {
+		Iterator<Job> iterator = jobs.iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next().isFinished())
+				iterator.remove();
+		}
+	}
+
+    /**
+     * @return a snapshot of the jobs, in submission order
+     */
+	public synchronized List<Job> getJobs() {
+		return new ArrayList<>(jobs);
+	}
+
+    /**
+     * @return the number of jobs not finished yet
+     */
+	public synchronized int getActiveCount() {
+		int active = 0;
+		for (Job job : jobs) {
+			if (!job.isFinished())
+				active++;
+		}
+		return active;
+	}
+
+	// =========================
+	// Scheduling
+	// =========================
+
+	// Starts every queued job allowed by the global and per-device limits, oldest first.
+	private synchronized void schedule() {
+		Iterator<Job> iterator = queue.iterator();
+		while (running < maxRunning && iterator.hasNext()) {
+			final Job job = iterator.next();
+			int onDevice = runningPerDevice.getOrDefault(job.device, 0);
+			if (onDevice >= perDevice)
+				continue;
+			iterator.remove();
+			runningPerDevice.put(job.device, onDevice + 1);
+			running++;
+			job.state = State.RUNNING;
+			workers.execute(new Runnable() {
+				public void run() {
+					execute(job);
+				}
+			});
+		}
+	}
+
+	private void execute(final Job job) {
+		job.worker = Thread.currentThread();
+		job.startNanos = System.nanoTime();
+		ArrayDeque<Future<?>> inFlight = new ArrayDeque<>();
+		try {
+			List<Operation> operations = plan(job);
+			for (final Operation operation : operations) {
+				if (job.canceled || Thread.currentThread().isInterrupted())
+					break;
+				if (operation == BARRIER) {
+					drain(inFlight, 0);
+				} else if (job.parallelism == 1) {
+					runOperation(job, operation);
+				} else {
+					drain(inFlight, job.parallelism - 1);
+					inFlight.add(operationPool.submit(new Runnable() {
+						public void run() {
+							runOperation(job, operation);
+						}
+					}));
+				}
+			}
+			drain(inFlight, 0);
+		} catch (InterruptedException e) {
+			// Canceled while waiting for running operations
+		} finally {
+			for (Future<?> future : inFlight)
+				future.cancel(true);
+			job.endNanos = System.nanoTime();
+			job.current = "";
+			job.worker = null;
+			Thread.interrupted(); // don't leak a cancel interrupt into the next job on this thread
+			synchronized (this) {
+				if (job.canceled)
+					job.state = State.CANCELED;
+				else
+					job.state = job.failures.isEmpty() ? State.DONE : State.FAILED;
+				running--;
+				int onDevice = runningPerDevice.get(job.device) - 1;
+				if (onDevice == 0)
+					runningPerDevice.remove(job.device);
+				else
+					runningPerDevice.put(job.device, onDevice);
+				schedule();
+			}
+			notifyFinished(job);
+		}
+	}
+
+	private List<Operation> plan(Job job) {
+		try {
+			List<Operation> operations = job.planner.plan(job);
+			int total = 0;
+			for (Operation operation : operations) {
+				if (operation != BARRIER)
+					total++;
+			}
+			job.operations = operations;
+			job.total = total;
+			return operations;
+		} catch (Exception e) {
+			// Nothing ran, retrying plans and runs the whole job again
+			job.failures.add(new Failure(new Replan(job.planner, job.name), message(e)));
+			job.total = 1;
+			return Collections.emptyList();
+		}
+	}
+
+	private static void runOperation(Job job, Operation operation) {
+		if (job.canceled)
+			return;
+		job.current = operation.getName();
+		try {
+			operation.run(job);
+			job.completed.add(operation);
+		} catch (Exception e) {
+			if (job.canceled)
+				return; // left for a retry as never run
+			job.failures.add(new Failure(operation, message(e)));
+		}
+		job.done.incrementAndGet();
+	}
+
+	// Waits until at most maxLeft operations are still running
+	private static void drain(ArrayDeque<Future<?>> inFlight, int maxLeft) throws InterruptedException {
+		while (inFlight.size() > maxLeft) {
+			try {
+				inFlight.peek().get();
+			} catch (ExecutionException e) {
+				// runOperation records its own failures
+			}
+			inFlight.poll();
+		}
+	}
+
+	private void notifyFinished(final Job job) {
+		synchronized (job) {
+			job.notifyAll();
+		}
+		if (job.listener == null)
+			return;
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				job.listener.jobFinished(job);
+			}
+		});
+	}
+
+	private void trimHistory() {
+		Iterator<Job> iterator = jobs.iterator();
+		while (jobs.size() > HISTORY_LIMIT && iterator.hasNext()) {
+			if (iterator.next().isFinished())
+				iterator.remove();
+		}
+	}
+
+	private static String message(Exception e) {
+		if (e instanceof FileSystemException && ((FileSystemException) e).getReason() == null) {
+			// Only the path: say what happened to it
+			String file = "`" + ((FileSystemException) e).getFile() + "`";
+			if (e instanceof FileAlreadyExistsException)
+				return file + " already exists";
+			if (e instanceof NoSuchFileException)
+				return file + " doesn't exist";
+			if (e instanceof AccessDeniedException)
+				return file + ": permission denied";
+		}
+		return e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+	}
+
+    /**
+     * Returns a key identifying the file store of a path, walking up to the closest existing parent.
+     * Paths whose store can't be read share one key per root.
+     */
+	private static String deviceOf(File location) {
+		File existing = location.getAbsoluteFile();
+		while (existing != null && !existing.exists())
+			existing = existing.getParentFile();
+		if (existing == null)
+			return UNKNOWN_DEVICE;
+		try {
+			FileStore store = Files.getFileStore(existing.toPath());
+			return store.toString();
+		} catch (IOException e) {
+			return existing.toPath().getRoot() != null ? existing.toPath().getRoot().toString() : UNKNOWN_DEVICE;
+		}
+	}
+
+    /**
+     * Operation that plans and runs a whole job again, used when planning itself failed.
+     */
+	private static class Replan implements Operation {
+		private Planner planner;
+		private String name;
+
+		Replan(Planner planner, String name) {
+			this.planner = planner;
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public void run(Job job) throws Exception {
+			for (Operation operation : planner.plan(job)) {
+				if (job.isCanceled())
+					return;
+				if (operation != BARRIER)
+					operation.run(job);
+			}
+		}
+	}
+
+}
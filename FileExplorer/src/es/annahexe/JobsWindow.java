@@ -0,0 +1,212 @@
+package es.annahexe;
+
+import java.awt.BorderLayout;
+import java.awt.FlowLayout;
+import java.awt.Font;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.JButton;
+import javax.swing.JFrame;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JSplitPane;
+import javax.swing.JTable;
+import javax.swing.JTextArea;
+import javax.swing.ListSelectionModel;
+import javax.swing.Timer;
+import javax.swing.event.ListSelectionEvent;
+import javax.swing.event.ListSelectionListener;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * Window listing the jobs of a {@link JobManager}: queued, running and finished jobs with their progress,
+ * throughput and failures. The selected job can be canceled or, once finished, its failed items retried.
+ * <p>
+ * The table is refreshed from a Swing timer while the window is visible, so workers never touch the UI.
+ * </p>
+ * @author annahexe
+ */
+public class JobsWindow {
+	private static final String[] COLUMNS = { "#", "Job", "State", "Progress", "Throughput", "Failed", "Current" };
+	private static final int REFRESH_MILLIS = 500;
+
+	private JobManager jobManager;
+	private JFrame frame;
+	private JTable table;
+	private JTextArea textAreaFailures;
+	private JButton btnCancel;
+	private JButton btnRetry;
+	private JButton btnClear;
+	private JobsTableModel model = new JobsTableModel();
+	private Timer timer;
+
+    /**
+     * Builds the (hidden) window.
+     * @param jobManager the jobs to show
+     */
+	public JobsWindow(JobManager jobManager) {
+		this.jobManager = jobManager;
+		initialize();
+	}
+
+	private void initialize() {
+		frame = new JFrame("JOBS");
+		frame.setSize(820, 420);
+		frame.setDefaultCloseOperation(JFrame.HIDE_ON_CLOSE);
+		frame.getContentPane().setLayout(new BorderLayout());
+
+		table = new JTable(model);
+		table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		table.getColumnModel().getColumn(0).setMaxWidth(40);
+		table.getColumnModel().getColumn(1).setPreferredWidth(240);
+		table.getColumnModel().getColumn(6).setPreferredWidth(200);
+
+		textAreaFailures = new JTextArea();
+		textAreaFailures.setEditable(false);
+		textAreaFailures.setFont(new Font("Monospaced", Font.PLAIN, 12));
+
+		JSplitPane splitPane = new JSplitPane(JSplitPane.VERTICAL_SPLIT, new JScrollPane(table),
+				new JScrollPane(textAreaFailures));
+		splitPane.setResizeWeight(0.7);
+		frame.getContentPane().add(splitPane, BorderLayout.CENTER);
+
+		JPanel panelButtons = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+		btnCancel = new JButton("Cancel");
+		btnRetry = new JButton("Retry failed");
+		btnClear = new JButton("Clear finished");
+		panelButtons.add(btnCancel);
+		panelButtons.add(btnRetry);
+		panelButtons.add(btnClear);
+		frame.getContentPane().add(panelButtons, BorderLayout.SOUTH);
+
+		btnCancel.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent actionEvent) {
+				JobManager.Job job = getSelectedJob();
+				if (job != null)
+					jobManager.cancel(job);
+				refresh();
+			}
+		});
+		btnRetry.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent actionEvent) {
+				JobManager.Job job = getSelectedJob();
+				if (job != null)
+					jobManager.retry(job);
+				refresh();
+			}
+		});
+		btnClear.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent actionEvent) {
+				jobManager.clearFinished();
+				refresh();
+			}
+		});
+		table.getSelectionModel().addListSelectionListener(new ListSelectionListener() {
+			public void valueChanged(ListSelectionEvent listEvent) {
+				if (!listEvent.getValueIsAdjusting())
+					updateDetails();
+			}
+		});
+
+		timer = new Timer(REFRESH_MILLIS, new ActionListener() {
+			public void actionPerformed(ActionEvent actionEvent) {
+				if (frame.isVisible())
+					refresh();
+				else
+					timer.stop();
+			}
+		});
+	}
+
+    /**
+     * Shows the window and starts refreshing it.
+     * @param parent the frame to center on the first time
+     */
+	public void show(JFrame parent) {
+		if (!frame.isVisible())
+			frame.setLocationRelativeTo(parent);
+		refresh();
+		frame.setVisible(true);
+		frame.toFront();
+		timer.start();
+	}
+
+	private JobManager.Job getSelectedJob() {
+		int row = table.getSelectedRow();
+		return row >= 0 && row < model.jobs.size() ? model.jobs.get(row) : null;
+	}
+
+	// Reloads the jobs keeping the selected one selected
+	private void refresh() {
+		JobManager.Job selected = getSelectedJob();
+		model.jobs = jobManager.getJobs();
+		model.fireTableDataChanged();
+		int row = selected != null ? model.jobs.indexOf(selected) : -1;
+		if (row >= 0)
+			table.setRowSelectionInterval(row, row);
+		updateDetails();
+	}
+
+	private void updateDetails() {
+		JobManager.Job job = getSelectedJob();
+		btnCancel.setEnabled(job != null && !job.isFinished());
+		btnRetry.setEnabled(job != null && job.isFinished() && !job.getRetryOperations().isEmpty());
+		if (job == null) {
+			textAreaFailures.setText("");
+			return;
+		}
+		List<JobManager.Failure> failures = job.getFailures();
+		StringBuilder details = new StringBuilder();
+		details.append(job.getName()).append(" on ").append(job.getDevice() != null ? job.getDevice() : "...")
+				.append("\n");
+		for (JobManager.Failure failure : failures)
+			details.append("FAILED ").append(failure.getOperation().getName()).append(": ")
+					.append(failure.getMessage()).append("\n");
+		if (!textAreaFailures.getText().contentEquals(details))
+			textAreaFailures.setText(details.toString());
+	}
+
+    /**
+     * Read-only model over a snapshot of the jobs.
+     */
+	private static class JobsTableModel extends AbstractTableModel {
+		private static final long serialVersionUID = 1L;
+		private List<JobManager.Job> jobs = new ArrayList<>();
+
+		public int getRowCount() {
+			return jobs.size();
+		}
+
+		public int getColumnCount() {
+			return COLUMNS.length;
+		}
+
+		public String getColumnName(int column) {
+			return COLUMNS[column];
+		}
+
+		public Object getValueAt(int row, int column) {
+			JobManager.Job job = jobs.get(row);
+			switch (column) {
+			case 0:
+				return job.getId();
+			case 1:
+				return job.getName();
+			case 2:
+				return job.getState();
+			case 3:
+				return job.getTotal() < 0 ? "" : job.getDone() + " / " + job.getTotal();
+			case 4:
+				return job.getThroughput();
+			case 5:
+				return job.getFailures().size();
+			default:
+				return job.getCurrent();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,114 @@
+package es.annahexe;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of durations in nanoseconds with a fixed relative precision, like HdrHistogram.
+ * <p>
+ * Values below 256 get a bucket each; above, every power of two is split into 128 buckets, so a value is
+ * known within 1% whatever its magnitude. Recording is one array increment, lock-free, and the whole histogram
+ * is a few thousand longs however many values it holds. Values over an hour are counted as an hour.
+ * </p>
+ * @author annahexe
+ */
+public class LatencyHistogram {
+	private static final int SUB_BITS = 7; // 128 buckets per power of two
+	private static final int LINEAR = 1 << (SUB_BITS + 1); // values below get their own bucket
+	private static final int MAX_EXPONENT = 41; // 2^42 ns, a bit over an hour
+	private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+
+	private final AtomicLongArray counts = new AtomicLongArray(indexOf(MAX_VALUE) + 1);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a duration.
+     * @param nanos the duration; negative values count as 0
+     */
+	public void record(long nanos) {
+		long value = Math.max(0, Math.min(nanos, MAX_VALUE));
+		counts.incrementAndGet(indexOf(value));
+		count.increment();
+		sum.add(value);
+		long current = max.get();
+		while (value > current && !max.compareAndSet(current, value))
+			current = max.get();
+	}
+
+    /**
+     * @return the number of recorded values
+     */
+	public long getCount() {
+		return count.sum();
+	}
+
+    /**
+     * @return the largest recorded value, exact
+     */
+	public long getMax() {
+		return max.get();
+	}
+
+    /**
+     * @return the mean of the recorded values, 0 if there is none
+     */
+	public double getMean() {
+		long values = count.sum();
+		return values == 0 ? 0 : (double) sum.sum() / values;
+	}
+
+    /**
+     * Returns the value below or at which the given percentage of the values fall, rounded up to the end of its
+     * bucket (never more than the maximum).
+     * @param percentile from 0 to 100
+     * @return the value, 0 if nothing was recorded
+     */
+	public long getValueAtPercentile(double percentile) {
+		long total = 0;
+		for (int i = 0; i < counts.length(); i++)
+			total += counts.get(i);
+		if (total == 0)
+			return 0;
+		long rank = Math.max(1, (long) Math.ceil(Math.min(100, percentile) / 100 * total));
+		long seen = 0;
+		for (int i = 0; i < counts.length(); i++) {
+			seen += counts.get(i);
+			if (seen >= rank)
+				return Math.min(highestValueOf(i), getMax());
+		}
+		return getMax();
+	}
+
+    /**
+     * Forgets every value. Values recorded meanwhile may or may not survive.
+     */
+	public void reset() {
+		for (int i = 0; i < counts.length(); i++)
+			counts.set(i, 0);
+		count.reset();
+		sum.reset();
+		max.set(0);
+	}
+
+	private static int indexOf(long value) {
+		if (value < LINEAR)
+			return (int) value;
+		int exponent = 63 - Long.numberOfLeadingZeros(value); // >= SUB_BITS + 1
+		int shift = exponent - SUB_BITS;
+		int sub = (int) (value >>> shift) - (1 << SUB_BITS);
+		return LINEAR + ((exponent - SUB_BITS - 1) << SUB_BITS) + sub;
+	}
+
+	private static long highestValueOf(int index) {
+		if (index < LINEAR)
+			return index;
+		int exponent = ((index - LINEAR) >> SUB_BITS) + SUB_BITS + 1;
+		int shift = exponent - SUB_BITS;
+		long sub = (index - LINEAR) & ((1 << SUB_BITS) - 1);
+		return (((1L << SUB_BITS) + sub + 1) << shift) - 1;
+	}
+
+}
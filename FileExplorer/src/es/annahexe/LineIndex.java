@@ -0,0 +1,131 @@
+package es.annahexe;
+
+import java.util.Arrays;
+
+/**
+ * Start offset of every line of a text, in an <code>int[]</code> with a gap.
+ * <p>
+ * Like a gap buffer: the lines before the gap hold their offset, the lines after it hold their offset minus
+ * {@link #delta}, so an edit only moves the gap to the edited line and changes the delta instead of shifting
+ * every line below. Editing near the previous edit costs O(1); finding the line of an offset, or the offset of a
+ * line, is a binary search or an array read.
+ * </p>
+ * @author annahexe
+ */
+public class LineIndex {
+	private static final int MIN_GAP = 64;
+
+	private int[] starts;
+	private int gapStart; // lines before the gap
+	private int gapEnd; // index of the first line after the gap
+	private int delta; // added to the lines after the gap
+
+	private LineIndex(int[] starts, int count) {
+		this.starts = starts;
+		this.gapStart = count;
+		this.gapEnd = starts.length;
+	}
+
+    /**
+     * Indexes a text; meant to run in the background when a file is loaded.
+     * @param text the text, with <code>\n</code> line breaks
+     * @return the index
+     */
+	public static LineIndex of(CharSequence text) {
+		int[] starts = new int[1024];
+		int count = 1; // line 0 starts at 0
+		int length = text.length();
+		for (int i = 0; i < length; i++) {
+			if (text.charAt(i) == '\n') {
+				if (count == starts.length)
+					starts = Arrays.copyOf(starts, count * 2);
+				starts[count++] = i + 1;
+			}
+		}
+		return new LineIndex(Arrays.copyOf(starts, count + MIN_GAP), count);
+	}
+
+    /**
+     * @return the number of lines, at least 1
+     */
+	public int getLineCount() {
+		return gapStart + starts.length - gapEnd;
+	}
+
+    /**
+     * @param line a line, from 0
+     * @return the offset where it starts
+     */
+	public int startOf(int line) {
+		return line < gapStart ? starts[line] : starts[gapEnd + line - gapStart] + delta;
+	}
+
+    /**
+     * Finds the line holding an offset with a binary search.
+     * @param offset an offset in the text
+     * @return its line, from 0
+     */
+	public int lineOf(int offset) {
+		int low = 0;
+		int high = getLineCount() - 1;
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if (startOf(middle) <= offset)
+				low = middle;
+			else
+				high = middle - 1;
+		}
+		return low;
+	}
+
+    /**
+     * Updates the index after text was inserted.
+     * @param offset where it was inserted
+     * @param text   the inserted text
+     */
+	public void inserted(int offset, CharSequence text) {
+		moveGap(lineOf(offset) + 1);
+		delta += text.length();
+		for (int i = 0; i < text.length(); i++) {
+			if (text.charAt(i) == '\n') {
+				if (gapStart == gapEnd)
+					growGap();
+				starts[gapStart++] = offset + i + 1;
+			}
+		}
+	}
+
+    /**
+     * Updates the index after text was removed.
+     * @param offset where it was removed
+     * @param length how many characters
+     */
+	public void removed(int offset, int length) {
+		int line = lineOf(offset);
+		moveGap(line + 1);
+		int last = getLineCount() - 1;
+		while (gapStart <= last && startOf(gapStart) <= offset + length) {
+			gapEnd++; // its line break was removed
+			last--;
+		}
+		delta -= length;
+	}
+
+	// Moves the gap so that 'line' is the first line after it
+	private void moveGap(int line) {
+		while (gapStart > line)
+			starts[--gapEnd] = starts[--gapStart] - delta;
+		while (gapStart < line)
+			starts[gapStart++] = starts[gapEnd++] + delta;
+	}
+
+	private void growGap() {
+		int after = starts.length - gapEnd;
+		int[] grown = new int[starts.length * 2 + MIN_GAP];
+		System.arraycopy(starts, 0, grown, 0, gapStart);
+		System.arraycopy(starts, gapEnd, grown, grown.length - after, after);
+		gapEnd = grown.length - after;
+		starts = grown;
+	}
+
+}
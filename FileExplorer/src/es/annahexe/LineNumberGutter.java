@@ -0,0 +1,158 @@
+package es.annahexe;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.geom.Rectangle2D;
+
+import javax.swing.BorderFactory;
+import javax.swing.JComponent;
+import javax.swing.JTextPane;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+
+/**
+ * Line numbers shown next to the editor, as the row header of its scroll pane.
+ * <p>
+ * Only the lines in the clip are painted: the first one is found with a binary search in the {@link LineIndex},
+ * which the gutter keeps up to date as the document is edited.
+ * </p>
+ * @author annahexe
+ */
+public class LineNumberGutter extends JComponent {
+	private static final long serialVersionUID = 1L;
+	private static final int PADDING = 6;
+
+	private JTextPane textPane;
+	private LineIndex index;
+	private int firstLine; // of a page of a bigger file
+	private int lastNumber; // the widest number, which sets the width
+
+    /**
+     * @param textPane the editor whose lines are numbered
+     */
+	public LineNumberGutter(JTextPane textPane) {
+		this.textPane = textPane;
+		setFont(textPane.getFont());
+		setForeground(Color.GRAY);
+		setBackground(new Color(0xF0F0F0));
+		setOpaque(true);
+		setBorder(BorderFactory.createMatteBorder(0, 0, 0, 1, Color.LIGHT_GRAY));
+		textPane.getDocument().addDocumentListener(new DocumentListener() {
+			public void insertUpdate(DocumentEvent documentEvent) {
+				if (index == null)
+					return;
+				try {
+					index.inserted(documentEvent.getOffset(),
+							documentEvent.getDocument().getText(documentEvent.getOffset(), documentEvent.getLength()));
+				} catch (BadLocationException e) {
+					index = null; // out of sync, stop numbering until the next load
+				}
+				changed();
+			}
+
+			public void removeUpdate(DocumentEvent documentEvent) {
+				if (index == null)
+					return;
+				index.removed(documentEvent.getOffset(), documentEvent.getLength());
+				changed();
+			}
+
+			public void changedUpdate(DocumentEvent documentEvent) {
+				// Attributes only
+			}
+		});
+		textPane.addComponentListener(new ComponentAdapter() {
+			public void componentResized(ComponentEvent componentEvent) {
+				changed();
+			}
+		});
+	}
+
+    /**
+     * Sets the index of the text just loaded, or null to show no numbers (e.g. before a load or for an image).
+     * @param index the line index matching the document
+     */
+	public void setIndex(LineIndex index) {
+		setIndex(index, 0);
+	}
+
+    /**
+     * Sets the index of a page of a bigger file, numbered from the line it starts at.
+     * @param index     the line index matching the document
+     * @param firstLine the number in the file of the first line of the document, from 0
+     * @see FilePager
+     */
+	public void setIndex(LineIndex index, int firstLine) {
+		this.index = index;
+		this.firstLine = firstLine;
+		this.lastNumber = index == null ? 0 : firstLine + index.getLineCount();
+		changed();
+	}
+
+    /**
+     * Shows no numbers while a text is loaded, but takes the width its numbers will need already: a change of width
+     * lays out every line of the editor again.
+     * @param lastNumber the number of the last line of the text being loaded
+     */
+	public void loading(int lastNumber) {
+		this.index = null;
+		this.lastNumber = lastNumber;
+		changed();
+	}
+
+    /**
+     * @return the index of the text shown, or null
+     */
+	public LineIndex getIndex() {
+		return index;
+	}
+
+	private void changed() {
+		revalidate();
+		repaint();
+	}
+
+	public Dimension getPreferredSize() {
+		int digits = Integer.toString(index == null ? lastNumber : firstLine + index.getLineCount()).length();
+		int width = getFontMetrics(getFont()).charWidth('0') * Math.max(3, digits) + 2 * PADDING;
+		return new Dimension(width, textPane.getPreferredSize().height);
+	}
+
+	protected void paintComponent(Graphics graphics) {
+		Rectangle clip = graphics.getClipBounds();
+		graphics.setColor(getBackground());
+		graphics.fillRect(clip.x, clip.y, clip.width, clip.height);
+		if (index == null)
+			return;
+		graphics.setColor(getForeground());
+		FontMetrics metrics = graphics.getFontMetrics(getFont());
+		int length = textPane.getDocument().getLength();
+		int offset = textPane.viewToModel2D(new Point(0, clip.y));
+		if (offset < 0)
+			return;
+		int width = getWidth() - PADDING;
+		try {
+			for (int line = index.lineOf(offset); line < index.getLineCount(); line++) {
+				int start = index.startOf(line);
+				if (start > length)
+					break;
+				Rectangle2D bounds = textPane.modelToView2D(start);
+				if (bounds == null || bounds.getY() > clip.y + clip.height)
+					break;
+				String number = Integer.toString(firstLine + line + 1);
+				int baseline = (int) bounds.getY() + (int) bounds.getHeight() - metrics.getDescent();
+				graphics.drawString(number, width - metrics.stringWidth(number), baseline);
+			}
+		} catch (BadLocationException e) {
+			// Document changed while painting; the next repaint catches up
+		}
+	}
+
+}
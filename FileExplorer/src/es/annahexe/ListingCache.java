@@ -0,0 +1,393 @@
+package es.annahexe;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Listings of folders kept in memory: names, types, sizes and dates of their entries, read with
+ * {@link Utilities#listFolder(java.nio.file.Path)} from the disk or any other installed file system.
+ * <p>
+ * A listing is reused while the folder's last modified time doesn't change, which happens whenever an entry is
+ * added, removed or renamed; opening a cached folder costs a single stat instead of one per entry. Folders can be
+ * prefetched on a low-priority thread so the first visit is instant too. The least recently used listings are
+ * dropped beyond {@link #MAX_CACHED_ENTRIES} entries.
+ * </p>
+ * <p>
+ * While browsing, the folder about to be opened (selected or under the mouse) is listed speculatively with
+ * {@link #speculate(File, Collection)}: only the latest request runs, within a budget of time and entries, on a
+ * virtual thread when the JVM has them. A folder being read is never read twice: opening it waits for that read.
+ * </p>
+ * <p>
+ * The sizes and dates of a reused listing are those it was read with: a file rewritten in place doesn't change its
+ * folder, so a size or date order can lag until the folder is refreshed.
+ * </p>
+ * @author annahexe
+ */
+public class ListingCache {
+	/** Entries of all the cached listings together. */
+	public static final int MAX_CACHED_ENTRIES = 200_000;
+	/** A speculation starts no other folder after this long... */
+	public static final long SPECULATION_BUDGET_MILLIS = 250;
+	/** ...or after listing this many entries. */
+	public static final int SPECULATION_BUDGET_ENTRIES = 20_000;
+
+	private Utilities utilities;
+	private long cachedEntries;
+	private final Map<String, Listing> listings = new LinkedHashMap<String, Listing>(64, 0.75f, true);
+	private final Map<String, FutureTask<Listing>> reading = new HashMap<>(); // guarded by listings too
+	private final AtomicLong speculation = new AtomicLong(); // the latest wins
+	private final Semaphore speculating = new Semaphore(1);
+	private final ExecutorService speculator = newSpeculator();
+	private final ExecutorService prefetcher = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "listing-prefetch");
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		}
+	});
+
+    /**
+     * How the entries are ordered.
+     */
+	public enum SortKey {
+		NAME, SIZE, MODIFIED
+	}
+
+    /**
+     * An entry of a folder as it was listed.
+     */
+	public static class Entry {
+		private final String name;
+		private final boolean directory;
+		private final long size;
+		private final long modified;
+
+		Entry(String name, boolean directory, long size, long modified) {
+			this.name = name;
+			this.directory = directory;
+			this.size = size;
+			this.modified = modified;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public boolean isDirectory() {
+			return directory;
+		}
+
+		public long getSize() {
+			return size;
+		}
+
+		public long getModified() {
+			return modified;
+		}
+	}
+
+    /**
+     * The entries of a folder, in the order the file system gave them.
+     */
+	public static class Listing {
+		private final Path folder;
+		private final long folderModified;
+		private final Entry[] entries;
+
+		Listing(Path folder, long folderModified, Entry[] entries) {
+			this.folder = folder;
+			this.folderModified = folderModified;
+			this.entries = entries;
+		}
+
+	    /**
+	     * @return the folder, on whichever file system it is
+	     */
+		public Path getFolder() {
+			return folder;
+		}
+
+	    /**
+	     * @return the entries; don't modify it, sort a copy
+	     */
+		public Entry[] getEntries() {
+			return entries;
+		}
+
+		boolean isFresh() {
+			return folderModified != 0 && lastModified(folder) == folderModified;
+		}
+	}
+
+    /**
+     * @param utilities lists the folders
+     */
+	public ListingCache(Utilities utilities) {
+		this.utilities = utilities;
+	}
+
+    /**
+     * Returns the listing of a folder of the disk, the cached one if the folder didn't change. Thread-safe.
+     * @param folder a readable folder
+     * @return its listing
+     */
+	public Listing list(File folder) {
+		return list(folder.toPath());
+	}
+
+    /**
+     * Returns the listing of a folder on any file system, the cached one if the folder didn't change.
+     * Thread-safe.
+     * @param folder a readable folder
+     * @return its listing, empty if it can't be listed
+     * @see Utilities#resolve(String)
+     */
+	public Listing list(Path folder) {
+		Metrics.Span span = Metrics.start("listing.cached"); // only ended on a hit
+		Listing listing = getIfFresh(folder);
+		if (listing != null) {
+			span.end(listing.entries.length, 0);
+			return listing;
+		}
+		return readOnce(folder);
+	}
+
+    /**
+     * @param folder a folder
+     * @return its cached listing if the folder didn't change since, or null
+     */
+	public Listing getIfFresh(File folder) {
+		return getIfFresh(folder.toPath());
+	}
+
+    /**
+     * @param folder a folder on any file system
+     * @return its cached listing if the folder didn't change since, or null
+     */
+	public Listing getIfFresh(Path folder) {
+		Listing listing;
+		synchronized (listings) {
+			listing = listings.get(key(folder));
+		}
+		return listing != null && listing.isFresh() ? listing : null;
+	}
+
+    /**
+     * Forgets the listing of a folder, e.g. after an operation that may not have changed its date.
+     * @param folder the folder
+     */
+	public void invalidate(File folder) {
+		if (folder == null)
+			return;
+		synchronized (listings) {
+			Listing listing = listings.remove(key(folder.toPath()));
+			if (listing != null)
+				cachedEntries -= listing.entries.length;
+		}
+	}
+
+    /**
+     * Lists the folders that aren't cached (or changed) in the background, one at a time on a low-priority thread.
+     * @param folders the folders, most wanted first
+     */
+	public void prefetch(Collection<File> folders) {
+		final List<File> copy = new ArrayList<>(folders);
+		prefetcher.execute(new Runnable() {
+			public void run() {
+				for (File folder : copy) {
+					if (utilities.isValidFolder(folder) && getIfFresh(folder) == null) {
+						Metrics.Span span = Metrics.start("listing.prefetch");
+						Listing listing = readOnce(folder.toPath());
+						span.end(listing.entries.length, 0);
+					}
+				}
+			}
+		});
+	}
+
+    /**
+     * Lists a folder that's likely to be opened next, and then some of its subfolders, in the background. A newer
+     * speculation makes this one stop before its next folder; each stops when over its budget.
+     * @param folder   the folder
+     * @param children subfolders likely to follow it, most likely first
+     * @see #SPECULATION_BUDGET_MILLIS
+     * @see #SPECULATION_BUDGET_ENTRIES
+     */
+	public void speculate(File folder, Collection<File> children) {
+		final long generation = speculation.incrementAndGet();
+		final List<File> wanted = new ArrayList<>();
+		wanted.add(folder);
+		wanted.addAll(children);
+		speculator.execute(new Runnable() {
+			public void run() {
+				speculating.acquireUninterruptibly(); // one at a time, as a low-priority thread would
+				try {
+					long deadline = System.nanoTime() + SPECULATION_BUDGET_MILLIS * 1_000_000;
+					int entries = 0;
+					for (File wantedFolder : wanted) {
+						if (speculation.get() != generation || System.nanoTime() > deadline
+								|| entries > SPECULATION_BUDGET_ENTRIES)
+							return;
+						if (utilities.isValidFolder(wantedFolder) && getIfFresh(wantedFolder) == null) {
+							Metrics.Span span = Metrics.start("listing.speculative");
+							Listing listing = readOnce(wantedFolder.toPath());
+							span.end(listing.entries.length, 0);
+							entries += listing.entries.length;
+						}
+					}
+				} finally {
+					speculating.release();
+				}
+			}
+		});
+	}
+
+    /**
+     * Sorts entries.
+     * @param entries      the entries, sorted in place
+     * @param key          what to compare
+     * @param descending   largest, newest or last name first
+     * @param foldersFirst folders before files whatever the order
+     */
+	public static void sort(Entry[] entries, final SortKey key, final boolean descending, final boolean foldersFirst) {
+		Arrays.sort(entries, new Comparator<Entry>() {
+			public int compare(Entry a, Entry b) {
+				if (foldersFirst && a.directory != b.directory)
+					return a.directory ? -1 : 1;
+				int order;
+				if (key == SortKey.SIZE)
+					order = Long.compare(a.size, b.size);
+				else if (key == SortKey.MODIFIED)
+					order = Long.compare(a.modified, b.modified);
+				else
+					order = 0;
+				if (order == 0)
+					order = compareNames(a.name, b.name);
+				return descending ? -order : order;
+			}
+		});
+	}
+
+	private static int compareNames(String a, String b) {
+		int order = String.CASE_INSENSITIVE_ORDER.compare(a, b);
+		return order != 0 ? order : a.compareTo(b);
+	}
+
+	// Reads a folder, or waits for the thread already reading it
+	private Listing readOnce(final Path folder) {
+		String key = key(folder);
+		FutureTask<Listing> task;
+		boolean reader = false;
+		synchronized (listings) {
+			task = reading.get(key);
+			if (task == null) {
+				task = new FutureTask<Listing>(new Callable<Listing>() {
+					public Listing call() {
+						return read(folder);
+					}
+				});
+				reading.put(key, task);
+				reader = true;
+			}
+		}
+		if (reader) {
+			try {
+				task.run();
+			} finally {
+				synchronized (listings) {
+					reading.remove(key);
+				}
+			}
+		}
+		try {
+			return task.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return read(folder);
+		}
+	}
+
+	// Lists and caches a folder; its date is read first, so a change while listing makes the listing stale
+	private Listing read(Path folder) {
+		long folderModified = lastModified(folder);
+		Entry[] entries;
+		try {
+			entries = utilities.listFolder(folder);
+		} catch (IOException e) {
+			entries = new Entry[0]; // gone or unreadable, as an empty folder
+			folderModified = 0; // never fresh
+		}
+		Listing listing = new Listing(folder, folderModified, entries);
+		synchronized (listings) {
+			Listing previous = listings.put(key(folder), listing);
+			if (previous != null)
+				cachedEntries -= previous.entries.length;
+			cachedEntries += entries.length;
+			Iterator<Listing> eldest = listings.values().iterator();
+			while (cachedEntries > MAX_CACHED_ENTRIES && listings.size() > 1) {
+				cachedEntries -= eldest.next().entries.length;
+				eldest.remove();
+			}
+		}
+		return listing;
+	}
+
+	// A virtual thread per speculation on Java 21+ (they're cheap to park on the semaphore), else a low-priority one
+	private static ExecutorService newSpeculator() {
+		try {
+			Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) method.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newSingleThreadExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "listing-speculation");
+					thread.setDaemon(true);
+					thread.setPriority(Thread.MIN_PRIORITY);
+					return thread;
+				}
+			});
+		}
+	}
+
+	// 0 if it can't be read, as File.lastModified()
+	private static long lastModified(Path folder) {
+		try {
+			return Files.getLastModifiedTime(folder).toMillis();
+		} catch (IOException e) {
+			return 0;
+		}
+	}
+
+	// The absolute path on the disk, the URI elsewhere: paths of two zip files may look the same
+	private static String key(Path folder) {
+		return folder.getFileSystem() == FileSystems.getDefault() ? folder.toAbsolutePath().toString()
+				: folder.toUri().toString();
+	}
+
+}
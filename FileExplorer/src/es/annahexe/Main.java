@@ -1,23 +1,36 @@
 package es.annahexe;
 
+import java.awt.EventQueue;
+
 /**
  * Main: Wires together {@link View}, {@link Utilities}, and {@link Controller} and starts the Swing UI.
+ * With arguments, runs a command of the headless {@link Cli} instead and exits with its code.
  * @author annahexe
  */
 public class Main {
+	/** Dispatches on the EDT taking longer are reported as stalls; <code>-Dfileexplorer.stallMillis=</code> changes it. */
+	private static final long STALL_MILLIS = 200;
 
     /** Added this for an error generated from the JavaDoc */
     private Main() { }
 
     /**
      * Launches the application.
-     * @param args command-line arguments (unused)
+     * @param args none for the window; a command such as <code>du /var/log --json</code> for the command line
      */
 	public static void main(String[] args) {
-		View view = new View();
-		Utilities utility = new Utilities();
-		Controller control = new Controller(utility, view);
-
+		if (args.length > 0) {
+			System.exit(Cli.run(args));
+		}
+		EdtWatchdog.install(Long.getLong("fileexplorer.stallMillis", STALL_MILLIS));
+		// Swing is built on the EDT; the first folder is listed in the background once the frame is up
+		EventQueue.invokeLater(new Runnable() {
+			public void run() {
+				View view = new View();
+				Utilities utility = new Utilities();
+				Controller control = new Controller(utility, view);
+			}
+		});
 	}
 
 }
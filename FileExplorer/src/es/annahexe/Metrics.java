@@ -0,0 +1,286 @@
+package es.annahexe;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.swing.SwingUtilities;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Latency, work and EDT time of the operations of the app, to see where the time goes.
+ * <p>
+ * An operation is timed with a {@link Span}:
+ * </p>
+ * <pre>
+ * Metrics.Span span = Metrics.start("utilities.listFilesInFolder");
+ * try {
+ *     ...
+ * } finally {
+ *     span.end(files.length, 0);
+ * }
+ * </pre>
+ * <p>
+ * Every operation keeps a {@link LatencyHistogram}, the files and bytes it processed and the time it spent on
+ * the event dispatch thread, which is time the window could not repaint. They are shown in the
+ * {@link DiagnosticsWindow}, published as MXBeans under <code>es.annahexe:type=Operation</code> (JConsole,
+ * VisualVM) and, when a flight recording is running, every span is also a <code>es.annahexe.Operation</code> JFR
+ * event.
+ * </p>
+ * @author annahexe
+ */
+public final class Metrics {
+	private static final ConcurrentHashMap<String, Operation> OPERATIONS = new ConcurrentHashMap<>();
+
+	// Registering the first MXBean starts the platform MBean server, which takes a while: not on the caller
+	private static final ExecutorService JMX = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "metrics-jmx");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private Metrics() {
+	}
+
+    /**
+     * What JMX shows of an operation. Durations in milliseconds.
+     */
+	public interface OperationMXBean {
+		String getName();
+		long getCount();
+		double getMeanMillis();
+		double getP50Millis();
+		double getP90Millis();
+		double getP99Millis();
+		double getMaxMillis();
+		long getFiles();
+		long getBytes();
+		double getEdtMillis();
+		void reset();
+	}
+
+    /**
+     * Starts timing an operation.
+     * @param name the operation, e.g. <code>utilities.readText</code>
+     * @return the span to end when the operation is done
+     */
+	public static Span start(String name) {
+		return new Span(operation(name));
+	}
+
+    /**
+     * Returns the metrics of an operation, created (and published through JMX) the first time.
+     * @param name the operation
+     * @return its metrics
+     */
+	public static Operation operation(String name) {
+		Operation operation = OPERATIONS.get(name);
+		if (operation != null)
+			return operation;
+		Operation created = new Operation(name);
+		operation = OPERATIONS.putIfAbsent(name, created);
+		if (operation != null)
+			return operation;
+		register(created);
+		return created;
+	}
+
+    /**
+     * @return every operation timed so far, by name
+     */
+	public static List<Operation> getOperations() {
+		List<Operation> operations = new ArrayList<>(OPERATIONS.values());
+		Collections.sort(operations, new Comparator<Operation>() {
+			public int compare(Operation a, Operation b) {
+				return a.getName().compareTo(b.getName());
+			}
+		});
+		return operations;
+	}
+
+    /**
+     * Forgets the values of every operation.
+     */
+	public static void reset() {
+		for (Operation operation : OPERATIONS.values())
+			operation.reset();
+	}
+
+	private static void register(final Operation operation) {
+		JMX.execute(new Runnable() {
+			public void run() {
+				try {
+					ManagementFactory.getPlatformMBeanServer().registerMBean(operation,
+							new ObjectName("es.annahexe:type=Operation,name=" + operation.getName()));
+				} catch (JMException e) {
+					// Still shown in the diagnostics window
+				}
+			}
+		});
+	}
+
+    /**
+     * Metrics of one operation.
+     */
+	public static class Operation implements OperationMXBean {
+		private final String name;
+		private final LatencyHistogram histogram = new LatencyHistogram();
+		private final LongAdder files = new LongAdder();
+		private final LongAdder bytes = new LongAdder();
+		private final LongAdder edtNanos = new LongAdder();
+
+		private Operation(String name) {
+			this.name = name;
+		}
+
+		void record(long nanos, long fileCount, long byteCount, boolean onEdt) {
+			histogram.record(nanos);
+			files.add(fileCount);
+			bytes.add(byteCount);
+			if (onEdt)
+				edtNanos.add(nanos);
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public LatencyHistogram getHistogram() {
+			return histogram;
+		}
+
+		public long getCount() {
+			return histogram.getCount();
+		}
+
+		public double getMeanMillis() {
+			return histogram.getMean() / 1e6;
+		}
+
+		public double getP50Millis() {
+			return histogram.getValueAtPercentile(50) / 1e6;
+		}
+
+		public double getP90Millis() {
+			return histogram.getValueAtPercentile(90) / 1e6;
+		}
+
+		public double getP99Millis() {
+			return histogram.getValueAtPercentile(99) / 1e6;
+		}
+
+		public double getMaxMillis() {
+			return histogram.getMax() / 1e6;
+		}
+
+		public long getFiles() {
+			return files.sum();
+		}
+
+		public long getBytes() {
+			return bytes.sum();
+		}
+
+		public double getEdtMillis() {
+			return edtNanos.sum() / 1e6;
+		}
+
+		public void reset() {
+			histogram.reset();
+			files.reset();
+			bytes.reset();
+			edtNanos.reset();
+		}
+	}
+
+    /**
+     * One timing of an operation. Not thread-safe: ended by the thread that started it.
+     */
+	public static final class Span {
+		private final Operation operation;
+		private final long start;
+		private final boolean onEdt;
+		private final OperationEvent event;
+
+		private Span(Operation operation) {
+			this.operation = operation;
+			this.onEdt = SwingUtilities.isEventDispatchThread();
+			OperationEvent event = new OperationEvent();
+			if (event.isEnabled()) {
+				event.begin();
+				this.event = event;
+			} else {
+				this.event = null;
+			}
+			this.start = System.nanoTime();
+		}
+
+	    /**
+	     * Ends the span without counting files or bytes.
+	     */
+		public void end() {
+			end(0, 0);
+		}
+
+	    /**
+	     * Ends the span.
+	     * @param files files processed, e.g. listed or copied
+	     * @param bytes bytes read or written
+	     */
+		public void end(long files, long bytes) {
+			operation.record(System.nanoTime() - start, files, bytes, onEdt);
+			if (event != null) {
+				event.end();
+				if (event.shouldCommit()) {
+					event.operation = operation.getName();
+					event.files = files;
+					event.bytes = bytes;
+					event.edt = onEdt;
+					event.commit();
+				}
+			}
+		}
+	}
+
+    /**
+     * The JFR event of a span, e.g. <code>java -XX:StartFlightRecording:filename=app.jfr ...</code>.
+     */
+	@Name("es.annahexe.Operation")
+	@Label("Operation")
+	@Category("File Explorer")
+	@Description("An operation of the file explorer, as timed by Metrics")
+	@StackTrace(false)
+	static class OperationEvent extends jdk.jfr.Event {
+		@Label("Operation")
+		String operation;
+
+		@Label("Files")
+		long files;
+
+		@Label("Bytes")
+		@DataAmount
+		long bytes;
+
+		@Label("On EDT")
+		@Description("Ran on the event dispatch thread, blocking the window")
+		boolean edt;
+	}
+
+}
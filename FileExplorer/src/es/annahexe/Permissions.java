@@ -0,0 +1,453 @@
+package es.annahexe;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.GroupPrincipal;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.nio.file.attribute.UserPrincipalLookupService;
+import java.nio.file.attribute.UserPrincipalNotFoundException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * POSIX permissions, owner and group: shown in the info panel, and changed recursively like <code>chmod -R</code>
+ * and <code>chown -R</code> as a single {@link JobManager} job.
+ * <p>
+ * The trees are walked in parallel, one task per folder, reading the attributes of each entry once. Entries
+ * already in the target state get no operation, so nothing is written to them; the others get one operation
+ * each, run in parallel and retried like any failed job operation. Symbolic links are skipped, as
+ * <code>chmod</code> does.
+ * </p>
+ * @author annahexe
+ */
+public class Permissions {
+	/** Folders walked, and entries changed, at once. */
+	public static final int PARALLELISM = 8;
+
+	private static final PosixFilePermission[] BITS = PosixFilePermission.values(); // owner read first
+
+	private Permissions() {
+	}
+
+    /**
+     * Describes the permissions, owner and group of an entry for the info panel.
+     * @param path the entry
+     * @return one line each; only the owner where there are no POSIX permissions (Windows); empty if unreadable
+     */
+	public static String describe(Path path) {
+		try {
+			PosixFileAttributes attributes = Files.readAttributes(path, PosixFileAttributes.class);
+			return "PERMISSIONS: " + PosixFilePermissions.toString(attributes.permissions()) + " ("
+					+ toOctal(attributes.permissions()) + ")\n"
+					+ "OWNER: " + attributes.owner().getName() + "\n"
+					+ "GROUP: " + attributes.group().getName() + "\n";
+		} catch (UnsupportedOperationException e) {
+			try {
+				return "OWNER: " + Files.getOwner(path).getName() + "\n";
+			} catch (IOException | UnsupportedOperationException ownerUnknown) {
+				return "";
+			}
+		} catch (IOException e) {
+			return "";
+		}
+	}
+
+    /**
+     * @param permissions permissions
+     * @return the three octal digits, e.g. <code>755</code>
+     */
+	public static String toOctal(Set<PosixFilePermission> permissions) {
+		return String.format("%03o", toBits(permissions));
+	}
+
+	private static int toBits(Set<PosixFilePermission> permissions) {
+		int bits = 0;
+		for (PosixFilePermission permission : permissions)
+			bits |= 0400 >> permission.ordinal();
+		return bits;
+	}
+
+	private static Set<PosixFilePermission> fromBits(int bits) {
+		Set<PosixFilePermission> permissions = EnumSet.noneOf(PosixFilePermission.class);
+		for (PosixFilePermission permission : BITS) {
+			if ((bits & (0400 >> permission.ordinal())) != 0)
+				permissions.add(permission);
+		}
+		return permissions;
+	}
+
+    /**
+     * A permission change as <code>chmod</code> takes it: octal (<code>755</code>), the nine letters
+     * (<code>rwxr-x---</code>) or symbolic clauses (<code>u+rwX,go=rX</code>, <code>a-w</code>), where
+     * <code>X</code> is execute only for folders and files already executable by someone.
+     */
+	public static class Mode {
+		private final String text;
+		private final List<int[]> clauses = new ArrayList<>(); // { who bits, operator, permission bits, X }
+
+		private Mode(String text) {
+			this.text = text;
+		}
+
+	    /**
+	     * @param text the mode
+	     * @return the parsed mode
+	     * @throws IllegalArgumentException if it isn't a valid mode
+	     */
+		public static Mode parse(String text) {
+			String mode = text.trim();
+			Mode parsed = new Mode(mode);
+			if (mode.matches("0?[0-7]{3}")) {
+				parsed.clauses.add(new int[] { 0777, '=', Integer.parseInt(mode, 8), 0 });
+			} else if (mode.matches("[r-][w-][x-][r-][w-][x-][r-][w-][x-]")) {
+				parsed.clauses.add(new int[] { 0777, '=', toBits(PosixFilePermissions.fromString(mode)), 0 });
+			} else {
+				for (String clause : mode.split(",", -1))
+					parsed.parseClause(clause);
+			}
+			return parsed;
+		}
+
+		private void parseClause(String clause) {
+			int i = 0;
+			int who = 0;
+			for (; i < clause.length() && "ugoa".indexOf(clause.charAt(i)) >= 0; i++) {
+				char letter = clause.charAt(i);
+				who |= letter == 'u' ? 0700 : letter == 'g' ? 0070 : letter == 'o' ? 0007 : 0777;
+			}
+			if (who == 0)
+				who = 0777;
+			if (i == clause.length())
+				throw new IllegalArgumentException("Invalid mode `" + text + "`: expected +, - or = in `" + clause
+						+ "`.");
+			while (i < clause.length()) {
+				char operator = clause.charAt(i++);
+				if ("+-=".indexOf(operator) < 0)
+					throw new IllegalArgumentException("Invalid mode `" + text + "`: unexpected `" + operator
+							+ "`.");
+				int permissions = 0;
+				int conditionalExecute = 0;
+				for (; i < clause.length() && "rwxX".indexOf(clause.charAt(i)) >= 0; i++) {
+					char letter = clause.charAt(i);
+					if (letter == 'X')
+						conditionalExecute = 1;
+					else
+						permissions |= letter == 'r' ? 4 : letter == 'w' ? 2 : 1;
+				}
+				clauses.add(new int[] { who, operator, permissions * 0111, conditionalExecute });
+			}
+		}
+
+	    /**
+	     * @param current     the permissions of an entry
+	     * @param directory   whether it's a folder, for <code>X</code>
+	     * @return its permissions after the change
+	     */
+		public Set<PosixFilePermission> apply(Set<PosixFilePermission> current, boolean directory) {
+			int original = toBits(current);
+			int bits = original;
+			for (int[] clause : clauses) {
+				int permissions = clause[2];
+				if (clause[3] != 0 && (directory || (original & 0111) != 0))
+					permissions |= 0111;
+				permissions &= clause[0];
+				if (clause[1] == '+')
+					bits |= permissions;
+				else if (clause[1] == '-')
+					bits &= ~permissions;
+				else
+					bits = (bits & ~clause[0]) | permissions;
+			}
+			return fromBits(bits);
+		}
+
+		public String toString() {
+			return text;
+		}
+	}
+
+    /**
+     * Plans a change of permissions and/or owner and group of entries, and their content if recursive. Counts
+     * the entries changed and those already as wanted; the failed ones are the failures of the job.
+     */
+	public static class Change implements JobManager.Planner {
+		private final List<File> roots;
+		private final Mode mode;
+		private final String owner;
+		private final String group;
+		private final boolean recursive;
+		private final AtomicInteger changed = new AtomicInteger();
+		private final AtomicInteger unchanged = new AtomicInteger();
+		private UserPrincipal user; // looked up when planning
+		private GroupPrincipal groupPrincipal;
+
+	    /**
+	     * @param roots     the entries selected
+	     * @param mode      the new permissions, or null to keep them
+	     * @param owner     the new owner's name, or null to keep it
+	     * @param group     the new group's name, or null to keep it
+	     * @param recursive whether the content of folders changes too
+	     */
+		public Change(List<File> roots, Mode mode, String owner, String group, boolean recursive) {
+			this.roots = new ArrayList<>(roots);
+			this.mode = mode;
+			this.owner = owner;
+			this.group = group;
+			this.recursive = recursive;
+		}
+
+	    /**
+	     * @return the entries whose permissions, owner or group were written
+	     */
+		public int getChanged() {
+			return changed.get();
+		}
+
+	    /**
+	     * @return the entries already as wanted, and the links skipped
+	     */
+		public int getUnchanged() {
+			return unchanged.get();
+		}
+
+		public List<JobManager.Operation> plan(final JobManager.Job job) throws IOException {
+			changed.set(0);
+			unchanged.set(0);
+			UserPrincipalLookupService lookup = FileSystems.getDefault().getUserPrincipalLookupService();
+			try {
+				user = owner == null ? null : lookup.lookupPrincipalByName(owner);
+			} catch (UserPrincipalNotFoundException e) {
+				throw new IOException("There is no user `" + owner + "`.");
+			}
+			try {
+				groupPrincipal = group == null ? null : lookup.lookupPrincipalByGroupName(group);
+			} catch (UserPrincipalNotFoundException e) {
+				throw new IOException("There is no group `" + group + "`.");
+			}
+			Metrics.Span span = Metrics.start("permissions.walk");
+			Queue<JobManager.Operation> operations = new ConcurrentLinkedQueue<>();
+			ForkJoinPool pool = new ForkJoinPool(PARALLELISM);
+			try {
+				for (File root : roots) {
+					if (job.isCanceled())
+						break;
+					pool.invoke(new Walk(job, root.toPath(), null, operations));
+				}
+			} finally {
+				pool.shutdownNow();
+			}
+			span.end(operations.size() + unchanged.get(), 0);
+			return new ArrayList<>(operations);
+		}
+
+		// Writes what differs; with write false only tells whether anything does
+		private boolean apply(Path path, PosixFileAttributeView view, PosixFileAttributes attributes, boolean write)
+				throws IOException {
+			boolean differs = false;
+			if (user != null && !user.equals(attributes.owner())) {
+				differs = true;
+				if (write)
+					view.setOwner(user);
+			}
+			if (groupPrincipal != null && !groupPrincipal.equals(attributes.group())) {
+				differs = true;
+				if (write)
+					view.setGroup(groupPrincipal);
+			}
+			if (mode != null) {
+				Set<PosixFilePermission> wanted = mode.apply(attributes.permissions(), attributes.isDirectory());
+				if (!wanted.equals(attributes.permissions())) {
+					differs = true;
+					if (write)
+						setPermissions(path, view, wanted);
+				}
+			}
+			return differs;
+		}
+
+		// The view opens the entry to change it without following links, which an entry that can't be read refuses;
+		// it's no link, so then it's changed by its name, as chmod does it
+		private static void setPermissions(Path path, PosixFileAttributeView view, Set<PosixFilePermission> wanted)
+				throws IOException {
+			try {
+				view.setPermissions(wanted);
+			} catch (AccessDeniedException e) {
+				Files.setPosixFilePermissions(path, wanted);
+			}
+		}
+
+		private static PosixFileAttributeView viewOf(Path path) throws IOException {
+			PosixFileAttributeView view = Files.getFileAttributeView(path, PosixFileAttributeView.class,
+					LinkOption.NOFOLLOW_LINKS);
+			if (view == null)
+				throw new IOException("`" + path + "`: the file system has no POSIX permissions.");
+			return view;
+		}
+
+	    /**
+	     * Reads an entry, plans its change if needed, and forks a walk per subfolder.
+	     */
+		private class Walk extends RecursiveAction {
+			private static final long serialVersionUID = 1L;
+			private final transient JobManager.Job job;
+			private final transient Path path;
+			private final transient PosixFileAttributes attributes; // null until read
+			private final transient Queue<JobManager.Operation> operations;
+
+			Walk(JobManager.Job job, Path path, PosixFileAttributes attributes,
+					Queue<JobManager.Operation> operations) {
+				this.job = job;
+				this.path = path;
+				this.attributes = attributes;
+				this.operations = operations;
+			}
+
+			protected void compute() {
+				if (job.isCanceled())
+					return;
+				PosixFileAttributes read = attributes;
+				try {
+					if (read == null)
+						read = viewOf(path).readAttributes();
+				} catch (IOException e) {
+					operations.add(new Apply(path, null)); // fails again when run, then it can be retried
+					return;
+				}
+				if (read.isSymbolicLink()) {
+					unchanged.incrementAndGet();
+					return;
+				}
+				if (!recursive || !read.isDirectory()) {
+					plan(path, read);
+					return;
+				}
+				List<Walk> folders = new ArrayList<>();
+				List<Path> files = new ArrayList<>();
+				try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+					for (Path child : stream)
+						files.add(child);
+				} catch (IOException e) {
+					// Maybe the change itself makes it readable, as chmod -R does it: changed and walked when run
+					operations.add(new ApplyTree(path));
+					return;
+				}
+				plan(path, read);
+				for (Path child : files) {
+					if (job.isCanceled())
+						return;
+					PosixFileAttributes childAttributes;
+					try {
+						childAttributes = viewOf(child).readAttributes();
+					} catch (IOException e) {
+						operations.add(new Apply(child, null));
+						continue;
+					}
+					if (childAttributes.isDirectory() && !childAttributes.isSymbolicLink())
+						folders.add(new Walk(job, child, childAttributes, operations));
+					else if (childAttributes.isSymbolicLink())
+						unchanged.incrementAndGet();
+					else
+						plan(child, childAttributes);
+				}
+				invokeAll(folders);
+			}
+
+			private void plan(Path entry, PosixFileAttributes read) {
+				try {
+					if (apply(entry, null, read, false))
+						operations.add(new Apply(entry, read));
+					else
+						unchanged.incrementAndGet();
+				} catch (IOException e) {
+					// Not thrown without writing
+				}
+			}
+		}
+
+	    /**
+	     * Brings one entry to the wanted state.
+	     */
+		private class Apply implements JobManager.Operation {
+			private final Path path;
+			private volatile PosixFileAttributes known; // read when planning, read again on a retry
+
+			Apply(Path path, PosixFileAttributes known) {
+				this.path = path;
+				this.known = known;
+			}
+
+			public String getName() {
+				return path.toString();
+			}
+
+			public void run(JobManager.Job job) throws IOException {
+				PosixFileAttributeView view = viewOf(path);
+				PosixFileAttributes attributes = known != null ? known : view.readAttributes();
+				known = null;
+				if (apply(path, view, attributes, true))
+					changed.incrementAndGet();
+				else
+					unchanged.incrementAndGet();
+			}
+		}
+
+	    /**
+	     * Brings a folder that couldn't be listed, and then its content, to the wanted state, one entry after the
+	     * other: each folder is changed before it's opened.
+	     */
+		private class ApplyTree implements JobManager.Operation {
+			private final Path path;
+
+			ApplyTree(Path path) {
+				this.path = path;
+			}
+
+			public String getName() {
+				return path.toString();
+			}
+
+			public void run(JobManager.Job job) throws IOException {
+				applyTree(path, job);
+			}
+
+			private void applyTree(Path entry, JobManager.Job job) throws IOException {
+				if (job.isCanceled())
+					return;
+				PosixFileAttributeView view = viewOf(entry);
+				PosixFileAttributes attributes = view.readAttributes();
+				if (attributes.isSymbolicLink()) {
+					unchanged.incrementAndGet();
+					return;
+				}
+				if (apply(entry, view, attributes, true))
+					changed.incrementAndGet();
+				else
+					unchanged.incrementAndGet();
+				if (!attributes.isDirectory())
+					return;
+				try (DirectoryStream<Path> stream = Files.newDirectoryStream(entry)) {
+					for (Path child : stream)
+						applyTree(child, job);
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,294 @@
+package es.annahexe;
+
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import javax.swing.DefaultListModel;
+import javax.swing.SwingUtilities;
+
+/**
+ * Type-ahead filter of the explorer list: keeps the entries whose name contains a text, matches a glob or has a
+ * match of a regular expression, ignoring case.
+ * <p>
+ * The entries are scanned on a background thread and the new list model is built there too, so the EDT only swaps
+ * models. Only the latest query is scanned: an older scan stops as soon as a key is typed. When a text query
+ * extends the previous one, only the previous matches are scanned again; globs and expressions can match more as
+ * they grow, so they always scan every entry. A scan that takes longer than {@link #BUDGET_MILLIS} shows the
+ * matches found so far, then the rest when it's done.
+ * </p>
+ * @author annahexe
+ */
+public class QuickFilter {
+	/** Time after which the matches found so far are shown. */
+	public static final long BUDGET_MILLIS = 50;
+	private static final int CHECK_EVERY = 1024; // entries between checks for a newer query and the budget
+
+	private final Listener listener;
+	private final AtomicLong generation = new AtomicLong();
+	private final ExecutorService scanner = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "listing-filter");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	private volatile Entries entries = new Entries(new String[0]);
+	private Result previous; // last complete text scan, only used by the scanner thread
+
+    /**
+     * How a query is matched.
+     */
+	public enum Mode {
+		TEXT("Text"), GLOB("Glob"), REGEX("Regex");
+
+		private final String label;
+
+		Mode(String label) {
+			this.label = label;
+		}
+
+		public String toString() {
+			return label;
+		}
+	}
+
+    /**
+     * Receives the filtered list models, on the EDT.
+     */
+	public interface Listener {
+	    /**
+	     * @param model    the entries matching, "../" always first if it was listed
+	     * @param matches  how many entries match, "../" excluded
+	     * @param total    how many entries there are, "../" excluded
+	     * @param complete false for the matches found within the budget, another call follows
+	     */
+		void filtered(DefaultListModel<String> model, int matches, int total, boolean complete);
+	}
+
+	// The entries of a listing as shown, with the names the queries are matched against
+	private static class Entries {
+		final String[] shown;
+		final boolean parent;
+
+		Entries(String[] shown) {
+			this.shown = shown;
+			this.parent = shown.length > 0 && shown[0].equals("../");
+		}
+
+		String name(int index) {
+			String entry = shown[index];
+			return entry.startsWith("./") ? entry.substring(2) : entry;
+		}
+	}
+
+	// Indices of the matches of a text query
+	private static class Result {
+		final Entries entries;
+		final String query;
+		final int[] matches;
+		final int count;
+
+		Result(Entries entries, String query, int[] matches, int count) {
+			this.entries = entries;
+			this.query = query;
+			this.matches = matches;
+			this.count = count;
+		}
+	}
+
+    /**
+     * @param listener receives the filtered models
+     */
+	public QuickFilter(Listener listener) {
+		this.listener = listener;
+	}
+
+    /**
+     * Sets the entries of the listing shown, and stops the scan of the previous ones.
+     * @param shown the entries as shown: "../", "./folder" and "file" names
+     */
+	public void setEntries(String[] shown) {
+		generation.incrementAndGet();
+		entries = new Entries(shown);
+	}
+
+    /**
+     * Stops the scan running, if any; its result won't be delivered.
+     */
+	public void cancel() {
+		generation.incrementAndGet();
+	}
+
+    /**
+     * Filters the entries in the background; the listener gets the result unless another query comes first.
+     * @param mode  how the query is matched
+     * @param query the query, not empty
+     * @throws PatternSyntaxException if the query isn't a valid glob or expression
+     */
+	public void filter(Mode mode, String query) {
+		final Pattern pattern = mode == Mode.TEXT ? null : compile(mode, query);
+		final String text = query.toLowerCase(Locale.ROOT);
+		final long current = generation.incrementAndGet();
+		final Entries filtered = entries;
+		scanner.execute(new Runnable() {
+			public void run() {
+				if (generation.get() != current)
+					return;
+				Metrics.Span span = Metrics.start("ui.filter");
+				Result result = pattern == null ? scanText(filtered, text, current) : scan(filtered, pattern, current);
+				if (result == null) {
+					span.end();
+					return; // a newer query or listing came
+				}
+				span.end(result.count, 0);
+				if (pattern == null)
+					previous = result;
+				publish(result, true, current);
+			}
+		});
+	}
+
+    /**
+     * Turns a query into the expression it's matched with.
+     * @param mode  GLOB or REGEX
+     * @param query the query
+     * @return the pattern, ignoring case; a glob must match the whole name
+     * @throws PatternSyntaxException if the query isn't valid
+     */
+	static Pattern compile(Mode mode, String query) {
+		String regex = mode == Mode.GLOB ? globToRegex(query) : query;
+		return Pattern.compile(regex, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+	}
+
+    /**
+     * Translates a glob: <code>*</code> any text, <code>?</code> one character, <code>[abc]</code> and
+     * <code>[!abc]</code> classes, <code>{a,b}</code> alternatives; the rest is literal.
+     * @param glob the glob
+     * @return an equivalent regular expression
+     * @throws PatternSyntaxException if a class or a group isn't closed
+     */
+	static String globToRegex(String glob) {
+		StringBuilder regex = new StringBuilder("^");
+		int groups = 0;
+		for (int i = 0; i < glob.length(); i++) {
+			char c = glob.charAt(i);
+			switch (c) {
+			case '*':
+				regex.append(".*");
+				break;
+			case '?':
+				regex.append('.');
+				break;
+			case '[':
+				int close = glob.indexOf(']', i + 2);
+				if (close < 0)
+					throw new PatternSyntaxException("Unclosed character class", glob, i);
+				String members = glob.substring(i + 1, close);
+				if (members.startsWith("!"))
+					members = "^" + members.substring(1);
+				regex.append('[').append(members.replace("\\", "\\\\").replace("[", "\\[")).append(']');
+				i = close;
+				break;
+			case '{':
+				groups++;
+				regex.append("(?:");
+				break;
+			case '}':
+				if (groups == 0)
+					throw new PatternSyntaxException("Unopened group", glob, i);
+				groups--;
+				regex.append(')');
+				break;
+			case ',':
+				regex.append(groups > 0 ? "|" : ",");
+				break;
+			default:
+				regex.append(Pattern.quote(String.valueOf(c)));
+			}
+		}
+		if (groups > 0)
+			throw new PatternSyntaxException("Unclosed group", glob, glob.length());
+		return regex.append('$').toString();
+	}
+
+	// Substring scan, of the previous matches only when the query extends the previous one
+	private Result scanText(Entries scanned, String query, long current) {
+		Result narrowed = previous != null && previous.entries == scanned && query.contains(previous.query)
+				? previous : null;
+		int candidates = narrowed != null ? narrowed.count : scanned.shown.length;
+		int[] matches = new int[candidates];
+		int count = 0;
+		long deadline = System.nanoTime() + BUDGET_MILLIS * 1_000_000;
+		boolean published = false;
+		for (int i = 0; i < candidates; i++) {
+			if ((i % CHECK_EVERY) == 0 && i > 0) {
+				if (generation.get() != current)
+					return null;
+				if (!published && System.nanoTime() > deadline) {
+					publish(new Result(scanned, query, matches.clone(), count), false, current);
+					published = true;
+				}
+			}
+			int index = narrowed != null ? narrowed.matches[i] : i;
+			if (scanned.parent && index == 0)
+				continue;
+			if (containsIgnoreCase(scanned.shown[index], query))
+				matches[count++] = index;
+		}
+		return new Result(scanned, query, matches, count);
+	}
+
+	// Compares in place, no lower-case copy of each name; a "./" prefix can't hold a match
+	private static boolean containsIgnoreCase(String entry, String query) {
+		int last = entry.length() - query.length();
+		for (int i = entry.startsWith("./") ? 2 : 0; i <= last; i++) {
+			if (entry.regionMatches(true, i, query, 0, query.length()))
+				return true;
+		}
+		return false;
+	}
+
+	// Glob or expression scan of every entry
+	private Result scan(Entries scanned, Pattern pattern, long current) {
+		int[] matches = new int[scanned.shown.length];
+		int count = 0;
+		long deadline = System.nanoTime() + BUDGET_MILLIS * 1_000_000;
+		boolean published = false;
+		for (int i = scanned.parent ? 1 : 0; i < scanned.shown.length; i++) {
+			if ((i % CHECK_EVERY) == 0) {
+				if (generation.get() != current)
+					return null;
+				if (!published && System.nanoTime() > deadline) {
+					publish(new Result(scanned, pattern.pattern(), matches.clone(), count), false, current);
+					published = true;
+				}
+			}
+			if (pattern.matcher(scanned.name(i)).find())
+				matches[count++] = i;
+		}
+		return new Result(scanned, pattern.pattern(), matches, count);
+	}
+
+	// Builds the model off the EDT and hands it over, unless a newer query or listing came meanwhile
+	private void publish(Result result, final boolean complete, final long current) {
+		final DefaultListModel<String> model = new DefaultListModel<>();
+		if (result.entries.parent)
+			model.addElement("../");
+		for (int i = 0; i < result.count; i++)
+			model.addElement(result.entries.shown[result.matches[i]]);
+		final int matches = result.count;
+		final int total = result.entries.shown.length - (result.entries.parent ? 1 : 0);
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				if (generation.get() == current)
+					listener.filtered(model, matches, total, complete);
+			}
+		});
+	}
+
+}
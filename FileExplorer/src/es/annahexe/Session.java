@@ -0,0 +1,331 @@
+package es.annahexe;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What the explorer remembers between launches: the recent folders with how often they were visited and where
+ * their list was scrolled, the last file shown with its caret, and the sort settings.
+ * <p>
+ * Kept in a small text file, one line per item:
+ * </p>
+ * <pre>
+ * fileexplorer-session 1
+ * sort NAME asc mixed
+ * file &lt;caret&gt; &lt;path&gt;
+ * folder &lt;visits&gt; &lt;last visit millis&gt; &lt;first visible row&gt; &lt;path&gt;
+ * </pre>
+ * <p>
+ * Folders are in visit order, the last one is where the explorer opens. The file is rewritten whole, through a
+ * temporary file and an atomic move, on a background thread; unreadable lines are skipped.
+ * </p>
+ * @author annahexe
+ */
+public class Session {
+	private static final String HEADER = "fileexplorer-session 1";
+	private static final int MAX_FOLDERS = 50;
+
+	private final Path file;
+	private final Map<String, Folder> folders = new LinkedHashMap<>(); // least recently visited first
+	private String lastFile;
+	private int caret;
+	private ListingCache.SortKey sortKey = ListingCache.SortKey.NAME;
+	private boolean descending;
+	private boolean foldersFirst;
+	private final ExecutorService writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "session-writer");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	// A recent folder
+	private static class Folder {
+		final String path;
+		int visits;
+		long lastVisit;
+		int scroll;
+
+		Folder(String path) {
+			this.path = path;
+		}
+	}
+
+	private Session(Path file) {
+		this.file = file;
+	}
+
+    /**
+     * Reads the session in <code>~/.fileexplorer/session</code>.
+     * @return the session, empty the first time
+     */
+	public static Session load() {
+		return load(new File(System.getProperty("user.home"), ".fileexplorer" + File.separator + "session").toPath());
+	}
+
+    /**
+     * Reads a session.
+     * @param file the session file
+     * @return the session, empty if the file is missing or unreadable
+     */
+	public static Session load(Path file) {
+		Session session = new Session(file);
+		List<String> lines;
+		try {
+			lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			return session;
+		}
+		if (lines.isEmpty() || !lines.get(0).equals(HEADER))
+			return session;
+		for (String line : lines.subList(1, lines.size())) {
+			try {
+				session.parse(line);
+			} catch (RuntimeException e) {
+				// Skips the line
+			}
+		}
+		return session;
+	}
+
+	private void parse(String line) {
+		String[] fields;
+		if (line.startsWith("sort ")) {
+			fields = line.split(" ");
+			sortKey = ListingCache.SortKey.valueOf(fields[1]);
+			descending = fields[2].equals("desc");
+			foldersFirst = fields[3].equals("folders-first");
+		} else if (line.startsWith("file ")) {
+			fields = line.split(" ", 3);
+			caret = Integer.parseInt(fields[1]);
+			lastFile = fields[2];
+		} else if (line.startsWith("folder ")) {
+			fields = line.split(" ", 5);
+			Folder folder = new Folder(fields[4]);
+			folder.visits = Integer.parseInt(fields[1]);
+			folder.lastVisit = Long.parseLong(fields[2]);
+			folder.scroll = Integer.parseInt(fields[3]);
+			folders.put(folder.path, folder);
+		}
+	}
+
+    /**
+     * Counts a visit to a folder, which becomes the one the explorer opens next time.
+     * @param folder the folder shown
+     */
+	public synchronized void visited(File folder) {
+		String path = folder.getAbsolutePath();
+		if (path.indexOf('\n') >= 0)
+			return;
+		Folder recent = folders.remove(path);
+		if (recent == null)
+			recent = new Folder(path);
+		recent.visits++;
+		recent.lastVisit = System.currentTimeMillis();
+		folders.put(path, recent);
+		if (folders.size() > MAX_FOLDERS)
+			folders.remove(leastUseful().path);
+	}
+
+	// The folder with the lowest score, to make room
+	private Folder leastUseful() {
+		Folder least = null;
+		long now = System.currentTimeMillis();
+		for (Folder folder : folders.values())
+			if (least == null || score(folder, now) < score(least, now))
+				least = folder;
+		return least;
+	}
+
+	// Visits, worth half as much every week since the last one
+	private static double score(Folder folder, long now) {
+		double weeks = Math.max(0, now - folder.lastVisit) / (double) TimeUnit.DAYS.toMillis(7);
+		return folder.visits * Math.pow(0.5, weeks);
+	}
+
+    /**
+     * @return the last folder visited, or null
+     */
+	public synchronized File getLastFolder() {
+		String last = null;
+		for (String path : folders.keySet())
+			last = path;
+		return last == null ? null : new File(last);
+	}
+
+    /**
+     * Returns the folders most worth prefetching: visited often and lately.
+     * @param count how many
+     * @return the folders, best first
+     */
+	public synchronized List<File> getFrequentFolders(int count) {
+		return getFrequentFolders(null, count);
+	}
+
+    /**
+     * Returns the subfolders of a folder most worth prefetching when it's about to be opened.
+     * @param parent the folder
+     * @param count  how many
+     * @return its recent subfolders, best first
+     */
+	public synchronized List<File> getFrequentSubfolders(File parent, int count) {
+		return getFrequentFolders(parent.getAbsoluteFile(), count);
+	}
+
+	private List<File> getFrequentFolders(File parent, int count) {
+		final long now = System.currentTimeMillis();
+		List<Folder> sorted = new ArrayList<>(folders.values());
+		Collections.sort(sorted, new Comparator<Folder>() {
+			public int compare(Folder a, Folder b) {
+				return Double.compare(score(b, now), score(a, now));
+			}
+		});
+		List<File> frequent = new ArrayList<>();
+		for (Folder folder : sorted) {
+			if (frequent.size() >= count)
+				break;
+			File file = new File(folder.path);
+			if (parent == null || parent.equals(file.getParentFile()))
+				frequent.add(file);
+		}
+		return frequent;
+	}
+
+    /**
+     * Remembers where the list of a recent folder is scrolled.
+     * @param folder the folder
+     * @param row    the first visible row
+     */
+	public synchronized void setScroll(File folder, int row) {
+		Folder recent = folders.get(folder.getAbsolutePath());
+		if (recent != null)
+			recent.scroll = Math.max(0, row);
+	}
+
+    /**
+     * @param folder a folder
+     * @return the first visible row of its list last time, 0 if unknown
+     */
+	public synchronized int getScroll(File folder) {
+		Folder recent = folders.get(folder.getAbsolutePath());
+		return recent == null ? 0 : recent.scroll;
+	}
+
+    /**
+     * Remembers the file shown in the editor.
+     * @param file  the file, or null for none
+     * @param caret the caret position in it
+     */
+	public synchronized void setLastFile(File file, int caret) {
+		this.lastFile = file == null || file.getPath().indexOf('\n') >= 0 ? null : file.getAbsolutePath();
+		this.caret = Math.max(0, caret);
+	}
+
+    /**
+     * @return the last file shown in the editor, or null
+     */
+	public synchronized File getLastFile() {
+		return lastFile == null ? null : new File(lastFile);
+	}
+
+    /**
+     * @return the caret position in {@link #getLastFile()}
+     */
+	public synchronized int getCaret() {
+		return caret;
+	}
+
+	public synchronized ListingCache.SortKey getSortKey() {
+		return sortKey;
+	}
+
+	public synchronized boolean isDescending() {
+		return descending;
+	}
+
+	public synchronized boolean isFoldersFirst() {
+		return foldersFirst;
+	}
+
+    /**
+     * Changes the sort settings.
+     * @param sortKey      what to compare
+     * @param descending   largest, newest or last name first
+     * @param foldersFirst folders before files
+     */
+	public synchronized void setSort(ListingCache.SortKey sortKey, boolean descending, boolean foldersFirst) {
+		this.sortKey = sortKey;
+		this.descending = descending;
+		this.foldersFirst = foldersFirst;
+	}
+
+    /**
+     * Writes the session as it is now, on a background thread.
+     */
+	public void save() {
+		final String content = format();
+		try {
+			writer.execute(new Runnable() {
+				public void run() {
+					write(content);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			// Closing: saveNow() writes the last state
+		}
+	}
+
+    /**
+     * Writes the session before returning, e.g. when the window closes.
+     */
+	public void saveNow() {
+		final String content = format();
+		writer.shutdown(); // after the pending writes, and no more
+		try {
+			writer.awaitTermination(2, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		write(content);
+	}
+
+	private synchronized String format() {
+		StringBuilder content = new StringBuilder(HEADER).append('\n');
+		content.append("sort ").append(sortKey).append(descending ? " desc" : " asc")
+				.append(foldersFirst ? " folders-first" : " mixed").append('\n');
+		if (lastFile != null)
+			content.append("file ").append(caret).append(' ').append(lastFile).append('\n');
+		for (Folder folder : folders.values())
+			content.append("folder ").append(folder.visits).append(' ').append(folder.lastVisit).append(' ')
+					.append(folder.scroll).append(' ').append(folder.path).append('\n');
+		return content.toString();
+	}
+
+	private void write(String content) {
+		try {
+			Files.createDirectories(file.getParent());
+			Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+			Files.write(temp, content.getBytes(StandardCharsets.UTF_8));
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			// Not worth an error: the session is only a convenience
+		}
+	}
+
+}
@@ -0,0 +1,299 @@
+package es.annahexe;
+
+import java.awt.Color;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+import javax.swing.JTextPane;
+import javax.swing.JViewport;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.Segment;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.text.StyleConstants;
+import javax.swing.text.StyledDocument;
+
+/**
+ * Syntax highlighting of the editor pane, using {@link SyntaxLexer}.
+ * <p>
+ * The lexer state at the start of every line is kept in an <code>int[]</code>. An edit only marks the changed
+ * lines as damaged; they are lexed again when needed, until a line's start state matches the stored one, and the
+ * lines below are left alone. Styles are applied only to the lines in the viewport (plus a small margin), when it
+ * scrolls or after an edit, so a huge file is never restyled as a whole. Lexing far ahead (e.g. jumping to the
+ * end of a big log) is done in slices so the EDT stays responsive.
+ * </p>
+ * <p>
+ * Only the foreground and italic attributes are set, so the bold of the search matches is kept.
+ * </p>
+ * @author annahexe
+ */
+public class SyntaxHighlighter {
+	private static final int STYLE_DELAY_MILLIS = 30;
+	private static final int MARGIN_LINES = 20;
+	private static final int LEX_SLICE_LINES = 50000;
+	private static final int STYLED = 1 << 30; // flag in lineInfo: the line has its styles
+
+	private JTextPane textPane;
+	private StyledDocument document;
+	private SyntaxLexer.Language language = SyntaxLexer.Language.PLAIN;
+	private Map<SyntaxLexer.Token, SimpleAttributeSet> styles = new EnumMap<>(SyntaxLexer.Token.class);
+	private SimpleAttributeSet plainStyle = new SimpleAttributeSet();
+	private Timer styleTimer;
+	private Segment segment = new Segment();
+
+	// Start state of each line and the STYLED flag. States are valid below 'lexed', except the damaged range
+	// (damagedFrom, ...] that is lexed again until it converges
+	private int[] lineInfo = new int[1024];
+	private int lines = 1;
+	private int lexed = 1;
+	private int damagedFrom = -1;
+	private int damagedTo = -1;
+
+    /**
+     * Installs the highlighter on the pane's document and viewport.
+     * @param textPane the editor pane
+     */
+	public SyntaxHighlighter(JTextPane textPane) {
+		this.textPane = textPane;
+		this.document = textPane.getStyledDocument();
+		createStyles();
+		styleTimer = new Timer(STYLE_DELAY_MILLIS, new ActionListener() {
+			public void actionPerformed(ActionEvent actionEvent) {
+				styleViewport();
+			}
+		});
+		styleTimer.setRepeats(false);
+		document.addDocumentListener(new DocumentListener() {
+			public void insertUpdate(DocumentEvent documentEvent) {
+				damage(documentEvent);
+			}
+
+			public void removeUpdate(DocumentEvent documentEvent) {
+				damage(documentEvent);
+			}
+
+			public void changedUpdate(DocumentEvent documentEvent) {
+				// Attributes only, nothing to lex
+			}
+		});
+		JViewport viewport = (JViewport) SwingUtilities.getAncestorOfClass(JViewport.class, textPane);
+		if (viewport != null) {
+			viewport.addChangeListener(new ChangeListener() {
+				public void stateChanged(ChangeEvent changeEvent) {
+					styleTimer.restart();
+				}
+			});
+		}
+	}
+
+    /**
+     * Sets the language of the text just loaded and forgets every line state.
+     * @param language the language, PLAIN for no highlighting
+     */
+	public void setLanguage(SyntaxLexer.Language language) {
+		this.language = language;
+		lines = document.getDefaultRootElement().getElementCount();
+		ensureCapacity(lines);
+		Arrays.fill(lineInfo, 0, lines, SyntaxLexer.NORMAL);
+		lexed = 1;
+		damagedFrom = -1;
+		styleTimer.restart();
+	}
+
+	private void createStyles() {
+		StyleConstants.setForeground(plainStyle, Color.BLACK);
+		StyleConstants.setItalic(plainStyle, false);
+		addStyle(SyntaxLexer.Token.KEYWORD, new Color(0x7F0055), false);
+		addStyle(SyntaxLexer.Token.STRING, new Color(0x2A00FF), false);
+		addStyle(SyntaxLexer.Token.COMMENT, new Color(0x3F7F5F), true);
+		addStyle(SyntaxLexer.Token.NUMBER, new Color(0x098658), false);
+		addStyle(SyntaxLexer.Token.KEY, new Color(0x0451A5), false);
+		addStyle(SyntaxLexer.Token.TAG, new Color(0x800000), false);
+		addStyle(SyntaxLexer.Token.ERROR, new Color(0xCC0000), false);
+		addStyle(SyntaxLexer.Token.WARNING, new Color(0xB36B00), false);
+	}
+
+	private void addStyle(SyntaxLexer.Token token, Color color, boolean italic) {
+		SimpleAttributeSet style = new SimpleAttributeSet();
+		StyleConstants.setForeground(style, color);
+		StyleConstants.setItalic(style, italic);
+		styles.put(token, style);
+	}
+
+	// =========================
+	// Damage tracking
+	// =========================
+
+	// Called inside the document's write lock: only bookkeeping here, styles are applied later by the timer
+	private void damage(DocumentEvent event) {
+		Element root = document.getDefaultRootElement();
+		DocumentEvent.ElementChange change = event.getChange(root);
+		int first; // first line to lex again
+		int last; // last line whose text changed
+		int index; // first line replaced in the element tree
+		int added;
+		int removed;
+		if (change != null) {
+			index = change.getIndex();
+			added = change.getChildrenAdded().length;
+			removed = change.getChildrenRemoved().length;
+			// Text ending in a line break inserted at the start of a line is reported as a change of the line
+			// below, but the edited line changed too
+			first = Math.min(index, root.getElementIndex(event.getOffset()));
+		} else {
+			index = root.getElementIndex(event.getOffset());
+			first = index;
+			added = 1;
+			removed = 1;
+		}
+		// A line kept in the tree may hold the end of the inserted text
+		last = root.getElementIndex(event.getType() == DocumentEvent.EventType.INSERT
+				? event.getOffset() + event.getLength() : event.getOffset());
+		last = Math.max(last, index + added - 1);
+		int shift = added - removed;
+		if (shift != 0) {
+			ensureCapacity(lines + shift);
+			System.arraycopy(lineInfo, index + removed, lineInfo, index + added, lines - index - removed);
+			lines += shift;
+			if (lexed > index + removed)
+				lexed += shift;
+			else if (lexed > index + added)
+				lexed = index + added; // the lines below were copied from slots never lexed
+			if (damagedFrom >= index + removed)
+				damagedFrom += shift;
+			if (damagedTo >= index + removed)
+				damagedTo += shift;
+		}
+		for (int line = first; line <= last; line++)
+			lineInfo[line] &= ~STYLED;
+		if (damagedFrom < 0) {
+			damagedFrom = first;
+			damagedTo = last;
+		} else {
+			// The lines of the damage left to lex are lexed again even if the new one converges first
+			damagedTo = Math.max(Math.max(damagedTo, damagedFrom), last);
+			damagedFrom = Math.min(damagedFrom, first);
+		}
+		styleTimer.restart();
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > lineInfo.length)
+			lineInfo = Arrays.copyOf(lineInfo, Math.max(capacity, lineInfo.length * 2));
+	}
+
+	// Start state of a line, without the flag; package-private for the tests
+	int stateOf(int line) {
+		return lineInfo[line] & ~STYLED;
+	}
+
+	// Sets the start state of a line, dropping its styles when it changed
+	private void setState(int line, int state) {
+		if (stateOf(line) != state)
+			lineInfo[line] = state;
+	}
+
+    /**
+     * Makes the start states valid up to a line, lexing at most a slice of lines.
+     * @param target the last line needed
+     * @return true when done, false when more slices are needed
+     */
+	boolean lexUpTo(int target) {
+		int budget = LEX_SLICE_LINES;
+		if (damagedFrom >= lexed - 1)
+			damagedFrom = -1; // beyond what was lexed, the lines are lexed for the first time anyway
+		if (damagedFrom >= 0 && damagedFrom < target) {
+			int line = damagedFrom;
+			while (line < target && line + 1 < lexed && budget-- > 0) {
+				int next = lexLine(line, stateOf(line), null);
+				line++;
+				if (line > damagedTo && stateOf(line) == next) {
+					line = -1; // converged, the lines below are still right
+					break;
+				}
+				setState(line, next);
+			}
+			if (line < 0)
+				damagedFrom = -1;
+			else if (line + 1 >= lexed) {
+				lexed = line + 1;
+				damagedFrom = -1;
+			} else {
+				damagedFrom = line;
+			}
+			if (budget <= 0)
+				return false;
+		}
+		while (lexed <= target && budget-- > 0) {
+			setState(lexed, lexLine(lexed - 1, stateOf(lexed - 1), null));
+			lexed++;
+		}
+		return lexed > target;
+	}
+
+	private int lexLine(int line, int state, SyntaxLexer.TokenListener listener) {
+		Element element = document.getDefaultRootElement().getElement(line);
+		int start = element.getStartOffset();
+		int end = Math.min(element.getEndOffset() - 1, document.getLength()); // without the line break
+		try {
+			document.getText(start, end - start, segment);
+		} catch (BadLocationException e) {
+			return state;
+		}
+		return SyntaxLexer.lexLine(language, segment, state, listener);
+	}
+
+	// =========================
+	// Styling
+	// =========================
+
+	private void styleViewport() {
+		JViewport viewport = (JViewport) SwingUtilities.getAncestorOfClass(JViewport.class, textPane);
+		if (viewport == null || document.getLength() == 0)
+			return;
+		Rectangle view = viewport.getViewRect();
+		Element root = document.getDefaultRootElement();
+		int top = textPane.viewToModel2D(new Point(view.x, view.y));
+		int bottom = textPane.viewToModel2D(new Point(view.x + view.width, view.y + view.height));
+		if (top < 0 || bottom < 0)
+			return;
+		int firstLine = Math.max(0, root.getElementIndex(top) - MARGIN_LINES);
+		int lastLine = Math.min(lines - 1, root.getElementIndex(bottom) + MARGIN_LINES);
+		if (!lexUpTo(lastLine)) {
+			styleTimer.restart(); // next slice
+			return;
+		}
+		for (int line = firstLine; line <= lastLine; line++) {
+			if ((lineInfo[line] & STYLED) == 0) {
+				styleLine(line);
+				lineInfo[line] |= STYLED;
+			}
+		}
+	}
+
+	private void styleLine(int line) {
+		Element element = document.getDefaultRootElement().getElement(line);
+		final int start = element.getStartOffset();
+		int length = Math.min(element.getEndOffset() - 1, document.getLength()) - start;
+		document.setCharacterAttributes(start, length, plainStyle, false);
+		if (language == SyntaxLexer.Language.PLAIN)
+			return;
+		lexLine(line, stateOf(line), new SyntaxLexer.TokenListener() {
+			public void token(int tokenStart, int tokenLength, SyntaxLexer.Token token) {
+				document.setCharacterAttributes(start + tokenStart, tokenLength, styles.get(token), false);
+			}
+		});
+	}
+
+}
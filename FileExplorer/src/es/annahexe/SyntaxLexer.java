@@ -0,0 +1,489 @@
+package es.annahexe;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Line-by-line lexer for the formats the editor highlights: Java, JSON, XML, YAML, properties and logs.
+ * <p>
+ * A line is lexed knowing only the state at its start (e.g. "inside a block comment") and returns the state at
+ * the start of the next line, so after an edit only the changed lines and the ones whose start state changed
+ * have to be lexed again. The lexer has no Swing dependency; {@link SyntaxHighlighter} turns its tokens into
+ * styles.
+ * </p>
+ * @author annahexe
+ */
+public class SyntaxLexer {
+	/** State at the start of a line outside any multi-line construct. */
+	public static final int NORMAL = 0;
+	private static final int IN_COMMENT = 1; // Java /* */, XML <!-- -->
+	private static final int IN_TEXT_BLOCK = 2; // Java """
+	private static final int IN_TAG = 3; // XML tag spanning lines
+	private static final int IN_VALUE = 4; // properties value continued with \
+
+	private static final Set<String> JAVA_KEYWORDS = new HashSet<>(Arrays.asList("abstract", "assert", "boolean",
+			"break", "byte", "case", "catch", "char", "class", "const", "continue", "default", "do", "double", "else",
+			"enum", "extends", "final", "finally", "float", "for", "goto", "if", "implements", "import", "instanceof",
+			"int", "interface", "long", "native", "new", "package", "private", "protected", "public", "return",
+			"short", "static", "strictfp", "super", "switch", "synchronized", "this", "throw", "throws", "transient",
+			"try", "void", "volatile", "while", "var", "record", "yield", "sealed", "permits", "true", "false",
+			"null"));
+	private static final Set<String> YAML_KEYWORDS = new HashSet<>(Arrays.asList("true", "false", "null", "yes",
+			"no", "on", "off", "True", "False", "Null", "TRUE", "FALSE", "NULL", "~"));
+
+    /**
+     * Kinds of token, each painted with its own style.
+     */
+	public enum Token {
+		KEYWORD, STRING, COMMENT, NUMBER, KEY, TAG, ERROR, WARNING
+	}
+
+    /**
+     * Formats with a lexer, chosen by file extension.
+     */
+	public enum Language {
+		PLAIN, JAVA, JSON, XML, YAML, PROPERTIES, LOG;
+
+	    /**
+	     * @param fileName a file name
+	     * @return its language, PLAIN when it has no lexer
+	     */
+		public static Language forFile(String fileName) {
+			String name = fileName.toLowerCase();
+			int dotIndex = name.lastIndexOf('.');
+			String extension = dotIndex >= 0 ? name.substring(dotIndex + 1) : "";
+			switch (extension) {
+			case "java":
+				return JAVA;
+			case "json":
+				return JSON;
+			case "xml":
+			case "xsd":
+			case "xsl":
+			case "pom":
+			case "svg":
+			case "html":
+			case "htm":
+			case "fxml":
+				return XML;
+			case "yml":
+			case "yaml":
+				return YAML;
+			case "properties":
+			case "ini":
+			case "cfg":
+			case "conf":
+				return PROPERTIES;
+			case "log":
+			case "out":
+				return LOG;
+			default:
+				return PLAIN;
+			}
+		}
+	}
+
+    /**
+     * Receives the tokens of a line. Text between tokens is plain.
+     */
+	public interface TokenListener {
+		void token(int start, int length, Token token);
+	}
+
+	private SyntaxLexer() {
+	}
+
+    /**
+     * Lexes one line.
+     * @param language the format
+     * @param line     the line, without its line break
+     * @param state    the state at the start of the line ({@link #NORMAL} for the first line)
+     * @param listener receives the tokens in order; null to only compute the next state
+     * @return the state at the start of the next line
+     */
+	public static int lexLine(Language language, CharSequence line, int state, TokenListener listener) {
+		switch (language) {
+		case JAVA:
+			return lexJava(line, state, listener);
+		case JSON:
+			lexJson(line, listener);
+			return NORMAL;
+		case XML:
+			return lexXml(line, state, listener);
+		case YAML:
+			lexYaml(line, listener);
+			return NORMAL;
+		case PROPERTIES:
+			return lexProperties(line, state, listener);
+		case LOG:
+			lexLog(line, listener);
+			return NORMAL;
+		default:
+			return NORMAL;
+		}
+	}
+
+	// =========================
+	// Languages
+	// =========================
+
+	private static int lexJava(CharSequence line, int state, TokenListener listener) {
+		int n = line.length();
+		int i = 0;
+		if (state == IN_COMMENT || state == IN_TEXT_BLOCK) {
+			String end = state == IN_COMMENT ? "*/" : "\"\"\"";
+			int close = indexOf(line, end, 0);
+			if (close < 0) {
+				emit(listener, 0, n, state == IN_COMMENT ? Token.COMMENT : Token.STRING);
+				return state;
+			}
+			i = close + end.length();
+			emit(listener, 0, i, state == IN_COMMENT ? Token.COMMENT : Token.STRING);
+		}
+		while (i < n) {
+			char c = line.charAt(i);
+			if (c == '/' && i + 1 < n && line.charAt(i + 1) == '/') {
+				emit(listener, i, n - i, Token.COMMENT);
+				return NORMAL;
+			} else if (c == '/' && i + 1 < n && line.charAt(i + 1) == '*') {
+				int close = indexOf(line, "*/", i + 2);
+				if (close < 0) {
+					emit(listener, i, n - i, Token.COMMENT);
+					return IN_COMMENT;
+				}
+				emit(listener, i, close + 2 - i, Token.COMMENT);
+				i = close + 2;
+			} else if (c == '"' && startsWith(line, "\"\"\"", i)) {
+				int close = indexOf(line, "\"\"\"", i + 3);
+				if (close < 0) {
+					emit(listener, i, n - i, Token.STRING);
+					return IN_TEXT_BLOCK;
+				}
+				emit(listener, i, close + 3 - i, Token.STRING);
+				i = close + 3;
+			} else if (c == '"' || c == '\'') {
+				int end = quoted(line, i);
+				emit(listener, i, end - i, Token.STRING);
+				i = end;
+			} else if (c == '@' && i + 1 < n && Character.isJavaIdentifierStart(line.charAt(i + 1))) {
+				int end = identifier(line, i + 1);
+				emit(listener, i, end - i, Token.TAG);
+				i = end;
+			} else if (Character.isDigit(c)) {
+				int end = number(line, i);
+				emit(listener, i, end - i, Token.NUMBER);
+				i = end;
+			} else if (Character.isJavaIdentifierStart(c)) {
+				int end = identifier(line, i);
+				if (JAVA_KEYWORDS.contains(line.subSequence(i, end).toString()))
+					emit(listener, i, end - i, Token.KEYWORD);
+				i = end;
+			} else {
+				i++;
+			}
+		}
+		return NORMAL;
+	}
+
+	private static void lexJson(CharSequence line, TokenListener listener) {
+		int n = line.length();
+		int i = 0;
+		while (i < n) {
+			char c = line.charAt(i);
+			if (c == '"') {
+				int end = quoted(line, i);
+				int next = skipSpaces(line, end);
+				emit(listener, i, end - i, next < n && line.charAt(next) == ':' ? Token.KEY : Token.STRING);
+				i = end;
+			} else if (c == '-' || Character.isDigit(c)) {
+				int end = number(line, i + 1);
+				emit(listener, i, end - i, Token.NUMBER);
+				i = end;
+			} else if (Character.isLetter(c)) {
+				int end = identifier(line, i);
+				emit(listener, i, end - i, Token.KEYWORD); // true, false, null
+				i = end;
+			} else {
+				i++;
+			}
+		}
+	}
+
+	private static int lexXml(CharSequence line, int state, TokenListener listener) {
+		int n = line.length();
+		int i = 0;
+		if (state == IN_COMMENT) {
+			int close = indexOf(line, "-->", 0);
+			if (close < 0) {
+				emit(listener, 0, n, Token.COMMENT);
+				return IN_COMMENT;
+			}
+			i = close + 3;
+			emit(listener, 0, i, Token.COMMENT);
+		}
+		boolean inTag = state == IN_TAG;
+		while (i < n) {
+			char c = line.charAt(i);
+			if (inTag) {
+				if (c == '>' || (c == '/' || c == '?') && i + 1 < n && line.charAt(i + 1) == '>') {
+					int length = c == '>' ? 1 : 2;
+					emit(listener, i, length, Token.TAG);
+					i += length;
+					inTag = false;
+				} else if (c == '"' || c == '\'') {
+					int end = quoted(line, i);
+					emit(listener, i, end - i, Token.STRING);
+					i = end;
+				} else if (isNameChar(c)) {
+					int end = i;
+					while (end < n && isNameChar(line.charAt(end)))
+						end++;
+					emit(listener, i, end - i, Token.KEY);
+					i = end;
+				} else {
+					i++;
+				}
+			} else if (c == '<' && startsWith(line, "<!--", i)) {
+				int close = indexOf(line, "-->", i + 4);
+				if (close < 0) {
+					emit(listener, i, n - i, Token.COMMENT);
+					return IN_COMMENT;
+				}
+				emit(listener, i, close + 3 - i, Token.COMMENT);
+				i = close + 3;
+			} else if (c == '<') {
+				int end = i + 1;
+				if (end < n && (line.charAt(end) == '/' || line.charAt(end) == '?' || line.charAt(end) == '!'))
+					end++;
+				while (end < n && isNameChar(line.charAt(end)))
+					end++;
+				emit(listener, i, end - i, Token.TAG);
+				i = end;
+				inTag = true;
+			} else if (c == '&') {
+				int end = indexOf(line, ";", i);
+				end = end < 0 ? i + 1 : end + 1;
+				emit(listener, i, end - i, Token.KEYWORD);
+				i = end;
+			} else {
+				i++;
+			}
+		}
+		return inTag ? IN_TAG : NORMAL;
+	}
+
+	private static void lexYaml(CharSequence line, TokenListener listener) {
+		int n = line.length();
+		int i = skipSpaces(line, 0);
+		if (startsWith(line, "---", i) || startsWith(line, "...", i)) {
+			emit(listener, i, 3, Token.KEYWORD);
+			i += 3;
+		}
+		if (i + 1 < n && line.charAt(i) == '-' && line.charAt(i + 1) == ' ')
+			i = skipSpaces(line, i + 1); // list item
+		int colon = keyEnd(line, i);
+		if (colon > i) {
+			emit(listener, i, colon - i, Token.KEY);
+			i = colon + 1;
+		}
+		while (i < n) {
+			char c = line.charAt(i);
+			if (c == '#' && (i == 0 || line.charAt(i - 1) == ' ' || line.charAt(i - 1) == '\t')) {
+				emit(listener, i, n - i, Token.COMMENT);
+				return;
+			} else if (c == '"' || c == '\'') {
+				int end = quoted(line, i);
+				emit(listener, i, end - i, Token.STRING);
+				i = end;
+			} else if (c == '&' || c == '*' || c == '!') {
+				int end = i + 1;
+				while (end < n && line.charAt(end) != ' ')
+					end++;
+				emit(listener, i, end - i, Token.TAG);
+				i = end;
+			} else if (c != ' ' && c != '\t') {
+				int end = i;
+				while (end < n && !(line.charAt(end) == ' ' && end + 1 < n && line.charAt(end + 1) == '#'))
+					end++;
+				String value = line.subSequence(i, end).toString().trim();
+				if (YAML_KEYWORDS.contains(value))
+					emit(listener, i, value.length(), Token.KEYWORD);
+				else if (isNumber(value))
+					emit(listener, i, value.length(), Token.NUMBER);
+				i = end;
+			} else {
+				i++;
+			}
+		}
+	}
+
+	// End of "key:" (index of the colon), or -1
+	private static int keyEnd(CharSequence line, int start) {
+		int n = line.length();
+		if (start < n && (line.charAt(start) == '#' || line.charAt(start) == '"' || line.charAt(start) == '\''))
+			return -1;
+		for (int i = start; i < n; i++) {
+			char c = line.charAt(i);
+			if (c == '#')
+				return -1;
+			if (c == ':' && (i + 1 == n || line.charAt(i + 1) == ' '))
+				return i;
+		}
+		return -1;
+	}
+
+	private static int lexProperties(CharSequence line, int state, TokenListener listener) {
+		int n = line.length();
+		boolean continued = n > 0 && line.charAt(n - 1) == '\\';
+		if (state == IN_VALUE)
+			return continued ? IN_VALUE : NORMAL;
+		int i = skipSpaces(line, 0);
+		if (i == n)
+			return NORMAL;
+		char first = line.charAt(i);
+		if (first == '#' || first == '!' || first == ';') {
+			emit(listener, i, n - i, Token.COMMENT);
+			return NORMAL;
+		}
+		if (first == '[') {
+			emit(listener, i, n - i, Token.TAG); // ini section
+			return NORMAL;
+		}
+		int end = i;
+		while (end < n) {
+			char c = line.charAt(end);
+			if (c == '\\') {
+				end += 2;
+				continue;
+			}
+			if (c == '=' || c == ':' || c == ' ' || c == '\t')
+				break;
+			end++;
+		}
+		emit(listener, i, Math.min(end, n) - i, Token.KEY);
+		return continued ? IN_VALUE : NORMAL;
+	}
+
+	private static void lexLog(CharSequence line, TokenListener listener) {
+		int n = line.length();
+		int i = skipSpaces(line, 0);
+		if (startsWith(line, "at ", i) && i > 0) {
+			emit(listener, 0, n, Token.COMMENT); // stack trace frame
+			return;
+		}
+		if (startsWith(line, "Caused by:", i)) {
+			emit(listener, 0, n, Token.ERROR);
+			return;
+		}
+		int end = 0;
+		while (end < n && "0123456789-:.,/T+ ".indexOf(line.charAt(end)) >= 0)
+			end++;
+		while (end > 0 && line.charAt(end - 1) == ' ')
+			end--;
+		if (end >= 8)
+			emit(listener, 0, end, Token.NUMBER); // timestamp
+		i = end;
+		while (i < n) {
+			if (!Character.isLetter(line.charAt(i))) {
+				i++;
+				continue;
+			}
+			int wordEnd = i;
+			while (wordEnd < n && Character.isLetter(line.charAt(wordEnd)))
+				wordEnd++;
+			String word = line.subSequence(i, wordEnd).toString();
+			if (word.equals("ERROR") || word.equals("FATAL") || word.equals("SEVERE") || word.endsWith("Exception"))
+				emit(listener, i, wordEnd - i, Token.ERROR);
+			else if (word.equals("WARN") || word.equals("WARNING"))
+				emit(listener, i, wordEnd - i, Token.WARNING);
+			else if (word.equals("INFO") || word.equals("DEBUG") || word.equals("TRACE") || word.equals("FINE"))
+				emit(listener, i, wordEnd - i, Token.KEYWORD);
+			i = wordEnd;
+		}
+	}
+
+	// =========================
+	// Scanning helpers
+	// =========================
+
+	private static void emit(TokenListener listener, int start, int length, Token token) {
+		if (listener != null && length > 0)
+			listener.token(start, length, token);
+	}
+
+	// End of the quoted text starting at start (after the closing quote, or the end of the line)
+	private static int quoted(CharSequence line, int start) {
+		char quote = line.charAt(start);
+		int n = line.length();
+		for (int i = start + 1; i < n; i++) {
+			char c = line.charAt(i);
+			if (c == '\\')
+				i++;
+			else if (c == quote)
+				return i + 1;
+		}
+		return n;
+	}
+
+	private static int identifier(CharSequence line, int start) {
+		int end = start;
+		while (end < line.length() && Character.isJavaIdentifierPart(line.charAt(end)))
+			end++;
+		return end;
+	}
+
+	private static int number(CharSequence line, int start) {
+		int end = start;
+		while (end < line.length()) {
+			char c = line.charAt(end);
+			if (!Character.isLetterOrDigit(c) && c != '.' && c != '_'
+					&& !((c == '-' || c == '+') && (line.charAt(end - 1) == 'e' || line.charAt(end - 1) == 'E')))
+				break;
+			end++;
+		}
+		return end;
+	}
+
+	private static boolean isNumber(String value) {
+		if (value.isEmpty())
+			return false;
+		try {
+			Double.parseDouble(value);
+			return true;
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
+	private static boolean isNameChar(char c) {
+		return Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == ':' || c == '.';
+	}
+
+	private static int skipSpaces(CharSequence line, int start) {
+		int i = start;
+		while (i < line.length() && (line.charAt(i) == ' ' || line.charAt(i) == '\t'))
+			i++;
+		return i;
+	}
+
+	private static boolean startsWith(CharSequence line, String prefix, int start) {
+		if (start + prefix.length() > line.length())
+			return false;
+		for (int i = 0; i < prefix.length(); i++) {
+			if (line.charAt(start + i) != prefix.charAt(i))
+				return false;
+		}
+		return true;
+	}
+
+	private static int indexOf(CharSequence line, String text, int from) {
+		int last = line.length() - text.length();
+		for (int i = from; i <= last; i++) {
+			if (startsWith(line, text, i))
+				return i;
+		}
+		return -1;
+	}
+
+}
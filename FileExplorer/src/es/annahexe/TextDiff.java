@@ -0,0 +1,558 @@
+package es.annahexe;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Line diff of two text files using Myers' O(ND) algorithm with the linear-space (middle snake) refinement.
+ * <p>
+ * Files are streamed once: each line is reduced to a 64-bit hash, interned into an {@code int} id, and only its
+ * start offset is kept, so two 1M-line files cost a few primitive arrays instead of two {@code ArrayList<String>}.
+ * Lines with the same hash are compared byte by byte with the first line of their id, read back from disk, so a
+ * collision gets its own id instead of matching a different line.
+ * Lines that don't occur in the other file can't be part of the common subsequence and are removed before
+ * running Myers, and very expensive inputs fall back to a good-enough split (like GNU diff does) to bound the time.
+ * Otherwise line text is only read back from disk for the hunks being displayed.
+ * </p>
+ * @author annahexe
+ */
+public class TextDiff {
+	private static final int MAX_COST = 4096; // edit distance after which the search settles for a split point
+	private static final int WORK_BUDGET = 1 << 26; // diagonal steps allowed per middle snake search
+
+	private LineFile left;
+	private LineFile right;
+	private List<Hunk> hunks = new ArrayList<>();
+	private long nanos;
+
+	// Myers state (over the reduced sequences)
+	private int[] a;
+	private int[] b;
+	private boolean[] changedA;
+	private boolean[] changedB;
+	private int[] forward;
+	private int[] backward;
+	private int center;
+	private int snakeX, snakeY, snakeU, snakeV;
+
+    /**
+     * A region that differs: lines {@code [leftStart, leftEnd)} became {@code [rightStart, rightEnd)}.
+     * An empty left range is an insertion, an empty right range a deletion.
+     */
+	public static class Hunk {
+		private int leftStart, leftEnd, rightStart, rightEnd;
+
+		private Hunk(int leftStart, int leftEnd, int rightStart, int rightEnd) {
+			this.leftStart = leftStart;
+			this.leftEnd = leftEnd;
+			this.rightStart = rightStart;
+			this.rightEnd = rightEnd;
+		}
+
+		public int getLeftStart() {
+			return leftStart;
+		}
+
+		public int getLeftEnd() {
+			return leftEnd;
+		}
+
+		public int getRightStart() {
+			return rightStart;
+		}
+
+		public int getRightEnd() {
+			return rightEnd;
+		}
+	}
+
+    /**
+     * Compares two files.
+     * @param leftFile  the original file
+     * @param rightFile the modified file
+     * @return the diff
+     * @throws IOException if a file can't be read or the calling thread is interrupted
+     */
+	public static TextDiff compare(File leftFile, File rightFile) throws IOException {
+		long start = System.nanoTime();
+		TextDiff diff = new TextDiff();
+		try (LineInterner interner = new LineInterner()) {
+			diff.left = LineFile.read(leftFile, interner);
+			diff.right = LineFile.read(rightFile, interner);
+			diff.run(interner.size());
+		}
+		diff.nanos = System.nanoTime() - start;
+		return diff;
+	}
+
+	public List<Hunk> getHunks() {
+		return hunks;
+	}
+
+	public int getLeftLineCount() {
+		return left.lineCount;
+	}
+
+	public int getRightLineCount() {
+		return right.lineCount;
+	}
+
+	public long getNanos() {
+		return nanos;
+	}
+
+    /**
+     * Reads lines of the original file.
+     * @param from first line (0-based, inclusive)
+     * @param to   last line (exclusive)
+     * @return the lines, without line terminators
+     * @throws IOException if the file can't be read
+     */
+	public List<String> leftLines(int from, int to) throws IOException {
+		return left.lines(from, to);
+	}
+
+    /**
+     * Reads lines of the modified file.
+     * @param from first line (0-based, inclusive)
+     * @param to   last line (exclusive)
+     * @return the lines, without line terminators
+     * @throws IOException if the file can't be read
+     */
+	public List<String> rightLines(int from, int to) throws IOException {
+		return right.lines(from, to);
+	}
+
+	private void run(int distinctLines) throws IOException {
+		int n = left.lineCount;
+		int m = right.lineCount;
+		boolean[] leftChanged = new boolean[n];
+		boolean[] rightChanged = new boolean[m];
+
+		// Lines absent from the other file are always changes; keep only the others for Myers
+		int[] inRight = new int[distinctLines];
+		int[] inLeft = new int[distinctLines];
+		for (int i = 0; i < m; i++)
+			inRight[right.ids[i]]++;
+		for (int i = 0; i < n; i++)
+			inLeft[left.ids[i]]++;
+		int[] leftIndex = new int[n];
+		int[] rightIndex = new int[m];
+		a = new int[n];
+		b = new int[m];
+		int reducedN = 0;
+		for (int i = 0; i < n; i++) {
+			if (inRight[left.ids[i]] == 0) {
+				leftChanged[i] = true;
+			} else {
+				leftIndex[reducedN] = i;
+				a[reducedN++] = left.ids[i];
+			}
+		}
+		int reducedM = 0;
+		for (int i = 0; i < m; i++) {
+			if (inLeft[right.ids[i]] == 0) {
+				rightChanged[i] = true;
+			} else {
+				rightIndex[reducedM] = i;
+				b[reducedM++] = right.ids[i];
+			}
+		}
+
+		changedA = new boolean[reducedN];
+		changedB = new boolean[reducedM];
+		int diagonals = 2 * (reducedN + reducedM) + 3;
+		forward = new int[diagonals];
+		backward = new int[diagonals];
+		center = reducedN + reducedM + 1;
+		diff(0, reducedN, 0, reducedM);
+
+		for (int i = 0; i < reducedN; i++) {
+			if (changedA[i])
+				leftChanged[leftIndex[i]] = true;
+		}
+		for (int i = 0; i < reducedM; i++) {
+			if (changedB[i])
+				rightChanged[rightIndex[i]] = true;
+		}
+		a = b = forward = backward = null;
+		buildHunks(leftChanged, rightChanged);
+	}
+
+	private void buildHunks(boolean[] leftChanged, boolean[] rightChanged) {
+		int i = 0;
+		int j = 0;
+		while (i < leftChanged.length || j < rightChanged.length) {
+			if (i < leftChanged.length && j < rightChanged.length && !leftChanged[i] && !rightChanged[j]) {
+				i++;
+				j++;
+				continue;
+			}
+			int leftStart = i;
+			int rightStart = j;
+			while (i < leftChanged.length && leftChanged[i])
+				i++;
+			while (j < rightChanged.length && rightChanged[j])
+				j++;
+			hunks.add(new Hunk(leftStart, i, rightStart, j));
+		}
+	}
+
+    /**
+     * Marks the changed lines of {@code a[aLo, aHi)} vs {@code b[bLo, bHi)}.
+     */
+	private void diff(int aLo, int aHi, int bLo, int bHi) throws IOException {
+		while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+			aLo++;
+			bLo++;
+		}
+		while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+			aHi--;
+			bHi--;
+		}
+		if (aLo == aHi) {
+			Arrays.fill(changedB, bLo, bHi, true);
+			return;
+		}
+		if (bLo == bHi) {
+			Arrays.fill(changedA, aLo, aHi, true);
+			return;
+		}
+		if (Thread.currentThread().isInterrupted())
+			throw new InterruptedIOException("Diff cancelled");
+
+		middleSnake(aLo, aHi, bLo, bHi);
+		int x = snakeX, y = snakeY, u = snakeU, v = snakeV;
+		if ((x == aLo && y == bLo && u == aHi && v == bHi) || (u == aLo && v == bLo) || (x == aHi && y == bHi)) {
+			// No progress possible (defensive): treat the whole region as changed
+			Arrays.fill(changedA, aLo, aHi, true);
+			Arrays.fill(changedB, bLo, bHi, true);
+			return;
+		}
+		diff(aLo, x, bLo, y);
+		diff(u, aHi, v, bHi);
+	}
+
+    /**
+     * Finds the middle snake of the region, storing it in {@code snakeX/Y} (start) and {@code snakeU/V} (end).
+     */
+	private void middleSnake(int aLo, int aHi, int bLo, int bHi) {
+		int n = aHi - aLo;
+		int m = bHi - bLo;
+		int delta = n - m;
+		boolean odd = (delta & 1) != 0;
+		forward[center + 1] = 0;
+		backward[center + 1] = 0;
+		int maxD = (n + m + 1) / 2;
+		int maxCost = Math.max(64, Math.min(MAX_COST, WORK_BUDGET / (n + m)));
+
+		for (int d = 0; d <= maxD; d++) {
+			for (int k = -d; k <= d; k += 2) {
+				int x = (k == -d || (k != d && forward[center + k - 1] < forward[center + k + 1]))
+						? forward[center + k + 1] : forward[center + k - 1] + 1;
+				int y = x - k;
+				int startX = x, startY = y;
+				while (x < n && y < m && a[aLo + x] == b[bLo + y]) {
+					x++;
+					y++;
+				}
+				forward[center + k] = x;
+				int reverseK = delta - k;
+				if (odd && reverseK >= -(d - 1) && reverseK <= d - 1 && x + backward[center + reverseK] >= n) {
+					setSnake(aLo + startX, bLo + startY, aLo + x, bLo + y);
+					return;
+				}
+			}
+			for (int k = -d; k <= d; k += 2) {
+				int x = (k == -d || (k != d && backward[center + k - 1] < backward[center + k + 1]))
+						? backward[center + k + 1] : backward[center + k - 1] + 1;
+				int y = x - k;
+				int startX = x, startY = y;
+				while (x < n && y < m && a[aHi - 1 - x] == b[bHi - 1 - y]) {
+					x++;
+					y++;
+				}
+				backward[center + k] = x;
+				int forwardK = delta - k;
+				if (!odd && forwardK >= -d && forwardK <= d && x + forward[center + forwardK] >= n) {
+					setSnake(aHi - x, bHi - y, aHi - startX, bHi - startY);
+					return;
+				}
+			}
+			if (d >= maxCost) {
+				// Too expensive for a minimal diff: split at the forward point that got furthest
+				int bestK = -d;
+				for (int k = -d; k <= d; k += 2) {
+					if (2 * forward[center + k] - k > 2 * forward[center + bestK] - bestK)
+						bestK = k;
+				}
+				int x = Math.min(forward[center + bestK], n);
+				int y = Math.min(Math.max(x - bestK, 0), m);
+				setSnake(aLo + x, bLo + y, aLo + x, bLo + y);
+				return;
+			}
+		}
+		setSnake(aLo, bLo, aHi, bHi);
+	}
+
+	private void setSnake(int x, int y, int u, int v) {
+		snakeX = x;
+		snakeY = y;
+		snakeU = u;
+		snakeV = v;
+	}
+
+	// =========================
+	// Streaming line index
+	// =========================
+
+    /**
+     * Line ids and start offsets of a file. {@code offsets[lineCount]} is the file length.
+     */
+	private static class LineFile {
+		private File file;
+		private int lineCount;
+		private int[] ids = new int[1024];
+		private long[] offsets = new long[1025];
+
+		static LineFile read(File file, LineInterner interner) throws IOException {
+			LineFile lineFile = new LineFile();
+			lineFile.file = file;
+			int source = interner.addSource(file);
+			byte[] buffer = new byte[1 << 20];
+			byte[] line = new byte[256]; // the hashed bytes of the current line
+			int length = 0;
+			long position = 0;
+			long lineStart = 0;
+			long hash = LineInterner.SEED;
+			boolean pendingCarriageReturn = false;
+			try (InputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 16)) {
+				int count;
+				while ((count = in.read(buffer)) > 0) {
+					if (Thread.currentThread().isInterrupted())
+						throw new InterruptedIOException("Diff cancelled");
+					for (int i = 0; i < count; i++) {
+						byte c = buffer[i];
+						if (c == '\n') {
+							lineFile.add(lineStart, interner.intern(hash, line, length, source, lineStart));
+							lineStart = position + i + 1;
+							hash = LineInterner.SEED;
+							length = 0;
+							pendingCarriageReturn = false;
+						} else if (c == '\r') {
+							// Only a CR right before LF is a terminator; keep a pending one otherwise
+							if (pendingCarriageReturn) {
+								hash = LineInterner.mix(hash, (byte) '\r');
+								line = append(line, length++, (byte) '\r');
+							}
+							pendingCarriageReturn = true;
+						} else {
+							if (pendingCarriageReturn) {
+								hash = LineInterner.mix(hash, (byte) '\r');
+								line = append(line, length++, (byte) '\r');
+							}
+							pendingCarriageReturn = false;
+							hash = LineInterner.mix(hash, c);
+							line = append(line, length++, c);
+						}
+					}
+					position += count;
+				}
+			}
+			if (pendingCarriageReturn) {
+				hash = LineInterner.mix(hash, (byte) '\r');
+				line = append(line, length++, (byte) '\r');
+			}
+			if (lineStart < position)
+				lineFile.add(lineStart, interner.intern(hash, line, length, source, lineStart));
+			lineFile.offsets[lineFile.lineCount] = position;
+			return lineFile;
+		}
+
+		private static byte[] append(byte[] line, int length, byte value) {
+			if (length == line.length)
+				line = Arrays.copyOf(line, length * 2);
+			line[length] = value;
+			return line;
+		}
+
+		private void add(long start, int id) {
+			if (lineCount == ids.length) {
+				ids = Arrays.copyOf(ids, ids.length * 2);
+				offsets = Arrays.copyOf(offsets, ids.length + 1);
+			}
+			ids[lineCount] = id;
+			offsets[lineCount] = start;
+			lineCount++;
+		}
+
+		private List<String> lines(int from, int to) throws IOException {
+			List<String> lines = new ArrayList<>(Math.max(0, to - from));
+			if (from >= to)
+				return lines;
+			try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+				raf.seek(offsets[from]);
+				byte[] bytes = new byte[(int) (offsets[to] - offsets[from])];
+				raf.readFully(bytes);
+				for (int line = from; line < to; line++) {
+					int start = (int) (offsets[line] - offsets[from]);
+					int end = (int) (offsets[line + 1] - offsets[from]);
+					if (end > start && bytes[end - 1] == '\n')
+						end--;
+					if (end > start && bytes[end - 1] == '\r')
+						end--;
+					lines.add(new String(bytes, start, end - start, StandardCharsets.UTF_8));
+				}
+			}
+			return lines;
+		}
+	}
+
+    /**
+     * Interns lines into dense ids by their 64-bit hash, with an open-addressing table of primitives. Each id keeps
+     * where its first line is, and a line whose hash is already taken is compared with it before sharing the id:
+     * a collision goes on probing and gets an id of its own.
+     */
+	private static class LineInterner implements Closeable {
+		static final long SEED = 0xcbf29ce484222325L;
+
+		private long[] keys = new long[1 << 16];
+		private int[] values = new int[1 << 16];
+		private boolean[] used = new boolean[1 << 16];
+		private int size;
+		// The first line of each id
+		private byte[] sources = new byte[1 << 15];
+		private long[] starts = new long[1 << 15];
+		private int[] lengths = new int[1 << 15];
+		private List<LineReader> readers = new ArrayList<>();
+
+		static long mix(long hash, byte value) {
+			return (hash ^ (value & 0xff)) * 0x100000001b3L;
+		}
+
+		int addSource(File file) throws IOException {
+			readers.add(new LineReader(file));
+			return readers.size() - 1;
+		}
+
+	    /**
+	     * @param hash   the hash of the line
+	     * @param line   its bytes, without the terminator
+	     * @param length the number of bytes
+	     * @param source the file it is in, from {@link #addSource(File)}
+	     * @param start  its offset in that file
+	     * @return the id of every line with these bytes
+	     */
+		int intern(long hash, byte[] line, int length, int source, long start) throws IOException {
+			if (size * 2 >= keys.length)
+				grow();
+			int mask = keys.length - 1;
+			int slot = (int) (finish(hash) & mask);
+			while (used[slot]) {
+				if (keys[slot] == hash && sameLine(values[slot], line, length))
+					return values[slot];
+				slot = (slot + 1) & mask;
+			}
+			used[slot] = true;
+			keys[slot] = hash;
+			values[slot] = size;
+			if (size == starts.length) {
+				sources = Arrays.copyOf(sources, size * 2);
+				starts = Arrays.copyOf(starts, size * 2);
+				lengths = Arrays.copyOf(lengths, size * 2);
+			}
+			sources[size] = (byte) source;
+			starts[size] = start;
+			lengths[size] = length;
+			return size++;
+		}
+
+		int size() {
+			return size;
+		}
+
+		public void close() throws IOException {
+			for (LineReader reader : readers)
+				reader.close();
+		}
+
+		private boolean sameLine(int id, byte[] line, int length) throws IOException {
+			if (lengths[id] != length)
+				return false;
+			LineReader reader = readers.get(sources[id]);
+			long start = starts[id];
+			for (int i = 0; i < length; i++) {
+				if (reader.byteAt(start + i) != line[i])
+					return false;
+			}
+			return true;
+		}
+
+		private static long finish(long hash) {
+			hash ^= hash >>> 33;
+			hash *= 0xff51afd7ed558ccdL;
+			return hash ^ (hash >>> 33);
+		}
+
+		private void grow() {
+			long[] oldKeys = keys;
+			int[] oldValues = values;
+			boolean[] oldUsed = used;
+			keys = new long[oldKeys.length * 2];
+			values = new int[oldKeys.length * 2];
+			used = new boolean[oldKeys.length * 2];
+			int mask = keys.length - 1;
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (!oldUsed[i])
+					continue;
+				int slot = (int) (finish(oldKeys[i]) & mask);
+				while (used[slot])
+					slot = (slot + 1) & mask;
+				used[slot] = true;
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+
+    /**
+     * Reads bytes of a file at any offset through a window, cheap when the lines compared go forward like the
+     * lines read.
+     */
+	private static class LineReader implements Closeable {
+		private RandomAccessFile file;
+		private byte[] window = new byte[1 << 16];
+		private long windowStart;
+		private int windowLength;
+
+		LineReader(File file) throws IOException {
+			this.file = new RandomAccessFile(file, "r");
+		}
+
+		byte byteAt(long position) throws IOException {
+			if (position < windowStart || position >= windowStart + windowLength) {
+				file.seek(position);
+				windowStart = position;
+				windowLength = Math.max(0, file.read(window));
+				if (windowLength == 0)
+					throw new IOException("The file changed while being compared.");
+			}
+			return window[(int) (position - windowStart)];
+		}
+
+		public void close() throws IOException {
+			file.close();
+		}
+	}
+
+}
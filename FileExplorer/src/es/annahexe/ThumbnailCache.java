@@ -0,0 +1,360 @@
+package es.annahexe;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.swing.ImageIcon;
+import javax.swing.SwingUtilities;
+
+/**
+ * Thumbnail and preview pipeline for image files.
+ * <p>
+ * Images are decoded with source subsampling (only every n-th pixel is read) on a bounded worker pool.
+ * Pending requests are served newest first, so the cells the user is looking at right now are decoded before
+ * the ones scrolled past. Thumbnails are persisted as PNG in an on-disk cache keyed by path + last modified
+ * time + size, so revisiting a folder only reads the small cached files. The list icons kept in memory remember
+ * the same stamp; it is checked again on a worker the first time an icon is shown after each folder change, so an
+ * edited image gets a new icon without the renderer touching the file system.
+ * </p>
+ * @author annahexe
+ */
+public class ThumbnailCache {
+	/** Edge of the thumbnails stored on disk. */
+	public static final int THUMBNAIL_SIZE = 128;
+	/** Edge of the icons shown in the explorer list. */
+	public static final int ICON_SIZE = 32;
+
+	private static final int MAX_ICONS_IN_MEMORY = 4096;
+	private static final String[] IMAGE_EXTENSIONS = { ".png", ".jpg", ".jpeg", ".gif", ".bmp", ".wbmp" };
+
+	private File cacheFolder;
+	private ThreadPoolExecutor executor;
+	private AtomicLong sequence = new AtomicLong();
+	private Map<String, Thumbnail> icons; // absolute path -> list icon
+	private Set<String> pending = new HashSet<>();
+	private int generation; // incremented by clearPending(), icons checked before are checked again
+
+    /**
+     * Receives a decoded image on the event dispatch thread.
+     */
+	public interface ThumbnailListener {
+	    /**
+	     * Called on the EDT when the image of {@code file} is ready.
+	     * @param file the image file
+	     * @param icon the decoded icon
+	     */
+		void thumbnailLoaded(File file, ImageIcon icon);
+	}
+
+    /**
+     * A list icon with the stamp of the file it was made from.
+     */
+	private static class Thumbnail {
+		private ImageIcon icon;
+		private String stamp;
+		private int generation;
+
+		private Thumbnail(ImageIcon icon, String stamp, int generation) {
+			this.icon = icon;
+			this.stamp = stamp;
+			this.generation = generation;
+		}
+	}
+
+    /**
+     * A decode request; higher priority first, then newest first.
+     */
+	private abstract static class Request implements Runnable, Comparable<Request> {
+		private int priority;
+		private long order;
+
+		private Request(int priority, long order) {
+			this.priority = priority;
+			this.order = order;
+		}
+
+		public int compareTo(Request other) {
+			if (priority != other.priority)
+				return Integer.compare(other.priority, priority);
+			return Long.compare(other.order, order);
+		}
+	}
+
+    /**
+     * Builds the pipeline with the disk cache under {@code ~/.fileexplorer/thumbnails}.
+     */
+	public ThumbnailCache() {
+		this(new File(System.getProperty("user.home"), ".fileexplorer" + File.separator + "thumbnails"));
+	}
+
+    /**
+     * Builds the pipeline with the disk cache in {@code cacheFolder}.
+     * @param cacheFolder folder where the thumbnails are persisted (created on demand)
+     */
+	public ThumbnailCache(File cacheFolder) {
+		this.cacheFolder = cacheFolder;
+		int workers = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+		this.executor = new ThreadPoolExecutor(workers, workers, 30, TimeUnit.SECONDS,
+				new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, "thumbnail-worker");
+						thread.setDaemon(true);
+						thread.setPriority(Thread.NORM_PRIORITY - 1);
+						return thread;
+					}
+				});
+		this.executor.allowCoreThreadTimeOut(true);
+		this.icons = new LinkedHashMap<String, Thumbnail>(256, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<String, Thumbnail> eldest) {
+				return size() > MAX_ICONS_IN_MEMORY;
+			}
+		};
+	}
+
+    /**
+     * Checks by extension whether a file can be previewed as an image.
+     * @param name the file name
+     * @return {@code true} for the image formats supported by ImageIO
+     */
+	public static boolean isImage(String name) {
+		String lowerName = name.toLowerCase();
+		for (String extension : IMAGE_EXTENSIONS) {
+			if (lowerName.endsWith(extension))
+				return true;
+		}
+		return false;
+	}
+
+    /**
+     * Returns the list icon of an image, scheduling its generation if it isn't in memory yet.
+     * Must be called on the EDT (typically from a cell renderer, so only visible cells ask for icons).
+     * An icon not checked since the last {@link #clearPending()} is returned while its file is checked; the
+     * listener is notified if the file changed and the icon was made again.
+     * @param file     the image file
+     * @param listener notified when a scheduled icon is ready
+     * @return the icon, or {@code null} if it is being generated
+     */
+	public ImageIcon getIcon(final File file, final ThumbnailListener listener) {
+		final String key = file.getAbsolutePath();
+		final Thumbnail cached;
+		final int checking;
+		synchronized (this) {
+			cached = icons.get(key);
+			if (cached != null && cached.generation == generation)
+				return cached.icon;
+			if (!pending.add(key))
+				return cached != null ? cached.icon : null;
+			checking = generation;
+		}
+		executor.execute(new Request(0, sequence.incrementAndGet()) {
+			public void run() {
+				String stamp = stampOf(file);
+				if (cached != null && cached.stamp.equals(stamp)) {
+					synchronized (ThumbnailCache.this) {
+						pending.remove(key);
+						cached.generation = checking;
+					}
+					return;
+				}
+				ImageIcon icon = null;
+				try {
+					BufferedImage thumbnail = loadThumbnail(file);
+					if (thumbnail != null)
+						icon = new ImageIcon(scaleToFit(thumbnail, ICON_SIZE));
+				} catch (IOException | RuntimeException e) {
+					// Unreadable or unsupported images simply keep the default icon
+				}
+				final ImageIcon loaded = icon;
+				synchronized (ThumbnailCache.this) {
+					pending.remove(key);
+					if (loaded != null)
+						icons.put(key, new Thumbnail(loaded, stamp, checking));
+					else
+						icons.remove(key);
+				}
+				if (loaded != null) {
+					SwingUtilities.invokeLater(new Runnable() {
+						public void run() {
+							listener.thumbnailLoaded(file, loaded);
+						}
+					});
+				}
+			}
+		});
+		return cached != null ? cached.icon : null;
+	}
+
+    /**
+     * Decodes a preview of an image that fits in {@code maxSize} pixels, ahead of every pending thumbnail.
+     * The preview is not cached on disk.
+     * @param file     the image file
+     * @param maxSize  the maximum width/height of the preview
+     * @param listener receives the preview on the EDT ({@code null} icon if the file can't be decoded)
+     */
+	public void requestPreview(final File file, final int maxSize, final ThumbnailListener listener) {
+		executor.execute(new Request(1, sequence.incrementAndGet()) {
+			public void run() {
+				ImageIcon icon = null;
+				try {
+					BufferedImage image = decodeSubsampled(file, maxSize);
+					if (image != null)
+						icon = new ImageIcon(scaleToFit(image, maxSize));
+				} catch (IOException | RuntimeException e) {
+					icon = null;
+				}
+				final ImageIcon preview = icon;
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						listener.thumbnailLoaded(file, preview);
+					}
+				});
+			}
+		});
+	}
+
+    /**
+     * Drops the requests not started yet (e.g. when leaving a folder), and has the icons in memory checked again
+     * when they are next shown.
+     */
+	public void clearPending() {
+		executor.getQueue().clear();
+		synchronized (this) {
+			pending.clear();
+			generation++;
+		}
+	}
+
+    /**
+     * Loads the thumbnail from the disk cache, or decodes and persists it.
+     * @param file the image file
+     * @return the thumbnail, or {@code null} if the image can't be decoded
+     * @throws IOException if the image can't be read
+     */
+	private BufferedImage loadThumbnail(File file) throws IOException {
+		File cached = cacheFileFor(file);
+		if (cached.isFile()) {
+			BufferedImage thumbnail = ImageIO.read(cached);
+			if (thumbnail != null)
+				return thumbnail;
+		}
+		BufferedImage image = decodeSubsampled(file, THUMBNAIL_SIZE);
+		if (image == null)
+			return null;
+		BufferedImage thumbnail = scaleToFit(image, THUMBNAIL_SIZE);
+		File folder = cached.getParentFile();
+		if (folder.isDirectory() || folder.mkdirs()) {
+			// Write to a temp file first so a concurrent reader never sees a half-written PNG
+			File temp = new File(folder, cached.getName() + ".tmp" + Thread.currentThread().getId());
+			if (ImageIO.write(thumbnail, "png", temp) && !temp.renameTo(cached)) {
+				temp.delete();
+			}
+		}
+		return thumbnail;
+	}
+
+    /**
+     * Returns the cache file of an image: the SHA-1 of path + last modified + size, sharded by its first byte.
+     * @param file the image file
+     * @return the location of its cached thumbnail
+     */
+	private File cacheFileFor(File file) {
+		String key = file.getAbsolutePath() + "|" + stampOf(file);
+		String hash;
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			StringBuilder hex = new StringBuilder();
+			for (byte b : digest.digest(key.getBytes(StandardCharsets.UTF_8))) {
+				hex.append(String.format("%02x", b));
+			}
+			hash = hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			hash = Integer.toHexString(key.hashCode());
+		}
+		return new File(new File(cacheFolder, hash.substring(0, 2)), hash + ".png");
+	}
+
+    /**
+     * @param file an image file
+     * @return its last modified time and size, which change when the image is edited
+     */
+	private static String stampOf(File file) {
+		return file.lastModified() + "|" + file.length();
+	}
+
+    /**
+     * Decodes an image reading only as many source pixels as needed for {@code targetSize}.
+     * @param file       the image file
+     * @param targetSize the size the image will be scaled to
+     * @return the subsampled image, or {@code null} if no reader supports the format
+     * @throws IOException if the image can't be read
+     */
+	private static BufferedImage decodeSubsampled(File file, int targetSize) throws IOException {
+		ImageInputStream input = ImageIO.createImageInputStream(file);
+		if (input == null)
+			return null;
+		try {
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+			if (!readers.hasNext())
+				return null;
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(input, true, true);
+				int largestSide = Math.max(reader.getWidth(0), reader.getHeight(0));
+				// Keep twice the target resolution so the final scale still looks smooth
+				int step = Math.max(1, largestSide / (targetSize * 2));
+				ImageReadParam param = reader.getDefaultReadParam();
+				param.setSourceSubsampling(step, step, 0, 0);
+				return reader.read(0, param);
+			} finally {
+				reader.dispose();
+			}
+		} finally {
+			input.close();
+		}
+	}
+
+    /**
+     * Scales an image down (never up) to fit in a square of {@code size} pixels.
+     * @param image the source image
+     * @param size  the maximum width/height
+     * @return the scaled image, or {@code image} itself if it already fits
+     */
+	private static BufferedImage scaleToFit(BufferedImage image, int size) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		if (width <= size && height <= size)
+			return image;
+		double scale = Math.min((double) size / width, (double) size / height);
+		int scaledWidth = Math.max(1, (int) Math.round(width * scale));
+		int scaledHeight = Math.max(1, (int) Math.round(height * scale));
+		BufferedImage scaled = new BufferedImage(scaledWidth, scaledHeight, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D graphics = scaled.createGraphics();
+		graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		graphics.drawImage(image, 0, 0, scaledWidth, scaledHeight, null);
+		graphics.dispose();
+		return scaled;
+	}
+
+}
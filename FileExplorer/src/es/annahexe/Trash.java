@@ -0,0 +1,425 @@
+package es.annahexe;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileStore;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Trash for deleted entries.
+ * <p>
+ * Moving an entry to the trash is a single atomic rename into a trash folder on the same file system, so it
+ * takes the same time for a file and for a folder with a million entries. Files under the home file system go
+ * to {@code ~/.fileexplorer/trash}; files on other file systems go to a {@code .fileexplorer-trash-<user>}
+ * folder at the root of their mount. Each entry is stored as {@code files/<id>} with its original path in
+ * {@code info/<id>.properties}.
+ * </p>
+ * <p>
+ * A background purger deletes entries older than the maximum age, then the oldest ones until the trash fits
+ * in its quota. Entry sizes are only computed there, never while deleting.
+ * </p>
+ * @author annahexe
+ */
+public class Trash {
+	/** Entries older than this are purged by default. */
+	public static final int DEFAULT_MAX_AGE_DAYS = 30;
+	/** Default size the purger keeps the trash under. */
+	public static final long DEFAULT_QUOTA_BYTES = 10L * 1024 * 1024 * 1024;
+
+	private static final String FILES = "files";
+	private static final String INFO = "info";
+	private static final String INFO_SUFFIX = ".properties";
+	private static final long PURGE_PERIOD_MINUTES = 30;
+
+	private Path homeTrash;
+	private Path rootsFile; // other trash folders in use, so the purger finds them after a restart
+	private long maxAgeMillis;
+	private long quotaBytes;
+	private Map<FileStore, Path> trashByStore = new ConcurrentHashMap<>();
+	private Set<Path> trashFolders = Collections.newSetFromMap(new ConcurrentHashMap<Path, Boolean>());
+	private AtomicLong nextId = new AtomicLong(System.currentTimeMillis() * 1000);
+	private ScheduledExecutorService purger;
+
+    /**
+     * An entry in the trash.
+     */
+	public static class Item {
+		private Path stored;
+		private Path info;
+		private Path originalPath;
+		private long deleted;
+		private long size;
+
+		private Item(Path stored, Path info, Path originalPath, long deleted, long size) {
+			this.stored = stored;
+			this.info = info;
+			this.originalPath = originalPath;
+			this.deleted = deleted;
+			this.size = size;
+		}
+
+		public Path getOriginalPath() {
+			return originalPath;
+		}
+
+		public long getDeleted() {
+			return deleted;
+		}
+
+	    /**
+	     * @return the size in bytes, -1 until the purger computed it
+	     */
+		public long getSize() {
+			return size;
+		}
+	}
+
+    /**
+     * Creates the trash under {@code ~/.fileexplorer/trash} and starts the purger.
+     * @param maxAgeDays entries older than this are purged
+     * @param quotaBytes the oldest entries are purged while the trash is bigger than this
+     */
+	public Trash(int maxAgeDays, long quotaBytes) {
+		this(new File(System.getProperty("user.home"), ".fileexplorer" + File.separator + "trash").toPath(),
+				maxAgeDays, quotaBytes);
+		purger = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "trash-purger");
+				thread.setDaemon(true);
+				thread.setPriority(Thread.MIN_PRIORITY);
+				return thread;
+			}
+		});
+		purger.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				try {
+					purge();
+				} catch (IOException e) {
+					// Try again next time
+				}
+			}
+		}, 1, PURGE_PERIOD_MINUTES, TimeUnit.MINUTES);
+	}
+
+    /**
+     * Creates a trash in the given folder, without a background purger.
+     * @param homeTrash  trash folder for the file system holding it
+     * @param maxAgeDays entries older than this are purged
+     * @param quotaBytes the oldest entries are purged while the trash is bigger than this
+     */
+	public Trash(Path homeTrash, int maxAgeDays, long quotaBytes) {
+		this.homeTrash = homeTrash.toAbsolutePath();
+		this.rootsFile = this.homeTrash.resolve("roots");
+		this.maxAgeMillis = TimeUnit.DAYS.toMillis(maxAgeDays);
+		this.quotaBytes = quotaBytes;
+		trashFolders.add(this.homeTrash);
+		try {
+			if (Files.exists(rootsFile)) {
+				for (String line : Files.readAllLines(rootsFile))
+					if (!line.isEmpty())
+						trashFolders.add(new File(line).toPath());
+			}
+		} catch (IOException e) {
+			// Only the purger uses them
+		}
+	}
+
+    /**
+     * Moves an entry to the trash with a single rename.
+     * @param file the file or folder to trash
+     * @return the trash entry, to restore it
+     * @throws IOException if there is no writable trash folder on the entry's file system
+     */
+	public Item moveToTrash(File file) throws IOException {
+		Path source = file.toPath().toAbsolutePath();
+		if (!Files.exists(source, LinkOption.NOFOLLOW_LINKS))
+			throw new NoSuchFileException(source.toString());
+		Path trash = trashFor(source);
+		String id = Long.toString(nextId.incrementAndGet());
+		Path stored = trash.resolve(FILES).resolve(id);
+		Path info = trash.resolve(INFO).resolve(id + INFO_SUFFIX);
+		long deleted = System.currentTimeMillis();
+		writeInfo(info, source, deleted, -1);
+		try {
+			Files.move(source, stored, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.deleteIfExists(info);
+			throw new IOException("`" + file.getName() + "` can't be moved to the trash on this file system.");
+		} catch (IOException e) {
+			Files.deleteIfExists(info);
+			throw e;
+		}
+		return new Item(stored, info, source, deleted, -1);
+	}
+
+    /**
+     * Copies a file into the trash, e.g. the previous version of a file about to be overwritten.
+     * @param file the file to keep
+     * @return the trash entry
+     * @throws IOException if the copy fails
+     */
+	public Item copyToTrash(File file) throws IOException {
+		Path source = file.toPath().toAbsolutePath();
+		Path trash = trashFor(source);
+		String id = Long.toString(nextId.incrementAndGet());
+		Path stored = trash.resolve(FILES).resolve(id);
+		Path info = trash.resolve(INFO).resolve(id + INFO_SUFFIX);
+		long deleted = System.currentTimeMillis();
+		Files.copy(source, stored, StandardCopyOption.COPY_ATTRIBUTES);
+		writeInfo(info, source, deleted, Files.size(stored));
+		return new Item(stored, info, source, deleted, Files.size(stored));
+	}
+
+    /**
+     * Moves an entry back to where it was deleted from.
+     * @param item the entry
+     * @throws IOException if the entry is gone (purged) or its original path is taken
+     */
+	public void restore(Item item) throws IOException {
+		if (!Files.exists(item.stored, LinkOption.NOFOLLOW_LINKS))
+			throw new NoSuchFileException(item.originalPath.toString(), null, "no longer in the trash");
+		if (Files.exists(item.originalPath, LinkOption.NOFOLLOW_LINKS))
+			throw new FileAlreadyExistsException(item.originalPath.toString());
+		Files.createDirectories(item.originalPath.getParent());
+		Files.move(item.stored, item.originalPath, StandardCopyOption.ATOMIC_MOVE);
+		Files.deleteIfExists(item.info);
+	}
+
+    /**
+     * Replaces the content of the item's original file with the kept copy, leaving the file's identity
+     * (permissions, links) alone, then drops the copy.
+     * @param item an entry from {@link #copyToTrash(File)}
+     * @throws IOException if the entry is gone or the file can't be written
+     */
+	public void restoreContent(Item item) throws IOException {
+		if (!Files.exists(item.stored))
+			throw new NoSuchFileException(item.originalPath.toString(), null, "no longer in the trash");
+		InputStream in = Files.newInputStream(item.stored);
+		try {
+			OutputStream out = Files.newOutputStream(item.originalPath);
+			try {
+				in.transferTo(out);
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+		delete(item);
+	}
+
+    /**
+     * Deletes an entry for good.
+     * @param item the entry
+     * @throws IOException if it can't be deleted
+     */
+	public void delete(Item item) throws IOException {
+		deleteTree(item.stored);
+		Files.deleteIfExists(item.info);
+	}
+
+    /**
+     * @return every entry of every known trash folder, oldest first
+     */
+	public List<Item> list() {
+		List<Item> items = new ArrayList<>();
+		for (Path trash : trashFolders) {
+			Path infoFolder = trash.resolve(INFO);
+			if (!Files.isDirectory(infoFolder))
+				continue;
+			try (DirectoryStream<Path> infos = Files.newDirectoryStream(infoFolder, "*" + INFO_SUFFIX)) {
+				for (Path info : infos) {
+					Item item = readInfo(trash, info);
+					if (item != null)
+						items.add(item);
+				}
+			} catch (IOException e) {
+				// Unreachable mount, skip it
+			}
+		}
+		Collections.sort(items, new Comparator<Item>() {
+			public int compare(Item a, Item b) {
+				return Long.compare(a.deleted, b.deleted);
+			}
+		});
+		return items;
+	}
+
+    /**
+     * Deletes everything in the trash.
+     * @return the number of entries deleted
+     * @throws IOException if an entry can't be deleted
+     */
+	public int empty() throws IOException {
+		int count = 0;
+		for (Item item : list()) {
+			delete(item);
+			count++;
+		}
+		return count;
+	}
+
+    /**
+     * Deletes entries older than the maximum age, then the oldest entries while the trash is over its quota.
+     * Computes and stores the size of the entries that don't have one yet.
+     * @return the number of entries deleted
+     * @throws IOException if an entry can't be deleted
+     */
+	public synchronized int purge() throws IOException {
+		long now = System.currentTimeMillis();
+		List<Item> items = list();
+		List<Item> kept = new ArrayList<>();
+		int purged = 0;
+		long total = 0;
+		for (Item item : items) {
+			if (now - item.deleted > maxAgeMillis) {
+				delete(item);
+				purged++;
+				continue;
+			}
+			if (item.size < 0 && Files.exists(item.stored, LinkOption.NOFOLLOW_LINKS)) {
+				item.size = sizeOf(item.stored);
+				writeInfo(item.info, item.originalPath, item.deleted, item.size);
+			}
+			total += Math.max(0, item.size);
+			kept.add(item);
+		}
+		for (Item item : kept) {
+			if (total <= quotaBytes)
+				break;
+			delete(item);
+			total -= Math.max(0, item.size);
+			purged++;
+		}
+		return purged;
+	}
+
+	// =========================
+	// Trash folders
+	// =========================
+
+	// Finds (and creates) the trash folder on the same file system as the path
+	private Path trashFor(Path path) throws IOException {
+		Path parent = path.getParent() != null ? path.getParent() : path;
+		FileStore store = Files.getFileStore(parent);
+		Path trash = trashByStore.get(store);
+		if (trash != null)
+			return trash;
+		Files.createDirectories(homeTrash);
+		if (store.equals(Files.getFileStore(homeTrash))) {
+			trash = homeTrash;
+		} else {
+			Path root = parent;
+			while (root.getParent() != null && store.equals(Files.getFileStore(root.getParent())))
+				root = root.getParent();
+			trash = root.resolve(".fileexplorer-trash-" + System.getProperty("user.name"));
+		}
+		try {
+			Files.createDirectories(trash.resolve(FILES));
+			Files.createDirectories(trash.resolve(INFO));
+		} catch (IOException e) {
+			throw new IOException("There is no writable trash on the file system of `" + path + "`.");
+		}
+		trashByStore.put(store, trash);
+		if (trashFolders.add(trash))
+			saveRoots();
+		return trash;
+	}
+
+	private synchronized void saveRoots() throws IOException {
+		List<String> lines = new ArrayList<>();
+		for (Path trash : trashFolders) {
+			if (!trash.equals(homeTrash))
+				lines.add(trash.toString());
+		}
+		Files.write(rootsFile, lines);
+	}
+
+	private static void writeInfo(Path info, Path originalPath, long deleted, long size) throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty("path", originalPath.toString());
+		properties.setProperty("deleted", Long.toString(deleted));
+		properties.setProperty("size", Long.toString(size));
+		OutputStream out = Files.newOutputStream(info);
+		try {
+			properties.store(out, null);
+		} finally {
+			out.close();
+		}
+	}
+
+	private static Item readInfo(Path trash, Path info) {
+		Properties properties = new Properties();
+		try {
+			InputStream in = Files.newInputStream(info);
+			try {
+				properties.load(in);
+			} finally {
+				in.close();
+			}
+			String name = info.getFileName().toString();
+			String id = name.substring(0, name.length() - INFO_SUFFIX.length());
+			return new Item(trash.resolve(FILES).resolve(id), info, new File(properties.getProperty("path")).toPath(),
+					Long.parseLong(properties.getProperty("deleted")), Long.parseLong(properties.getProperty("size")));
+		} catch (IOException | RuntimeException e) {
+			return null; // half-written or foreign file
+		}
+	}
+
+	private static long sizeOf(Path path) throws IOException {
+		final long[] size = new long[1];
+		Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+				size[0] += attributes.size();
+				return FileVisitResult.CONTINUE;
+			}
+
+			public FileVisitResult visitFileFailed(Path file, IOException e) {
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		return size[0];
+	}
+
+	private static void deleteTree(Path path) throws IOException {
+		if (!Files.exists(path, LinkOption.NOFOLLOW_LINKS))
+			return;
+		Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+				Files.delete(file);
+				return FileVisitResult.CONTINUE;
+			}
+
+			public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+				Files.delete(dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+}
@@ -1,8 +1,36 @@
 package es.annahexe;
 
 import java.io.*;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.net.URISyntaxException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemAlreadyExistsException;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.spi.FileSystemProvider;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
@@ -18,16 +46,57 @@ import javax.swing.JOptionPane;
  * <li>Creating, renaming, copying, deleting files/folders</li>
  * <li>Saving text (overwrite / save-as)</li>
  * </ul>
+ * <p>Every operation takes a {@link Path} of any installed file system (see {@link #resolve(String)}): the local
+ * disk, a zip file, or an SFTP server, S3, an in-memory file system... with their provider on the class path. The
+ * <code>File</code> overloads are the ones the window uses, which browses the local disk only; the command line
+ * lists, finds and sizes folders on any of them.</p>
+ * <p>Every operation is timed in {@link Metrics} as <code>utilities.&lt;method&gt;</code>.</p>
+ * <p>Errors go to an {@link ErrorReporter}: a dialog in the window, a message on stderr in the command line.</p>
  * @author annahexe
  */
 public class Utilities {
+	/** Attribute reads in flight while listing a remote folder; <code>-Dfileexplorer.pipelineDepth=</code> changes it. */
+	public static final int PIPELINE_DEPTH = Integer.getInteger("fileexplorer.pipelineDepth", 16);
+	private static final int PIPELINE_WINDOW = 4 * PIPELINE_DEPTH; // reads queued or running while listing
+
+	// Only Windows directory streams carry the attributes of the entries, and only the tree walker reuses them
+	private static final boolean BATCHED_ATTRIBUTES = File.separatorChar == '\\';
+
+	private static ExecutorService pipeline; // lazy, see pipeline()
 	private File selectedFolder;
+	private ErrorReporter errorReporter;
 
     /**
-     * Constructs the utilities object with the current directory as the initially selected folder.
+     * Receives the errors the boolean-returning methods swallow.
+     */
+	public interface ErrorReporter {
+		void report(Exception e);
+	}
+
+    /**
+     * Shows each error in a dialog, as the window does.
+     */
+	public static final ErrorReporter DIALOG_REPORTER = new ErrorReporter() {
+		public void report(Exception e) {
+			JOptionPane.showMessageDialog(new JFrame(), e.getMessage(), "ERROR", JOptionPane.ERROR_MESSAGE);
+		}
+	};
+
+    /**
+     * Constructs the utilities object with the current directory as the initially selected folder, reporting
+     * errors in dialogs.
      */
 	public Utilities() {
+		this(DIALOG_REPORTER);
+	}
+
+    /**
+     * Constructs the utilities object with the current directory as the initially selected folder.
+     * @param errorReporter receives the errors, e.g. to print them when there is no window
+     */
+	public Utilities(ErrorReporter errorReporter) {
 		selectedFolder = new File(".");
+		this.errorReporter = errorReporter;
 	}
 
     /**
@@ -56,25 +125,283 @@ public class Utilities {
 		return folder != null && folder.isDirectory() && folder.canRead();
 	}
 
+    /**
+     * Checks whether the given path is a readable directory, on any file system.
+     * @param folder the path to validate
+     * @return {@code true} if {@code folder} is non-null, a directory, and readable
+     */
+	public boolean isValidFolder(Path folder) {
+		return folder != null && Files.isDirectory(folder) && Files.isReadable(folder);
+	}
+
+    /**
+     * Resolves a location given by the user. Plain paths are on the default file system; a URI goes to the
+     * installed provider of its scheme, e.g. <code>jar:file:/tmp/a.zip!/docs</code> for the zip file system of the
+     * JDK, or <code>sftp://host/path</code> with an SFTP provider on the class path. The file system is opened
+     * the first time one of its paths is resolved and stays open.
+     * @param location a path or a URI
+     * @return the path
+     * @throws IOException if the file system can't be opened
+     */
+	public Path resolve(String location) throws IOException {
+		URI uri = null;
+		if (location.indexOf(':') > 1) { // not a Windows drive
+			try {
+				uri = new URI(location);
+			} catch (URISyntaxException e) {
+				// A path with a colon
+			}
+		}
+		if (uri == null || uri.getScheme() == null || !isInstalled(uri.getScheme()))
+			return Paths.get(location);
+		try {
+			return Paths.get(uri);
+		} catch (FileSystemNotFoundException e) {
+			try {
+				FileSystems.newFileSystem(uri, Collections.<String, Object>emptyMap());
+			} catch (FileSystemAlreadyExistsException raced) {
+				// Opened by another thread meanwhile
+			} catch (IOException | FileSystemNotFoundException | IllegalArgumentException failure) {
+				throw new IOException("`" + location + "` can't be opened: " + failure.getMessage(), failure);
+			}
+			return Paths.get(uri);
+		}
+	}
+
+	private static boolean isInstalled(String scheme) {
+		for (FileSystemProvider provider : FileSystemProvider.installedProviders()) {
+			if (provider.getScheme().equalsIgnoreCase(scheme))
+				return true;
+		}
+		return false;
+	}
+
+    /**
+     * Lists the entries of a folder with their attributes, on any file system.
+     * <p>
+     * On the local disk and in zip files, the attributes come with the directory read on Windows, else one stat
+     * each (zip files are in memory). On any other file system, where each read may be a round trip to
+     * a server, up to {@link #PIPELINE_DEPTH} attribute reads are sent at once instead of one after the other.
+     * </p>
+     * @param folder the folder
+     * @return its entries, in the order the file system gives them; an entry that can't be read is listed as a
+     *         file with no size
+     * @throws IOException if the folder can't be listed
+     */
+	public ListingCache.Entry[] listFolder(Path folder) throws IOException {
+		final List<ListingCache.Entry> entries = new ArrayList<>();
+		listFolder(folder, new EntryListener() {
+			public void entry(ListingCache.Entry entry) {
+				entries.add(entry);
+			}
+		});
+		return entries.toArray(new ListingCache.Entry[0]);
+	}
+
+    /**
+     * Receives the entries of a folder as they are listed.
+     */
+	public interface EntryListener {
+		void entry(ListingCache.Entry entry);
+	}
+
+    /**
+     * Lists the entries of a folder as {@link #listFolder(Path)} does, handing each one over as soon as its
+     * attributes are read, so a folder of millions of entries is never held in memory.
+     * @param folder   the folder
+     * @param listener receives the entries, in the order the file system gives them
+     * @return how many entries were listed
+     * @throws IOException if the folder can't be listed, also after some entries were handed over
+     */
+	public int listFolder(Path folder, EntryListener listener) throws IOException {
+		Metrics.Span span = Metrics.start("utilities.listFolder");
+		int count;
+		try {
+			if (!isLocal(folder))
+				count = listPipelined(folder, PROVIDER_READER, listener);
+			else if (BATCHED_ATTRIBUTES)
+				count = listWalking(folder, listener);
+			else
+				count = listLocal(folder, listener);
+		} catch (DirectoryIteratorException e) {
+			span.end();
+			throw e.getCause();
+		} catch (IOException e) {
+			span.end();
+			throw e;
+		}
+		span.end(count, 0);
+		return count;
+	}
+
+    /**
+     * @param path a path
+     * @return whether it's on the local disk or in a zip file on it, where reads are cheap
+     */
+	public static boolean isLocal(Path path) {
+		String scheme = path.getFileSystem().provider().getScheme();
+		return scheme.equals("file") || scheme.equals("jar");
+	}
+
+	// One stat per entry, as it's read
+	private static int listLocal(Path folder, EntryListener listener) throws IOException {
+		int count = 0;
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder)) {
+			for (Path child : stream) {
+				BasicFileAttributes attributes = null;
+				try {
+					attributes = Files.readAttributes(child, BasicFileAttributes.class);
+				} catch (IOException e) {
+					// Gone, unreadable or a broken link: listed with no size
+				}
+				listener.entry(entry(child, attributes));
+				count++;
+			}
+		}
+		return count;
+	}
+
+	// One walk of depth 1: the walker reuses the attributes the directory stream read
+	private static int listWalking(final Path folder, final EntryListener listener) throws IOException {
+		final int[] count = new int[1];
+		final IOException[] failure = new IOException[1];
+		Files.walkFileTree(folder, EnumSet.of(FileVisitOption.FOLLOW_LINKS), 1, new SimpleFileVisitor<Path>() {
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+				listener.entry(entry(file, attributes));
+				count[0]++;
+				return FileVisitResult.CONTINUE;
+			}
+
+			public FileVisitResult visitFileFailed(Path file, IOException e) {
+				if (file.equals(folder)) {
+					failure[0] = e;
+					return FileVisitResult.TERMINATE;
+				}
+				listener.entry(entry(file, null));
+				count[0]++;
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		if (failure[0] != null)
+			throw failure[0];
+		return count[0];
+	}
+
+    /**
+     * Reads the attributes of one entry: the provider's read, or a slow one in the tests.
+     */
+	interface AttributeReader {
+		BasicFileAttributes read(Path path) throws IOException;
+	}
+
+	static final AttributeReader PROVIDER_READER = new AttributeReader() {
+		public BasicFileAttributes read(Path path) throws IOException {
+			return Files.readAttributes(path, BasicFileAttributes.class);
+		}
+	};
+
+	// The attribute reads of the names streamed in are pipelined on a shared pool; the oldest one is handed over
+	// once PIPELINE_WINDOW are pending, so the pool stays busy while the memory used stays bounded
+	static int listPipelined(Path folder, final AttributeReader reader, EntryListener listener) throws IOException {
+		ArrayDeque<Path> children = new ArrayDeque<>();
+		ArrayDeque<Future<BasicFileAttributes>> attributes = new ArrayDeque<>();
+		int count = 0;
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder)) {
+			for (final Path child : stream) {
+				if (attributes.size() == PIPELINE_WINDOW) {
+					listener.entry(nextPipelined(folder, children, attributes));
+					count++;
+				}
+				children.add(child);
+				attributes.add(pipeline().submit(new Callable<BasicFileAttributes>() {
+					public BasicFileAttributes call() throws IOException {
+						return reader.read(child);
+					}
+				}));
+			}
+			while (!attributes.isEmpty()) {
+				listener.entry(nextPipelined(folder, children, attributes));
+				count++;
+			}
+		} finally {
+			for (Future<BasicFileAttributes> pending : attributes)
+				pending.cancel(true);
+		}
+		return count;
+	}
+
+	// Waits for the oldest read of the pipeline
+	private static ListingCache.Entry nextPipelined(Path folder, ArrayDeque<Path> children,
+			ArrayDeque<Future<BasicFileAttributes>> attributes) throws InterruptedIOException {
+		Path child = children.poll();
+		BasicFileAttributes read = null;
+		try {
+			read = attributes.poll().get();
+		} catch (ExecutionException e) {
+			// Listed with no size
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Listing of " + folder + " interrupted");
+		}
+		return entry(child, read);
+	}
+
+	private static ListingCache.Entry entry(Path path, BasicFileAttributes attributes) {
+		String name = path.getFileName().toString();
+		if (name.endsWith("/"))
+			name = name.substring(0, name.length() - 1); // zip folders
+		return attributes == null ? new ListingCache.Entry(name, false, 0, 0)
+				: new ListingCache.Entry(name, attributes.isDirectory(), attributes.size(),
+						attributes.lastModifiedTime().toMillis());
+	}
+
+	private static synchronized ExecutorService pipeline() {
+		if (pipeline == null) {
+			pipeline = Executors.newFixedThreadPool(PIPELINE_DEPTH, new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "listing-pipeline");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return pipeline;
+	}
+
     /**
      * Reads a text file line-by-line into memory.
      * @param fileName a readable text file
      * @return an ArrayList of lines
      */
 	public ArrayList<String> fileContent(File fileName) {
+		return fileContent(fileName.toPath());
+	}
+
+    /**
+     * Reads a text file line-by-line into memory, on any file system.
+     * @param file a readable text file
+     * @return an ArrayList of lines
+     */
+	public ArrayList<String> fileContent(Path file) {
 		ArrayList<String> content = new ArrayList<>();
+		Metrics.Span span = Metrics.start("utilities.fileContent");
+		long chars = 0;
 		try {
-			FileReader fr = new FileReader(fileName);
-			BufferedReader br = new BufferedReader(fr);
-			String line = br.readLine();
-			while (line != null) {
-				content.add(line);
-				line = br.readLine();
+			BufferedReader br = reader(file);
+			try {
+				String line = br.readLine();
+				while (line != null) {
+					content.add(line);
+					chars += line.length() + 1;
+					line = br.readLine();
+				}
+			} finally {
+				br.close();
 			}
-			br.close();
-			fr.close();
 		} catch (Exception e) {
-			JOptionPane.showMessageDialog(new JFrame(), e.getMessage(), "ERROR", JOptionPane.ERROR_MESSAGE);
+			errorReporter.report(e);
+		} finally {
+			span.end(1, chars);
 		}
 		return content;
 	}
@@ -88,8 +415,12 @@ public class Utilities {
 	public File[] listFilesInFolder(File folder) {
 		if (!isValidFolder(folder))
 			return new File[0];
+		Metrics.Span span = Metrics.start("utilities.listFilesInFolder");
 		File[] files = folder.listFiles();
-		return (files != null) ? files : new File[0];
+		if (files == null)
+			files = new File[0];
+		span.end(files.length, 0);
+		return files;
 	}
 
     /**
@@ -114,53 +445,113 @@ public class Utilities {
     /**
      * Builds an information block about a directory.
      * @param selectedDirectory the directory to describe
-     * @return string with name, path, element counts, permissions, and last modified
+     * @return string with name, path, element counts, permissions, owner, group and last modified
      */
 	public String infoDirectory(File selectedDirectory) {
-		File[] files = selectedDirectory.listFiles();
+		return infoDirectory(selectedDirectory.toPath());
+	}
+
+    /**
+     * Builds an information block about a directory, on any file system.
+     * @param directory the directory to describe
+     * @return string with name, path, element counts, permissions, owner, group and last modified
+     */
+	public String infoDirectory(Path directory) {
+		Metrics.Span span = Metrics.start("utilities.infoDirectory");
+		int elements = 0;
 		int fileCount = 0;
 		int folderCount = 0;
-		for (File file : files) {
-			if (file.isFile())
-				fileCount++;
-			else if (file.isDirectory())
-				folderCount++;
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+			for (Path child : stream) {
+				elements++;
+				if (Files.isRegularFile(child))
+					fileCount++;
+				else if (Files.isDirectory(child))
+					folderCount++;
+			}
+		} catch (IOException | DirectoryIteratorException e) {
+			// Not readable: no elements, as File.listFiles() did
 		}
 
-		String infoContent = "NAME: " + selectedDirectory.getName() + "\n";
-		infoContent += "PATH: " + selectedDirectory.getAbsolutePath() + "\n";
-		infoContent += "ELEMENTS: " + files.length + "\n";
+		String infoContent = "NAME: " + nameOf(directory) + "\n";
+		infoContent += "PATH: " + directory.toAbsolutePath() + "\n";
+		infoContent += "ELEMENTS: " + elements + "\n";
 		infoContent += "N. FILES: " + fileCount + "\n";
 		infoContent += "N. FOLDERS: " + folderCount + "\n";
-		infoContent += "READABLE: " + selectedDirectory.canRead() + "\n";
-		infoContent += "WRITABLE: " + selectedDirectory.canWrite() + "\n";
-		infoContent += "LAST MODIFIED: " + new Date(selectedDirectory.lastModified()) + "\n";
+		infoContent += "READABLE: " + Files.isReadable(directory) + "\n";
+		infoContent += "WRITABLE: " + Files.isWritable(directory) + "\n";
+		infoContent += Permissions.describe(directory);
+		infoContent += "LAST MODIFIED: " + new Date(lastModified(directory)) + "\n";
+		span.end(elements, 0);
 		return infoContent;
 	}
 
     /**
      * Builds an information block about a file.
      * @param selectedFile the file to describe
-     * @return string with name, path, size, permissions, and last modified
+     * @return string with name, path, size, permissions, owner, group and last modified
      */
 	public String infoFile(File selectedFile) {
-		String infoContent = "NAME: " + selectedFile.getName() + "\n";
-		infoContent += "PATH: " + selectedFile.getAbsolutePath() + "\n";
-		infoContent += "SIZE (bytes): " + selectedFile.length() + "\n";
-		infoContent += String.format("SIZE (MB): %.2f\n", (double) selectedFile.length() / (1024 * 1024));
-		infoContent += "READABLE: " + selectedFile.canRead() + "\n";
-		infoContent += "WRITABLE: " + selectedFile.canWrite() + "\n";
-		infoContent += "LAST MODIFIED: " + new Date(selectedFile.lastModified()) + "\n";
+		return infoFile(selectedFile.toPath());
+	}
+
+    /**
+     * Builds an information block about a file, on any file system.
+     * @param file the file to describe
+     * @return string with name, path, size, permissions, owner, group and last modified
+     */
+	public String infoFile(Path file) {
+		Metrics.Span span = Metrics.start("utilities.infoFile");
+		long size = 0;
+		try {
+			size = Files.size(file);
+		} catch (IOException e) {
+			// Gone or unreadable: 0, as File.length() did
+		}
+		String infoContent = "NAME: " + nameOf(file) + "\n";
+		infoContent += "PATH: " + file.toAbsolutePath() + "\n";
+		infoContent += "SIZE (bytes): " + size + "\n";
+		infoContent += String.format("SIZE (MB): %.2f\n", (double) size / (1024 * 1024));
+		infoContent += "READABLE: " + Files.isReadable(file) + "\n";
+		infoContent += "WRITABLE: " + Files.isWritable(file) + "\n";
+		infoContent += Permissions.describe(file);
+		infoContent += "LAST MODIFIED: " + new Date(lastModified(file)) + "\n";
+		span.end(1, 0);
 		return infoContent;
 	}
 
+	private static String nameOf(Path path) {
+		Path name = path.getFileName();
+		return name == null ? path.toString() : name.toString(); // a root has no name
+	}
+
+	private static long lastModified(Path path) {
+		try {
+			return Files.getLastModifiedTime(path).toMillis();
+		} catch (IOException e) {
+			return 0;
+		}
+	}
+
     /**
      * Deletes a single file.
      * @param fileToBeDeleted the file to delete
      * @return {@code true} if the file was deleted; {@code false} otherwise
      */
 	public boolean deleteFile(File fileToBeDeleted) {
-		return fileToBeDeleted.delete();
+		return deleteFile(fileToBeDeleted.toPath());
+	}
+
+    /**
+     * Deletes a single file, or an empty folder, on any file system.
+     * @param file the file to delete
+     * @return {@code true} if the file was deleted; {@code false} otherwise
+     */
+	public boolean deleteFile(Path file) {
+		Metrics.Span span = Metrics.start("utilities.deleteFile");
+		boolean deleted = delete(file);
+		span.end(deleted ? 1 : 0, 0);
+		return deleted;
 	}
 
     /**
@@ -169,13 +560,45 @@ public class Utilities {
      * @return {@code true} if the directory was deleted; {@code false} otherwise
      */
 	public boolean deleteFolder(File directoryToBeDeleted) {
-		File[] allContents = directoryToBeDeleted.listFiles();
-		if (allContents != null) {
-			for (File file : allContents) {
-				deleteFolder(file);
+		return deleteFolder(directoryToBeDeleted.toPath());
+	}
+
+    /**
+     * Recursively deletes a directory and all its content, on any file system. Links are deleted, never followed.
+     * @param directory the root directory to delete
+     * @return {@code true} if the directory was deleted; {@code false} otherwise
+     */
+	public boolean deleteFolder(Path directory) {
+		Metrics.Span span = Metrics.start("utilities.deleteFolder");
+		int[] deleted = new int[1];
+		boolean result = deleteTree(directory, deleted);
+		span.end(deleted[0], 0);
+		return result;
+	}
+
+	// Deletes depth-first, counting what was deleted in deleted[0]; what can't be deleted is left, as the rest
+	private static boolean deleteTree(Path path, int[] deleted) {
+		if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+			try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+				for (Path child : stream)
+					deleteTree(child, deleted);
+			} catch (IOException | DirectoryIteratorException e) {
+				// Then the folder can't be deleted either
 			}
 		}
-		return directoryToBeDeleted.delete();
+		if (!delete(path))
+			return false;
+		deleted[0]++;
+		return true;
+	}
+
+	private static boolean delete(Path path) {
+		try {
+			Files.delete(path);
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
 	}
 
     /**
@@ -186,19 +609,63 @@ public class Utilities {
      * @return {@code true} if the rename succeeded; {@code false} otherwise
      */
 	public boolean renameFile(String input, File selectedFile, File location) {
-		if (selectedFile == null || !selectedFile.exists())
+		if (selectedFile == null)
+			return false;
+		return renameFile(input, selectedFile.toPath(), location.toPath());
+	}
+
+    /**
+     * Renames a file or folder, on any file system. If the new name has no extension, the old extension is
+     * preserved. An existing entry with the new name is never replaced.
+     * @param input    the new name (extension optional)
+     * @param entry    the file or folder to rename (must exist)
+     * @param location the destination directory (typically the current folder)
+     * @return {@code true} if the rename succeeded; {@code false} otherwise
+     */
+	public boolean renameFile(String input, Path entry, Path location) {
+		if (entry == null || !Files.exists(entry, LinkOption.NOFOLLOW_LINKS))
 			return false;
+		Metrics.Span span = Metrics.start("utilities.renameFile");
+		boolean renamed;
+		try {
+			Files.move(entry, renameTarget(input, entry, location));
+			renamed = true;
+		} catch (IOException e) {
+			renamed = false;
+		}
+		span.end(renamed ? 1 : 0, 0);
+		return renamed;
+	}
+
+    /**
+     * Returns the path {@link #renameFile(String, File, File)} renames to.
+     * @param input        the new name (extension optional)
+     * @param selectedFile the file or folder to rename
+     * @param location     the destination directory
+     * @return the new path
+     */
+	public File renameTarget(String input, File selectedFile, File location) {
+		return renameTarget(input, selectedFile.toPath(), location.toPath()).toFile();
+	}
+
+    /**
+     * Returns the path {@link #renameFile(String, Path, Path)} renames to.
+     * @param input    the new name (extension optional)
+     * @param entry    the file or folder to rename
+     * @param location the destination directory
+     * @return the new path
+     */
+	public Path renameTarget(String input, Path entry, Path location) {
 		String newName = input;
 		if (!input.contains(".")) {
-			String oldName = selectedFile.getName();
+			String oldName = nameOf(entry);
 			int dotIndex = oldName.lastIndexOf('.');
 			if (dotIndex >= 0) {
 				String extension = oldName.substring(dotIndex);
 				newName += extension;
 			}
 		}
-		File newFileName = new File(location, newName);
-		return selectedFile.renameTo(newFileName);
+		return location.resolve(newName);
 	}
 
     /**
@@ -208,8 +675,26 @@ public class Utilities {
      * @return {@code true} if the folder was created; {@code false} otherwise
      */
 	public boolean createNewFolder(String folderName, File route) {
-		File file = new File(route, folderName);
-		return file.mkdir();
+		return createNewFolder(folderName, route.toPath());
+	}
+
+    /**
+     * Creates a new folder inside a route, on any file system.
+     * @param folderName the name of the folder to create
+     * @param route      the parent directory
+     * @return {@code true} if the folder was created; {@code false} otherwise
+     */
+	public boolean createNewFolder(String folderName, Path route) {
+		Metrics.Span span = Metrics.start("utilities.createNewFolder");
+		boolean created;
+		try {
+			Files.createDirectory(route.resolve(folderName));
+			created = true;
+		} catch (IOException e) {
+			created = false;
+		}
+		span.end(created ? 1 : 0, 0);
+		return created;
 	}
 
 
@@ -220,11 +705,27 @@ public class Utilities {
      * @return {@code true} if created; {@code false} otherwise
      */
 	public boolean createNewFile(String fileName, File route) {
-		File file = new File(route, fileName);
+		return createNewFile(fileName, route.toPath());
+	}
+
+    /**
+     * Creates a new empty file inside a route, on any file system.
+     * @param fileName the new file name
+     * @param route    the parent directory
+     * @return {@code true} if created; {@code false} if it exists or on error
+     */
+	public boolean createNewFile(String fileName, Path route) {
+		Metrics.Span span = Metrics.start("utilities.createNewFile");
 		try {
-			return file.createNewFile();
+			Files.createFile(route.resolve(fileName));
+			span.end(1, 0);
+			return true;
+		} catch (FileAlreadyExistsException e) {
+			span.end();
+			return false;
 		} catch (Exception e) {
-			JOptionPane.showMessageDialog(new JFrame(), e.getMessage(), "ERROR", JOptionPane.ERROR_MESSAGE);
+			span.end();
+			errorReporter.report(e);
 			return false;
 		}
 	}
@@ -236,32 +737,49 @@ public class Utilities {
      * @return {@code true} on success; {@code false} on error
      */
 	public boolean copyFile(File selectedFile, File currentFolder) {
-		String fileName = selectedFile.getName();
+		return copyFile(selectedFile.toPath(), currentFolder.toPath());
+	}
+
+    /**
+     * Copies a text file into a folder as name+_copia, keeps extension, on any file system (the copy may be on
+     * another one).
+     * @param file   the file to copy
+     * @param folder the destination directory
+     * @return {@code true} on success; {@code false} on error, given to the error reporter
+     */
+	public boolean copyFile(Path file, Path folder) {
+		String fileName = nameOf(file);
 		int dotIndex = fileName.lastIndexOf('.');
 		String nameWithoutExt = (dotIndex > 0) ? fileName.substring(0, dotIndex) : fileName;
 		String extension = (dotIndex > 0) ? fileName.substring(dotIndex) : "";
 		String nameCopy = nameWithoutExt + "_copia" + extension;
-		File fileCopy = new File(currentFolder, nameCopy);
+		Path fileCopy = folder.resolve(nameCopy);
 
+		Metrics.Span span = Metrics.start("utilities.copyFile");
+		long chars = 0;
 		try {
-			FileReader fr = new FileReader(selectedFile);
-			BufferedReader br = new BufferedReader(fr);
-			FileWriter fw = new FileWriter(fileCopy);
-			BufferedWriter bw = new BufferedWriter(fw);
-			String line = br.readLine();
-
-			while (line != null) {
-				bw.write(line);
-				bw.newLine();
-				line = br.readLine();
+			BufferedReader br = reader(file);
+			try {
+				BufferedWriter bw = writer(fileCopy);
+				try {
+					String line = br.readLine();
+					while (line != null) {
+						bw.write(line);
+						bw.newLine();
+						chars += line.length() + 1;
+						line = br.readLine();
+					}
+				} finally {
+					bw.close();
+				}
+			} finally {
+				br.close();
 			}
-			br.close();
-			bw.close();
-			fr.close();
-			fw.close();
+			span.end(1, chars);
 			return true;
 		} catch (IOException e) {
-			e.printStackTrace();
+			span.end();
+			errorReporter.report(e);
 			return false;
 		}
 	}
@@ -273,16 +791,21 @@ public class Utilities {
      * @return {@code true} on success; {@code false} otherwise
      */
 	public boolean saveTextOverwrite(String content, File selectedFile) {
-		try {
-			FileWriter fw = new FileWriter(selectedFile, false);
-			BufferedWriter bw = new BufferedWriter(fw);
-			bw.write(content);
+		return saveTextOverwrite(content, selectedFile.toPath());
+	}
 
-			bw.close();
-			fw.close();
+    /**
+     * Overwrites the given file with passed content, on any file system.
+     * @param content the text to write
+     * @param file    the file to overwrite
+     * @return {@code true} on success; {@code false} otherwise
+     */
+	public boolean saveTextOverwrite(String content, Path file) {
+		try {
+			writeText(content, file);
 			return true;
 		} catch (Exception e) {
-			JOptionPane.showMessageDialog(new JFrame(), e.getMessage(), "ERROR", JOptionPane.ERROR_MESSAGE);
+			errorReporter.report(e);
 			return false;
 		}
 	}
@@ -296,23 +819,115 @@ public class Utilities {
      * @return {@code true} on success; {@code false} otherwise
      */
 	public boolean saveTextNewFile(String content, String fileName, File currentFolder) {
+		return saveTextNewFile(content, fileName, currentFolder.toPath());
+	}
+
+    /**
+     * Saves content to a new file named {@code fileName} in a folder, on any file system.
+     * If a file with the same name already exists, the write is aborted (no overwrite).
+     * @param content  the text to write
+     * @param fileName the new file name
+     * @param folder   the destination directory
+     * @return {@code true} on success; {@code false} otherwise
+     */
+	public boolean saveTextNewFile(String content, String fileName, Path folder) {
 		if (fileName == null || fileName.trim().isEmpty())
 			return false;
 		try {
-			File newFile = new File(currentFolder, fileName);
-	        if (!newFile.createNewFile()) {
-	            return false;
-	        }
-			FileWriter fw = new FileWriter(newFile, false);
-			BufferedWriter bw = new BufferedWriter(fw);
-			bw.write(content);
-			bw.close();
-			fw.close();
+			Path newFile = folder.resolve(fileName);
+			try {
+				Files.createFile(newFile);
+			} catch (FileAlreadyExistsException e) {
+				return false;
+			}
+			writeText(content, newFile);
 			return true;
 		} catch (Exception e) {
-			JOptionPane.showMessageDialog(new JFrame(), e.getMessage(), "ERROR", JOptionPane.ERROR_MESSAGE);
+			errorReporter.report(e);
 			return false;
 		}
 	}
 
+    /**
+     * Reads a text file with <code>\n</code> line breaks, as the editor shows it. Errors are left to the caller, so
+     * it can be used off the EDT.
+     * @param file the file to read
+     * @return its content, every line ending with <code>\n</code>
+     * @throws IOException if the file can't be read
+     */
+	public String readText(File file) throws IOException {
+		return readText(file.toPath());
+	}
+
+    /**
+     * Reads a text file with <code>\n</code> line breaks, as the editor shows it, on any file system. Errors are
+     * left to the caller, so it can be used off the EDT.
+     * @param file the file to read
+     * @return its content, every line ending with <code>\n</code>
+     * @throws IOException if the file can't be read
+     */
+	public String readText(Path file) throws IOException {
+		Metrics.Span span = Metrics.start("utilities.readText");
+		long size = 0;
+		try {
+			size = Files.size(file);
+		} catch (IOException e) {
+			// Then the read below fails too
+		}
+		StringBuilder content = new StringBuilder((int) Math.min(size, Integer.MAX_VALUE - 8));
+		try {
+			BufferedReader br = reader(file);
+			try {
+				String line = br.readLine();
+				while (line != null) {
+					content.append(line).append('\n');
+					line = br.readLine();
+				}
+			} finally {
+				br.close();
+			}
+		} finally {
+			span.end(1, content.length());
+		}
+		return content.toString();
+	}
+
+    /**
+     * Writes text to a file, replacing its content. Errors are left to the caller, so it can be used off the EDT.
+     * @param content the text to write
+     * @param file    the file to write
+     * @throws IOException if the file can't be written
+     */
+	public void writeText(String content, File file) throws IOException {
+		writeText(content, file.toPath());
+	}
+
+    /**
+     * Writes text to a file, replacing its content, on any file system. Errors are left to the caller, so it can
+     * be used off the EDT.
+     * @param content the text to write
+     * @param file    the file to write
+     * @throws IOException if the file can't be written
+     */
+	public void writeText(String content, Path file) throws IOException {
+		Metrics.Span span = Metrics.start("utilities.writeText");
+		BufferedWriter bw = writer(file);
+		try {
+			bw.write(content);
+		} finally {
+			bw.close();
+			span.end(1, content.length());
+		}
+	}
+
+	// In the default charset, malformed input replaced, as FileReader does it
+	private static BufferedReader reader(Path file) throws IOException {
+		return new BufferedReader(new InputStreamReader(Files.newInputStream(file), Charset.defaultCharset()));
+	}
+
+	// In the default charset, as FileWriter does it: creates or truncates the file
+	private static BufferedWriter writer(Path file) throws IOException {
+		return new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file), Charset.defaultCharset()));
+	}
+
 }
@@ -11,6 +11,18 @@ import javax.swing.JScrollPane;
 import javax.swing.JList;
 import javax.swing.JToggleButton;
 import javax.swing.JTextPane;
+import javax.swing.JTextArea;
+import javax.swing.JMenuBar;
+import javax.swing.JMenu;
+import javax.swing.JMenuItem;
+import javax.swing.ListSelectionModel;
+import javax.swing.KeyStroke;
+import java.awt.event.KeyEvent;
+import java.awt.event.InputEvent;
+import javax.swing.ButtonGroup;
+import javax.swing.JCheckBoxMenuItem;
+import javax.swing.JRadioButtonMenuItem;
+import javax.swing.JComboBox;
 
 /**
  * Swing UI for the file explorer/editor, made with WindowBuilder.
@@ -25,15 +37,51 @@ public class View {
 	private JFrame frame;
 	private JTextField textFieldSearch;
 	private JTextField textFieldReplace;
+	private JTextField textFieldFilter;
+	private JComboBox<QuickFilter.Mode> comboFilterMode;
 
 	private JButton btnSearchText, btnReplaceText, btnSave, btnNewFolder, btnNewFile, btnOpenPath, btnShowFile, btnRenameFile, btnCopyFile, btnDeleteFile, btnExploreFolder, btnExploreBack, btnExploreFwd, btnRenameFolder, btnDeleteFolder;
 
 	private JTextPane textPaneAreaContent;
+	private LineNumberGutter lineNumberGutter;
 	private JLabel lblFilePath;
 	private JScrollPane scrollPane_Content;
+	private JLabel lblPage;
 	private JList list_Explorer;
 	private JScrollPane scrollPane;
 	private JToggleButton tglbtnEditFile;
+	private JScrollPane scrollPane_Info;
+	private JTextArea textAreaInfo;
+	private JMenuBar menuBar;
+	private JMenu mnTools;
+	private JMenuItem mntmCompress;
+	private JMenuItem mntmHash;
+	private JMenuItem mntmVerifyManifest;
+	private JMenuItem mntmCompareFolders;
+	private JMenuItem mntmCompareFiles;
+	private JMenuItem mntmJobs;
+	private JMenuItem mntmDiagnostics;
+	private JMenu mnSelection;
+	private JMenuItem mntmCopySelection;
+	private JMenuItem mntmMoveSelection;
+	private JMenuItem mntmRenameSelection;
+	private JMenuItem mntmDeleteSelection;
+	private JMenuItem mntmPermissionsSelection;
+	private JMenuItem mntmUndoRename;
+	private JMenu mnEditor;
+	private JMenuItem mntmGoToLine;
+	private JMenuItem mntmPreviousPage;
+	private JMenuItem mntmNextPage;
+	private JMenu mnHistory;
+	private JMenuItem mntmUndo;
+	private JMenuItem mntmRedo;
+	private JMenuItem mntmEmptyTrash;
+	private JMenu mnSort;
+	private JRadioButtonMenuItem rdbtnmntmSortName;
+	private JRadioButtonMenuItem rdbtnmntmSortSize;
+	private JRadioButtonMenuItem rdbtnmntmSortModified;
+	private JCheckBoxMenuItem chckbxmntmDescending;
+	private JCheckBoxMenuItem chckbxmntmFoldersFirst;
 
 	/**
 	 * Constructs the UI
@@ -47,10 +95,119 @@ public class View {
 	 */
 	private void initialize() {
 		frame = new JFrame();
-		frame.setBounds(100, 100, 919, 582);
+		frame.setBounds(100, 100, 919, 745);
 		frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 		frame.getContentPane().setLayout(null);
 
+		menuBar = new JMenuBar();
+		frame.setJMenuBar(menuBar);
+
+		mnTools = new JMenu("Tools");
+		menuBar.add(mnTools);
+
+		mntmCompress = new JMenuItem("Compress folder...");
+		mnTools.add(mntmCompress);
+
+		mntmHash = new JMenuItem("Compute checksums...");
+		mnTools.add(mntmHash);
+
+		mntmVerifyManifest = new JMenuItem("Verify checksum manifest...");
+		mnTools.add(mntmVerifyManifest);
+
+		mntmCompareFolders = new JMenuItem("Compare with folder...");
+		mnTools.add(mntmCompareFolders);
+
+		mntmCompareFiles = new JMenuItem("Compare with file...");
+		mnTools.add(mntmCompareFiles);
+
+		mnTools.addSeparator();
+
+		mntmJobs = new JMenuItem("Jobs...");
+		mnTools.add(mntmJobs);
+
+		mntmDiagnostics = new JMenuItem("Diagnostics...");
+		mnTools.add(mntmDiagnostics);
+
+		mnSelection = new JMenu("Selection");
+		menuBar.add(mnSelection);
+
+		mntmCopySelection = new JMenuItem("Copy selected to...");
+		mnSelection.add(mntmCopySelection);
+
+		mntmMoveSelection = new JMenuItem("Move selected to...");
+		mnSelection.add(mntmMoveSelection);
+
+		mntmRenameSelection = new JMenuItem("Bulk rename selected...");
+		mnSelection.add(mntmRenameSelection);
+
+		mntmDeleteSelection = new JMenuItem("Delete selected");
+		mnSelection.add(mntmDeleteSelection);
+
+		mntmPermissionsSelection = new JMenuItem("Permissions...");
+		mnSelection.add(mntmPermissionsSelection);
+
+		mnSelection.addSeparator();
+
+		mntmUndoRename = new JMenuItem("Undo last bulk rename");
+		mnSelection.add(mntmUndoRename);
+
+		mnEditor = new JMenu("Editor");
+		menuBar.add(mnEditor);
+
+		mntmGoToLine = new JMenuItem("Go to line...");
+		mntmGoToLine.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_G, InputEvent.CTRL_DOWN_MASK));
+		mnEditor.add(mntmGoToLine);
+
+		mnEditor.addSeparator();
+
+		mntmPreviousPage = new JMenuItem("Previous page");
+		mntmPreviousPage.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_PAGE_UP, InputEvent.ALT_DOWN_MASK));
+		mntmPreviousPage.setEnabled(false);
+		mnEditor.add(mntmPreviousPage);
+
+		mntmNextPage = new JMenuItem("Next page");
+		mntmNextPage.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_PAGE_DOWN, InputEvent.ALT_DOWN_MASK));
+		mntmNextPage.setEnabled(false);
+		mnEditor.add(mntmNextPage);
+
+		mnHistory = new JMenu("History");
+		menuBar.add(mnHistory);
+
+		mntmUndo = new JMenuItem("Undo");
+		mnHistory.add(mntmUndo);
+
+		mntmRedo = new JMenuItem("Redo");
+		mnHistory.add(mntmRedo);
+
+		mnHistory.addSeparator();
+
+		mntmEmptyTrash = new JMenuItem("Empty trash...");
+		mnHistory.add(mntmEmptyTrash);
+
+		mnSort = new JMenu("Sort");
+		menuBar.add(mnSort);
+
+		ButtonGroup sortKeys = new ButtonGroup();
+		rdbtnmntmSortName = new JRadioButtonMenuItem("By name");
+		sortKeys.add(rdbtnmntmSortName);
+		mnSort.add(rdbtnmntmSortName);
+
+		rdbtnmntmSortSize = new JRadioButtonMenuItem("By size");
+		sortKeys.add(rdbtnmntmSortSize);
+		mnSort.add(rdbtnmntmSortSize);
+
+		rdbtnmntmSortModified = new JRadioButtonMenuItem("By date modified");
+		sortKeys.add(rdbtnmntmSortModified);
+		mnSort.add(rdbtnmntmSortModified);
+
+		mnSort.addSeparator();
+
+		chckbxmntmDescending = new JCheckBoxMenuItem("Descending");
+		mnSort.add(chckbxmntmDescending);
+
+		chckbxmntmFoldersFirst = new JCheckBoxMenuItem("Folders first");
+		mnSort.add(chckbxmntmFoldersFirst);
+
 		btnSearchText = new JButton("Search");
 		btnSearchText.setBounds(500, 509, 89, 23);
 		btnSearchText.setFont(new Font("Dialog", Font.BOLD, 14));
@@ -160,6 +317,14 @@ public class View {
 		textPaneAreaContent = new JTextPane();
 		scrollPane_Content.setViewportView(textPaneAreaContent);
 
+		lineNumberGutter = new LineNumberGutter(textPaneAreaContent);
+		scrollPane_Content.setRowHeaderView(lineNumberGutter);
+
+		lblPage = new JLabel();
+		lblPage.setFont(new Font("Dialog", Font.PLAIN, 12));
+		lblPage.setVisible(false);
+		scrollPane_Content.setColumnHeaderView(lblPage);
+
 		btnRenameFolder = new JButton("Rename");
 		btnRenameFolder.setBounds(271, 191, 97, 23);
 		btnRenameFolder.setFont(new Font("Tahoma", Font.BOLD, 13));
@@ -175,13 +340,36 @@ public class View {
 		frame.getContentPane().add(scrollPane);
 
 		list_Explorer = new JList<>();
+		list_Explorer.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+		list_Explorer.setFixedCellHeight(36);
+		list_Explorer.setFixedCellWidth(236);
 		scrollPane.setViewportView(list_Explorer);
 
+		comboFilterMode = new JComboBox<>(QuickFilter.Mode.values());
+		comboFilterMode.setBounds(10, 512, 75, 20);
+		comboFilterMode.setFont(new Font("Dialog", Font.PLAIN, 12));
+		frame.getContentPane().add(comboFilterMode);
+
+		textFieldFilter = new JTextField();
+		textFieldFilter.setBounds(90, 512, 160, 20);
+		textFieldFilter.setToolTipText("Filter the list (Esc clears, Enter goes to the list)");
+		frame.getContentPane().add(textFieldFilter);
+		textFieldFilter.setColumns(10);
+
 		tglbtnEditFile = new JToggleButton("Edit File");
 		tglbtnEditFile.setFont(new Font("Tahoma", Font.BOLD, 13));
 		tglbtnEditFile.setBounds(271, 421, 97, 23);
 		frame.getContentPane().add(tglbtnEditFile);
 
+		scrollPane_Info = new JScrollPane();
+		scrollPane_Info.setBounds(10, 545, 883, 125);
+		frame.getContentPane().add(scrollPane_Info);
+
+		textAreaInfo = new JTextArea();
+		textAreaInfo.setEditable(false);
+		textAreaInfo.setFont(new Font("Monospaced", Font.PLAIN, 12));
+		scrollPane_Info.setViewportView(textAreaInfo);
+
 		this.frame.setVisible(true);
 	}
 
@@ -266,10 +454,126 @@ public class View {
 		return list_Explorer;
 	}
 
+	public JTextField getTextFieldFilter() {
+		return textFieldFilter;
+	}
+
+	public JComboBox<QuickFilter.Mode> getComboFilterMode() {
+		return comboFilterMode;
+	}
+
 	public JToggleButton getTglBtnEditFile() {
 		return tglbtnEditFile;
 	}
 
+	public JTextArea getTextAreaInfo() {
+		return textAreaInfo;
+	}
+
+	public JMenuItem getMntmCompress() {
+		return mntmCompress;
+	}
+
+	public JMenuItem getMntmHash() {
+		return mntmHash;
+	}
+
+	public JMenuItem getMntmVerifyManifest() {
+		return mntmVerifyManifest;
+	}
+
+	public JMenuItem getMntmCompareFolders() {
+		return mntmCompareFolders;
+	}
+
+	public JMenuItem getMntmCompareFiles() {
+		return mntmCompareFiles;
+	}
+
+	public JMenuItem getMntmJobs() {
+		return mntmJobs;
+	}
+
+	public JMenuItem getMntmDiagnostics() {
+		return mntmDiagnostics;
+	}
+
+	public JMenuItem getMntmCopySelection() {
+		return mntmCopySelection;
+	}
+
+	public JMenuItem getMntmMoveSelection() {
+		return mntmMoveSelection;
+	}
+
+	public JMenuItem getMntmRenameSelection() {
+		return mntmRenameSelection;
+	}
+
+	public JMenuItem getMntmDeleteSelection() {
+		return mntmDeleteSelection;
+	}
+
+	public JMenuItem getMntmPermissionsSelection() {
+		return mntmPermissionsSelection;
+	}
+
+	public JMenuItem getMntmUndoRename() {
+		return mntmUndoRename;
+	}
+
+	public LineNumberGutter getLineNumberGutter() {
+		return lineNumberGutter;
+	}
+
+	public JMenuItem getMntmGoToLine() {
+		return mntmGoToLine;
+	}
+
+	public JMenuItem getMntmPreviousPage() {
+		return mntmPreviousPage;
+	}
+
+	public JMenuItem getMntmNextPage() {
+		return mntmNextPage;
+	}
+
+	public JLabel getLblPage() {
+		return lblPage;
+	}
+
+	public JRadioButtonMenuItem getRdbtnmntmSortName() {
+		return rdbtnmntmSortName;
+	}
+
+	public JRadioButtonMenuItem getRdbtnmntmSortSize() {
+		return rdbtnmntmSortSize;
+	}
+
+	public JRadioButtonMenuItem getRdbtnmntmSortModified() {
+		return rdbtnmntmSortModified;
+	}
+
+	public JCheckBoxMenuItem getChckbxmntmDescending() {
+		return chckbxmntmDescending;
+	}
+
+	public JCheckBoxMenuItem getChckbxmntmFoldersFirst() {
+		return chckbxmntmFoldersFirst;
+	}
+
+	public JMenuItem getMntmUndo() {
+		return mntmUndo;
+	}
+
+	public JMenuItem getMntmRedo() {
+		return mntmRedo;
+	}
+
+	public JMenuItem getMntmEmptyTrash() {
+		return mntmEmptyTrash;
+	}
+
 	public JFrame getFrame() {
 		return frame;
 	}
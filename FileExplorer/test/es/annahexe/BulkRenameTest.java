@@ -0,0 +1,116 @@
+package es.annahexe;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Bulk renames on a temporary folder: swaps and cycles through the two phases, collisions with files that are not
+ * renamed, and undo from the journal.
+ * @author annahexe
+ */
+class BulkRenameTest {
+	private static final BulkRename.Options NUMBERED = new BulkRename.Options("", "", false, "{n}{ext}", 1,
+			BulkRename.CaseChange.KEEP);
+
+	@TempDir
+	Path work;
+	private final JobManager jobManager = new JobManager(1, 1);
+
+	@Test
+	void swapsTwoNames() throws Exception {
+		BulkRename.Preview preview = BulkRename.preview(files("2.txt", "1.txt"), NUMBERED);
+		assertEquals(2, preview.getChanged());
+		assertEquals(0, preview.getProblems());
+
+		assertEquals(JobManager.State.DONE, run(bulkRename().execute(preview.getRenames())).getState());
+		assertEquals("2.txt", read("1.txt"));
+		assertEquals("1.txt", read("2.txt"));
+		assertEquals(2, count());
+	}
+
+	@Test
+	void renamesACycleAndUndoesIt() throws Exception {
+		BulkRename bulkRename = bulkRename();
+		BulkRename.Preview preview = BulkRename.preview(files("2.txt", "3.txt", "1.txt"), NUMBERED);
+		assertEquals(3, preview.getChanged());
+
+		assertEquals(JobManager.State.DONE, run(bulkRename.execute(preview.getRenames())).getState());
+		assertEquals("2.txt", read("1.txt"));
+		assertEquals("3.txt", read("2.txt"));
+		assertEquals("1.txt", read("3.txt"));
+
+		File journal = bulkRename.getLastJournal();
+		assertNotNull(journal);
+		assertEquals(JobManager.State.DONE, run(bulkRename.undo(journal)).getState());
+		for (String name : new String[] { "1.txt", "2.txt", "3.txt" })
+			assertEquals(name, read(name));
+		assertNull(bulkRename.getLastJournal());
+		assertEquals(3, count());
+	}
+
+	@Test
+	void keepsFilesThatAreNotSelected() throws Exception {
+		files("b.txt");
+		BulkRename.Preview preview = BulkRename.preview(files("a.txt", "c.txt"),
+				new BulkRename.Options("a", "b", false, "{name}{ext}", 1, BulkRename.CaseChange.KEEP));
+		assertEquals(1, preview.getProblems());
+		assertEquals("`b.txt` already exists", preview.getRenames().get(0).getProblem());
+		assertNull(preview.getRenames().get(1).getProblem());
+		assertEquals(0, preview.getChanged()); // c.txt keeps its name
+
+		run(bulkRename().execute(preview.getRenames()));
+		assertEquals("a.txt", read("a.txt"));
+		assertEquals("b.txt", read("b.txt"));
+		assertEquals(3, count());
+
+		// Two selected files getting the same name
+		preview = BulkRename.preview(files("d.txt", "e.txt"),
+				new BulkRename.Options("", "", false, "same{ext}", 1, BulkRename.CaseChange.KEEP));
+		assertEquals(2, preview.getProblems());
+		assertTrue(preview.getRenames().get(1).getProblem().startsWith("same name as"));
+	}
+
+	private BulkRename bulkRename() {
+		return new BulkRename(work.resolve("journal").toFile());
+	}
+
+	// Creates the files with their names as content
+	private List<File> files(String... names) throws IOException {
+		List<File> files = new ArrayList<>();
+		for (String name : names)
+			files.add(Files.write(work.resolve(name), name.getBytes(StandardCharsets.UTF_8)).toFile());
+		return files;
+	}
+
+	private String read(String name) throws IOException {
+		return new String(Files.readAllBytes(work.resolve(name)), StandardCharsets.UTF_8);
+	}
+
+	// Files left in the folder, so no temporary name is left behind
+	private long count() throws IOException {
+		try (Stream<Path> entries = Files.list(work)) {
+			return entries.filter(Files::isRegularFile).count();
+		}
+	}
+
+	private JobManager.Job run(JobManager.Planner planner) throws InterruptedException {
+		JobManager.Job job = jobManager.submit("Rename", work.toFile(), planner, null);
+		job.await();
+		return job;
+	}
+
+}
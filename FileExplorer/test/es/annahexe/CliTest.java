@@ -0,0 +1,112 @@
+package es.annahexe;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Commands of the command line on a temporary tree: their JSON lines and exit codes.
+ * @author annahexe
+ */
+class CliTest {
+	@TempDir
+	Path work;
+	private ByteArrayOutputStream out;
+	private ByteArrayOutputStream err;
+
+	@BeforeEach
+	void createTree() throws IOException {
+		Files.createDirectory(work.resolve("sub"));
+		Files.write(work.resolve("a.txt"), "one two one\r\n".getBytes(StandardCharsets.UTF_8));
+		Files.write(work.resolve("sub/b.txt"), "two".getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	void listsAsJsonLines() {
+		assertEquals(Cli.EXIT_OK, run("list", "--json", work.toString()));
+		List<String> lines = lines(out);
+		assertEquals(3, lines.size(), lines.toString());
+		assertTrue(lines.stream().anyMatch(line -> line.startsWith("{\"name\":\"a.txt\",\"type\":\"file\",\"size\":13,")),
+				lines.toString());
+		assertTrue(lines.stream().anyMatch(line -> line.startsWith("{\"name\":\"sub\",\"type\":\"folder\",")),
+				lines.toString());
+		assertEquals("{\"summary\":{\"failures\":0,\"entries\":2}}", lines.get(2));
+		assertEquals("", err.toString());
+	}
+
+	@Test
+	void replacesInPlaceWithoutTemporaryFiles() throws IOException {
+		assertEquals(Cli.EXIT_OK, run("replace", "--json", work.toString(), "one", "1"));
+		assertEquals("1 two 1\r\n", new String(Files.readAllBytes(work.resolve("a.txt")), StandardCharsets.UTF_8));
+		List<String> lines = lines(out);
+		assertEquals("{\"path\":\"" + work.resolve("a.txt") + "\",\"replacements\":2}", lines.get(0));
+		assertEquals("{\"summary\":{\"failures\":0,\"files\":2,\"changed\":1,\"replacements\":2}}", lines.get(1));
+		try (Stream<Path> entries = Files.list(work)) {
+			assertEquals(2, entries.count()); // a.txt and sub
+		}
+	}
+
+	@Test
+	void exitsWithOneWhenSomeEntriesFail() throws IOException {
+		Path target = Files.createDirectory(work.resolve("target"));
+		Files.write(target.resolve("a.txt"), new byte[0]);
+		assertEquals(Cli.EXIT_FAILURES,
+				run("copy", "--json", work.resolve("a.txt").toString(), work.resolve("sub/b.txt").toString(),
+						target.toString()));
+		assertTrue(err.toString().startsWith("{\"error\":"), err.toString());
+		assertTrue(lines(out).get(0).contains("\"failures\":1,\"state\":\"FAILED\""), out.toString());
+		assertTrue(Files.exists(target.resolve("b.txt")));
+	}
+
+	@Test
+	void rejectsUnknownCommandsAndOptions() {
+		assertEquals(Cli.EXIT_USAGE, run());
+		assertEquals(Cli.EXIT_USAGE, run("move", work.toString()));
+		assertEquals(Cli.EXIT_USAGE, run("list", "--force", work.toString()));
+		assertTrue(err.toString().startsWith("ERROR! Unknown option `--force` for list."), err.toString());
+		assertEquals(Cli.EXIT_USAGE, run("du", "--glob=*.txt", work.toString()));
+		assertEquals(Cli.EXIT_USAGE, run("list", work.toString(), work.toString()));
+		assertEquals("", out.toString());
+	}
+
+	@Test
+	void readsOperandsAfterTheEndOfOptions() {
+		// Not an unknown option but a folder that doesn't exist
+		assertEquals(Cli.EXIT_ERROR, run("list", "--json", "--", "--force"));
+		assertTrue(err.toString().contains("--force"), err.toString());
+		assertEquals(Cli.EXIT_OK, run("du", "--", work.toString()));
+	}
+
+	@Test
+	void exitsWithThreeWhenNothingCanBeDone() {
+		assertEquals(Cli.EXIT_ERROR, run("list", "--json", work.resolve("missing").toString()));
+		assertTrue(err.toString().startsWith("{\"error\":"), err.toString());
+		// The job can't be planned
+		assertEquals(Cli.EXIT_ERROR, run("chown", "--json", "no-such-user-here", work.resolve("a.txt").toString()));
+		assertTrue(err.toString().contains("There is no user `no-such-user-here`."), err.toString());
+	}
+
+	private int run(String... args) {
+		out = new ByteArrayOutputStream();
+		err = new ByteArrayOutputStream();
+		return Cli.run(args, new PrintStream(out, true), new PrintStream(err, true));
+	}
+
+	private static List<String> lines(ByteArrayOutputStream stream) {
+		return Arrays.asList(stream.toString().split("\\R"));
+	}
+
+}
@@ -0,0 +1,117 @@
+package es.annahexe;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import javax.swing.JTextPane;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Where keystrokes stop being merged into one edit, and replace-all undone and redone as a single edit. Works
+ * without a display: the keys are not bound.
+ * @author annahexe
+ */
+class EditorUndoTest {
+	private JTextPane pane;
+	private Document document;
+	private EditorUndo undo;
+
+	@BeforeEach
+	void createPane() {
+		pane = new JTextPane();
+		document = pane.getDocument();
+		undo = new EditorUndo(pane);
+	}
+
+	@Test
+	void mergesTypingUntilANewLine() throws BadLocationException {
+		type(0, "ab\n");
+		type(3, "cd");
+		assertEquals("ab\ncd", text());
+		undo.undo();
+		assertEquals("ab\n", text());
+		undo.undo();
+		assertEquals("", text());
+		assertFalse(undo.canUndo());
+		undo.redo();
+		undo.redo();
+		assertEquals("ab\ncd", text());
+	}
+
+	@Test
+	void startsANewEditWhenTheCaretJumpsOrTextIsPasted() throws BadLocationException {
+		type(0, "ab");
+		type(0, "x"); // somewhere else
+		document.insertString(3, "pasted", null);
+		type(9, "y"); // typed right after the paste, merged into it
+		assertEquals("xabpastedy", text());
+		undo.undo();
+		assertEquals("xab", text());
+		undo.undo();
+		assertEquals("ab", text());
+		undo.undo();
+		assertEquals("", text());
+	}
+
+	@Test
+	void mergesBackspacesAndDeletes() throws BadLocationException {
+		undo.load("hello world");
+		assertFalse(undo.canUndo());
+		document.remove(4, 1); // backspace over "o", then "l"
+		document.remove(3, 1);
+		document.remove(3, 1); // delete " ", then "w"
+		document.remove(3, 1);
+		assertEquals("helorld", text());
+		document.remove(0, 2); // a selection
+		assertEquals("lorld", text());
+		undo.undo();
+		assertEquals("helorld", text());
+		undo.undo();
+		assertEquals("hello world", text());
+		assertFalse(undo.canUndo());
+	}
+
+	@Test
+	void undoesAndRedoesReplaceAllAsOneEdit() throws BadLocationException {
+		undo.load("one two one\ntwo one");
+		assertEquals(3, undo.replaceAll("one", "three"));
+		assertEquals("three two three\ntwo three", text());
+		assertEquals(2, undo.replaceAll("two", "2"));
+		assertEquals("three 2 three\n2 three", text());
+
+		undo.undo();
+		assertEquals("three two three\ntwo three", text());
+		undo.undo();
+		assertEquals("one two one\ntwo one", text());
+		assertFalse(undo.canUndo());
+		undo.redo();
+		undo.redo();
+		assertEquals("three 2 three\n2 three", text());
+		assertFalse(undo.canRedo());
+		assertEquals(0, undo.replaceAll("four", "4"));
+		assertTrue(undo.canUndo());
+	}
+
+	@Test
+	void recordsNothingWhileReadOnly() throws BadLocationException {
+		pane.setEditable(false);
+		type(0, "ab");
+		assertFalse(undo.canUndo());
+	}
+
+	// One keystroke per character
+	private void type(int offset, String text) throws BadLocationException {
+		for (int i = 0; i < text.length(); i++)
+			document.insertString(offset + i, text.substring(i, i + 1), null);
+	}
+
+	private String text() throws BadLocationException {
+		return document.getText(0, document.getLength());
+	}
+
+}
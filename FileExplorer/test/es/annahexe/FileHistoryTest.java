@@ -0,0 +1,167 @@
+package es.annahexe;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Undo and redo of file operations through {@link JobManager} jobs, and where an edit goes when its job
+ * succeeds, fails or is canceled.
+ * @author annahexe
+ */
+class FileHistoryTest {
+	@TempDir
+	Path work;
+	private Trash trash;
+	private final FileHistory history = new FileHistory();
+	private final JobManager jobManager = new JobManager(2, 2);
+
+	@BeforeEach
+	void createTrash() {
+		trash = new Trash(work.resolve("trash"), 30, Long.MAX_VALUE);
+	}
+
+	@Test
+	void undoesAndRedoesADelete() throws Exception {
+		File a = write("a.txt", "a");
+		File b = write("b.txt", "b");
+		history.add(FileHistory.trashed(trash, trashAll(a, b), "Delete 2 items"));
+
+		FileHistory.Edit edit = history.popUndo();
+		assertNull(history.peekUndo());
+		JobManager.Job job = run(edit.undo());
+		assertEquals(JobManager.State.DONE, job.getState());
+		history.undone(edit, true);
+		assertTrue(a.exists() && b.exists());
+		assertEquals("a", read(a));
+		assertNull(history.peekUndo());
+		assertSame(edit, history.peekRedo());
+
+		edit = history.popRedo();
+		assertEquals(JobManager.State.DONE, run(edit.redo()).getState());
+		history.redone(edit, true);
+		assertFalse(a.exists() || b.exists());
+		assertSame(edit, history.peekUndo());
+		assertNull(history.peekRedo());
+		assertEquals(2, trash.list().size());
+
+		edit = history.popUndo();
+		assertEquals(JobManager.State.DONE, run(edit.undo()).getState());
+		history.undone(edit, true);
+		assertEquals("b", read(b));
+		assertTrue(trash.list().isEmpty());
+	}
+
+	@Test
+	void keepsAPartlyRestoredDeleteToUndoTheRest() throws Exception {
+		File a = write("a.txt", "a");
+		File b = write("b.txt", "b");
+		history.add(FileHistory.trashed(trash, trashAll(a, b), "Delete 2 items"));
+		write("a.txt", "taken"); // the restore of a fails, b is restored
+
+		FileHistory.Edit edit = history.popUndo();
+		JobManager.Job job = run(edit.undo());
+		assertEquals(JobManager.State.FAILED, job.getState());
+		assertEquals(1, job.getFailures().size());
+		history.undone(edit, false);
+		assertSame(edit, history.peekUndo());
+		assertNull(history.peekRedo());
+		assertEquals("b", read(b));
+
+		Files.delete(a.toPath());
+		edit = history.popUndo();
+		assertEquals(JobManager.State.DONE, run(edit.undo()).getState()); // b is not restored twice
+		history.undone(edit, true);
+		assertEquals("a", read(a));
+		assertSame(edit, history.peekRedo());
+
+		edit = history.popRedo();
+		assertEquals(JobManager.State.DONE, run(edit.redo()).getState());
+		history.redone(edit, true);
+		assertFalse(a.exists() || b.exists());
+		assertEquals(2, trash.list().size());
+	}
+
+	@Test
+	void putsACanceledEditBack() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch never = new CountDownLatch(1);
+		FileHistory.Edit edit = new FileHistory.Edit() {
+			public String getName() {
+				return "Slow";
+			}
+
+			public JobManager.Planner undo() {
+				return JobManager.planOf(Collections.<JobManager.Operation>singletonList(new JobManager.Operation() {
+					public String getName() {
+						return "wait";
+					}
+
+					public void run(JobManager.Job job) throws Exception {
+						started.countDown();
+						never.await();
+					}
+				}));
+			}
+
+			public JobManager.Planner redo() {
+				return undo();
+			}
+		};
+		history.add(edit);
+
+		assertSame(edit, history.popUndo());
+		JobManager.Job job = jobManager.submit("Undo", work.toFile(), edit.undo(), null);
+		started.await();
+		jobManager.cancel(job);
+		job.await();
+		assertEquals(JobManager.State.CANCELED, job.getState());
+		history.undone(edit, false);
+		assertSame(edit, history.peekUndo());
+		assertNull(history.peekRedo());
+
+		// A retry of the job gives the edit back again
+		history.undone(edit, true);
+		history.undone(edit, true);
+		assertNull(history.peekUndo());
+		assertSame(edit, history.popRedo());
+		assertNull(history.peekRedo());
+	}
+
+	private List<Trash.Item> trashAll(File... files) throws IOException {
+		Trash.Item[] items = new Trash.Item[files.length];
+		for (int i = 0; i < files.length; i++)
+			items[i] = trash.moveToTrash(files[i]);
+		return Arrays.asList(items);
+	}
+
+	private JobManager.Job run(JobManager.Planner planner) throws InterruptedException {
+		JobManager.Job job = jobManager.submit("Test", work.toFile(), planner, null);
+		job.await();
+		return job;
+	}
+
+	private File write(String name, String text) throws IOException {
+		return Files.write(work.resolve(name), text.getBytes("UTF-8")).toFile();
+	}
+
+	private static String read(File file) throws IOException {
+		return new String(Files.readAllBytes(file.toPath()), "UTF-8");
+	}
+
+}
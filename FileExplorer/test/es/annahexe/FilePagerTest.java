@@ -0,0 +1,104 @@
+package es.annahexe;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+
+/**
+ * Splitting of big text files in pages that end at line breaks, and finding the page of a line.
+ * @author annahexe
+ */
+class FilePagerTest {
+	private FileSystem fileSystem;
+	private Path work;
+
+	@BeforeEach
+	void createFileSystem() throws IOException {
+		fileSystem = Jimfs.newFileSystem("pager-test", Configuration.unix());
+		work = Files.createDirectory(fileSystem.getPath("/data"));
+	}
+
+	@AfterEach
+	void closeFileSystem() throws IOException {
+		fileSystem.close();
+	}
+
+	@Test
+	void cutsPagesAfterLineBreaks() throws IOException {
+		StringBuilder text = new StringBuilder();
+		int lines = 0;
+		while (text.length() < 3 * FilePager.PAGE_BYTES) {
+			text.append("line ").append(lines++).append('\n');
+		}
+		Path file = write("lines.txt", text.toString());
+
+		FilePager pager = FilePager.of(file);
+		assertEquals(lines, pager.getLineCount());
+		assertEquals(4, pager.getPageCount());
+		StringBuilder pages = new StringBuilder();
+		for (int page = 0; page < pager.getPageCount(); page++) {
+			String content = pager.read(page);
+			assertTrue(content.length() <= FilePager.PAGE_BYTES);
+			assertTrue(content.endsWith("\n"), "page " + page + " splits a line");
+			String first = content.substring(0, content.indexOf('\n'));
+			assertEquals("line " + pager.getFirstLine(page), first);
+			assertEquals(page, pager.pageOfLine(pager.getFirstLine(page)));
+			assertEquals(page, pager.pageOfLine(pager.getFirstLine(page) + 1));
+			pages.append(content);
+		}
+		assertEquals(text.toString(), pages.toString());
+		assertEquals(pager.getPageCount() - 1, pager.pageOfLine(lines - 1));
+	}
+
+	@Test
+	void cutsALongerLineBetweenCharacters() throws IOException {
+		char[] line = new char[FilePager.PAGE_BYTES]; // two bytes each in UTF-8
+		Arrays.fill(line, 'é');
+		Path file = fileSystem.getPath("/data/long.txt");
+		Files.write(file, (new String(line) + "\nend").getBytes("UTF-8"));
+
+		FilePager pager = FilePager.of(file);
+		assertEquals(2, pager.getLineCount());
+		assertEquals(3, pager.getPageCount());
+		assertEquals(0, pager.pageOfLine(0));
+		assertEquals(2, pager.pageOfLine(1));
+		if (Charset.defaultCharset().name().equals("UTF-8")) {
+			String first = pager.read(0);
+			assertFalse(first.contains("�"), "a character is split");
+			assertEquals(FilePager.PAGE_BYTES / 2, first.length());
+			assertEquals("end", pager.read(2).substring(pager.read(2).indexOf('\n') + 1));
+		}
+	}
+
+	@Test
+	void readsPagesAsTheEditorShowsThem() throws IOException {
+		Path file = write("crlf.txt", "first\r\nsecond\rthird");
+		FilePager pager = FilePager.of(file);
+		assertEquals(1, pager.getPageCount());
+		assertEquals(3, pager.getLineCount());
+		assertEquals("first\nsecond\nthird", pager.read(0));
+		assertFalse(FilePager.needsPaging(FilePager.PAGE_BYTES));
+		assertTrue(FilePager.needsPaging(FilePager.PAGE_BYTES + 1));
+	}
+
+	private Path write(String name, String text) throws IOException {
+		Path file = work.resolve(name);
+		Files.write(file, text.getBytes(Charset.defaultCharset()));
+		return file;
+	}
+
+}
@@ -0,0 +1,86 @@
+package es.annahexe;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import javax.swing.JTextPane;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The line states kept up to date edit after edit must be those of lexing the whole document again.
+ * @author annahexe
+ */
+class SyntaxHighlighterTest {
+	private static final String[] LINES = { "int a = 1;", "/* comment", "still comment", "end */ int b;",
+			"String s = \"/*\";", "// line /*", "String t = \"\"\"", "text block */", "\"\"\";", "", "}" };
+
+	@Test
+	void lineBreakInsertedAtTheStartOfALineLexesThatLine() throws BadLocationException {
+		JTextPane pane = new JTextPane();
+		SyntaxHighlighter highlighter = load(pane, "int a;\nint b;\nint c;\nint d;\n");
+		pane.getDocument().insertString(0, "/*\n", null);
+		assertStatesOfFullLex(pane.getDocument(), highlighter);
+	}
+
+	@Test
+	void randomEditsKeepTheStatesOfAFullLex() throws BadLocationException {
+		Random random = new Random(42);
+		for (int run = 0; run < 400; run++) {
+			JTextPane pane = new JTextPane();
+			SyntaxHighlighter highlighter = load(pane, randomLines(random, 5 + random.nextInt(25), true));
+			Document document = pane.getDocument();
+			int edits = 1 + random.nextInt(4);
+			for (int edit = 0; edit < edits; edit++) {
+				// Lexed up to some line only, as when the viewport is at the top
+				highlighter.lexUpTo(random.nextInt(document.getDefaultRootElement().getElementCount()));
+				int offset = random.nextInt(document.getLength() + 1);
+				if (random.nextBoolean() || document.getLength() == 0) {
+					document.insertString(offset, randomLines(random, 1 + random.nextInt(3), random.nextBoolean()),
+							null);
+				} else {
+					document.remove(offset, random.nextInt(document.getLength() - offset + 1));
+				}
+			}
+			assertStatesOfFullLex(document, highlighter);
+		}
+	}
+
+	private static SyntaxHighlighter load(JTextPane pane, String text) throws BadLocationException {
+		pane.getDocument().insertString(0, text, null);
+		SyntaxHighlighter highlighter = new SyntaxHighlighter(pane);
+		highlighter.setLanguage(SyntaxLexer.Language.JAVA);
+		highlighter.lexUpTo(pane.getDocument().getDefaultRootElement().getElementCount() - 1);
+		return highlighter;
+	}
+
+	private static String randomLines(Random random, int count, boolean lineBreakAtTheEnd) {
+		StringBuilder text = new StringBuilder();
+		for (int line = 0; line < count; line++) {
+			if (line > 0)
+				text.append('\n');
+			text.append(LINES[random.nextInt(LINES.length)]);
+		}
+		return lineBreakAtTheEnd ? text.append('\n').toString() : text.toString();
+	}
+
+	private static void assertStatesOfFullLex(Document document, SyntaxHighlighter highlighter)
+			throws BadLocationException {
+		Element root = document.getDefaultRootElement();
+		assertTrue(highlighter.lexUpTo(root.getElementCount() - 1));
+		int state = SyntaxLexer.NORMAL;
+		for (int line = 0; line < root.getElementCount(); line++) {
+			assertEquals(state, highlighter.stateOf(line), "start state of line " + line);
+			Element element = root.getElement(line);
+			int end = Math.min(element.getEndOffset() - 1, document.getLength());
+			String text = document.getText(element.getStartOffset(), end - element.getStartOffset());
+			state = SyntaxLexer.lexLine(SyntaxLexer.Language.JAVA, text, state, null);
+		}
+	}
+
+}
@@ -0,0 +1,76 @@
+package es.annahexe;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Moving entries to the trash and back, and restores that can't be done.
+ * @author annahexe
+ */
+class TrashTest {
+	@TempDir
+	Path work;
+	private Trash trash;
+
+	@BeforeEach
+	void createTrash() {
+		trash = new Trash(work.resolve("trash"), 30, Long.MAX_VALUE);
+	}
+
+	@Test
+	void restoresAFolderWhereItWas() throws IOException {
+		Path folder = Files.createDirectories(work.resolve("docs/sub"));
+		Files.write(folder.resolve("notes.txt"), "notes".getBytes("UTF-8"));
+
+		Trash.Item item = trash.moveToTrash(work.resolve("docs").toFile());
+		assertFalse(Files.exists(work.resolve("docs")));
+		assertEquals(1, trash.list().size());
+		assertEquals(work.resolve("docs"), trash.list().get(0).getOriginalPath());
+
+		trash.restore(item);
+		assertEquals("notes", new String(Files.readAllBytes(folder.resolve("notes.txt")), "UTF-8"));
+		assertTrue(trash.list().isEmpty());
+	}
+
+	@Test
+	void keepsTheEntryWhenItsPathIsTaken() throws IOException {
+		File file = Files.write(work.resolve("a.txt"), "old".getBytes("UTF-8")).toFile();
+		Trash.Item item = trash.moveToTrash(file);
+		Files.write(file.toPath(), "new".getBytes("UTF-8"));
+
+		assertThrows(FileAlreadyExistsException.class, () -> trash.restore(item));
+		assertEquals(1, trash.list().size());
+		assertEquals("new", new String(Files.readAllBytes(file.toPath()), "UTF-8"));
+
+		Files.delete(file.toPath());
+		trash.restore(item);
+		assertEquals("old", new String(Files.readAllBytes(file.toPath()), "UTF-8"));
+		assertThrows(NoSuchFileException.class, () -> trash.restore(item));
+	}
+
+	@Test
+	void restoresTheContentOfASavedFile() throws IOException {
+		File file = Files.write(work.resolve("a.txt"), "first".getBytes("UTF-8")).toFile();
+		Trash.Item backup = trash.copyToTrash(file);
+		Files.write(file.toPath(), "second".getBytes("UTF-8"));
+
+		trash.restoreContent(backup);
+		assertEquals("first", new String(Files.readAllBytes(file.toPath()), "UTF-8"));
+		assertTrue(trash.list().isEmpty());
+		assertThrows(NoSuchFileException.class, () -> trash.moveToTrash(work.resolve("gone").toFile()));
+	}
+
+}
@@ -0,0 +1,191 @@
+package es.annahexe;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+
+/**
+ * The operations of {@link Utilities} on an in-memory file system, as on any NIO provider other than the local
+ * disk, and the pipelined listing of remote folders.
+ * @author annahexe
+ */
+class UtilitiesTest {
+	private final List<Exception> reported = new ArrayList<>();
+	private final Utilities utilities = new Utilities(new Utilities.ErrorReporter() {
+		public void report(Exception e) {
+			reported.add(e);
+		}
+	});
+	private FileSystem fileSystem;
+	private Path work;
+
+	@BeforeEach
+	void createFileSystem() throws IOException {
+		fileSystem = Jimfs.newFileSystem("utilities-test", Configuration.unix());
+		work = Files.createDirectory(fileSystem.getPath("/data"));
+	}
+
+	@AfterEach
+	void closeFileSystem() throws IOException {
+		fileSystem.close();
+	}
+
+	@Test
+	void resolvesUrisOnTheirProvider() throws IOException {
+		Path resolved = utilities.resolve("jimfs://utilities-test/data");
+		assertSame(fileSystem, resolved.getFileSystem());
+		assertEquals(work, resolved);
+		assertTrue(utilities.isValidFolder(resolved));
+		assertFalse(Utilities.isLocal(resolved));
+	}
+
+	@Test
+	void listsEntriesWithTheirAttributes() throws IOException {
+		Files.createDirectory(work.resolve("folder"));
+		Files.write(work.resolve("a.txt"), new byte[10]);
+		Files.write(work.resolve("b.txt"), new byte[20]);
+
+		ListingCache.Entry[] entries = utilities.listFolder(work);
+		Arrays.sort(entries, byName());
+		assertEquals(3, entries.length);
+		assertEquals("a.txt", entries[0].getName());
+		assertEquals(10, entries[0].getSize());
+		assertFalse(entries[0].isDirectory());
+		assertEquals(20, entries[1].getSize());
+		assertEquals("folder", entries[2].getName());
+		assertTrue(entries[2].isDirectory());
+	}
+
+	@Test
+	void createsRenamesCopiesAndDeletes() throws IOException {
+		assertTrue(utilities.createNewFolder("docs", work));
+		assertFalse(utilities.createNewFolder("docs", work));
+		Path docs = work.resolve("docs");
+		assertTrue(utilities.createNewFile("notes.txt", docs));
+		assertFalse(utilities.createNewFile("notes.txt", docs));
+
+		assertTrue(utilities.saveTextOverwrite("one\ntwo\n", docs.resolve("notes.txt")));
+		assertTrue(utilities.copyFile(docs.resolve("notes.txt"), docs));
+		assertEquals("one\ntwo\n", utilities.readText(docs.resolve("notes_copia.txt")));
+
+		// The extension is kept, and an existing entry is never replaced
+		assertTrue(utilities.renameFile("renamed", docs.resolve("notes.txt"), docs));
+		assertTrue(Files.exists(docs.resolve("renamed.txt")));
+		assertFalse(utilities.renameFile("renamed", docs.resolve("notes_copia.txt"), docs));
+		assertTrue(Files.exists(docs.resolve("notes_copia.txt")));
+
+		assertTrue(utilities.deleteFile(docs.resolve("notes_copia.txt")));
+		assertFalse(utilities.deleteFile(docs.resolve("notes_copia.txt")));
+		Files.createDirectories(docs.resolve("a/b/c"));
+		Files.write(docs.resolve("a/b/c/d.txt"), new byte[1]);
+		assertTrue(utilities.deleteFolder(docs));
+		assertFalse(Files.exists(docs));
+		assertTrue(reported.isEmpty(), reported.toString());
+	}
+
+	@Test
+	void readsAndWritesTextAsTheEditorShowsIt() throws IOException {
+		Path file = work.resolve("crlf.txt");
+		Files.write(file, "first\r\nsecond".getBytes(StandardCharsets.UTF_8));
+		assertEquals("first\nsecond\n", utilities.readText(file));
+		assertEquals(Arrays.asList("first", "second"), utilities.fileContent(file));
+
+		assertTrue(utilities.saveTextNewFile("new\n", "new.txt", work));
+		assertFalse(utilities.saveTextNewFile("other\n", "new.txt", work)); // no overwrite
+		assertEquals("new\n", utilities.readText(work.resolve("new.txt")));
+	}
+
+	@Test
+	void describesEntries() throws IOException {
+		Files.write(work.resolve("a.txt"), new byte[2048]);
+		Files.createDirectory(work.resolve("sub"));
+		String file = utilities.infoFile(work.resolve("a.txt"));
+		assertTrue(file.contains("NAME: a.txt\n"), file);
+		assertTrue(file.contains("SIZE (bytes): 2048\n"), file);
+		String folder = utilities.infoDirectory(work);
+		assertTrue(folder.contains("ELEMENTS: 2\n"), folder);
+		assertTrue(folder.contains("N. FILES: 1\n"), folder);
+		assertTrue(folder.contains("N. FOLDERS: 1\n"), folder);
+	}
+
+	@Test
+	void pipelinesTheAttributeReadsOfSlowFileSystems() throws IOException {
+		int count = 8 * Utilities.PIPELINE_DEPTH; // more than are queued at once
+		for (int i = 0; i < count; i++)
+			Files.write(work.resolve("file" + i), new byte[i]);
+		final AtomicInteger inFlight = new AtomicInteger();
+		final AtomicInteger maxInFlight = new AtomicInteger();
+		// A round trip of 50 ms per read, and one entry gone before its attributes are read
+		Utilities.AttributeReader slow = new Utilities.AttributeReader() {
+			public BasicFileAttributes read(Path path) throws IOException {
+				int reads = inFlight.incrementAndGet();
+				maxInFlight.accumulateAndGet(reads, Math::max);
+				try {
+					Thread.sleep(50);
+					if (path.getFileName().toString().equals("file3"))
+						throw new NoSuchFileException(path.toString());
+					return Files.readAttributes(path, BasicFileAttributes.class);
+				} catch (InterruptedException e) {
+					throw new IOException(e);
+				} finally {
+					inFlight.decrementAndGet();
+				}
+			}
+		};
+
+		final List<ListingCache.Entry> listed = new ArrayList<>();
+		long start = System.nanoTime();
+		int listedCount = Utilities.listPipelined(work, slow, new Utilities.EntryListener() {
+			public void entry(ListingCache.Entry entry) {
+				listed.add(entry);
+			}
+		});
+		long millis = (System.nanoTime() - start) / 1_000_000;
+
+		ListingCache.Entry[] entries = listed.toArray(new ListingCache.Entry[0]);
+		assertEquals(count, listedCount);
+		assertEquals(count, entries.length);
+		assertTrue(maxInFlight.get() > 1 && maxInFlight.get() <= Utilities.PIPELINE_DEPTH, "" + maxInFlight);
+		assertTrue(millis < count * 50 / 2, millis + " ms, as slow as one read after the other");
+		Arrays.sort(entries, byName());
+		long[] sizes = new long[count];
+		long[] expected = new long[count];
+		for (int i = 0; i < count; i++) {
+			int index = Integer.parseInt(entries[i].getName().substring("file".length()));
+			sizes[index] = entries[i].getSize();
+			expected[index] = index == 3 ? 0 : index; // listed with no size
+		}
+		assertArrayEquals(expected, sizes);
+	}
+
+	private static Comparator<ListingCache.Entry> byName() {
+		return new Comparator<ListingCache.Entry>() {
+			public int compare(ListingCache.Entry a, ListingCache.Entry b) {
+				return a.getName().compareTo(b.getName());
+			}
+		};
+	}
+
+}
@@ -0,0 +1,54 @@
+package es.annahexe.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the usual JMH arguments (e.g. <code>UtilitiesBenchmark.list -p shape=WIDE</code>), adding
+ * the GC profiler for allocation rates and saving the results as JSON in
+ * <code>results/&lt;commit&gt;.json</code>, so two commits can be compared (e.g. on jmh.morethan.io).
+ * @author annahexe
+ */
+public class BenchmarkMain {
+
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+		ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+		if (commandLine.getProfilers().isEmpty())
+			options.addProfiler(GCProfiler.class);
+		if (!commandLine.getResult().hasValue()) {
+			File results = new File("results");
+			results.mkdirs();
+			options.resultFormat(ResultFormatType.JSON).result(new File(results, revision() + ".json").getPath());
+		}
+		new Runner(options.build()).run();
+	}
+
+	// Short hash of the commit being measured, "-dirty" if there are changes, or the time outside a git checkout
+	static String revision() {
+		try {
+			Process git = new ProcessBuilder("git", "describe", "--always", "--dirty").redirectErrorStream(true).start();
+			InputStream in = git.getInputStream();
+			String output = new String(in.readAllBytes(), StandardCharsets.UTF_8).trim();
+			if (git.waitFor() == 0 && !output.isEmpty())
+				return output;
+		} catch (IOException e) {
+			// No git
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+	}
+
+}
@@ -0,0 +1,23 @@
+package es.annahexe.benchmarks;
+
+import es.annahexe.Utilities;
+
+/**
+ * What the benchmarks share.
+ * @author annahexe
+ */
+final class Benchmarks {
+
+    /**
+     * Fails the benchmark instead of opening a dialog: an error means the numbers are wrong.
+     */
+	static final Utilities.ErrorReporter FAILING_REPORTER = new Utilities.ErrorReporter() {
+		public void report(Exception e) {
+			throw new IllegalStateException(e);
+		}
+	};
+
+	private Benchmarks() {
+	}
+
+}
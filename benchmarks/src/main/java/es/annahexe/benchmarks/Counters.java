@@ -0,0 +1,26 @@
+package es.annahexe.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Work done by the benchmark calls, reported by JMH next to the score as rates (bytes/s, files/s), so that trees of
+ * different shapes can be compared.
+ * @author annahexe
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class Counters {
+	public long bytes;
+	public long files;
+
+	@Setup(Level.Iteration)
+	public void reset() {
+		bytes = 0;
+		files = 0;
+	}
+
+}
@@ -0,0 +1,71 @@
+package es.annahexe.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import es.annahexe.Utilities;
+
+/**
+ * Deleting a whole {@link SyntheticTree} with {@link Utilities#deleteFolder(File)}. A tree can only be deleted once,
+ * so every iteration is a single call on a fresh tree, written before the clock starts.
+ * @author annahexe
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(2)
+public class DeleteBenchmark {
+	@Param({ "WIDE", "DEEP", "SMALL_FILES", "HUGE_FILES" })
+	public SyntheticTree.Shape shape;
+
+	private Path temp;
+	private File tree;
+	private Utilities utilities;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		temp = Files.createTempDirectory("fileexplorer-bench-");
+		utilities = new Utilities(Benchmarks.FAILING_REPORTER);
+	}
+
+	@Setup(Level.Iteration)
+	public void createTree() throws IOException {
+		tree = SyntheticTree.create(temp.resolve("tree"), shape);
+	}
+
+	@TearDown(Level.Iteration)
+	public void checkDeleted() throws IOException {
+		if (tree.exists())
+			throw new IllegalStateException("deleteFolder left " + tree + " behind");
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		SyntheticTree.delete(temp);
+	}
+
+	@Benchmark
+	public boolean deleteFolder() {
+		return utilities.deleteFolder(tree);
+	}
+
+}
@@ -0,0 +1,125 @@
+package es.annahexe.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Cold start of the window, from launching <code>java</code> to the first folder on screen, with the plain JDK,
+ * the AppCDS archive and the jlink runtime when they were built (<code>-Pappcds</code>, <code>-Pjlink</code>).
+ * <p>
+ * Every run is a new process started with <code>-Dfileexplorer.exitAfterStartup=true</code>: the app prints the
+ * time since the JVM started and exits, and the process time is measured from here. The app lists a generated
+ * {@link SyntheticTree.Shape#WIDE} folder unless another one is given. Its <code>user.home</code> is a temporary
+ * folder, so it starts without the session of the user (which would list the last folder instead) and leaves it
+ * alone. Needs a display.
+ * </p>
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar es.annahexe.benchmarks.StartupBenchmark [runs] [folder to list]
+ * </pre>
+ * Results go to <code>results/startup-&lt;commit&gt;.json</code>.
+ * @author annahexe
+ */
+public class StartupBenchmark {
+	private static final int DEFAULT_RUNS = 10;
+	private static final File APP = new File("FileExplorer/target");
+
+	public static void main(String[] args) throws Exception {
+		int runs = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_RUNS;
+		File jar = new File(APP, "fileexplorer.jar").getAbsoluteFile();
+		if (!jar.isFile()) {
+			System.err.println(jar + " not found: run mvn -B package first, from the root of the project");
+			System.exit(2);
+		}
+		String java = new File(System.getProperty("java.home"), "bin/java").getPath();
+		File archive = new File(APP, "fileexplorer.jsa").getAbsoluteFile();
+		File runtime = new File(APP, "runtime/bin/java").getAbsoluteFile();
+
+		List<String> names = new ArrayList<>();
+		List<List<String>> commands = new ArrayList<>();
+		names.add("jdk");
+		commands.add(Arrays.asList(java, "-Xshare:auto"));
+		if (archive.isFile()) {
+			names.add("appcds");
+			commands.add(Arrays.asList(java, "-XX:SharedArchiveFile=" + archive));
+		}
+		if (runtime.isFile()) {
+			names.add("jlink");
+			commands.add(Arrays.asList(runtime.getPath(), "-Xshare:auto"));
+		}
+
+		Path temp = Files.createTempDirectory("fileexplorer-startup-");
+		StringBuilder json = new StringBuilder("[\n");
+		try {
+			File folder;
+			if (args.length > 1)
+				folder = new File(args[1]);
+			else
+				folder = SyntheticTree.create(temp.resolve("wide"), SyntheticTree.Shape.WIDE);
+			// The session, trash and caches of the app go there, not to the home of the user
+			Path home = Files.createDirectory(temp.resolve("home"));
+			for (int i = 0; i < names.size(); i++) {
+				List<String> command = new ArrayList<>(commands.get(i));
+				command.addAll(Arrays.asList("-Duser.home=" + home, "-Dfileexplorer.exitAfterStartup=true", "-jar",
+						jar.getPath()));
+				run(command, folder); // warms the file cache
+				long[] process = new long[runs];
+				long[] reported = new long[runs];
+				for (int run = 0; run < runs; run++) {
+					long start = System.nanoTime();
+					reported[run] = run(command, folder);
+					process[run] = (System.nanoTime() - start) / 1_000_000;
+				}
+				Arrays.sort(process);
+				Arrays.sort(reported);
+				System.out.printf("%-8s process median %5d ms (min %5d, max %5d)   reported median %5d ms%n", names.get(i),
+						process[runs / 2], process[0], process[runs - 1], reported[runs / 2]);
+				json.append(String.format("  {\"config\": \"%s\", \"runs\": %d, \"processMillis\": %s, "
+						+ "\"reportedMillis\": %s}%s%n", names.get(i), runs, Arrays.toString(process),
+						Arrays.toString(reported), i + 1 < names.size() ? "," : ""));
+			}
+		} finally {
+			SyntheticTree.delete(temp);
+		}
+		json.append("]\n");
+		File results = new File("results");
+		results.mkdirs();
+		File file = new File(results, "startup-" + BenchmarkMain.revision() + ".json");
+		PrintWriter out = new PrintWriter(file, StandardCharsets.UTF_8);
+		try {
+			out.print(json);
+		} finally {
+			out.close();
+		}
+		System.out.println("Results saved to " + file);
+	}
+
+	// Runs the app in the folder and returns the startup time it printed
+	private static long run(List<String> command, File folder) throws IOException, InterruptedException {
+		Process process = new ProcessBuilder(command).directory(folder).redirectErrorStream(true).start();
+		long reported = -1;
+		StringBuilder output = new StringBuilder();
+		BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+		try {
+			for (String line = in.readLine(); line != null; line = in.readLine()) {
+				output.append(line).append('\n');
+				if (line.startsWith("startup ") && line.endsWith(" ms"))
+					reported = Long.parseLong(line.substring("startup ".length(), line.length() - " ms".length()));
+			}
+		} finally {
+			in.close();
+		}
+		if (process.waitFor() != 0 || reported < 0)
+			throw new IOException("The app didn't start:\n" + output);
+		return reported;
+	}
+
+}
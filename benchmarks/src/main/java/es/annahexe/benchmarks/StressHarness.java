@@ -0,0 +1,614 @@
+package es.annahexe.benchmarks;
+
+import java.awt.Component;
+import java.awt.Container;
+import java.awt.GraphicsEnvironment;
+import java.awt.Window;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeoutException;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import javax.swing.AbstractButton;
+import javax.swing.JDialog;
+import javax.swing.JList;
+import javax.swing.JOptionPane;
+import javax.swing.ListModel;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.text.JTextComponent;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import es.annahexe.Controller;
+import es.annahexe.EdtWatchdog;
+import es.annahexe.Metrics;
+import es.annahexe.Utilities;
+import es.annahexe.View;
+
+/**
+ * Drives the window through folders of 10k, 100k and 1M entries and a file of several GB, and fails if a flow
+ * blocks the event dispatch thread or holds more heap than allowed, so a change that freezes the window on big
+ * folders shows up as a failed build (<code>mvn -B verify -Pstress</code>).
+ * <p>
+ * The app runs in this JVM, as {@link es.annahexe.Main} wires it, on a generated tree and with its session and
+ * trash in a temporary home. Each flow clicks the buttons of the {@link View} from the EDT, like a user, and waits
+ * for what the window shows: open a folder and scroll to its end, filter it, show one of its files, go back, show
+ * and search the huge file, then delete each folder. Files are shown with Edit on, which search needs, and a file
+ * is shown once it has its line numbers. The dialogs are answered as they show up ("Delete permanently",
+ * <code>sudo</code>, OK); an error dialog fails the flow.
+ * </p>
+ * <p>
+ * For every flow the longest dispatch on the EDT is taken from {@link EdtWatchdog} (the time a modal dialog is
+ * open doesn't count; what the flow leaves on the EDT, like timers and layout, counts until it settles), and the
+ * peak heap is the most heap left in use after a garbage collection during the flow, so the garbage the collector
+ * hasn't got to yet doesn't count. Needs a display; on a server run it under Xvfb:
+ * </p>
+ * <pre>
+ * xvfb-run -a java -cp benchmarks/target/benchmarks.jar es.annahexe.benchmarks.StressHarness
+ *         [--sizes=10000,100000,1000000] [--hugeFile=2g] [--maxEdtMillis=200] [--maxHeapMb=512]
+ *         [--timeoutSeconds=600]
+ * </pre>
+ * Results go to <code>results/stress-&lt;commit&gt;.json</code>. Exits with 0 if every flow is within the
+ * budgets, 1 if not, 2 if it can't run.
+ * @author annahexe
+ */
+public class StressHarness {
+	private static final String SIZES = "10000,100000,1000000";
+	private static final String HUGE_FILE = "2g";
+	private static final long MAX_EDT_MILLIS = 200; // the stall threshold of the app
+	private static final long MAX_HEAP_MB = 512;
+	private static final long TIMEOUT_SECONDS = 600;
+	private static final int FILE_SIZE = 512;
+	private static final String QUERY = "file12";
+	private static final String SEARCHED = SyntheticTree.NEEDLE;
+	private static final long POLL_MILLIS = 20;
+	private static final long SETTLE_MILLIS = 500; // longer than the timers the app starts after an event
+
+	private final long maxEdtMillis;
+	private final long maxHeapMb;
+	private final long timeoutMillis;
+	private final List<Flow> flows = new ArrayList<>();
+	private final HeapMonitor heap = new HeapMonitor();
+	private final DialogAnswerer dialogs = new DialogAnswerer();
+	private View view;
+
+	// One flow: what it did and what it cost
+	private static class Flow {
+		final String name;
+		final int entries;
+		long millis;
+		long edtMillis;
+		String handler; // the slowest dispatch over the budget, if any
+		long heapMb;
+		String error;
+
+		Flow(String name, int entries) {
+			this.name = name;
+			this.entries = entries;
+		}
+	}
+
+	private StressHarness(long maxEdtMillis, long maxHeapMb, long timeoutMillis) {
+		this.maxEdtMillis = maxEdtMillis;
+		this.maxHeapMb = maxHeapMb;
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	public static void main(String[] args) throws Exception {
+		String sizes = SIZES;
+		String hugeFile = HUGE_FILE;
+		long maxEdtMillis = MAX_EDT_MILLIS;
+		long maxHeapMb = MAX_HEAP_MB;
+		long timeoutSeconds = TIMEOUT_SECONDS;
+		try {
+			for (String arg : args) {
+				if (arg.startsWith("--sizes="))
+					sizes = arg.substring("--sizes=".length());
+				else if (arg.startsWith("--hugeFile="))
+					hugeFile = arg.substring("--hugeFile=".length());
+				else if (arg.startsWith("--maxEdtMillis="))
+					maxEdtMillis = Long.parseLong(arg.substring("--maxEdtMillis=".length()));
+				else if (arg.startsWith("--maxHeapMb="))
+					maxHeapMb = Long.parseLong(arg.substring("--maxHeapMb=".length()));
+				else if (arg.startsWith("--timeoutSeconds="))
+					timeoutSeconds = Long.parseLong(arg.substring("--timeoutSeconds=".length()));
+				else
+					throw new IllegalArgumentException("Unknown option " + arg);
+			}
+			parseSize(hugeFile);
+			for (String size : sizes.split(","))
+				Integer.parseInt(size.trim());
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage() + "\nUsage: StressHarness [--sizes=" + SIZES + "] [--hugeFile="
+					+ HUGE_FILE + "] [--maxEdtMillis=" + MAX_EDT_MILLIS + "] [--maxHeapMb=" + MAX_HEAP_MB
+					+ "] [--timeoutSeconds=" + TIMEOUT_SECONDS + "]");
+			System.exit(2);
+		}
+		if (GraphicsEnvironment.isHeadless()) {
+			System.err.println("No display: run it under Xvfb, e.g. xvfb-run -a java -cp ... "
+					+ StressHarness.class.getName());
+			System.exit(2);
+		}
+		StressHarness harness = new StressHarness(maxEdtMillis, maxHeapMb, timeoutSeconds * 1000);
+		System.exit(harness.run(sizes.split(","), parseSize(hugeFile)));
+	}
+
+	// 512m, 2g... in bytes
+	private static long parseSize(String size) {
+		String text = size.trim().toLowerCase();
+		long unit = 1;
+		if (text.endsWith("k") || text.endsWith("m") || text.endsWith("g")) {
+			unit = text.endsWith("k") ? 1L << 10 : text.endsWith("m") ? 1L << 20 : 1L << 30;
+			text = text.substring(0, text.length() - 1);
+		}
+		return Long.parseLong(text) * unit;
+	}
+
+	private int run(String[] sizes, long hugeSize) throws Exception {
+		Path temp = Files.createTempDirectory("fileexplorer-stress-");
+		try {
+			// The session and the trash of the app go there, not to the home of the user
+			Path home = Files.createDirectory(temp.resolve("home"));
+			System.setProperty("user.home", home.toString());
+			final Path root = Files.createDirectory(temp.resolve("tree"));
+			int[] entries = new int[sizes.length];
+			for (int i = 0; i < sizes.length; i++) {
+				entries[i] = Integer.parseInt(sizes[i].trim());
+				System.out.println("Writing " + entries[i] + " files...");
+				SyntheticTree.createFlat(root.resolve(folderName(entries[i])), entries[i], FILE_SIZE);
+			}
+			System.out.println("Writing a file of " + (hugeSize >> 20) + " MB...");
+			File huge = SyntheticTree.createFile(root.resolve("huge.txt"), hugeSize);
+
+			start(root.toFile());
+			for (int count : entries)
+				browse(root.toFile(), count);
+			showHuge(huge);
+			for (int count : entries)
+				delete(root.toFile(), count);
+		} finally {
+			SyntheticTree.delete(temp);
+		}
+		return report();
+	}
+
+	private static String folderName(int entries) {
+		return "entries-" + entries;
+	}
+
+	// Builds the window on the EDT as Main does, on the generated tree, and waits for it to be listed
+	private void start(final File root) throws Exception {
+		Metrics.start("stress.start").end(); // registers the metrics before the EDT is timed
+		EdtWatchdog.install(maxEdtMillis);
+		heap.install();
+		onEdt(new Callable<Void>() {
+			public Void call() {
+				view = new View();
+				Utilities utilities = new Utilities();
+				utilities.setSelectedFolder(root);
+				new Controller(utilities, view);
+				new Timer((int) POLL_MILLIS, dialogs).start();
+				return null;
+			}
+		});
+		await("the first listing", shows(root, -1));
+	}
+
+	// Opens a folder of many entries, filters it, shows one of its files and goes back
+	private void browse(File root, final int entries) throws Exception {
+		final File folder = new File(root, folderName(entries));
+		Flow flow = begin("open", entries);
+		try {
+			select("./" + folder.getName());
+			click(view.getBtnExploreFolder());
+			await("the listing of " + folder, shows(folder, -1));
+			onEdt(new Callable<Void>() {
+				public Void call() {
+					JList<String> list = view.getListExplorer();
+					list.ensureIndexIsVisible(list.getModel().getSize() - 1);
+					return null;
+				}
+			});
+			onEdt(noop()); // after the rows at the end are painted
+			end(flow, null);
+		} catch (Exception e) {
+			end(flow, e);
+			return;
+		}
+
+		flow = begin("filter", entries);
+		try {
+			int matches = 0;
+			for (int i = 0; i < entries; i++) {
+				if (("file" + i + ".txt").contains(QUERY))
+					matches++;
+			}
+			setText(view.getTextFieldFilter(), QUERY);
+			await("the filtered list", shows(folder, matches));
+			setText(view.getTextFieldFilter(), "");
+			await("the unfiltered list", shows(folder, -1));
+			end(flow, null);
+		} catch (Exception e) {
+			end(flow, e);
+		}
+
+		flow = begin("show", entries);
+		try {
+			select("file" + (entries - 1) + ".txt");
+			show();
+			await("the file", loaded());
+			search(SEARCHED);
+			end(flow, null);
+		} catch (Exception e) {
+			end(flow, e);
+		}
+
+		flow = begin("back", entries);
+		try {
+			click(view.getBtnExploreBack());
+			await("the listing of " + root, shows(root, -1));
+			end(flow, null);
+		} catch (Exception e) {
+			end(flow, e);
+		}
+	}
+
+	// Shows the huge file and searches it
+	private void showHuge(File huge) throws Exception {
+		Flow flow = begin("show-huge", 1);
+		try {
+			select(huge.getName());
+			show();
+			await("the huge file", loaded());
+			end(flow, null);
+		} catch (Exception e) {
+			end(flow, e);
+			return;
+		}
+		flow = begin("search-huge", 1);
+		try {
+			search(SEARCHED);
+			end(flow, null);
+		} catch (Exception e) {
+			end(flow, e);
+		}
+	}
+
+	// Deletes a folder of many entries for good, answering the confirmations
+	private void delete(File root, int entries) throws Exception {
+		final File folder = new File(root, folderName(entries));
+		Flow flow = begin("delete", entries);
+		try {
+			select("./" + folder.getName());
+			click(view.getBtnDeleteFolder());
+			await("the deletion of " + folder, new Callable<Boolean>() {
+				public Boolean call() {
+					return dialogs.answered("FILE DELETE") && !folder.exists();
+				}
+			});
+			end(flow, null);
+		} catch (Exception e) {
+			end(flow, e);
+		}
+	}
+
+	// =========
+	// DRIVING THE WINDOW
+	// =========
+
+	// Selects a row as a click does; the row is looked for off the EDT, a user finds it on the screen
+	private void select(final String entry) throws Exception {
+		ListModel<String> model = onEdt(new Callable<ListModel<String>>() {
+			public ListModel<String> call() {
+				return view.getListExplorer().getModel();
+			}
+		});
+		int found = -1;
+		for (int i = 0; i < model.getSize() && found < 0; i++) {
+			if (entry.equals(model.getElementAt(i)))
+				found = i;
+		}
+		final int index = found;
+		boolean selected = index >= 0 && onEdt(new Callable<Boolean>() {
+			public Boolean call() {
+				JList<String> list = view.getListExplorer();
+				list.setSelectedIndex(index);
+				list.ensureIndexIsVisible(index);
+				return entry.equals(list.getSelectedValue());
+			}
+		});
+		if (!selected)
+			throw new IOException("`" + entry + "` isn't listed");
+	}
+
+	// Clicks on the EDT without waiting: the click may open a modal dialog
+	private void click(final AbstractButton button) throws Exception {
+		boolean enabled = onEdt(new Callable<Boolean>() {
+			public Boolean call() {
+				return button.isEnabled();
+			}
+		});
+		if (!enabled)
+			throw new IOException("`" + button.getText() + "` is disabled");
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				button.doClick(0);
+			}
+		});
+	}
+
+	private void setText(final JTextComponent field, final String text) throws Exception {
+		onEdt(new Callable<Void>() {
+			public Void call() {
+				field.setText(text);
+				return null;
+			}
+		});
+	}
+
+	// Shows the selected file with Edit on, which searching needs: the toggle shows the file when turned on
+	private void show() throws Exception {
+		boolean editing = onEdt(new Callable<Boolean>() {
+			public Boolean call() {
+				return view.getTglBtnEditFile().isSelected();
+			}
+		});
+		click(editing ? view.getBtnShowFile() : view.getTglBtnEditFile());
+	}
+
+	// Highlights the matches in the editor; "No matches found." is answered like any other dialog
+	private void search(String text) throws Exception {
+		setText(view.getTextFieldSearch(), text);
+		click(view.getBtnSearchText());
+		onEdt(noop()); // the search runs in the click
+	}
+
+	// The folder is shown, filtered to that many matches or unfiltered (-1)
+	private Callable<Boolean> shows(final File folder, final int matches) {
+		final String title = folder.getAbsolutePath();
+		return new Callable<Boolean>() {
+			public Boolean call() {
+				String shown = view.getlLblFilePath().getText();
+				return matches < 0 ? shown.equals(title) : shown.startsWith(title + "   [" + matches + " of ");
+			}
+		};
+	}
+
+	// The whole file (or its first page) is in the editor with its line numbers and can be searched, or couldn't be
+	// read (an error dialog)
+	private Callable<Boolean> loaded() {
+		return new Callable<Boolean>() {
+			public Boolean call() {
+				return view.getLineNumberGutter().getIndex() != null && view.getBtnSearchText().isEnabled();
+			}
+		};
+	}
+
+	private static Callable<Void> noop() {
+		return new Callable<Void>() {
+			public Void call() {
+				return null;
+			}
+		};
+	}
+
+	// Runs on the EDT and waits for the result; runs within modal dialogs too, unlike invokeAndWait from a click
+	private static <T> T onEdt(Callable<T> task) throws Exception {
+		FutureTask<T> future = new FutureTask<>(task);
+		SwingUtilities.invokeLater(future);
+		return future.get();
+	}
+
+	// Polls a condition on the EDT until it holds; an error dialog or the timeout ends the wait
+	private void await(String what, Callable<Boolean> condition) throws Exception {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		while (!onEdt(condition)) {
+			String error = dialogs.error();
+			if (error != null)
+				throw new IOException(error);
+			if (System.currentTimeMillis() > deadline)
+				throw new TimeoutException("Timed out waiting for " + what);
+			Thread.sleep(POLL_MILLIS);
+		}
+		String error = dialogs.error();
+		if (error != null)
+			throw new IOException(error);
+	}
+
+	// =========
+	// MEASURING
+	// =========
+
+	private Flow begin(String name, int entries) throws Exception {
+		onEdt(noop()); // the events of the previous flow are done
+		Flow flow = new Flow(name, entries);
+		System.out.println(name + " " + entries + "...");
+		dialogs.reset();
+		EdtWatchdog.reset();
+		Metrics.operation("edt.dispatch").reset();
+		heap.reset();
+		flow.millis = System.nanoTime();
+		return flow;
+	}
+
+	private void end(Flow flow, Exception error) throws Exception {
+		flow.millis = (System.nanoTime() - flow.millis) / 1_000_000;
+		// What the flow left on the EDT (timers, layout, highlighting) counts too
+		Thread.sleep(SETTLE_MILLIS);
+		onEdt(noop());
+		flow.edtMillis = Math.round(Metrics.operation("edt.dispatch").getMaxMillis());
+		long slowest = 0;
+		for (EdtWatchdog.Stall stall : EdtWatchdog.getStalls()) {
+			if (stall.getMaxNanos() > slowest) {
+				slowest = stall.getMaxNanos();
+				flow.handler = stall.getHandler();
+			}
+		}
+		flow.heapMb = heap.peak() >> 20;
+		if (error != null)
+			flow.error = error.getMessage() != null ? error.getMessage() : error.toString();
+		flows.add(flow);
+	}
+
+	private boolean passed(Flow flow) {
+		return flow.error == null && flow.edtMillis <= maxEdtMillis && flow.heapMb <= maxHeapMb;
+	}
+
+	// Prints the flows and writes them as JSON; 1 if one of them is over the budgets
+	private int report() throws IOException {
+		boolean passed = true;
+		StringBuilder json = new StringBuilder("[\n");
+		System.out.printf("%n%-12s %9s %9s %9s %9s  %s%n", "flow", "entries", "ms", "edt ms", "heap MB", "");
+		for (int i = 0; i < flows.size(); i++) {
+			Flow flow = flows.get(i);
+			passed &= passed(flow);
+			String verdict = passed(flow) ? "ok" : flow.error != null ? "FAILED: " + flow.error
+					: "OVER BUDGET" + (flow.handler != null ? " in " + flow.handler : "");
+			System.out.printf("%-12s %9d %9d %9d %9d  %s%n", flow.name, flow.entries, flow.millis, flow.edtMillis,
+					flow.heapMb, verdict);
+			json.append(String.format("  {\"flow\": \"%s\", \"entries\": %d, \"millis\": %d, \"edtMillis\": %d, "
+					+ "\"heapMb\": %d, \"passed\": %b}%s%n", flow.name, flow.entries, flow.millis, flow.edtMillis,
+					flow.heapMb, passed(flow), i + 1 < flows.size() ? "," : ""));
+		}
+		json.append("]\n");
+		System.out.printf("Budgets: %d ms on the EDT, %d MB of heap%n", maxEdtMillis, maxHeapMb);
+		File results = new File("results");
+		results.mkdirs();
+		File file = new File(results, "stress-" + BenchmarkMain.revision() + ".json");
+		PrintWriter out = new PrintWriter(file, StandardCharsets.UTF_8);
+		try {
+			out.print(json);
+		} finally {
+			out.close();
+		}
+		System.out.println("Results saved to " + file);
+		return passed ? 0 : 1;
+	}
+
+	// Most heap in use after a collection since the last reset, the live data rather than the garbage
+	private static class HeapMonitor implements NotificationListener {
+		private final Set<String> heapPools = new HashSet<>();
+		private long peak;
+
+		void install() {
+			for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+				if (pool.getType() == MemoryType.HEAP)
+					heapPools.add(pool.getName());
+			}
+			for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans())
+				((NotificationEmitter) collector).addNotificationListener(this, null, null);
+		}
+
+		public void handleNotification(Notification notification, Object handback) {
+			if (!notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION))
+				return;
+			GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo
+					.from((CompositeData) notification.getUserData());
+			long used = 0;
+			for (Map.Entry<String, MemoryUsage> pool : info.getGcInfo().getMemoryUsageAfterGc().entrySet()) {
+				if (heapPools.contains(pool.getKey()))
+					used += pool.getValue().getUsed();
+			}
+			synchronized (this) {
+				peak = Math.max(peak, used);
+			}
+		}
+
+		synchronized void reset() {
+			peak = 0;
+		}
+
+		// Collects once more, for a flow too short to have had a collection
+		long peak() {
+			System.gc();
+			long used = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+			synchronized (this) {
+				return Math.max(peak, used);
+			}
+		}
+	}
+
+	// Answers the dialogs of the app on the EDT as they show up, and remembers their titles
+	private static class DialogAnswerer implements ActionListener {
+		private final List<String> titles = new ArrayList<>();
+		private String error;
+
+		public void actionPerformed(ActionEvent actionEvent) {
+			for (Window window : Window.getWindows()) {
+				if (!(window instanceof JDialog) || !window.isShowing())
+					continue;
+				JOptionPane pane = paneOf(window);
+				if (pane == null)
+					continue;
+				String title = ((JDialog) window).getTitle();
+				synchronized (this) {
+					titles.add(title);
+					if (title.equals("WARNING") && error == null)
+						error = String.valueOf(pane.getMessage());
+				}
+				if (pane.getWantsInput()) {
+					pane.setInputValue("sudo");
+					pane.setValue(Integer.valueOf(JOptionPane.OK_OPTION));
+				} else if (pane.getOptions() != null) {
+					Object answer = pane.getInitialValue();
+					for (Object option : pane.getOptions()) {
+						if ("Delete permanently".equals(option))
+							answer = option;
+					}
+					pane.setValue(answer);
+				} else {
+					pane.setValue(Integer.valueOf(JOptionPane.OK_OPTION));
+				}
+			}
+		}
+
+		private static JOptionPane paneOf(Component component) {
+			if (component instanceof JOptionPane)
+				return (JOptionPane) component;
+			if (component instanceof Container) {
+				for (Component child : ((Container) component).getComponents()) {
+					JOptionPane pane = paneOf(child);
+					if (pane != null)
+						return pane;
+				}
+			}
+			return null;
+		}
+
+		synchronized boolean answered(String title) {
+			return titles.contains(title);
+		}
+
+		synchronized String error() {
+			return error;
+		}
+
+		synchronized void reset() {
+			titles.clear();
+			error = null;
+		}
+	}
+
+}
@@ -0,0 +1,169 @@
+package es.annahexe.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates the folder trees the benchmarks run on, always the same for a shape (fixed seed) so results can be
+ * compared across commits.
+ * @author annahexe
+ */
+public final class SyntheticTree {
+	/** Word the text files contain now and then, for the search benchmark. */
+	public static final String NEEDLE = "needle";
+
+	private static final String[] WORDS = { "lorem", "ipsum", "dolor", "sit", "amet", "file", "folder", "explorer",
+			"java", "swing", "copy", "delete", "rename", "0", "42", "2024-01-01", "INFO", "WARN", "{", "}" };
+
+	/**
+	 * The kinds of trees: many entries in one folder, a long chain of folders, many small files spread over folders,
+	 * and a few huge files.
+	 */
+	public enum Shape {
+		WIDE(1, 1, 20_000, 512),
+		DEEP(256, 1, 4, 2 * 1024),
+		SMALL_FILES(1, 64, 256, 1024),
+		HUGE_FILES(1, 1, 4, 64 * 1024 * 1024);
+
+		final int depth; // nested folders
+		final int folders; // sibling folders at each level
+		final int filesPerFolder;
+		final int fileSize;
+
+		Shape(int depth, int folders, int filesPerFolder, int fileSize) {
+			this.depth = depth;
+			this.folders = folders;
+			this.filesPerFolder = filesPerFolder;
+			this.fileSize = fileSize;
+		}
+	}
+
+	private SyntheticTree() {
+	}
+
+    /**
+     * Writes a tree of text files.
+     * @param root  the folder to create; must not exist
+     * @param shape what the tree looks like
+     * @return the root folder
+     * @throws IOException if it can't be written
+     */
+	public static File create(Path root, Shape shape) throws IOException {
+		byte[] block = textBlock(new Random(shape.ordinal()));
+		Files.createDirectories(root);
+		Path level = root;
+		for (int depth = 0; depth < shape.depth; depth++) {
+			for (int folder = 0; folder < shape.folders; folder++) {
+				Path directory = shape.folders == 1 ? level : level.resolve("folder" + folder);
+				Files.createDirectories(directory);
+				for (int file = 0; file < shape.filesPerFolder; file++)
+					write(directory.resolve("file" + file + ".txt"), block, shape.fileSize);
+			}
+			if (depth + 1 < shape.depth)
+				level = Files.createDirectory(level.resolve("level" + depth));
+		}
+		return root.toFile();
+	}
+
+    /**
+     * Writes a folder of many small text files, <code>file0.txt</code>, <code>file1.txt</code>...
+     * @param folder   the folder to create; must not exist
+     * @param files    how many files
+     * @param fileSize the size of each one
+     * @return the folder
+     * @throws IOException if it can't be written
+     */
+	public static File createFlat(Path folder, int files, int fileSize) throws IOException {
+		byte[] block = textBlock(new Random(files));
+		Files.createDirectories(folder);
+		for (int file = 0; file < files; file++)
+			write(folder.resolve("file" + file + ".txt"), block, fileSize);
+		return folder.toFile();
+	}
+
+    /**
+     * Writes one text file of lines of words, as big as wanted (several GB too).
+     * @param file the file to create
+     * @param size its size in bytes
+     * @return the file
+     * @throws IOException if it can't be written
+     */
+	public static File createFile(Path file, long size) throws IOException {
+		write(file, textBlock(new Random(size)), size);
+		return file.toFile();
+	}
+
+    /**
+     * Lists the files of a tree, to iterate them without measuring the listing.
+     * @param root the root folder
+     * @return every regular file under it
+     * @throws IOException if it can't be walked
+     */
+	public static List<File> files(File root) throws IOException {
+		final List<File> files = new ArrayList<>();
+		Files.walkFileTree(root.toPath(), new SimpleFileVisitor<Path>() {
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+				files.add(file.toFile());
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		return files;
+	}
+
+    /**
+     * Deletes a tree without going through the code being measured.
+     * @param root the folder to delete; nothing happens if it doesn't exist
+     * @throws IOException if something can't be deleted
+     */
+	public static void delete(Path root) throws IOException {
+		if (!Files.exists(root))
+			return;
+		Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+				Files.delete(file);
+				return FileVisitResult.CONTINUE;
+			}
+
+			public FileVisitResult postVisitDirectory(Path directory, IOException e) throws IOException {
+				Files.delete(directory);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	// 64 KB of lines of random words, a needle every 50 lines or so
+	private static byte[] textBlock(Random random) {
+		StringBuilder text = new StringBuilder(64 * 1024 + 128);
+		while (text.length() < 64 * 1024) {
+			int words = 4 + random.nextInt(12);
+			for (int word = 0; word < words; word++) {
+				if (word > 0)
+					text.append(' ');
+				text.append(random.nextInt(50 * words) == 0 ? NEEDLE : WORDS[random.nextInt(WORDS.length)]);
+			}
+			text.append('\n');
+		}
+		return text.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static void write(Path file, byte[] block, long size) throws IOException {
+		OutputStream out = Files.newOutputStream(file);
+		try {
+			for (long written = 0; written < size; written += block.length)
+				out.write(block, 0, (int) Math.min(block.length, size - written));
+		} finally {
+			out.close();
+		}
+	}
+
+}
@@ -0,0 +1,167 @@
+package es.annahexe.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import es.annahexe.ListingCache;
+import es.annahexe.Utilities;
+
+/**
+ * Listing, reading, copying and searching a whole {@link SyntheticTree} with {@link Utilities}, the way the window
+ * does it. One operation is the whole tree; {@link Counters} turns it into bytes/s and files/s.
+ * @author annahexe
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class UtilitiesBenchmark {
+	@Param({ "WIDE", "DEEP", "SMALL_FILES", "HUGE_FILES" })
+	public SyntheticTree.Shape shape;
+
+	private Path temp;
+	private File tree;
+	private File copies;
+	private List<File> files;
+	private long[] sizes;
+	private Utilities utilities;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		temp = Files.createTempDirectory("fileexplorer-bench-");
+		tree = SyntheticTree.create(temp.resolve("tree"), shape);
+		copies = Files.createDirectory(temp.resolve("copies")).toFile();
+		files = SyntheticTree.files(tree);
+		sizes = new long[files.size()];
+		for (int i = 0; i < sizes.length; i++)
+			sizes[i] = files.get(i).length();
+		utilities = new Utilities(Benchmarks.FAILING_REPORTER);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		SyntheticTree.delete(temp);
+	}
+
+    /**
+     * Walks the tree with {@link Utilities#listFilesInFolder(File)}, as opening every folder would.
+     */
+	@Benchmark
+	public int list(Counters counters) {
+		List<File> pending = new ArrayList<>();
+		pending.add(tree);
+		int entries = 0;
+		while (!pending.isEmpty()) {
+			File[] children = utilities.listFilesInFolder(pending.remove(pending.size() - 1));
+			entries += children.length;
+			for (File child : children) {
+				if (child.isDirectory())
+					pending.add(child);
+			}
+		}
+		counters.files += entries;
+		return entries;
+	}
+
+    /**
+     * Walks the tree with {@link Utilities#listFolder(Path)}, which reads the attributes with the names, as the
+     * window lists folders.
+     */
+	@Benchmark
+	public int listFolder(Counters counters) throws IOException {
+		List<Path> pending = new ArrayList<>();
+		pending.add(tree.toPath());
+		int entries = 0;
+		while (!pending.isEmpty()) {
+			Path folder = pending.remove(pending.size() - 1);
+			ListingCache.Entry[] children = utilities.listFolder(folder);
+			entries += children.length;
+			for (ListingCache.Entry child : children) {
+				if (child.isDirectory())
+					pending.add(folder.resolve(child.getName()));
+			}
+		}
+		counters.files += entries;
+		return entries;
+	}
+
+    /**
+     * Reads every file line by line with {@link Utilities#fileContent(File)}.
+     */
+	@Benchmark
+	public void fileContent(Counters counters, Blackhole blackhole) {
+		for (int i = 0; i < sizes.length; i++) {
+			blackhole.consume(utilities.fileContent(files.get(i)));
+			counters.bytes += sizes[i];
+		}
+		counters.files += sizes.length;
+	}
+
+    /**
+     * Reads every file as the editor does, with {@link Utilities#readText(File)}.
+     */
+	@Benchmark
+	public void readText(Counters counters, Blackhole blackhole) throws IOException {
+		for (int i = 0; i < sizes.length; i++) {
+			blackhole.consume(utilities.readText(files.get(i)));
+			counters.bytes += sizes[i];
+		}
+		counters.files += sizes.length;
+	}
+
+    /**
+     * Copies every file with {@link Utilities#copyFile(File, File)} into one folder; later copies overwrite.
+     */
+	@Benchmark
+	public int copyFile(Counters counters) {
+		int copied = 0;
+		for (int i = 0; i < sizes.length; i++) {
+			if (utilities.copyFile(files.get(i), copies)) {
+				copied++;
+				counters.bytes += sizes[i];
+			}
+		}
+		counters.files += copied;
+		return copied;
+	}
+
+    /**
+     * Reads every file and counts the matches of a word, as the editor's Search does.
+     */
+	@Benchmark
+	public int search(Counters counters) throws IOException {
+		int matches = 0;
+		for (int i = 0; i < sizes.length; i++) {
+			String content = utilities.readText(files.get(i));
+			for (int index = content.indexOf(SyntheticTree.NEEDLE); index >= 0;
+					index = content.indexOf(SyntheticTree.NEEDLE, index + SyntheticTree.NEEDLE.length()))
+				matches++;
+			counters.bytes += sizes[i];
+		}
+		counters.files += sizes.length;
+		return matches;
+	}
+
+}